@@ -0,0 +1,293 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Debug;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Drives the real fetch path over and over and measures it: latency percentiles,
+ * throughput and how high the Java and native heaps get. Pointed at the feed simulator,
+ * which can be told to be slow, flaky or huge, it catches performance regressions
+ * without the live USGS service.
+ *
+ * Two modes exercise two depths of the app:
+ * <ul>
+ *     <li>{@link #MODE_FETCH} calls {@link QueryUtils#fetchEarthquakeData(String, QueryResult)}
+ *     per page: HTTP, decompression and parsing only.</li>
+ *     <li>{@link #MODE_LOADER} pages through a new {@link EarthquakeLoader} per run, calling
+ *     {@link EarthquakeLoader#loadInBackground()} the way the loader manager would, so the
+ *     caches, the snapshot and the {@link EarthquakeStore} are part of every run.</li>
+ * </ul>
+ * Cold loader runs each ask for a window starting a second earlier than the run before,
+ * so neither the memory cache, the disk cache nor the synced local store can answer
+ * them. Their pages stay in the disk cache like any other query's, so clear the app's
+ * data after a long soak.
+ */
+final class LoadHarness {
+
+    static final String MODE_FETCH = "fetch";
+    static final String MODE_LOADER = "loader";
+
+    /** Time between two looks at the heap sizes */
+    private static final long SAMPLE_INTERVAL_MILLIS = 5;
+
+    /** FDSN offsets start counting at 1, not 0 */
+    private static final int FIRST_OFFSET = 1;
+
+    /** Window of the cold loader runs, which is USGS's default window */
+    private static final long COLD_WINDOW_MILLIS = 30L * 24 * 60 * 60 * 1000;
+
+    private static final double BYTES_PER_MB = 1024 * 1024;
+
+    /** Growable list of latencies in nanoseconds */
+    private static final class Latencies {
+        private long[] mNanos = new long[64];
+        private int mCount;
+
+        void add(long nanos) {
+            if (mCount == mNanos.length) {
+                mNanos = Arrays.copyOf(mNanos, mCount * 2);
+            }
+            mNanos[mCount++] = nanos;
+        }
+
+        /** Returns the nearest-rank percentile in milliseconds, or 0 if there is nothing. */
+        double percentileMillis(double percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(mNanos, mCount);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100 * mCount);
+            return sorted[Math.max(0, rank - 1)] / 1e6;
+        }
+    }
+
+    private final Context mContext;
+    private final String mUrl;
+    private final String mMode;
+    private final boolean mCold;
+    private final int mPageSize;
+    private final int mPages;
+    private final int mWarmupRuns;
+    private final int mRuns;
+    private final long mDurationMillis;
+
+    /** Highest heap sizes seen by the sampler since the measured runs started */
+    private volatile long mHeapPeak;
+    private volatile long mNativePeak;
+    private volatile boolean mSampling;
+
+    /** Latencies of the measured runs and of their pages */
+    private final Latencies mRunLatencies = new Latencies();
+    private final Latencies mPageLatencies = new Latencies();
+
+    /**
+     * Constructs a new {@link LoadHarness}.
+     * @param context to open the caches with
+     * @param url to load, without offset or limit parameters
+     * @param mode is {@link #MODE_FETCH} or {@link #MODE_LOADER}
+     * @param cold keeps the caches from answering loader runs
+     * @param pageSize number of earthquakes requested per page
+     * @param pages is the most pages loaded per run
+     * @param warmupRuns are run first and not measured
+     * @param runs is the number of measured runs, unless there is a duration
+     * @param durationMillis keeps starting runs until this much time passed, if more than 0
+     */
+    LoadHarness(Context context, String url, String mode, boolean cold, int pageSize, int pages,
+                int warmupRuns, int runs, long durationMillis) {
+        if (!MODE_FETCH.equals(mode) && !MODE_LOADER.equals(mode)) {
+            throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+        if (MODE_LOADER.equals(mode) && cold && Uri.parse(url).getQueryParameter("starttime") != null) {
+            throw new IllegalArgumentException("Cold loader runs set starttime themselves");
+        }
+        mContext = context.getApplicationContext();
+        mUrl = url;
+        mMode = mode;
+        mCold = cold;
+        mPageSize = pageSize;
+        mPages = pages;
+        mWarmupRuns = warmupRuns;
+        mRuns = runs;
+        mDurationMillis = durationMillis;
+    }
+
+    /**
+     * Background thread. Does the warm-up and the measured runs, and returns the report.
+     * Its last line starts with RESULT and holds the figures as name=value pairs, for scripts.
+     */
+    String run() throws InterruptedException {
+        int run = 0;
+        for (; run < mWarmupRuns; run++) {
+            runOnce(run, false);
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        collectGarbage();
+        long heapAtStart = runtime.totalMemory() - runtime.freeMemory();
+        long nativeAtStart = Debug.getNativeHeapAllocatedSize();
+        long bytesAtStart = Metrics.BYTES_RECEIVED.get();
+        Thread sampler = startSampler();
+
+        int measured = 0;
+        int failed = 0;
+        long events = 0;
+        long start = System.nanoTime();
+        while (mDurationMillis > 0
+                ? System.nanoTime() - start < mDurationMillis * 1000000 : measured < mRuns) {
+            int loaded = runOnce(run++, true);
+            if (loaded < 0) {
+                failed++;
+            } else {
+                events += loaded;
+            }
+            measured++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        mSampling = false;
+        sampler.join();
+        long bytes = Metrics.BYTES_RECEIVED.get() - bytesAtStart;
+        collectGarbage();
+        long heapAtEnd = runtime.totalMemory() - runtime.freeMemory();
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "Load test: %s mode, up to %d pages of %d per run%s\n",
+                mMode, mPages, mPageSize, MODE_LOADER.equals(mMode) ? (mCold ? ", cold caches" : ", warm caches") : ""));
+        report.append("URL: ").append(mUrl).append('\n');
+        report.append(String.format(Locale.US, "Runs: %d in %.1f s after %d to warm up, %d failed\n",
+                measured, seconds, mWarmupRuns, failed));
+        report.append(String.format(Locale.US, "Per run: p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms\n",
+                mRunLatencies.percentileMillis(50), mRunLatencies.percentileMillis(90),
+                mRunLatencies.percentileMillis(99), mRunLatencies.percentileMillis(100)));
+        report.append(String.format(Locale.US, "Per page: p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms\n",
+                mPageLatencies.percentileMillis(50), mPageLatencies.percentileMillis(90),
+                mPageLatencies.percentileMillis(99), mPageLatencies.percentileMillis(100)));
+        // Received bytes are only counted while metrics are enabled, as in debug builds
+        report.append(String.format(Locale.US, "Throughput: %.2f runs/s, %.0f events/s%s\n",
+                measured / seconds, events / seconds, Metrics.isEnabled()
+                        ? String.format(Locale.US, ", %.1f KB/s received", bytes / 1024.0 / seconds) : ""));
+        report.append(String.format(Locale.US, "Java heap: peak %.1f MB, %.1f MB at start, %.1f MB after the runs\n",
+                mHeapPeak / BYTES_PER_MB, heapAtStart / BYTES_PER_MB, heapAtEnd / BYTES_PER_MB));
+        report.append(String.format(Locale.US, "Native heap: peak %.1f MB, %.1f MB at start\n",
+                mNativePeak / BYTES_PER_MB, nativeAtStart / BYTES_PER_MB));
+        report.append(String.format(Locale.US,
+                "RESULT runs=%d failed=%d p50_ms=%.1f p99_ms=%.1f events_per_s=%.0f heap_peak_mb=%.1f"
+                        + " heap_growth_mb=%.1f native_peak_mb=%.1f\n",
+                measured, failed, mRunLatencies.percentileMillis(50), mRunLatencies.percentileMillis(99),
+                events / seconds, mHeapPeak / BYTES_PER_MB, (heapAtEnd - heapAtStart) / BYTES_PER_MB,
+                mNativePeak / BYTES_PER_MB));
+        return report.toString();
+    }
+
+    /**
+     * Loads the pages of one run.
+     * @param run counts the runs, warm-up included, to give cold runs a window of their own
+     * @param measure records the latencies
+     * @return the number of earthquakes loaded, or -1 if a page failed
+     */
+    private int runOnce(int run, boolean measure) {
+        long runStart = System.nanoTime();
+        int loaded = MODE_FETCH.equals(mMode) ? fetchPages(measure) : loadPages(run, measure);
+        if (measure) {
+            mRunLatencies.add(System.nanoTime() - runStart);
+        }
+        return loaded;
+    }
+
+    /** Fetches the pages of a run with {@link QueryUtils}, stopping after a short page. */
+    private int fetchPages(boolean measure) {
+        int loaded = 0;
+        for (int page = 0; page < mPages; page++) {
+            String pageUrl = Uri.parse(mUrl).buildUpon()
+                    .appendQueryParameter("offset", String.valueOf(FIRST_OFFSET + page * mPageSize))
+                    .appendQueryParameter("limit", String.valueOf(mPageSize))
+                    .toString();
+            long pageStart = System.nanoTime();
+            QueryResult result = QueryUtils.fetchEarthquakeData(pageUrl, null);
+            if (measure) {
+                mPageLatencies.add(System.nanoTime() - pageStart);
+            }
+            if (result == null) {
+                return -1;
+            }
+            loaded += result.getEarthquakes().size();
+            if (result.getEarthquakes().size() < mPageSize) {
+                break;
+            }
+        }
+        return loaded;
+    }
+
+    /** Pages through a new {@link EarthquakeLoader}, stopping after a short page. */
+    private int loadPages(int run, boolean measure) {
+        String url = mUrl;
+        if (mCold) {
+            long startTime = System.currentTimeMillis() - COLD_WINDOW_MILLIS - run * 1000L;
+            url = Uri.parse(mUrl).buildUpon()
+                    .appendQueryParameter("starttime", QueryUtils.formatIsoTime(startTime))
+                    .toString();
+        }
+        EarthquakeLoader loader = new EarthquakeLoader(mContext, url, mPageSize);
+        try {
+            int loaded = 0;
+            for (int page = 0; page < mPages; page++) {
+                long pageStart = System.nanoTime();
+                EarthquakeStore earthquakes = loader.loadInBackground();
+                if (measure) {
+                    mPageLatencies.add(System.nanoTime() - pageStart);
+                }
+                // The loader keeps what it had when a page fails, so a failed page adds nothing
+                if (earthquakes == null || earthquakes.size() <= loaded) {
+                    return -1;
+                }
+                if (earthquakes.size() < loaded + mPageSize) {
+                    return earthquakes.size();
+                }
+                loaded = earthquakes.size();
+            }
+            return loaded;
+        } finally {
+            // No load was started through the loader manager, so this only closes its cache
+            loader.reset();
+        }
+    }
+
+    /** Starts a thread that keeps the peak heap sizes until {@link #mSampling} is cleared. */
+    private Thread startSampler() {
+        mHeapPeak = 0;
+        mNativePeak = 0;
+        mSampling = true;
+        Thread sampler = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Runtime runtime = Runtime.getRuntime();
+                while (mSampling) {
+                    mHeapPeak = Math.max(mHeapPeak, runtime.totalMemory() - runtime.freeMemory());
+                    mNativePeak = Math.max(mNativePeak, Debug.getNativeHeapAllocatedSize());
+                    try {
+                        Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "LoadHarnessSampler");
+        sampler.start();
+        return sampler;
+    }
+
+    /** Asks for a full collection, so heap sizes before and after the runs compare. */
+    private static void collectGarbage() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 2; i++) {
+            runtime.gc();
+            runtime.runFinalization();
+            Thread.sleep(100);
+        }
+    }
+}
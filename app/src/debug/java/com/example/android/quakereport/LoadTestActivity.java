@@ -0,0 +1,144 @@
+package com.example.android.quakereport;
+
+import android.graphics.Typeface;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Debug builds only. Runs a {@link LoadHarness} in the background and shows its report,
+ * which also goes to logcat and to files/load-test.txt for scripts to pick up.
+ * simulator/load-test.sh starts it against the feed simulator; by hand:
+ * <pre>
+ * adb shell am start -n com.example.android.quakereport/.LoadTestActivity \
+ *     --es url "'http://10.0.2.2:8080/fdsnws/event/1/query?format=text&amp;orderby=time'" \
+ *     --es mode loader --ei runs 50 --ei pages 4
+ * </pre>
+ * Extras, all optional:
+ * <ul>
+ *     <li>url: query to load, without offset or limit; the app's list query by default</li>
+ *     <li>mode: fetch or loader, see {@link LoadHarness}; loader by default</li>
+ *     <li>cold (boolean): keep the caches from answering loader runs; true by default</li>
+ *     <li>runs, warmup, pages, page_size (int): 20, 2, 4 and the app's page size by default</li>
+ *     <li>minutes (int): run for this long instead of a number of runs, for soak tests</li>
+ * </ul>
+ */
+public class LoadTestActivity extends AppCompatActivity {
+
+    private static final String LOG_TAG = LoadTestActivity.class.getSimpleName();
+
+    /** Name of the report in the app's files directory */
+    static final String REPORT_FILE_NAME = "load-test.txt";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** True while a test runs, so recreating the activity doesn't start another */
+    private static volatile boolean sRunning;
+
+    private TextView mReportView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mReportView = new TextView(this);
+        mReportView.setTypeface(Typeface.MONOSPACE);
+        int padding = getResources().getDimensionPixelSize(R.dimen.padding);
+        mReportView.setPadding(padding, padding, padding, padding);
+        ScrollView scrollView = new ScrollView(this);
+        scrollView.addView(mReportView);
+        setContentView(scrollView);
+
+        if (sRunning) {
+            mReportView.setText("A load test is running already; see logcat for its report.");
+            return;
+        }
+
+        final LoadHarness harness;
+        try {
+            harness = newHarness();
+        } catch (IllegalArgumentException e) {
+            mReportView.setText(e.getMessage());
+            return;
+        }
+        final File reportFile = new File(getFilesDir(), REPORT_FILE_NAME);
+        reportFile.delete();
+        mReportView.setText("Running the load test...");
+
+        sRunning = true;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                String report;
+                try {
+                    report = harness.run();
+                } catch (InterruptedException e) {
+                    report = "Interrupted";
+                } finally {
+                    sRunning = false;
+                }
+                for (String line : report.split("\n")) {
+                    Log.i(LOG_TAG, line);
+                }
+                writeReport(reportFile, report);
+                showReport(report);
+            }
+        }, "LoadHarness").start();
+    }
+
+    /** Builds the harness the intent's extras describe. */
+    private LoadHarness newHarness() {
+        Bundle extras = getIntent().getExtras();
+        if (extras == null) {
+            extras = new Bundle();
+        }
+        String url = extras.getString("url");
+        if (url == null) {
+            url = Uri.parse(EarthquakeActivity.USGS_REQUEST_URL).buildUpon()
+                    .appendQueryParameter("format", ResponseFormats.TEXT.getName())
+                    .appendQueryParameter("orderby", "time")
+                    .toString();
+        }
+        String mode = extras.getString("mode", LoadHarness.MODE_LOADER);
+        return new LoadHarness(this, url, mode, extras.getBoolean("cold", true),
+                extras.getInt("page_size", EarthquakeActivity.PAGE_SIZE), extras.getInt("pages", 4),
+                extras.getInt("warmup", 2), extras.getInt("runs", 20),
+                extras.getInt("minutes", 0) * 60 * 1000L);
+    }
+
+    /** Background thread. Writes the report where scripts look for it. */
+    private static void writeReport(File file, String report) {
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            out.write(report.getBytes(UTF_8));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the load test report", e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem closing the load test report", e);
+                }
+            }
+        }
+    }
+
+    private void showReport(final String report) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mReportView.setText(report);
+            }
+        });
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.android.quakereport;
+
+import android.annotation.TargetApi;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks every earthquake the app fetches from USGS against the user's alert rules and
+ * posts a notification for each recent one that matches some of them.
+ *
+ * It listens to {@link QueryUtils}, so list pages, background syncs and live updates are
+ * all checked, whichever brings an event first. Events older than a day are history,
+ * not news, and are never checked, which keeps paging through old events cheap. Each
+ * event alerts once: the ids alerted in the last day are kept in preferences of their own.
+ *
+ * The rules are compiled into an {@link AlertRuleEngine} when they or the home location
+ * change, so each event only tries the few rules that could match it.
+ */
+final class AlertNotifier implements QueryUtils.ResponseListener {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = AlertNotifier.class.getSimpleName();
+
+    /** Id of the notification channel of the alerts */
+    private static final String CHANNEL_ID = "alerts";
+
+    /** Events older than this never alert */
+    private static final long MAX_AGE_MILLIS = 24 * 60 * 60 * 1000;
+
+    /** Most events notified of one by one per response; the rest get one notification */
+    private static final int MAX_NOTIFICATIONS_PER_RESPONSE = 5;
+
+    /** Preferences file holding the alerted ids, apart from the settings */
+    private static final String PREFS_NAME = "alerts";
+
+    /** Preference holding "id@time" for every event alerted in the last day */
+    private static final String PREF_ALERTED = "alerted";
+
+    /** Tag of the notification summing up the events beyond the most notified one by one */
+    private static final String SUMMARY_TAG = "more";
+
+    /** The one notifier of the process, once installed */
+    private static AlertNotifier sInstance;
+
+    private final Context mContext;
+
+    /** Rules compiled from the settings below, or null before the first check */
+    private AlertRuleEngine mEngine;
+    private String mCompiledRules;
+    private String mCompiledHome;
+
+    /** Time of every event alerted in the last day, by id; read on the first recent event */
+    private Map<String, Long> mAlerted;
+
+    private AlertNotifier(Context context) {
+        mContext = context;
+    }
+
+    /** Starts checking the earthquakes fetched from now on, unless that has started already. */
+    static synchronized void install(Context context) {
+        if (sInstance == null) {
+            sInstance = new AlertNotifier(context.getApplicationContext());
+            QueryUtils.setResponseListener(sInstance);
+        }
+    }
+
+    /**
+     * Returns the latitude and longitude in a home location setting such as
+     * "37.77,-122.42", or null if it is empty or isn't one.
+     */
+    static double[] parseHome(String home) {
+        String[] parts = home == null ? new String[0] : home.split(",");
+        if (parts.length != 2) {
+            return null;
+        }
+        try {
+            double latitude = Double.parseDouble(parts[0].trim());
+            double longitude = Double.parseDouble(parts[1].trim());
+            if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+                return null;
+            }
+            return new double[] {latitude, longitude};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void onEarthquakesFetched(List<Earthquake> earthquakes) {
+        try {
+            check(earthquakes);
+        } catch (RuntimeException e) {
+            // Alerts are a side show, so the fetch goes on whatever happens here
+            Log.e(LOG_TAG, "Problem checking earthquakes against the alert rules", e);
+        }
+    }
+
+    /** Background thread. Notifies of the recent earthquakes that match a rule. */
+    private synchronized void check(List<Earthquake> earthquakes) {
+        AlertRuleEngine engine = compileRules();
+        if (engine.size() == 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<Earthquake> matching = new ArrayList<>();
+        List<List<AlertRule>> matchedRules = new ArrayList<>();
+        for (int i = 0; i < earthquakes.size(); i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            if (now - earthquake.getTimeInMilliseconds() > MAX_AGE_MILLIS) {
+                continue;
+            }
+            if (getAlerted().containsKey(earthquake.getId())) {
+                continue;
+            }
+            List<AlertRule> rules = engine.match(earthquake);
+            if (!rules.isEmpty()) {
+                matching.add(earthquake);
+                matchedRules.add(rules);
+            }
+        }
+        if (matching.isEmpty()) {
+            return;
+        }
+
+        for (Earthquake earthquake : matching) {
+            mAlerted.put(earthquake.getId(), earthquake.getTimeInMilliseconds());
+        }
+        saveAlerted(now);
+
+        createChannel();
+        NotificationManagerCompat notifications = NotificationManagerCompat.from(mContext);
+        EarthquakeFormatter formatter = EarthquakeResources.newFormatter(mContext);
+        int shown = Math.min(matching.size(), MAX_NOTIFICATIONS_PER_RESPONSE);
+        for (int i = 0; i < shown; i++) {
+            Earthquake earthquake = matching.get(i);
+            List<String> names = new ArrayList<>();
+            for (AlertRule rule : matchedRules.get(i)) {
+                names.add(rule.getName());
+            }
+            Intent viewIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(earthquake.getUrl()));
+            NotificationCompat.Builder builder = newBuilder()
+                    .setContentTitle(mContext.getString(R.string.alert_title,
+                            formatter.formatMagnitude(earthquake.getMagnitude()), earthquake.getLocation()))
+                    .setContentText(mContext.getString(R.string.alert_text, TextUtils.join(", ", names)))
+                    .setWhen(earthquake.getTimeInMilliseconds())
+                    .setContentIntent(PendingIntent.getActivity(mContext, 0, viewIntent, 0));
+            // Tagged with the event id, so an event never has two notifications
+            notifications.notify(earthquake.getId(), 0, builder.build());
+        }
+        if (matching.size() > shown) {
+            Intent listIntent = new Intent(mContext, EarthquakeActivity.class);
+            NotificationCompat.Builder builder = newBuilder()
+                    .setContentTitle(mContext.getString(R.string.alert_more_title, matching.size() - shown))
+                    .setContentText(mContext.getString(R.string.alert_more_text))
+                    .setContentIntent(PendingIntent.getActivity(mContext, 0, listIntent, 0));
+            notifications.notify(SUMMARY_TAG, 0, builder.build());
+        }
+        Log.i(LOG_TAG, "Alerted of " + matching.size() + " earthquakes");
+    }
+
+    /** Returns the engine for the current rules, compiling them again if they changed. */
+    private AlertRuleEngine compileRules() {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String rules = preferences.getString(mContext.getString(R.string.settings_alert_rules_key), "");
+        String home = preferences.getString(mContext.getString(R.string.settings_alert_home_key), "");
+        if (mEngine == null || !rules.equals(mCompiledRules) || !home.equals(mCompiledHome)) {
+            double[] location = parseHome(home);
+            List<String> problems = new ArrayList<>();
+            mEngine = new AlertRuleEngine(AlertRule.parseAll(rules,
+                    location != null ? location[0] : Double.NaN,
+                    location != null ? location[1] : Double.NaN, problems));
+            mCompiledRules = rules;
+            mCompiledHome = home;
+            for (String problem : problems) {
+                // Settings only saves rules that can be read, but home may have been cleared since
+                Log.w(LOG_TAG, "Skipped alert rule. " + problem);
+            }
+            Log.i(LOG_TAG, "Compiled alert rules: " + mEngine);
+        }
+        return mEngine;
+    }
+
+    /** Returns the ids alerted so far, reading them from preferences the first time. */
+    private Map<String, Long> getAlerted() {
+        if (mAlerted == null) {
+            mAlerted = new HashMap<>();
+            Set<String> entries = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                    .getStringSet(PREF_ALERTED, new HashSet<String>());
+            for (String entry : entries) {
+                int at = entry.lastIndexOf('@');
+                try {
+                    mAlerted.put(entry.substring(0, at), Long.parseLong(entry.substring(at + 1)));
+                } catch (RuntimeException e) {
+                    // Not one of ours; it is dropped on the next save
+                }
+            }
+        }
+        return mAlerted;
+    }
+
+    /** Saves the alerted ids, forgetting those of events too old to alert again. */
+    private void saveAlerted(long now) {
+        Set<String> entries = new HashSet<>();
+        List<String> expired = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : mAlerted.entrySet()) {
+            if (now - entry.getValue() > MAX_AGE_MILLIS) {
+                expired.add(entry.getKey());
+            } else {
+                entries.add(entry.getKey() + "@" + entry.getValue());
+            }
+        }
+        mAlerted.keySet().removeAll(expired);
+        mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putStringSet(PREF_ALERTED, entries)
+                .apply();
+    }
+
+    private NotificationCompat.Builder newBuilder() {
+        return new NotificationCompat.Builder(mContext, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setAutoCancel(true);
+    }
+
+    /** Creates the alerts' channel, which Oreo and later need before notifying. */
+    private void createChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            createChannelOreo();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private void createChannelOreo() {
+        NotificationManager manager = (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (manager == null) {
+            return;
+        }
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                mContext.getString(R.string.alert_channel_name), NotificationManager.IMPORTANCE_HIGH);
+        channel.setDescription(mContext.getString(R.string.alert_channel_description));
+        // Does nothing if the channel exists, so the user's choices for it stay
+        manager.createNotificationChannel(channel);
+    }
+}
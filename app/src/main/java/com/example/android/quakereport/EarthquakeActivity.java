@@ -17,33 +17,33 @@ package com.example.android.quakereport;
 
 import android.app.LoaderManager;
 import android.app.LoaderManager.LoaderCallbacks;
-import android.content.Context;
 import android.content.Intent;
 import android.content.Loader;
 import android.content.SharedPreferences;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.TextView;
 
-import java.util.ArrayList;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
 import java.util.List;
 
-public class EarthquakeActivity extends AppCompatActivity implements LoaderCallbacks<List<Earthquake>> {
+public class EarthquakeActivity extends AppCompatActivity implements LoaderCallbacks<EarthquakeStore> {
 
    // private static final String LOG_TAG = EarthquakeActivity.class.getName();
    // OG URL: https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&eventtype=earthquake&orderby=time&minmag=6&limit=10
-    /** URL to query USGS Data set for quake info */
-    private static final String USGS_REQUEST_URL =
-            "http://earthquake.usgs.gov/fdsnws/event/1/query";
+    /** URL to query USGS Data set for quake info, on the host the build points at */
+    static final String USGS_REQUEST_URL = BuildConfig.USGS_BASE_URL + "/fdsnws/event/1/query";
 
 
     /**
@@ -52,81 +52,179 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderCallb
      */
     private static final int EARTHQUAKE_LOADER_ID = 1;
 
+    /** Constant value for the summary loader ID. */
+    private static final int SUMMARY_LOADER_ID = 2;
+
+    /** Number of earthquakes requested from USGS per page */
+    static final int PAGE_SIZE = 25;
+
+    /** Start fetching the next page once the user scrolls within this many rows of the end */
+    private static final int PREFETCH_DISTANCE = 10;
+
     /* Adapter for the list of earthquakes */
     private EarthquakeAdapter mAdapter;
 
     /* TextView displayed with list is empty */
     private TextView mEmptyStateTextView;
 
+    /* When this activity was created, for timing the first rows; 0 while metrics are off */
+    private long mCreatedAt;
+
+    /* True once rows have been shown, or when the activity is recreated */
+    private boolean mFirstRowsShown;
+
+    /* Header summarizing the local event store */
+    private TextView mSummaryView;
+
+    /* Polls the USGS feed of the last hour while live updates are on and we're visible */
+    private LiveFeedPoller mLivePoller;
+
+    /* Records frame times while the list scrolls, or null before Jelly Bean */
+    private FrameTimeRecorder mFrameTimeRecorder;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mCreatedAt = Metrics.start();
+        mFirstRowsShown = savedInstanceState != null;
         setContentView(R.layout.earthquake_activity);
 
-        // Find a reference to the {@link ListView} in the layout
-        ListView earthquakeListView = findViewById(R.id.list);
-
-        mEmptyStateTextView = findViewById(R.id.empty_view);
-        earthquakeListView.setEmptyView(mEmptyStateTextView);
+        // Check whatever the app fetches against the user's alert rules
+        AlertNotifier.install(this);
 
-        //Create a new adapter that takes an empty list of earthquakes as input
-        mAdapter = new EarthquakeAdapter(this, new ArrayList<Earthquake>());
+        // Find a reference to the {@link RecyclerView} in the layout
+        RecyclerView earthquakeListView = findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        earthquakeListView.setLayoutManager(layoutManager);
+        earthquakeListView.setHasFixedSize(true);
 
-        /* Set the adapter on the {@link ListView} so the list can be populated
-          in the user interface
-         */
-        earthquakeListView.setAdapter(mAdapter);
+        mEmptyStateTextView = findViewById(R.id.empty_view);
 
+        // Create a new adapter that starts with an empty list of earthquakes.
         // When users click on a particular list item this will send them to the USGS
         // web page to see additional details on the quakes
-        earthquakeListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        mAdapter = new EarthquakeAdapter(this, new EarthquakeAdapter.OnEarthquakeClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-                // Find current quake that's clicked on
-                Earthquake currentEarthquake = mAdapter.getItem(position);
-
+            public void onEarthquakeClick(String url) {
                 // Convert String URL into URI object (passed to intent constructor)
-                assert currentEarthquake != null;
-                Uri earthquakeUri = Uri.parse(currentEarthquake.getUrl());
-                
+                Uri earthquakeUri = Uri.parse(url);
+
                 // Create intent to view the URI
                 Intent websiteIntent = new Intent(Intent.ACTION_VIEW, earthquakeUri);
-                
+
                 // Send intent to launch activity
                 startActivity(websiteIntent);
             }
         });
 
-        // Get a reference to ConnectivityManager to check state of the network connectivity
-        ConnectivityManager connMgr = (ConnectivityManager)
-                getSystemService(Context.CONNECTIVITY_SERVICE);
+        // RecyclerView has no empty view of its own, so show ours whenever the list empties
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+            }
 
-        // Get details on currently active default data network
-        assert connMgr != null;
-        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
 
-        // If there's a connection, fetch data
-        if (networkInfo != null && networkInfo.isConnected()) {
-            // Get a reference to the LoaderManager, in order to interact with loaders.
-                    LoaderManager loaderManager = getLoaderManager();
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+        });
 
-            // Initialize loader by passing in ID assigned above and pass in null for bundle
-            // Pass in this activity for LoaderCallbacks parameter (valid b/c this activity
-            // implements the LoaderCallbacks interface)
-            loaderManager.initLoader(EARTHQUAKE_LOADER_ID, null, this);
-        } else {
-            // Otherwise, display error
-            // First, hide loading indicator so error message is visible
-            View loadingIndicator = findViewById(R.id.loading_indicator);
-            loadingIndicator.setVisibility(View.GONE);
+        /* Set the adapter on the {@link RecyclerView} so the list can be populated
+          in the user interface
+         */
+        earthquakeListView.setAdapter(mAdapter);
 
-            // Update empty state with no connection error message
-            mEmptyStateTextView.setText(R.string.no_internet_connection);
+        // Prefetch the next page when the list scrolls near its end
+        earthquakeListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int totalItemCount = mAdapter.getItemCount();
+                if (totalItemCount > 0
+                        && layoutManager.findLastVisibleItemPosition() >= totalItemCount - PREFETCH_DISTANCE) {
+                    Loader<EarthquakeStore> loader = getLoaderManager().getLoader(EARTHQUAKE_LOADER_ID);
+                    if (loader != null) {
+                        ((EarthquakeLoader) loader).loadNextPage();
+                    }
+                }
+            }
+        });
+
+        // Measure scrolling smoothness; Choreographer arrived in Jelly Bean
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mFrameTimeRecorder = new FrameTimeRecorder();
+            earthquakeListView.addOnScrollListener(mFrameTimeRecorder);
+        }
+
+        // New and updated events from the live feed go straight into the loaded pages
+        mLivePoller = new LiveFeedPoller(LiveFeedPoller.ALL_HOUR_FEED_URL,
+                new LiveFeedPoller.Listener() {
+                    @Override
+                    public void onEarthquakesChanged(List<Earthquake> earthquakes) {
+                        Loader<EarthquakeStore> loader = getLoaderManager().getLoader(EARTHQUAKE_LOADER_ID);
+                        if (loader != null) {
+                            ((EarthquakeLoader) loader).mergeLiveEarthquakes(earthquakes);
+                        }
+                    }
+                });
+
+        // Get a reference to the LoaderManager, in order to interact with loaders.
+        LoaderManager loaderManager = getLoaderManager();
+
+        // Initialize loader by passing in ID assigned above and pass in null for bundle
+        // Pass in this activity for LoaderCallbacks parameter (valid b/c this activity
+        // implements the LoaderCallbacks interface). The loader serves stored results
+        // first, so it runs even without a connection.
+        loaderManager.initLoader(EARTHQUAKE_LOADER_ID, null, this);
+
+        // The summary header reads statistics kept up to date as the store changes
+        mSummaryView = findViewById(R.id.summary);
+        loaderManager.initLoader(SUMMARY_LOADER_ID, null, mSummaryCallbacks);
+
+        // Keep the local event store current while the app isn't open
+        EarthquakeSyncTask.scheduleSync(this);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (isLiveModeOn()) {
+            mLivePoller.start();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // No live polling in the background; the periodic sync covers that
+        mLivePoller.stop();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mFrameTimeRecorder != null) {
+            mFrameTimeRecorder.stop();
         }
     }
 
+    /**
+     * Adds the app's {@link Metrics} to the activity dump, so they can be read with
+     * adb shell dumpsys activity com.example.android.quakereport.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        Metrics.dump(prefix, writer);
+    }
+
     @Override
-    public Loader<List<Earthquake>> onCreateLoader(int i, Bundle bundle) {
+    public Loader<EarthquakeStore> onCreateLoader(int i, Bundle bundle) {
 
         SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
         String minMagnitude = sharedPrefs.getString(
@@ -140,48 +238,150 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderCallb
         Uri baseUri = Uri.parse(USGS_REQUEST_URL);
         Uri.Builder uriBuilder = baseUri.buildUpon();
 
-        uriBuilder.appendQueryParameter("format", "geojson");
-        uriBuilder.appendQueryParameter("limit", "10");
+        // offset and limit are added per page by the loader. The list needs no update
+        // times, so it asks for the text format, which is a fraction of GeoJSON's size
+        uriBuilder.appendQueryParameter("format", ResponseFormats.TEXT.getName());
         uriBuilder.appendQueryParameter("minmag", minMagnitude);
         uriBuilder.appendQueryParameter("orderby", orderBy);
 
-        return new EarthquakeLoader(this, uriBuilder.toString());
+        return new EarthquakeLoader(this, uriBuilder.toString(), PAGE_SIZE);
     }
 
     @Override
-    public void onLoadFinished(Loader<List<Earthquake>> loader, List<Earthquake> earthquakes) {
+    public void onLoadFinished(Loader<EarthquakeStore> loader, EarthquakeStore earthquakes) {
         // Hide loading indicator because the data has been loaded
         View loadingIndicator = findViewById(R.id.loading_indicator);
         loadingIndicator.setVisibility(View.GONE);
 
-        // Set empty state text to display "No earthquakes found."
-        mEmptyStateTextView.setText(R.string.no_earthquakes);
-
-        // Clear adapter of previous data
-        mAdapter.clear();
+        // Set empty state text to display "No earthquakes found.", unless nothing was
+        // stored and there's no connection to fetch with
+        if (QueryUtils.isNetworkAvailable(this)) {
+            mEmptyStateTextView.setText(R.string.no_earthquakes);
+        } else {
+            mEmptyStateTextView.setText(R.string.no_internet_connection);
+        }
 
-        // If there is a valid list of {@link Earthquake}s, then add them to the
-        // adapter's data set. This will trigger the ListView to update.
-        if (earthquakes != null && !earthquakes.isEmpty()) {
-            mAdapter.addAll(earthquakes);
+        // Time to the first rows of a launch, with and without the snapshot
+        if (!mFirstRowsShown && earthquakes != null && !earthquakes.isEmpty()) {
+            mFirstRowsShown = true;
+            Metrics.Histogram firstRows = ((EarthquakeLoader) loader).isRestored(earthquakes)
+                    ? Metrics.FIRST_ROWS_RESTORED : Metrics.FIRST_ROWS_LOADED;
+            firstRows.recordSince(mCreatedAt);
         }
+
+        // Hand the store to the adapter. Only the rows that changed are updated.
+        // The loader delivers again after every page, each time with all pages so far.
+        mAdapter.setEarthquakes(earthquakes);
     }
 
     @Override
-    public void onLoaderReset(Loader<List<Earthquake>> loader) {
+    public void onLoaderReset(Loader<EarthquakeStore> loader) {
         // Loader reset, so we can clear out our existing data
-        mAdapter.clear();
+        mAdapter.setEarthquakes(null);
+    }
+
+    /** Fills the summary header once its figures are loaded. */
+    private final LoaderCallbacks<EventStatistics.Summary> mSummaryCallbacks =
+            new LoaderCallbacks<EventStatistics.Summary>() {
+                @Override
+                public Loader<EventStatistics.Summary> onCreateLoader(int id, Bundle args) {
+                    return new SummaryLoader(EarthquakeActivity.this);
+                }
+
+                @Override
+                public void onLoadFinished(Loader<EventStatistics.Summary> loader,
+                                           EventStatistics.Summary summary) {
+                    showSummary(summary);
+                }
+
+                @Override
+                public void onLoaderReset(Loader<EventStatistics.Summary> loader) {
+                    showSummary(null);
+                }
+            };
+
+    /** Shows the summary header, or hides it while the local event store is empty. */
+    private void showSummary(EventStatistics.Summary summary) {
+        if (summary == null || summary.getEventCount() == 0) {
+            mSummaryView.setVisibility(View.GONE);
+            return;
+        }
+
+        StringBuilder text = new StringBuilder(getString(R.string.summary_counts,
+                summary.getEventCount(), summary.getEventsInLastDay()));
+        if (!Double.isNaN(summary.getMaxMagnitude())) {
+            text.append('\n').append(getString(R.string.summary_strongest,
+                    new DecimalFormat("0.0").format(summary.getMaxMagnitude())));
+        }
+
+        // Events per magnitude bucket, the same buckets as the circle colors
+        String separator = "\n";
+        for (int bucket = 0; bucket < EarthquakeFormatter.MAGNITUDE_BUCKET_COUNT; bucket++) {
+            int count = summary.getMagnitudeBucketCount(bucket);
+            if (count == 0) {
+                continue;
+            }
+            text.append(separator).append(bucket == EarthquakeFormatter.MAGNITUDE_BUCKET_OVERFLOW
+                    ? getString(R.string.summary_bucket_other, count)
+                    : getString(R.string.summary_bucket, bucket, count));
+            separator = getString(R.string.summary_separator);
+        }
+
+        mSummaryView.setText(text);
+        mSummaryView.setVisibility(View.VISIBLE);
+    }
+
+    /** Returns true if the user turned live updates on. */
+    private boolean isLiveModeOn() {
+        return PreferenceManager.getDefaultSharedPreferences(this)
+                .getBoolean(getString(R.string.settings_live_key), false);
+    }
+
+    /** Shows the empty state text only while the list has no earthquakes. */
+    private void updateEmptyView() {
+        mEmptyStateTextView.setVisibility(mAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main, menu);
+        menu.findItem(R.id.action_live).setChecked(isLiveModeOn());
+
+        // Filter the list by place as the user types
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setQueryHint(getString(R.string.search_menu_item));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mAdapter.setFilter(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String query) {
+                mAdapter.setFilter(query);
+                return true;
+            }
+        });
         return true;
     }
 
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         int id = item.getItemId();
+        if (id == R.id.action_live) {
+            boolean live = !item.isChecked();
+            item.setChecked(live);
+            PreferenceManager.getDefaultSharedPreferences(this).edit()
+                    .putBoolean(getString(R.string.settings_live_key), live)
+                    .apply();
+            if (live) {
+                mLivePoller.start();
+            } else {
+                mLivePoller.stop();
+            }
+            return true;
+        }
         if (id == R.id.action_settings) {
             Intent settingsIntent = new Intent(this, SettingsActivity.class);
             startActivity(settingsIntent);
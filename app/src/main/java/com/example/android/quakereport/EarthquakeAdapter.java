@@ -1,199 +1,320 @@
 package com.example.android.quakereport;
 
 
-import android.annotation.SuppressLint;
 import android.app.Activity;
-import android.support.annotation.NonNull;
-import android.support.v4.content.ContextCompat;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.TextView;
 
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import android.graphics.drawable.GradientDrawable;
 
 /*
- * {@link EarthquakeAdapter} is an {@link ArrayAdapter} that can provide the layout for each list
- * based on a data source, which is a list of {@link Earthquake} objects.
+ * {@link EarthquakeAdapter} is a {@link RecyclerView.Adapter} that can provide the layout for each
+ * list item based on a data source, which is an {@link EarthquakeStore}. Rows are bound straight
+ * from the store's columns, without creating {@link Earthquake} objects.
+ *
+ * When a new store arrives, the difference to the current one is computed on a background
+ * thread, matching rows by USGS event id, and only the inserted, removed, moved and changed
+ * rows are re-bound. The scroll position is kept.
+ *
+ * Binding a row allocates nothing and formats nothing: views are looked up once per row
+ * layout, and the loader has already formatted every text and color into the store.
+ *
+ * {@link #setFilter(String)} narrows the list to the places matching what the user typed.
+ * A {@link PlaceIndex} over the store answers it; the index is updated with every new store
+ * and searched on the same background thread as the differences, so typing never waits on
+ * a scan of the list.
  * */
 @SuppressWarnings("ALL")
-public class EarthquakeAdapter extends ArrayAdapter<Earthquake> {
+public class EarthquakeAdapter extends RecyclerView.Adapter<EarthquakeAdapter.ViewHolder> {
 
-    private String primaryLocation;
-    private String locationOffset;
-    private static final String LOCATION_SEPARATOR = " of ";
+    /**
+     * Receives clicks on list items.
+     */
+    public interface OnEarthquakeClickListener {
+        /**
+         * Called when the list item at the given position is clicked.
+         * @param url is the website URL to find more details about the earthquake
+         */
+        void onEarthquakeClick(String url);
+    }
+
+    /* Thread that computes list differences, shared by every adapter */
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /* Activity used to inflate rows */
+    private final Activity mContext;
+
+    /* Receives clicks on list items */
+    private final OnEarthquakeClickListener mClickListener;
+
+    /* Posts finished differences back to the main thread */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* Earthquakes shown in the list */
+    private EarthquakeStore mEarthquakes;
+
+    /* Rows of mEarthquakes shown while a filter is set, or null to show every row */
+    private int[] mVisibleRows;
+
+    /* Latest store handed to setEarthquakes(), which may still be being compared */
+    private EarthquakeStore mLatestEarthquakes;
+
+    /* Place search typed by the user, or null */
+    private String mFilter;
+
+    /* Index over the place names of mLatestEarthquakes; only used on DIFF_EXECUTOR */
+    private final PlaceIndex mPlaceIndex = new PlaceIndex();
+
+    /* Incremented for every new store and filter, so results computed for older ones are dropped */
+    private int mGeneration;
 
 
     /**
      * This is our own custom constructor (it doesn't mirror a superclass constructor).
-     * The context is used to inflate the layout file, and the list is the data we want
-     * to populate into the lists.
-     *  @param context        The current context. Used to inflate the layout file.
-     * @param earthquakes A List of AndroidFlavor objects to display in a list
+     * The context is used to inflate the layout file.
+     * @param context       The current context. Used to inflate the layout file.
+     * @param clickListener Receives clicks on list items
      */
-    public EarthquakeAdapter(Activity context, ArrayList<Earthquake> earthquakes) {
-        // Here, we initialize the ArrayAdapter's internal storage for the context and the list.
-        // the second argument is used when the ArrayAdapter is populating a single TextView.
-        // Because this is a custom adapter for two TextViews and an ImageView, the adapter is not
-        // going to use this second argument, so it can be any value. Here, we used 0.
-        super(context, 0, earthquakes);
+    public EarthquakeAdapter(Activity context, OnEarthquakeClickListener clickListener) {
+        mContext = context;
+        mClickListener = clickListener;
+        mEarthquakes = new EarthquakeStore().snapshot();
+        mLatestEarthquakes = mEarthquakes;
     }
 
     /**
-     * Provides a view for an AdapterView (ListView, GridView, etc.)
-     *
-     * @param position The position in the list of data that should be displayed in the
-     *                 list item view.
-     * @param convertView The recycled view to populate.
-     * @param parent The parent ViewGroup that is used for inflation.
-     * @return The View for the position in the AdapterView.
+     * Replaces the earthquakes shown in the list. The list updates once the difference to
+     * the current earthquakes has been computed in the background.
+     * @param earthquakes the new data set, or null to empty the list
      */
-    @NonNull
-    @Override
-    public View getView(int position, View convertView, @NonNull ViewGroup parent) {
-        // Check if the existing view is being reused, otherwise inflate the view
-        View listItemView = convertView;
-        if(listItemView == null) {
-            listItemView = LayoutInflater.from(getContext()).inflate(
-                    R.layout.list_item, parent, false);
-        }
+    public void setEarthquakes(EarthquakeStore earthquakes) {
+        final EarthquakeStore newEarthquakes =
+                earthquakes == null ? new EarthquakeStore().snapshot() : earthquakes;
+        final EarthquakeStore oldEarthquakes = mEarthquakes;
+        final int generation = ++mGeneration;
+        mLatestEarthquakes = newEarthquakes;
 
-        // Get the {@link Earthquake} object located at this position in the list
-        Earthquake currentEarthquake = getItem(position);
-
-        assert currentEarthquake != null;
-        String initialLocation = currentEarthquake.getLocation();
-        String primaryLocation;
-        String locationOffset;
-
-        if (initialLocation.contains(LOCATION_SEPARATOR)) {
-            String[] parts = initialLocation.split(LOCATION_SEPARATOR);
-            locationOffset = parts[0] + LOCATION_SEPARATOR;
-            primaryLocation = parts[1];
-        } else {
-            locationOffset = getContext().getString(R.string.offset_alternative);
-            primaryLocation = initialLocation;
+        if (mFilter != null) {
+            // Only the matching rows are shown, so search again instead of comparing
+            search(newEarthquakes, mFilter, generation);
+            return;
         }
 
-        // Find the TextView in the list_item.xml layout with the ID magnitude
-        TextView magnitudeView = listItemView.findViewById(R.id.magnitude);
-        // Format the magnitude to show 1 decimal place
-        String formattedMagnitude = formatMagnitude(currentEarthquake.getMagnitude());
-        //Display the magnitude of the current earthquake in that TextView
-        magnitudeView.setText(formattedMagnitude);
-
-
-        // Find the TextView in the list_item.xml layout with the ID location
-        TextView locationView = listItemView.findViewById(R.id.primary_location);
-        // Get the location from the current Earthquake object
-        locationView.setText(primaryLocation);
-
-        // Find the TextView in the list_item.xml layout with the ID offset_location
-        TextView offsetView = listItemView.findViewById(R.id.offset_location);
-        // Get the offset location from the current Earthquake object
-        offsetView.setText(locationOffset);
-
-        // Create a new Date object from the time in ms of the earthquake
-        Date dateObject;
-        dateObject = new Date(currentEarthquake.getTimeInMilliseconds());
-
-        // Find the TextView with the ID date
-        TextView dateView = listItemView.findViewById(R.id.date);
-        // Format date string (i.e. "March 3, 1984")
-        String formattedDate = formatDate(dateObject);
-        // Display the date of current earthquake in that TextView
-        dateView.setText(formattedDate);
-
-        // Find the TextView with view ID time
-        TextView timeTextView = listItemView.findViewById(R.id.time);
-        // Format the time string (i.e. "3:00PM")
-        String formattedTime = formatTime(dateObject);
-        //Display the time of the current earthquake in that TextView
-        timeTextView.setText(formattedTime);
+        // Keep the place index current, so a search can start right away
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                mPlaceIndex.update(newEarthquakes);
+            }
+        });
 
-        // Set the proper background color for mag circle
-        // Get background from TextView which is a GradientDrawable
-        GradientDrawable magnitudeCircle = (GradientDrawable) magnitudeView.getBackground();
-        // Get appropriate background color based on current magnitude
-        int magnitudeColor = getMagnitudeColor(currentEarthquake.getMagnitude());
-        // Set color on magnitude circle
-        magnitudeCircle.setColor(magnitudeColor);
-
-        // Return the whole list item layout (containing 3 TextViews)
-        // so that it can be shown in the ListView
-        return listItemView;
+        // Nothing to compare against, so skip the background pass
+        if (oldEarthquakes.isEmpty() || newEarthquakes.isEmpty()) {
+            mEarthquakes = newEarthquakes;
+            mVisibleRows = null;
+            notifyDataSetChanged();
+            return;
+        }
+
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                long diffStart = Metrics.start();
+                final DiffUtil.DiffResult diff = DiffUtil.calculateDiff(
+                        new EarthquakeDiffCallback(oldEarthquakes, newEarthquakes));
+                Metrics.DIFF.recordSince(diffStart);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A newer store arrived while this one was being compared
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        mEarthquakes = newEarthquakes;
+                        mVisibleRows = null;
+                        diff.dispatchUpdatesTo(EarthquakeAdapter.this);
+                    }
+                });
+            }
+        });
     }
 
     /**
-     * Return the magnitude circle's color based on the strength of the quake
+     * Shows only the earthquakes whose primary location has a word starting with every
+     * word of the filter, i.e. "ala" shows those in Alaska.
+     * @param filter is the text the user typed, or null or empty to show every earthquake
      */
-    private int getMagnitudeColor(double magnitude){
-        int magnitudeColorResourceId;
-        int magnitudeFloor = (int) Math.floor(magnitude);
-        switch (magnitudeFloor) {
-            case 0:
-            case 1:
-                magnitudeColorResourceId = R.color.magnitude1;
-                break;
-            case 2:
-                magnitudeColorResourceId = R.color.magnitude2;
-                break;
-            case 3:
-                magnitudeColorResourceId = R.color.magnitude3;
-                break;
-            case 4:
-                magnitudeColorResourceId = R.color.magnitude4;
-                break;
-            case 5:
-                magnitudeColorResourceId = R.color.magnitude5;
-                break;
-            case 6:
-                magnitudeColorResourceId = R.color.magnitude6;
-                break;
-            case 7:
-                magnitudeColorResourceId = R.color.magnitude7;
-                break;
-            case 8:
-                magnitudeColorResourceId = R.color.magnitude8;
-                break;
-            case 9:
-                magnitudeColorResourceId = R.color.magnitude9;
-                break;
-            default:
-                magnitudeColorResourceId = R.color.magnitude10plus;
-                break;
+    public void setFilter(String filter) {
+        String newFilter = filter == null || filter.trim().isEmpty() ? null : filter;
+        if (TextUtils.equals(newFilter, mFilter)) {
+            return;
+        }
+        mFilter = newFilter;
+        int generation = ++mGeneration;
 
+        if (newFilter == null) {
+            mEarthquakes = mLatestEarthquakes;
+            mVisibleRows = null;
+            notifyDataSetChanged();
+            return;
         }
-        return ContextCompat.getColor(getContext(), magnitudeColorResourceId);
+        search(mLatestEarthquakes, newFilter, generation);
+    }
+
+    /** Searches the place index of a store in the background and shows the matching rows. */
+    private void search(final EarthquakeStore earthquakes, final String filter, final int generation) {
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                mPlaceIndex.update(earthquakes);
+                final int[] rows = mPlaceIndex.search(filter);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A newer store or filter arrived while this one was searched
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        mEarthquakes = earthquakes;
+                        mVisibleRows = rows;
+                        notifyDataSetChanged();
+                    }
+                });
+            }
+        });
+    }
+
+    /** Returns the earthquakes shown in the list. */
+    public EarthquakeStore getEarthquakes() {
+        return mEarthquakes;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mVisibleRows != null ? mVisibleRows.length : mEarthquakes.size();
+    }
+
+    /** Returns the row of the store shown at the given list position. */
+    private int rowAt(int position) {
+        return mVisibleRows != null ? mVisibleRows[position] : position;
+    }
+
+    private Context getContext() {
+        return mContext;
     }
 
     /**
-     * Return the formatted date string (i.e. "March 3, 1984") from a Date object.
+     * Inflates a list item and looks up its child views once.
      */
-    private String formatDate(Date dateObject){
-        @SuppressLint("SimpleDateFormat") SimpleDateFormat dateFormat = new SimpleDateFormat("MMM DD, yyyy");
-        return dateFormat.format(dateObject);
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View listItemView = LayoutInflater.from(getContext()).inflate(
+                R.layout.list_item, parent, false);
+        return new ViewHolder(listItemView);
+    }
+
+    /**
+     * Fills a list item with the earthquake at the given position.
+     *
+     * @param holder The list item to populate.
+     * @param position The position in the list of data that should be displayed in the
+     *                 list item view.
+     */
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        long bindStart = Metrics.start();
+        int row = rowAt(position);
+
+        // Every value was formatted by the loader, so just assign them
+        holder.magnitudeView.setText(mEarthquakes.getMagnitudeText(row));
+        holder.locationView.setText(mEarthquakes.getPrimaryLocation(row));
+        holder.offsetView.setText(mEarthquakes.getLocationOffsetText(row));
+        holder.dateView.setText(mEarthquakes.getDateText(row));
+        holder.timeView.setText(mEarthquakes.getTimeText(row));
+
+        // Set the proper background color for mag circle
+        holder.magnitudeCircle.setColor(mEarthquakes.getMagnitudeColor(row));
+
+        Metrics.BIND.recordSince(bindStart);
     }
 
     /**
-     * Return the formatted time string (i.e. "4:30PM") from a Date object.
+     * Holds the child views of a list item so they are only looked up once.
      */
-    private String formatTime(Date dateObject){
-        @SuppressLint("SimpleDateFormat") SimpleDateFormat timeFormat = new SimpleDateFormat("h:mm a");
-        return timeFormat.format(dateObject);
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        final TextView magnitudeView;
+        final TextView locationView;
+        final TextView offsetView;
+        final TextView dateView;
+        final TextView timeView;
+        // Background of the magnitude TextView, which is a GradientDrawable
+        final GradientDrawable magnitudeCircle;
+
+        ViewHolder(View listItemView) {
+            super(listItemView);
+            magnitudeView = listItemView.findViewById(R.id.magnitude);
+            locationView = listItemView.findViewById(R.id.primary_location);
+            offsetView = listItemView.findViewById(R.id.offset_location);
+            dateView = listItemView.findViewById(R.id.date);
+            timeView = listItemView.findViewById(R.id.time);
+            magnitudeCircle = (GradientDrawable) magnitudeView.getBackground();
+            listItemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                mClickListener.onEarthquakeClick(mEarthquakes.getUrl(rowAt(position)));
+            }
+        }
     }
 
     /**
-     * Return the formatted magnitude double showing 1 decimal place (i.e. "3.2")
-     * from a decimal magnitude value
+     * Compares two stores row by row for {@link DiffUtil}, matching rows by USGS event id.
+     * Rows without an id never match, so they are replaced rather than updated.
      */
-    private String formatMagnitude(double magnitude){
-        DecimalFormat magnitudeFormat = new DecimalFormat("0.0");
-        return magnitudeFormat.format(magnitude);
+    static class EarthquakeDiffCallback extends DiffUtil.Callback {
+        private final EarthquakeStore mOld;
+        private final EarthquakeStore mNew;
+
+        EarthquakeDiffCallback(EarthquakeStore oldEarthquakes, EarthquakeStore newEarthquakes) {
+            mOld = oldEarthquakes;
+            mNew = newEarthquakes;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            String oldId = mOld.getId(oldPosition);
+            return oldId != null && oldId.equals(mNew.getId(newPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return mOld.getMagnitude(oldPosition) == mNew.getMagnitude(newPosition)
+                    && mOld.getTimeInMilliseconds(oldPosition) == mNew.getTimeInMilliseconds(newPosition)
+                    && mOld.getPrimaryLocation(oldPosition).equals(mNew.getPrimaryLocation(newPosition))
+                    && TextUtils.equals(mOld.getLocationOffset(oldPosition), mNew.getLocationOffset(newPosition));
+        }
     }
-}
\ No newline at end of file
+}
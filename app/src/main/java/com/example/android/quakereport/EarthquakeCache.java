@@ -0,0 +1,372 @@
+package com.example.android.quakereport;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+
+import com.example.android.quakereport.EarthquakeContract.EarthquakeEntry;
+import com.example.android.quakereport.EarthquakeContract.EventEntry;
+import com.example.android.quakereport.EarthquakeContract.QueryEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persistent store of parsed USGS responses, keyed by query URL, so earthquakes
+ * can be shown right away on launch and while offline.
+ *
+ * Every earthquake written is also kept in a table keyed by USGS event id, which
+ * background sync keeps current with {@link #mergeChanges(List, List)}. Every committed change
+ * to that table is reported to the {@link EventStatistics}.
+ *
+ * All methods hit the database and must be called off the main thread.
+ */
+public class EarthquakeCache {
+
+    /** Helper that opens the cache database, shared by every cache of the process */
+    private final EarthquakeDbHelper mDbHelper;
+
+    /**
+     * Constructs a new {@link EarthquakeCache}. Caches are cheap, and need no closing.
+     * @param context of the app
+     */
+    public EarthquakeCache(Context context) {
+        mDbHelper = EarthquakeDbHelper.getInstance(context);
+    }
+
+    /**
+     * Returns the stored response for the given query URL, or null if there is none.
+     */
+    public QueryResult read(String queryUrl) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        String[] selectionArgs = {queryUrl};
+
+        String eTag;
+        String lastModified;
+        long fetchedAt;
+        Cursor queryCursor = db.query(QueryEntry.TABLE_NAME,
+                new String[]{QueryEntry.COLUMN_ETAG, QueryEntry.COLUMN_LAST_MODIFIED,
+                        QueryEntry.COLUMN_FETCHED_AT},
+                QueryEntry.COLUMN_QUERY_URL + "=?", selectionArgs, null, null, null);
+        try {
+            if (!queryCursor.moveToFirst()) {
+                return null;
+            }
+            eTag = queryCursor.getString(0);
+            lastModified = queryCursor.getString(1);
+            fetchedAt = queryCursor.getLong(2);
+        } finally {
+            queryCursor.close();
+        }
+
+        List<Earthquake> earthquakes = new ArrayList<>();
+        Cursor cursor = db.query(EarthquakeEntry.TABLE_NAME,
+                new String[]{EarthquakeEntry.COLUMN_EVENT_ID, EarthquakeEntry.COLUMN_MAGNITUDE,
+                        EarthquakeEntry.COLUMN_PLACE, EarthquakeEntry.COLUMN_TIME,
+                        EarthquakeEntry.COLUMN_URL, EarthquakeEntry.COLUMN_LATITUDE,
+                        EarthquakeEntry.COLUMN_LONGITUDE, EarthquakeEntry.COLUMN_DEPTH},
+                EarthquakeEntry.COLUMN_QUERY_URL + "=?", selectionArgs,
+                null, null, EarthquakeEntry.COLUMN_POSITION);
+        try {
+            while (cursor.moveToNext()) {
+                earthquakes.add(new Earthquake(cursor.getString(0), cursor.getDouble(1),
+                        cursor.getString(2), cursor.getLong(3), cursor.getString(4),
+                        getCoordinate(cursor, 5), getCoordinate(cursor, 6), getCoordinate(cursor, 7)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return new QueryResult(earthquakes, eTag, lastModified, fetchedAt, false);
+    }
+
+    /**
+     * Replaces the stored response for the given query URL.
+     */
+    public void write(String queryUrl, QueryResult result) {
+        List<Earthquake> written = new ArrayList<>();
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(EarthquakeEntry.TABLE_NAME,
+                    EarthquakeEntry.COLUMN_QUERY_URL + "=?", new String[]{queryUrl});
+
+            // One compiled statement for every row instead of building ContentValues per quake
+            SQLiteStatement insert = db.compileStatement("INSERT INTO " + EarthquakeEntry.TABLE_NAME + " ("
+                    + EarthquakeEntry.COLUMN_QUERY_URL + ", " + EarthquakeEntry.COLUMN_POSITION + ", "
+                    + EarthquakeEntry.COLUMN_EVENT_ID + ", "
+                    + EarthquakeEntry.COLUMN_MAGNITUDE + ", " + EarthquakeEntry.COLUMN_PLACE + ", "
+                    + EarthquakeEntry.COLUMN_TIME + ", " + EarthquakeEntry.COLUMN_URL + ", "
+                    + EarthquakeEntry.COLUMN_LATITUDE + ", " + EarthquakeEntry.COLUMN_LONGITUDE + ", "
+                    + EarthquakeEntry.COLUMN_DEPTH
+                    + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            List<Earthquake> earthquakes = result.getEarthquakes();
+            for (int i = 0; i < earthquakes.size(); i++) {
+                Earthquake earthquake = earthquakes.get(i);
+                insert.clearBindings();
+                insert.bindString(1, queryUrl);
+                insert.bindLong(2, i);
+                insert.bindString(3, earthquake.getId());
+                insert.bindDouble(4, earthquake.getMagnitude());
+                insert.bindString(5, earthquake.getLocation());
+                insert.bindLong(6, earthquake.getTimeInMilliseconds());
+                insert.bindString(7, earthquake.getUrl());
+                bindCoordinate(insert, 8, earthquake.getLatitude());
+                bindCoordinate(insert, 9, earthquake.getLongitude());
+                bindCoordinate(insert, 10, earthquake.getDepth());
+                insert.executeInsert();
+            }
+            insert.close();
+
+            SQLiteStatement upsert = compileEventUpsert(db);
+            for (int i = 0; i < earthquakes.size(); i++) {
+                bindEventUpsert(upsert, earthquakes.get(i));
+                if (upsert.executeUpdateDelete() > 0) {
+                    written.add(earthquakes.get(i));
+                }
+            }
+            upsert.close();
+
+            db.insertWithOnConflict(QueryEntry.TABLE_NAME, null,
+                    queryValues(queryUrl, result), SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        EventStatistics.onEventsWritten(written);
+    }
+
+    /**
+     * Records that USGS confirmed the stored response is still current.
+     */
+    public void touch(String queryUrl, long fetchedAt) {
+        ContentValues values = new ContentValues();
+        values.put(QueryEntry.COLUMN_FETCHED_AT, fetchedAt);
+        mDbHelper.getWritableDatabase().update(QueryEntry.TABLE_NAME, values,
+                QueryEntry.COLUMN_QUERY_URL + "=?", new String[]{queryUrl});
+    }
+
+    /**
+     * Merges inserted, updated and deleted events from a USGS delta query into the
+     * local store. Cached responses that hold an updated event are patched in place,
+     * unless their minmag is above its new magnitude: those lose it and are marked for a
+     * full refetch, as are cached responses that held a deleted event. An event is only
+     * replaced by a newer update of itself.
+     * @param changes are the events returned for an updatedafter query
+     * @param dropped are updates of events that fell below the minmag the store is synced
+     *                at. They only leave the event store; a cached response with a lower
+     *                minmag still holds them, patched
+     * @return the number of events inserted, updated or deleted
+     */
+    public int mergeChanges(List<Earthquake> changes, List<Earthquake> dropped) {
+        int merged = 0;
+        List<Earthquake> written = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement upsert = compileEventUpsert(db);
+            SQLiteStatement patch = db.compileStatement("UPDATE " + EarthquakeEntry.TABLE_NAME + " SET "
+                    + EarthquakeEntry.COLUMN_MAGNITUDE + "=?, " + EarthquakeEntry.COLUMN_PLACE + "=?, "
+                    + EarthquakeEntry.COLUMN_TIME + "=?, " + EarthquakeEntry.COLUMN_URL + "=?, "
+                    + EarthquakeEntry.COLUMN_LATITUDE + "=?, " + EarthquakeEntry.COLUMN_LONGITUDE + "=?, "
+                    + EarthquakeEntry.COLUMN_DEPTH + "=? WHERE "
+                    + EarthquakeEntry.COLUMN_EVENT_ID + "=? AND " + EarthquakeEntry.COLUMN_QUERY_URL + "=?");
+
+            for (Earthquake earthquake : changes) {
+                String[] eventId = {earthquake.getId()};
+                if (earthquake.isDeleted()) {
+                    if (db.delete(EventEntry.TABLE_NAME, EventEntry.COLUMN_EVENT_ID + "=?", eventId) > 0) {
+                        merged++;
+                        deleted.add(earthquake.getId());
+                    }
+                    updatePages(db, patch, earthquake);
+                    continue;
+                }
+
+                bindEventUpsert(upsert, earthquake);
+                if (upsert.executeUpdateDelete() > 0) {
+                    merged++;
+                    written.add(earthquake);
+                    updatePages(db, patch, earthquake);
+                }
+            }
+
+            for (Earthquake earthquake : dropped) {
+                String[] eventVersion = {earthquake.getId(),
+                        String.valueOf(earthquake.getUpdatedInMilliseconds())};
+                if (DatabaseUtils.queryNumEntries(db, EventEntry.TABLE_NAME, EventEntry.COLUMN_EVENT_ID
+                        + "=? AND " + EventEntry.COLUMN_UPDATED + ">=?", eventVersion) > 0) {
+                    // A newer update of it is stored already
+                    continue;
+                }
+                if (db.delete(EventEntry.TABLE_NAME, EventEntry.COLUMN_EVENT_ID + "=?",
+                        new String[]{earthquake.getId()}) > 0) {
+                    merged++;
+                    deleted.add(earthquake.getId());
+                }
+                updatePages(db, patch, earthquake);
+            }
+            upsert.close();
+            patch.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        // Only now that the changes are committed
+        EventStatistics.onEventsWritten(written);
+        EventStatistics.onEventsDeleted(deleted);
+        return merged;
+    }
+
+    /**
+     * Brings the cached responses holding an event up to date with a new version of it.
+     * Responses the new version no longer belongs in, because it was deleted or is below
+     * their minmag, lose it and are marked for a full refetch, as they are now short.
+     * The others are patched in place.
+     */
+    private static void updatePages(SQLiteDatabase db, SQLiteStatement patch, Earthquake earthquake) {
+        List<String> queryUrls = new ArrayList<>();
+        Cursor cursor = db.query(true, EarthquakeEntry.TABLE_NAME, new String[]{EarthquakeEntry.COLUMN_QUERY_URL},
+                EarthquakeEntry.COLUMN_EVENT_ID + "=?", new String[]{earthquake.getId()},
+                null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                queryUrls.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        for (String queryUrl : queryUrls) {
+            if (earthquake.isDeleted() || earthquake.getMagnitude() < minMagnitudeOf(queryUrl)) {
+                String[] row = {earthquake.getId(), queryUrl};
+                db.delete(EarthquakeEntry.TABLE_NAME, EarthquakeEntry.COLUMN_EVENT_ID + "=? AND "
+                        + EarthquakeEntry.COLUMN_QUERY_URL + "=?", row);
+                ContentValues expired = new ContentValues();
+                expired.putNull(QueryEntry.COLUMN_ETAG);
+                expired.putNull(QueryEntry.COLUMN_LAST_MODIFIED);
+                expired.put(QueryEntry.COLUMN_FETCHED_AT, 0);
+                db.update(QueryEntry.TABLE_NAME, expired, QueryEntry.COLUMN_QUERY_URL + "=?",
+                        new String[]{queryUrl});
+                continue;
+            }
+            patch.clearBindings();
+            patch.bindDouble(1, earthquake.getMagnitude());
+            patch.bindString(2, earthquake.getLocation());
+            patch.bindLong(3, earthquake.getTimeInMilliseconds());
+            patch.bindString(4, earthquake.getUrl());
+            bindCoordinate(patch, 5, earthquake.getLatitude());
+            bindCoordinate(patch, 6, earthquake.getLongitude());
+            bindCoordinate(patch, 7, earthquake.getDepth());
+            patch.bindString(8, earthquake.getId());
+            patch.bindString(9, queryUrl);
+            patch.executeUpdateDelete();
+        }
+    }
+
+    /** Returns the minmag of a query URL, or negative infinity if it has none. */
+    private static double minMagnitudeOf(String queryUrl) {
+        double minMagnitude = EarthquakeSyncTask.parseMagnitude(
+                Uri.parse(queryUrl).getQueryParameter("minmag"));
+        return Double.isNaN(minMagnitude) ? Double.NEGATIVE_INFINITY : minMagnitude;
+    }
+
+    /**
+     * Compiles a statement that writes an event unless a newer update of it is
+     * already stored.
+     */
+    private static SQLiteStatement compileEventUpsert(SQLiteDatabase db) {
+        return db.compileStatement("INSERT OR REPLACE INTO " + EventEntry.TABLE_NAME + " ("
+                + EventEntry.COLUMN_EVENT_ID + ", " + EventEntry.COLUMN_MAGNITUDE + ", "
+                + EventEntry.COLUMN_PLACE + ", " + EventEntry.COLUMN_TIME + ", "
+                + EventEntry.COLUMN_URL + ", " + EventEntry.COLUMN_LATITUDE + ", "
+                + EventEntry.COLUMN_LONGITUDE + ", " + EventEntry.COLUMN_DEPTH + ", "
+                + EventEntry.COLUMN_UPDATED
+                + ") SELECT ?, ?, ?, ?, ?, ?, ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM " + EventEntry.TABLE_NAME
+                + " WHERE " + EventEntry.COLUMN_EVENT_ID + "=? AND " + EventEntry.COLUMN_UPDATED + ">=?)");
+    }
+
+    private static void bindEventUpsert(SQLiteStatement upsert, Earthquake earthquake) {
+        upsert.clearBindings();
+        upsert.bindString(1, earthquake.getId());
+        upsert.bindDouble(2, earthquake.getMagnitude());
+        upsert.bindString(3, earthquake.getLocation());
+        upsert.bindLong(4, earthquake.getTimeInMilliseconds());
+        upsert.bindString(5, earthquake.getUrl());
+        bindCoordinate(upsert, 6, earthquake.getLatitude());
+        bindCoordinate(upsert, 7, earthquake.getLongitude());
+        bindCoordinate(upsert, 8, earthquake.getDepth());
+        upsert.bindLong(9, earthquake.getUpdatedInMilliseconds());
+        upsert.bindString(10, earthquake.getId());
+        upsert.bindLong(11, earthquake.getUpdatedInMilliseconds());
+    }
+
+    /** Binds a coordinate, storing NULL for one USGS didn't send. */
+    private static void bindCoordinate(SQLiteStatement statement, int index, double value) {
+        if (Double.isNaN(value)) {
+            statement.bindNull(index);
+        } else {
+            statement.bindDouble(index, value);
+        }
+    }
+
+    /** Reads a coordinate, returning NaN for NULL. */
+    private static double getCoordinate(Cursor cursor, int column) {
+        return cursor.isNull(column) ? Double.NaN : cursor.getDouble(column);
+    }
+
+    /**
+     * Returns every event in the local store, for indexes that answer queries
+     * without going back to USGS.
+     */
+    public EarthquakeStore readEvents() {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(EventEntry.TABLE_NAME,
+                new String[]{EventEntry.COLUMN_EVENT_ID, EventEntry.COLUMN_MAGNITUDE,
+                        EventEntry.COLUMN_PLACE, EventEntry.COLUMN_TIME, EventEntry.COLUMN_URL,
+                        EventEntry.COLUMN_LATITUDE, EventEntry.COLUMN_LONGITUDE,
+                        EventEntry.COLUMN_DEPTH},
+                null, null, null, null, EventEntry.COLUMN_TIME + " DESC");
+        try {
+            EarthquakeStore events = new EarthquakeStore(cursor.getCount(), null);
+            while (cursor.moveToNext()) {
+                events.append(new Earthquake(cursor.getString(0), cursor.getDouble(1),
+                        cursor.getString(2), cursor.getLong(3), cursor.getString(4),
+                        getCoordinate(cursor, 5), getCoordinate(cursor, 6), getCoordinate(cursor, 7)));
+            }
+            return events;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Removes events that happened before the given time from the local store.
+     * @return the number of events removed
+     */
+    public int deleteEventsBefore(long timeInMilliseconds) {
+        int deleted = mDbHelper.getWritableDatabase().delete(EventEntry.TABLE_NAME,
+                EventEntry.COLUMN_TIME + "<?", new String[]{String.valueOf(timeInMilliseconds)});
+        EventStatistics.onEventsDeletedBefore(timeInMilliseconds);
+        return deleted;
+    }
+
+    /** Returns the number of events in the local store. */
+    public long countEvents() {
+        return DatabaseUtils.queryNumEntries(mDbHelper.getReadableDatabase(), EventEntry.TABLE_NAME);
+    }
+
+    /** Returns the queries table row for the given response. */
+    private static ContentValues queryValues(String queryUrl, QueryResult result) {
+        ContentValues values = new ContentValues();
+        values.put(QueryEntry.COLUMN_QUERY_URL, queryUrl);
+        values.put(QueryEntry.COLUMN_ETAG, result.getETag());
+        values.put(QueryEntry.COLUMN_LAST_MODIFIED, result.getLastModified());
+        values.put(QueryEntry.COLUMN_FETCHED_AT, result.getFetchedAt());
+        return values;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.android.quakereport;
+
+import android.provider.BaseColumns;
+
+/**
+ * API Contract for the on-disk earthquake cache and local event store.
+ */
+public final class EarthquakeContract {
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeContract}
+     * object. This class only holds the table and column names.
+     */
+    private EarthquakeContract() {
+    }
+
+    /**
+     * One row per cached query URL, holding the HTTP validators of its last response.
+     */
+    public static final class QueryEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "queries";
+
+        /** Full request URL, including minmag, orderby, offset and limit. Type: TEXT */
+        public static final String COLUMN_QUERY_URL = "query_url";
+
+        /** ETag header of the last response. Type: TEXT */
+        public static final String COLUMN_ETAG = "etag";
+
+        /** Last-Modified header of the last response. Type: TEXT */
+        public static final String COLUMN_LAST_MODIFIED = "last_modified";
+
+        /** When USGS last confirmed the response, in milliseconds. Type: INTEGER */
+        public static final String COLUMN_FETCHED_AT = "fetched_at";
+    }
+
+    /**
+     * One row per earthquake in a cached response, in response order.
+     */
+    public static final class EarthquakeEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "earthquakes";
+
+        /** Query URL the earthquake was returned for. Type: TEXT */
+        public static final String COLUMN_QUERY_URL = "query_url";
+
+        /** Position of the earthquake within the response. Type: INTEGER */
+        public static final String COLUMN_POSITION = "position";
+
+        /** USGS event id. Type: TEXT */
+        public static final String COLUMN_EVENT_ID = "event_id";
+
+        /** Type: REAL */
+        public static final String COLUMN_MAGNITUDE = "magnitude";
+
+        /** Type: TEXT */
+        public static final String COLUMN_PLACE = "place";
+
+        /** Time of the earthquake in milliseconds. Type: INTEGER */
+        public static final String COLUMN_TIME = "time";
+
+        /** Type: TEXT */
+        public static final String COLUMN_URL = "url";
+
+        /** Latitude of the epicenter in degrees, or NULL if unknown. Type: REAL */
+        public static final String COLUMN_LATITUDE = "latitude";
+
+        /** Longitude of the epicenter in degrees, or NULL if unknown. Type: REAL */
+        public static final String COLUMN_LONGITUDE = "longitude";
+
+        /** Depth of the hypocenter in km, or NULL if unknown. Type: REAL */
+        public static final String COLUMN_DEPTH = "depth";
+    }
+
+    /**
+     * One row per known USGS event, keyed by event id, kept current by background sync.
+     */
+    public static final class EventEntry {
+
+        public static final String TABLE_NAME = "events";
+
+        /** USGS event id. Type: TEXT PRIMARY KEY */
+        public static final String COLUMN_EVENT_ID = "event_id";
+
+        /** Type: REAL */
+        public static final String COLUMN_MAGNITUDE = "magnitude";
+
+        /** Type: TEXT */
+        public static final String COLUMN_PLACE = "place";
+
+        /** Time of the earthquake in milliseconds. Type: INTEGER */
+        public static final String COLUMN_TIME = "time";
+
+        /** Type: TEXT */
+        public static final String COLUMN_URL = "url";
+
+        /** Latitude of the epicenter in degrees, or NULL if unknown. Type: REAL */
+        public static final String COLUMN_LATITUDE = "latitude";
+
+        /** Longitude of the epicenter in degrees, or NULL if unknown. Type: REAL */
+        public static final String COLUMN_LONGITUDE = "longitude";
+
+        /** Depth of the hypocenter in km, or NULL if unknown. Type: REAL */
+        public static final String COLUMN_DEPTH = "depth";
+
+        /** When USGS last updated the event, in milliseconds. Type: INTEGER */
+        public static final String COLUMN_UPDATED = "updated";
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.example.android.quakereport.EarthquakeContract.EarthquakeEntry;
+import com.example.android.quakereport.EarthquakeContract.EventEntry;
+import com.example.android.quakereport.EarthquakeContract.QueryEntry;
+
+/**
+ * Database helper for the on-disk earthquake cache. Manages database creation and version management.
+ *
+ * The app holds one helper for the whole process, from {@link #getInstance(Context)}, so the
+ * loaders and background sync share one connection. SQLite then serializes their writes
+ * itself instead of failing one of them with "database is locked". The helper is never
+ * closed; the connection goes away with the process.
+ */
+public class EarthquakeDbHelper extends SQLiteOpenHelper {
+
+    /** Name of the database file */
+    private static final String DATABASE_NAME = "earthquakes.db";
+
+    /**
+     * Database version. If you change the database schema, you must increment the database version.
+     */
+    private static final int DATABASE_VERSION = 4;
+
+    /** The one helper of the process, once asked for */
+    private static EarthquakeDbHelper sInstance;
+
+    /**
+     * Constructs a new instance of {@link EarthquakeDbHelper}.
+     * @param context of the app
+     */
+    private EarthquakeDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /** Returns the helper every part of the app opens the database with. */
+    public static synchronized EarthquakeDbHelper getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new EarthquakeDbHelper(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /** This is called when the database is created for the first time. */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + QueryEntry.TABLE_NAME + " ("
+                + QueryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + QueryEntry.COLUMN_QUERY_URL + " TEXT NOT NULL UNIQUE, "
+                + QueryEntry.COLUMN_ETAG + " TEXT, "
+                + QueryEntry.COLUMN_LAST_MODIFIED + " TEXT, "
+                + QueryEntry.COLUMN_FETCHED_AT + " INTEGER NOT NULL);");
+
+        db.execSQL("CREATE TABLE " + EarthquakeEntry.TABLE_NAME + " ("
+                + EarthquakeEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + EarthquakeEntry.COLUMN_QUERY_URL + " TEXT NOT NULL, "
+                + EarthquakeEntry.COLUMN_POSITION + " INTEGER NOT NULL, "
+                + EarthquakeEntry.COLUMN_EVENT_ID + " TEXT NOT NULL, "
+                + EarthquakeEntry.COLUMN_MAGNITUDE + " REAL NOT NULL, "
+                + EarthquakeEntry.COLUMN_PLACE + " TEXT NOT NULL, "
+                + EarthquakeEntry.COLUMN_TIME + " INTEGER NOT NULL, "
+                + EarthquakeEntry.COLUMN_URL + " TEXT NOT NULL, "
+                + EarthquakeEntry.COLUMN_LATITUDE + " REAL, "
+                + EarthquakeEntry.COLUMN_LONGITUDE + " REAL, "
+                + EarthquakeEntry.COLUMN_DEPTH + " REAL);");
+
+        db.execSQL("CREATE INDEX earthquakes_query_url ON " + EarthquakeEntry.TABLE_NAME
+                + " (" + EarthquakeEntry.COLUMN_QUERY_URL + ", " + EarthquakeEntry.COLUMN_POSITION + ");");
+
+        // Lets sync find the cached rows of an event it has news about
+        db.execSQL("CREATE INDEX earthquakes_event_id ON " + EarthquakeEntry.TABLE_NAME
+                + " (" + EarthquakeEntry.COLUMN_EVENT_ID + ");");
+
+        db.execSQL("CREATE TABLE " + EventEntry.TABLE_NAME + " ("
+                + EventEntry.COLUMN_EVENT_ID + " TEXT PRIMARY KEY, "
+                + EventEntry.COLUMN_MAGNITUDE + " REAL NOT NULL, "
+                + EventEntry.COLUMN_PLACE + " TEXT NOT NULL, "
+                + EventEntry.COLUMN_TIME + " INTEGER NOT NULL, "
+                + EventEntry.COLUMN_URL + " TEXT NOT NULL, "
+                + EventEntry.COLUMN_LATITUDE + " REAL, "
+                + EventEntry.COLUMN_LONGITUDE + " REAL, "
+                + EventEntry.COLUMN_DEPTH + " REAL, "
+                + EventEntry.COLUMN_UPDATED + " INTEGER NOT NULL);");
+    }
+
+    /** This is called when the database needs to be upgraded. */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The database only holds copies of USGS data, so it is safe to start over
+        db.execSQL("DROP TABLE IF EXISTS " + EventEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + EarthquakeEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + QueryEntry.TABLE_NAME);
+        onCreate(db);
+    }
+}
@@ -2,46 +2,469 @@ package com.example.android.quakereport;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.net.Uri;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Loads earthquake list by using AsyncTask to perform network
- * request to given URL
+ * request to given URL.
+ *
+ * Results are requested one page at a time using the FDSN offset/limit
+ * parameters. Every page is delivered as soon as it is parsed, together with
+ * the pages loaded before it, and {@link #loadNextPage()} fetches the next one.
+ *
+ * Pages are kept in an {@link EarthquakeCache}. A stored page is delivered
+ * straight away and then revalidated with USGS in a second pass, which costs
+ * a 304 when nothing changed. Offline, stored pages are all we deliver.
+ * Before any of that, the process-wide {@link QueryCache} is asked for the page,
+ * and before that the {@link EventIndex} over the synced local event store, which
+ * answers any minmag and orderby it covers without touching the network.
+ *
+ * Pages are appended to an {@link EarthquakeStore} and the UI gets read-only
+ * snapshots of it, so earlier pages are never copied again. The store formats
+ * each row's text and colors as it is appended, here on the background thread.
+ *
+ * On launch, before any of that, the first rows shown last time are read back from
+ * an {@link EarthquakeSnapshot} and delivered while the first page loads.
+ *
+ * Events from a live feed are merged in with {@link #mergeLiveEarthquakes(List)}: each one
+ * goes to its sorted position among the pages loaded so far, or replaces its older version,
+ * and the adapter animates just those rows.
+ *
+ * Pages are requested through the {@link FetchCoalescer}, so two loaders asking
+ * for the same page share one request. Cancelling a load aborts its HTTP read and
+ * parse, unless another loader is still waiting for the same response.
  */
 
-public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
+public class EarthquakeLoader extends AsyncTaskLoader<EarthquakeStore> {
 
     /** Tag for log messages */
     private static final String LOG_TAG = EarthquakeLoader.class.getName();
 
+    /** Stored pages younger than this are used without asking USGS again */
+    private static final long FRESH_FOR_MILLIS = QueryCache.TIME_TO_LIVE_MILLIS;
+
     /** Query URL */
     private String mUrl;
 
+    /** Number of earthquakes requested per page */
+    private int mPageSize;
+
+    /** Offset of the next page to request, and whether there is one */
+    private PageCursor mPages;
+
+    /** True while a page is being fetched */
+    private boolean mLoadingPage;
+
+    /** Every earthquake delivered so far, across all pages */
+    private EarthquakeStore mEarthquakes;
+
+    /** Pages USGS has confirmed, or the stored copies of them when it couldn't be reached */
+    private EarthquakeStore mConfirmed;
+
+    /** When the oldest of the confirmed pages was confirmed */
+    private long mConfirmedAt = Long.MAX_VALUE;
+
+    /** Stored page that was delivered ahead of the network and still needs revalidating */
+    private QueryResult mStalePage;
+
+    /** On-disk store of earlier responses */
+    private EarthquakeCache mCache;
+
+    /** Formats the text and colors of each row, on the background thread */
+    private EarthquakeFormatter mFormatter;
+
+    /** Aborts the request of the load in progress */
+    private volatile FetchCancellation mCancellation;
+
+    /** First rows of the list shown last time, saved in binary form */
+    private EarthquakeSnapshot mSnapshot;
+
+    /** True once the snapshot has been looked at */
+    private boolean mSnapshotChecked;
+
+    /** Rows restored from the snapshot, shown until the first page is loaded */
+    private EarthquakeStore mRestored;
+
+    /** True while the restored rows are being delivered and the first page still needs loading */
+    private boolean mRestoredPending;
+
+    /** Live events waiting to be merged into the list, guarded by itself */
+    private final List<Earthquake> mLiveChanges = new ArrayList<>();
+
+    /** True if the next load only merges {@link #mLiveChanges} */
+    private boolean mLiveOnly;
+
     /**
      * Constructs a new {@link EarthquakeLoader}.
      * @param context of the activity
-     * @param url to load data from
+     * @param url to load data from, without offset or limit parameters
+     * @param pageSize number of earthquakes to request per page
      */
-    public EarthquakeLoader(Context context, String url) {
+    public EarthquakeLoader(Context context, String url, int pageSize) {
         super(context);
         mUrl = url;
+        mPageSize = pageSize;
+        mPages = new PageCursor(url, pageSize);
+        mCache = new EarthquakeCache(context);
+        mFormatter = EarthquakeResources.newFormatter(context);
+        mSnapshot = new EarthquakeSnapshot(context);
     }
 
     @Override
     protected void onStartLoading() {
+        // Hand back the pages we already hold instead of starting over
+        if (mEarthquakes != null) {
+            deliverResult(mEarthquakes);
+        } else {
+            mLoadingPage = true;
+            forceLoad();
+        }
+    }
+
+    /**
+     * Starts fetching the next page unless one is already in flight or the
+     * last page has been reached.
+     * @return true if a new page was requested
+     */
+    public boolean loadNextPage() {
+        if (mLoadingPage || !mPages.hasMorePages() || mEarthquakes == null) {
+            return false;
+        }
+        mLoadingPage = true;
         forceLoad();
+        return true;
     }
 
     /** Background thread */
     @Override
-    public List<Earthquake> loadInBackground() {
+    public EarthquakeStore loadInBackground() {
+        long loadStart = Metrics.start();
+        try {
+            return loadPage();
+        } finally {
+            Metrics.LOAD.recordSince(loadStart);
+        }
+    }
+
+    /** Loads the next page from the cheapest source that can answer for it. */
+    private EarthquakeStore loadPage() {
         if (mUrl == null) {
             return null;
         }
 
-        // Perform network request, parse response, and extract list of earthquakes
-        List<Earthquake> earthquakes = QueryUtils.fetchEarthquakeData(mUrl);
-        return earthquakes;
+        if (mLiveOnly) {
+            mLiveOnly = false;
+            List<Earthquake> live = takeLiveChanges();
+            // Without a page yet, the first page brings these events anyway. With one,
+            // this load is only for them, and must not fetch the next page.
+            if (mConfirmed != null) {
+                return live.isEmpty() ? mConfirmed.snapshot() : mergeLive(live);
+            }
+        }
+
+        // On launch, show the rows saved last time before any database or JSON work
+        if (!mSnapshotChecked) {
+            mSnapshotChecked = true;
+            EarthquakeStore restored = mSnapshot.read(mUrl, mFormatter);
+            if (restored != null && !restored.isEmpty()) {
+                Metrics.SNAPSHOT_RESTORES.increment();
+                mRestored = restored.snapshot();
+                mRestoredPending = true;
+                return mRestored;
+            }
+        }
+
+        String pageUrl = mPages.getNextPageUrl();
+        boolean online = QueryUtils.isNetworkAvailable(getContext());
+
+        QueryResult stored = mStalePage;
+        if (stored == null) {
+            // The synced local event store answers settings changes without any network
+            List<Earthquake> local = queryLocalStore();
+            if (local != null) {
+                Metrics.LOCAL_INDEX_HITS.increment();
+                return commitPage(new QueryResult(local, null, null, System.currentTimeMillis(), false));
+            }
+
+            // A recent result for this query, or a broader one, answers without disk or network
+            QueryResult remembered = QueryCache.get(pageUrl);
+            if (remembered != null) {
+                Metrics.MEMORY_CACHE_HITS.increment();
+                return commitPage(remembered);
+            }
+
+            stored = mCache.read(pageUrl);
+            if (stored != null && online && !isFresh(stored)) {
+                // Show the stored page right away; deliverResult() starts the revalidation
+                Metrics.DISK_CACHE_STALE.increment();
+                mStalePage = stored;
+                EarthquakeStore provisional = mConfirmed == null
+                        ? new EarthquakeStore(mPageSize, mFormatter) : mConfirmed.copy(mFormatter);
+                provisional.appendAll(stored.getEarthquakes());
+                return provisional;
+            }
+            if (stored != null && (!online || isFresh(stored))) {
+                Metrics.DISK_CACHE_HITS.increment();
+            }
+        }
+        mStalePage = null;
+
+        QueryResult result = stored;
+        if (online && (stored == null || !isFresh(stored))) {
+            // Perform network request, parse response, and extract one page of earthquakes.
+            // Another loader already fetching this page shares its response with us.
+            FetchCancellation cancellation = new FetchCancellation();
+            mCancellation = cancellation;
+            QueryResult fetched = FetchCoalescer.fetchEarthquakeData(pageUrl, stored, cancellation);
+            mCancellation = null;
+            if (cancellation.isCanceled()) {
+                // This load was abandoned; leave the paging state as it was
+                return null;
+            }
+            if (fetched != null) {
+                if (fetched.isNotModified()) {
+                    Metrics.NOT_MODIFIED.increment();
+                    mCache.touch(pageUrl, fetched.getFetchedAt());
+                } else {
+                    Metrics.NETWORK_FETCHES.increment();
+                    mCache.write(pageUrl, fetched);
+                }
+                result = fetched;
+            }
+        }
+
+        if (result == null) {
+            // Keep whatever we already have, but stop paging into a failing request
+            mPages.stop();
+            return mConfirmed == null ? mRestored : mConfirmed.snapshot();
+        }
+
+        return commitPage(result);
+    }
+
+    /**
+     * Appends a page to the confirmed pages, moves on to the next offset and
+     * shares the pages so far with the {@link QueryCache}.
+     */
+    private EarthquakeStore commitPage(QueryResult result) {
+        List<Earthquake> page = result.getEarthquakes();
+        mPages.onPageLoaded(page.size());
+        boolean firstPage = mConfirmed == null;
+        if (firstPage) {
+            mConfirmed = new EarthquakeStore(mPageSize, mFormatter);
+        }
+        mConfirmed.appendAll(page);
+        mConfirmedAt = Math.min(mConfirmedAt, result.getFetchedAt());
+
+        EarthquakeStore snapshot = mConfirmed.snapshot();
+        QueryCache.put(mUrl, snapshot, !mPages.hasMorePages(), mConfirmedAt);
+        if (firstPage) {
+            // The first page is what the next launch shows before loading anything
+            mSnapshot.write(mUrl, snapshot, mPageSize);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Main thread. Merges events from a live feed into the pages loaded so far, without
+     * reloading them. Events that don't match this loader's query are left out.
+     */
+    public void mergeLiveEarthquakes(List<Earthquake> earthquakes) {
+        synchronized (mLiveChanges) {
+            mLiveChanges.addAll(earthquakes);
+        }
+        // A load in progress picks the changes up when it is delivered
+        if (!mLoadingPage && mEarthquakes != null && !isRestored(mEarthquakes)) {
+            mLoadingPage = true;
+            mLiveOnly = true;
+            forceLoad();
+        }
+    }
+
+    private boolean hasLiveChanges() {
+        synchronized (mLiveChanges) {
+            return !mLiveChanges.isEmpty();
+        }
+    }
+
+    private List<Earthquake> takeLiveChanges() {
+        synchronized (mLiveChanges) {
+            List<Earthquake> changes = new ArrayList<>(mLiveChanges);
+            mLiveChanges.clear();
+            return changes;
+        }
+    }
+
+    /**
+     * Returns the confirmed pages with the given live events merged in, see
+     * {@link #merge(EarthquakeStore, List, double, Comparator, boolean, EarthquakeFormatter)}.
+     * The next page's offset moves by the number of rows gained or lost, as it does at USGS.
+     */
+    private EarthquakeStore mergeLive(List<Earthquake> live) {
+        Uri uri = Uri.parse(mUrl);
+        // The feed only holds recent events, so it can't add to a window that ended
+        if (uri.getQueryParameter("endtime") != null) {
+            return mConfirmed.snapshot();
+        }
+        double minMagnitude = EarthquakeSyncTask.parseMagnitude(uri.getQueryParameter("minmag"));
+        String orderBy = uri.getQueryParameter("orderby");
+        Comparator<Earthquake> order = EventQuery.comparatorFor(orderBy == null ? "time" : orderBy);
+
+        EarthquakeStore merged = merge(mConfirmed, live, minMagnitude, order, !mPages.hasMorePages(), mFormatter);
+        mPages.onRowsShifted(merged.size() - mConfirmed.size());
+        mConfirmed = merged;
+        EarthquakeStore snapshot = mConfirmed.snapshot();
+        QueryCache.put(mUrl, snapshot, !mPages.hasMorePages(), mConfirmedAt);
+        return snapshot;
+    }
+
+    /**
+     * Returns the loaded rows with the given live events merged in at their sorted
+     * positions. Events that replace a row take their new place in the order. Events
+     * that were deleted or revised below minmag take their row out of the list.
+     *
+     * Unless every result is loaded, an event that sorts after the last loaded row is
+     * left to the page that will bring it. The bound is the last row as it was loaded,
+     * even when the event replaces that row: an update that keeps the last row in place
+     * still sorts before the first row of the next page.
+     * @param loaded are the rows loaded so far, in the query's order
+     * @param minMagnitude is the query's minmag, or NaN if it has none
+     * @param order is the query's order
+     * @param complete is true if the rows are every result of the query
+     * @param formatter formats the rows of the merged store, or null
+     */
+    static EarthquakeStore merge(EarthquakeStore loaded, List<Earthquake> live, double minMagnitude,
+                                 Comparator<Earthquake> order, boolean complete,
+                                 EarthquakeFormatter formatter) {
+        // Latest version of each event, or null for one that no longer matches the query
+        Map<String, Earthquake> changes = new HashMap<>();
+        for (Earthquake earthquake : live) {
+            boolean matches = !earthquake.isDeleted()
+                    && (Double.isNaN(minMagnitude) || earthquake.getMagnitude() >= minMagnitude);
+            changes.put(earthquake.getId(), matches ? earthquake : null);
+        }
+        List<Earthquake> inserts = new ArrayList<>(changes.size());
+        for (Earthquake earthquake : changes.values()) {
+            if (earthquake != null) {
+                inserts.add(earthquake);
+            }
+        }
+        Collections.sort(inserts, order);
+
+        EarthquakeStore merged = new EarthquakeStore(loaded.size() + inserts.size(), formatter);
+        int next = 0;
+        for (int i = 0; i < loaded.size(); i++) {
+            if (changes.containsKey(loaded.getId(i))) {
+                // Replaced by its new version, which is inserted at its own position, or gone
+                continue;
+            }
+            if (next < inserts.size()) {
+                Earthquake row = loaded.get(i);
+                while (next < inserts.size() && order.compare(inserts.get(next), row) < 0) {
+                    merged.append(inserts.get(next++));
+                }
+            }
+            merged.append(loaded, i);
+        }
+        // Every result is loaded, so the rest belong at the end. Otherwise only the ones
+        // that don't sort after the last loaded row do; that row may have been replaced.
+        Earthquake tail = loaded.isEmpty() ? null : loaded.get(loaded.size() - 1);
+        while (next < inserts.size()
+                && (complete || (tail != null && order.compare(inserts.get(next), tail) <= 0))) {
+            merged.append(inserts.get(next++));
+        }
+        return merged;
+    }
+
+    /** Returns true if the given result is the rows restored from the snapshot. */
+    public boolean isRestored(EarthquakeStore earthquakes) {
+        return earthquakes != null && earthquakes == mRestored;
+    }
+
+    /** Main thread. Aborts the HTTP read and the parse of the load in progress. */
+    @Override
+    public void cancelLoadInBackground() {
+        FetchCancellation cancellation = mCancellation;
+        if (cancellation != null) {
+            cancellation.cancel();
+        }
+    }
+
+    @Override
+    public void deliverResult(EarthquakeStore earthquakes) {
+        mEarthquakes = earthquakes;
+        super.deliverResult(earthquakes);
+
+        if (mStalePage != null || mRestoredPending) {
+            // A stored page or the snapshot went out first; now load the real page
+            mRestoredPending = false;
+            forceLoad();
+        } else if (hasLiveChanges() && !isRestored(earthquakes)) {
+            // Live events arrived while this page loaded
+            mLiveOnly = true;
+            forceLoad();
+        } else {
+            mLoadingPage = false;
+        }
+    }
+
+    @Override
+    public void onCanceled(EarthquakeStore earthquakes) {
+        mRestoredPending = false;
+        mLoadingPage = false;
+    }
+
+    @Override
+    protected void onReset() {
+        cancelLoad();
+        mEarthquakes = null;
+        mConfirmed = null;
+        mConfirmedAt = Long.MAX_VALUE;
+        mStalePage = null;
+        mSnapshotChecked = false;
+        mRestored = null;
+        mRestoredPending = false;
+        takeLiveChanges();
+        mLiveOnly = false;
+        mPages.reset();
+        mLoadingPage = false;
+    }
+
+    /**
+     * Returns the next page out of the local event store, or null if the store doesn't
+     * cover this query or hasn't been synced recently.
+     */
+    private List<Earthquake> queryLocalStore() {
+        Uri uri = Uri.parse(mUrl);
+        // Only USGS's default window of the last 30 days is held locally
+        if (uri.getQueryParameter("starttime") != null || uri.getQueryParameter("endtime") != null) {
+            return null;
+        }
+        double minMagnitude = EarthquakeSyncTask.parseMagnitude(uri.getQueryParameter("minmag"));
+        if (Double.isNaN(minMagnitude)
+                || !EarthquakeSyncTask.isLocalStoreCurrent(getContext(), minMagnitude)) {
+            return null;
+        }
+
+        EventIndex index = EventIndex.get(mCache);
+        if (index.size() == 0) {
+            return null;
+        }
+        String orderBy = uri.getQueryParameter("orderby");
+        return index.query(minMagnitude, orderBy == null ? "time" : orderBy,
+                System.currentTimeMillis() - EarthquakeSyncTask.BACKFILL_MILLIS,
+                mPages.getLoadedCount(), mPageSize);
+    }
+
+    /** Returns true if the stored response is recent enough to skip revalidation. */
+    private static boolean isFresh(QueryResult stored) {
+        return System.currentTimeMillis() - stored.getFetchedAt() < FRESH_FOR_MILLIS;
     }
 }
@@ -0,0 +1,46 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.support.v4.content.ContextCompat;
+
+/**
+ * Resolves the colors and strings an {@link EarthquakeFormatter} needs from the app's
+ * resources. The formatter itself lives in the core library, which knows nothing
+ * about Android.
+ */
+final class EarthquakeResources {
+
+    /* Magnitude circle color resources, indexed by the floor of the magnitude */
+    private static final int[] MAGNITUDE_COLOR_RESOURCE_IDS = {
+            R.color.magnitude1,
+            R.color.magnitude1,
+            R.color.magnitude2,
+            R.color.magnitude3,
+            R.color.magnitude4,
+            R.color.magnitude5,
+            R.color.magnitude6,
+            R.color.magnitude7,
+            R.color.magnitude8,
+            R.color.magnitude9
+    };
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeResources}
+     * object. This class only holds static methods.
+     */
+    private EarthquakeResources() {
+    }
+
+    /**
+     * Returns a new {@link EarthquakeFormatter} using the app's colors and strings.
+     * @param context used to resolve colors and strings
+     */
+    static EarthquakeFormatter newFormatter(Context context) {
+        int[] colors = new int[MAGNITUDE_COLOR_RESOURCE_IDS.length];
+        for (int i = 0; i < MAGNITUDE_COLOR_RESOURCE_IDS.length; i++) {
+            colors[i] = ContextCompat.getColor(context, MAGNITUDE_COLOR_RESOURCE_IDS[i]);
+        }
+        return new EarthquakeFormatter(colors, ContextCompat.getColor(context, R.color.magnitude10plus),
+                context.getString(R.string.offset_alternative));
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Single file holding the first rows of the last list shown, in a compact binary form
+ * that can be turned back into an {@link EarthquakeStore} without parsing any JSON or
+ * opening the database, so the list can be drawn right after launch.
+ *
+ * The file starts with a magic number, a format version, the query URL the rows
+ * answer, the row count and a table of every distinct string (ids, place parts and
+ * URLs that don't follow the USGS pattern). Then come fixed-width columns: magnitudes,
+ * times, latitudes, longitudes and depths, followed by the string table codes of each
+ * row's id, place offset, primary location and URL. The file is memory-mapped and the
+ * columns are read in bulk. A file of another version, or one that is cut short, is
+ * ignored.
+ *
+ * The file is replaced as a whole with a rename, so a reader never sees half of it.
+ * Reads and writes touch the disk and must happen off the main thread.
+ */
+final class EarthquakeSnapshot {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = EarthquakeSnapshot.class.getSimpleName();
+
+    /** Name of the snapshot file in the cache directory */
+    private static final String FILE_NAME = "earthquakes.snapshot";
+
+    /** First four bytes of every snapshot, "QSNP" */
+    private static final int MAGIC = 0x51534E50;
+
+    /** Bump this whenever the layout changes; files of other versions are ignored */
+    private static final int VERSION = 1;
+
+    /** String table code of a missing string, i.e. a place without an offset part */
+    private static final int NO_STRING = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The snapshot file */
+    private final File mFile;
+
+    /**
+     * Constructs a new {@link EarthquakeSnapshot} in the app's cache directory.
+     * @param context of the app
+     */
+    EarthquakeSnapshot(Context context) {
+        this(new File(context.getCacheDir(), FILE_NAME));
+    }
+
+    /**
+     * Constructs a new {@link EarthquakeSnapshot} kept in the given file.
+     * @param file to read and write
+     */
+    EarthquakeSnapshot(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Replaces the snapshot with the first rows of the given earthquakes.
+     * @param queryUrl is the query the earthquakes answer
+     * @param earthquakes to save
+     * @param maxRows is the most rows to save
+     * @return true if the snapshot was written
+     */
+    boolean write(String queryUrl, EarthquakeStore earthquakes, int maxRows) {
+        int rows = Math.min(earthquakes.size(), maxRows);
+
+        // Every distinct string once, in order of first use
+        Map<String, Integer> codes = new HashMap<>();
+        int[] idCodes = new int[rows];
+        int[] offsetCodes = new int[rows];
+        int[] primaryCodes = new int[rows];
+        int[] urlCodes = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            idCodes[i] = encode(codes, earthquakes.getId(i));
+            offsetCodes[i] = encode(codes, earthquakes.getLocationOffset(i));
+            primaryCodes[i] = encode(codes, earthquakes.getPrimaryLocation(i));
+            urlCodes[i] = encode(codes, earthquakes.getUrlOverride(i));
+        }
+        String[] strings = new String[codes.size()];
+        for (Map.Entry<String, Integer> entry : codes.entrySet()) {
+            strings[entry.getValue()] = entry.getKey();
+        }
+
+        File temporary = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, queryUrl);
+            out.writeInt(rows);
+            out.writeInt(strings.length);
+            for (String string : strings) {
+                writeString(out, string);
+            }
+            for (int i = 0; i < rows; i++) {
+                out.writeDouble(earthquakes.getMagnitude(i));
+            }
+            for (int i = 0; i < rows; i++) {
+                out.writeLong(earthquakes.getTimeInMilliseconds(i));
+            }
+            for (int i = 0; i < rows; i++) {
+                out.writeDouble(earthquakes.getLatitude(i));
+            }
+            for (int i = 0; i < rows; i++) {
+                out.writeDouble(earthquakes.getLongitude(i));
+            }
+            for (int i = 0; i < rows; i++) {
+                out.writeDouble(earthquakes.getDepth(i));
+            }
+            writeInts(out, idCodes);
+            writeInts(out, offsetCodes);
+            writeInts(out, primaryCodes);
+            writeInts(out, urlCodes);
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Problem writing the snapshot", e);
+            temporary.delete();
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Already failing
+                }
+            }
+        }
+
+        if (!temporary.renameTo(mFile)) {
+            Log.w(LOG_TAG, "Problem replacing the snapshot");
+            temporary.delete();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the saved rows if they answer the given query, or null if there is no
+     * snapshot, it answers another query or it can't be read.
+     * @param queryUrl is the query the rows must answer
+     * @param formatter formats the display columns of the returned store, or null for none
+     */
+    EarthquakeStore read(String queryUrl, EarthquakeFormatter formatter) {
+        if (!mFile.exists()) {
+            return null;
+        }
+
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(mFile, "r");
+            FileChannel channel = file.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || !queryUrl.equals(readString(buffer))) {
+                return null;
+            }
+            // Each row takes more than 8 bytes, so a larger count means a damaged file
+            int rows = buffer.getInt();
+            if (rows < 0 || rows > buffer.remaining() / 8) {
+                throw new BufferUnderflowException();
+            }
+            int stringCount = buffer.getInt();
+            if (stringCount < 0 || stringCount > buffer.remaining() / 4) {
+                throw new BufferUnderflowException();
+            }
+            String[] strings = new String[stringCount];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(buffer);
+            }
+
+            double[] magnitudes = new double[rows];
+            long[] times = new long[rows];
+            double[] latitudes = new double[rows];
+            double[] longitudes = new double[rows];
+            double[] depths = new double[rows];
+            int[] idCodes = new int[rows];
+            int[] offsetCodes = new int[rows];
+            int[] primaryCodes = new int[rows];
+            int[] urlCodes = new int[rows];
+            readDoubles(buffer, magnitudes);
+            readLongs(buffer, times);
+            readDoubles(buffer, latitudes);
+            readDoubles(buffer, longitudes);
+            readDoubles(buffer, depths);
+            readInts(buffer, idCodes);
+            readInts(buffer, offsetCodes);
+            readInts(buffer, primaryCodes);
+            readInts(buffer, urlCodes);
+
+            EarthquakeStore earthquakes = new EarthquakeStore(rows, formatter);
+            for (int i = 0; i < rows; i++) {
+                earthquakes.append(decode(strings, idCodes[i]), magnitudes[i], times[i],
+                        latitudes[i], longitudes[i], depths[i], decode(strings, offsetCodes[i]),
+                        decode(strings, primaryCodes[i]), decode(strings, urlCodes[i]));
+            }
+            return earthquakes;
+        } catch (IOException | RuntimeException e) {
+            // A short read, a bad code or a bad length means a damaged file
+            Log.w(LOG_TAG, "Problem reading the snapshot", e);
+            return null;
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    // Nothing was written
+                }
+            }
+        }
+    }
+
+    /** Deletes the snapshot. */
+    void delete() {
+        mFile.delete();
+    }
+
+    /** Returns the string table code of a string, adding it if it's new. */
+    private static int encode(Map<String, Integer> codes, String string) {
+        if (string == null) {
+            return NO_STRING;
+        }
+        Integer code = codes.get(string);
+        if (code == null) {
+            code = codes.size();
+            codes.put(string, code);
+        }
+        return code;
+    }
+
+    /** Returns the string for a string table code, or null for {@link #NO_STRING}. */
+    private static String decode(String[] strings, int code) {
+        return code == NO_STRING ? null : strings[code];
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /** Fills the array from the buffer in one bulk read and moves past it. */
+    private static void readInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + values.length * 4);
+    }
+
+    /** Fills the array from the buffer in one bulk read and moves past it. */
+    private static void readLongs(ByteBuffer buffer, long[] values) {
+        buffer.asLongBuffer().get(values);
+        buffer.position(buffer.position() + values.length * 8);
+    }
+
+    /** Fills the array from the buffer in one bulk read and moves past it. */
+    private static void readDoubles(ByteBuffer buffer, double[] values) {
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + values.length * 8);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.android.quakereport;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.AsyncTask;
+import android.os.Build;
+
+/**
+ * Runs the periodic {@link EarthquakeSyncTask} when JobScheduler decides the
+ * network and battery constraints are met.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class EarthquakeSyncJobService extends JobService {
+
+    /* Sync running for the current job, if any */
+    private AsyncTask<Void, Void, Boolean> mSyncTask;
+
+    @Override
+    public boolean onStartJob(final JobParameters jobParameters) {
+        mSyncTask = new AsyncTask<Void, Void, Boolean>() {
+            @Override
+            protected Boolean doInBackground(Void... voids) {
+                return EarthquakeSyncTask.syncEarthquakes(getApplicationContext()) >= 0;
+            }
+
+            @Override
+            protected void onPostExecute(Boolean synced) {
+                // Ask JobScheduler to retry with backoff if USGS couldn't be reached
+                jobFinished(jobParameters, !synced);
+            }
+        };
+        mSyncTask.execute();
+
+        // The work continues on the AsyncTask
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters jobParameters) {
+        if (mSyncTask != null) {
+            mSyncTask.cancel(true);
+        }
+        // Constraints are no longer met; run again when they are
+        return true;
+    }
+}
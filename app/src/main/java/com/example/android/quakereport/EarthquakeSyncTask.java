@@ -0,0 +1,303 @@
+package com.example.android.quakereport;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the local event store current in the background.
+ *
+ * Each sync only asks USGS for events updated after the newest update seen by the
+ * previous sync, including deleted ones, and merges them by event id. The download
+ * and parse cost therefore follow the rate of change, not the size of the window.
+ * Changes are asked for at any magnitude, since an event revised below minmag has to
+ * leave the store. It only leaves the store, though: it wasn't deleted at USGS, and
+ * cached lists with a lower minmag keep showing it.
+ * The very first sync has nothing to go on, so it fetches the last 30 days with a
+ * {@link WindowedFetcher}. Events older than that are dropped, and the store then
+ * answers list queries through an {@link EventIndex}. Every fetched event is also
+ * appended to an {@link EventArchive}, which keeps them after that, for trends.
+ */
+public final class EarthquakeSyncTask {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = EarthquakeSyncTask.class.getSimpleName();
+
+    /** Job id of the periodic sync. We can choose any integer. */
+    private static final int SYNC_JOB_ID = 1;
+
+    /** How often to sync; 15 minutes is the shortest period JobScheduler allows */
+    private static final long SYNC_INTERVAL_MILLIS = 15 * 60 * 1000;
+
+    /** How far back the very first sync looks; USGS defaults to the same 30 days */
+    static final long BACKFILL_MILLIS = 30L * 24 * 60 * 60 * 1000;
+
+    /** Number of changed events requested per page */
+    private static final int SYNC_PAGE_SIZE = 1000;
+
+    /** Preference holding the newest update time merged so far */
+    private static final String PREF_LAST_SYNC_UPDATED = "last_sync_updated";
+
+    /** Preference holding the minmag the local store was last synced with */
+    private static final String PREF_SYNCED_MIN_MAGNITUDE = "synced_min_magnitude";
+
+    /** Preference holding when the last sync finished */
+    private static final String PREF_LAST_SYNC_AT = "last_sync_at";
+
+    /** The local store answers queries for this long after a sync, about two sync periods */
+    private static final long LOCAL_FRESH_MILLIS = 2 * SYNC_INTERVAL_MILLIS;
+
+    /** Directory of the event archive in the app's files */
+    private static final String ARCHIVE_DIRECTORY = "archive";
+
+    /** Guards {@link #sArchive} apart from the sync, so readers don't wait for a sync */
+    private static final Object sArchiveLock = new Object();
+
+    /** The one archive of the process, as appends to it have to be serialized */
+    private static EventArchive sArchive;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeSyncTask}
+     * object. This class only holds static methods.
+     */
+    private EarthquakeSyncTask() {
+    }
+
+    /**
+     * Schedules the periodic sync unless it is already scheduled. The sync only runs on
+     * a network connection and, where the platform supports it, not on a low battery.
+     * Devices older than Lollipop have no JobScheduler and are not synced.
+     */
+    public static void scheduleSync(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        schedulePeriodicJob(context);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void schedulePeriodicJob(Context context) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null) {
+            return;
+        }
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            if (job.getId() == SYNC_JOB_ID) {
+                return;
+            }
+        }
+
+        JobInfo.Builder builder = new JobInfo.Builder(SYNC_JOB_ID,
+                new ComponentName(context, EarthquakeSyncJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setPeriodic(SYNC_INTERVAL_MILLIS)
+                .setPersisted(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setRequiresBatteryNotLow(true);
+        }
+        jobScheduler.schedule(builder.build());
+    }
+
+    /**
+     * Fetches the events USGS updated since the last sync and merges them into the
+     * local store. Must be called off the main thread.
+     * @return the number of events inserted, updated or deleted, or -1 if USGS couldn't be reached
+     */
+    public static synchronized int syncEarthquakes(Context context) {
+        // The job may run without the app open, so its fetches are checked for alerts here
+        AlertNotifier.install(context);
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        long lastUpdated = preferences.getLong(PREF_LAST_SYNC_UPDATED, 0);
+        String minMagnitude = preferences.getString(
+                context.getString(R.string.settings_min_magnitude_key),
+                context.getString(R.string.settings_min_magnitude_default));
+
+        String syncedMinMagnitude = preferences.getString(PREF_SYNCED_MIN_MAGNITUDE, minMagnitude);
+        if (needsBackfill(minMagnitude, syncedMinMagnitude)) {
+            // Events between the two thresholds were never fetched
+            lastUpdated = 0;
+        }
+
+        EarthquakeCache cache = new EarthquakeCache(context);
+        long newestUpdated = lastUpdated;
+        int merged = 0;
+        if (lastUpdated == 0 || cache.countEvents() == 0) {
+            // Nothing synced yet, the store was rebuilt for a new schema or minmag was
+            // lowered, so fetch the whole month, several windows at a time
+            long now = System.currentTimeMillis();
+            List<Earthquake> earthquakes = new WindowedFetcher(buildBackfillUrl(minMagnitude))
+                    .fetch(now - BACKFILL_MILLIS, now, WindowedFetcher.defaultWindowCount());
+            if (earthquakes == null) {
+                return -1;
+            }
+            merged += cache.mergeChanges(earthquakes, Collections.<Earthquake>emptyList());
+            archive(context, earthquakes);
+            newestUpdated = newestUpdated(earthquakes, now - BACKFILL_MILLIS);
+        } else {
+            for (int offset = 1; ; offset += SYNC_PAGE_SIZE) {
+                List<Earthquake> changes = QueryUtils.fetchEarthquakeData(
+                        buildDeltaUrl(lastUpdated, offset));
+                if (changes == null) {
+                    return -1;
+                }
+                List<Earthquake> kept = new ArrayList<>(changes.size());
+                List<Earthquake> dropped = new ArrayList<>();
+                splitAt(parseMagnitude(minMagnitude), changes, kept, dropped);
+                merged += cache.mergeChanges(kept, dropped);
+                // The archive holds what the store held, so the dropped events leave it too
+                List<Earthquake> archived = new ArrayList<>(kept);
+                archived.addAll(asDeleted(dropped));
+                archive(context, archived);
+                newestUpdated = newestUpdated(changes, newestUpdated);
+                if (changes.size() < SYNC_PAGE_SIZE) {
+                    break;
+                }
+            }
+        }
+
+        // Keep the store to the window USGS answers queries for by default
+        merged += cache.deleteEventsBefore(System.currentTimeMillis() - BACKFILL_MILLIS);
+
+        // Continue from the newest update USGS reported, so our own clock doesn't matter.
+        // Only changes at or above this minmag were merged, so the store is only known to be
+        // current from it up, whatever an earlier sync used.
+        preferences.edit()
+                .putLong(PREF_LAST_SYNC_UPDATED, newestUpdated)
+                .putString(PREF_SYNCED_MIN_MAGNITUDE, minMagnitude)
+                .putLong(PREF_LAST_SYNC_AT, System.currentTimeMillis())
+                .apply();
+        if (merged > 0) {
+            // Pages held in memory and the local index may predate these changes
+            QueryCache.clear();
+            EventIndex.invalidate();
+        }
+        Log.i(LOG_TAG, "Merged " + merged + " changed earthquakes");
+        return merged;
+    }
+
+    /**
+     * Returns the archive of every event synced so far, deleted ones left out, which
+     * goes back further than the 30 days of the local store.
+     */
+    public static EventArchive getArchive(Context context) {
+        synchronized (sArchiveLock) {
+            if (sArchive == null) {
+                sArchive = new EventArchive(new File(context.getFilesDir(), ARCHIVE_DIRECTORY));
+            }
+            return sArchive;
+        }
+    }
+
+    /** Appends fetched events to the archive. Syncing goes on without it if that fails. */
+    private static void archive(Context context, List<Earthquake> earthquakes) {
+        try {
+            getArchive(context).append(earthquakes);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem archiving earthquakes", e);
+        }
+    }
+
+    /**
+     * Returns true if the local event store holds every event of the last 30 days at or
+     * above the given magnitude and was synced recently enough to answer queries with.
+     */
+    public static boolean isLocalStoreCurrent(Context context, double minMagnitude) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        long lastSyncAt = preferences.getLong(PREF_LAST_SYNC_AT, 0);
+        String syncedMinMagnitude = preferences.getString(PREF_SYNCED_MIN_MAGNITUDE, null);
+        return syncedMinMagnitude != null
+                && System.currentTimeMillis() - lastSyncAt < LOCAL_FRESH_MILLIS
+                && minMagnitude >= parseMagnitude(syncedMinMagnitude);
+    }
+
+    /**
+     * Returns true if a store last synced at one minmag can't answer for another, because
+     * the other is lower or either isn't a number, so the month has to be fetched again.
+     */
+    static boolean needsBackfill(String minMagnitude, String syncedMinMagnitude) {
+        return !(parseMagnitude(minMagnitude) >= parseMagnitude(syncedMinMagnitude));
+    }
+
+    /** Returns the magnitude in a minmag value, or NaN if it is missing or isn't a number. */
+    static double parseMagnitude(String minMagnitude) {
+        if (minMagnitude == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(minMagnitude);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Splits changes into the ones to merge and the updates of events that fell below
+     * the given magnitude, which are to be dropped from the local store. Deleted events
+     * are merged whatever their magnitude. A NaN magnitude merges every change.
+     */
+    static void splitAt(double minMagnitude, List<Earthquake> changes, List<Earthquake> kept,
+                        List<Earthquake> dropped) {
+        for (Earthquake earthquake : changes) {
+            if (earthquake.isDeleted() || !(earthquake.getMagnitude() < minMagnitude)) {
+                kept.add(earthquake);
+            } else {
+                dropped.add(earthquake);
+            }
+        }
+    }
+
+    /** Returns deleted versions of the given events, to take them out of the archive. */
+    private static List<Earthquake> asDeleted(List<Earthquake> earthquakes) {
+        List<Earthquake> deleted = new ArrayList<>(earthquakes.size());
+        for (Earthquake earthquake : earthquakes) {
+            deleted.add(new Earthquake(earthquake.getId(), earthquake.getMagnitude(),
+                    earthquake.getLocation(), earthquake.getTimeInMilliseconds(), earthquake.getUrl(),
+                    earthquake.getLatitude(), earthquake.getLongitude(), earthquake.getDepth(),
+                    earthquake.getUpdatedInMilliseconds(), true));
+        }
+        return deleted;
+    }
+
+    /** Returns the latest update time among the given earthquakes, or since if none is later. */
+    private static long newestUpdated(List<Earthquake> earthquakes, long since) {
+        long newest = since;
+        for (Earthquake earthquake : earthquakes) {
+            newest = Math.max(newest, earthquake.getUpdatedInMilliseconds());
+        }
+        return newest;
+    }
+
+    /** Returns the query URL the first sync splits into time windows. */
+    private static String buildBackfillUrl(String minMagnitude) {
+        return Uri.parse(EarthquakeActivity.USGS_REQUEST_URL).buildUpon()
+                .appendQueryParameter("format", "geojson")
+                .appendQueryParameter("minmag", minMagnitude)
+                .appendQueryParameter("orderby", "time")
+                .toString();
+    }
+
+    /** Returns the query URL for one page of events of any magnitude updated after the given time. */
+    private static String buildDeltaUrl(long updatedAfter, int offset) {
+        return Uri.parse(EarthquakeActivity.USGS_REQUEST_URL).buildUpon()
+                .appendQueryParameter("format", "geojson")
+                .appendQueryParameter("updatedafter", QueryUtils.formatIsoTime(updatedAfter))
+                .appendQueryParameter("includedeleted", "true")
+                .appendQueryParameter("orderby", "time")
+                .appendQueryParameter("offset", String.valueOf(offset))
+                .appendQueryParameter("limit", String.valueOf(SYNC_PAGE_SIZE))
+                .toString();
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * {@link EventIndex} answers minmag/orderby queries over the local event store kept by
+ * {@link EarthquakeSyncTask}, so a settings change doesn't need a network round trip.
+ *
+ * The events are held newest first, which is the time order. On top of that:
+ * <ul>
+ *   <li>every event position sorted by magnitude, strongest first, so a magnitude
+ *   threshold is one binary search and either magnitude order is a slice of it;</li>
+ *   <li>event positions bucketed by tenth of magnitude, newest first within a bucket,
+ *   so the events above a threshold come out in time order by merging the buckets
+ *   above it.</li>
+ * </ul>
+ * Either way a page of k results costs O(log n + k) and nothing is re-sorted per query.
+ *
+ * One index is shared by the whole process and rebuilt after sync changes the store.
+ */
+final class EventIndex {
+
+    /** Lowest magnitude bucket, in tenths; weaker events share it */
+    private static final int MIN_BUCKET_KEY = -20;
+
+    /** Highest magnitude bucket, in tenths; stronger events share it */
+    private static final int MAX_BUCKET_KEY = 100;
+
+    /** Guards {@link #sIndex} */
+    private static final Object sLock = new Object();
+
+    /** Index over the current local event store, or null until it is next needed */
+    private static EventIndex sIndex;
+
+    /** The events, newest first */
+    private final EarthquakeStore mEvents;
+
+    /** Event positions, strongest first; equally strong events newest first */
+    private final int[] mByMagnitude;
+
+    /** Magnitude of each entry of {@link #mByMagnitude}, for binary searches */
+    private final double[] mSortedMagnitudes;
+
+    /** Where each bucket starts in {@link #mBucketPositions}; the last entry is its length */
+    private final int[] mBucketStarts;
+
+    /** Event positions grouped by bucket, newest first within each */
+    private final int[] mBucketPositions;
+
+    /** Built on first use */
+    private SpatialIndex mSpatialIndex;
+
+    /**
+     * Returns the index over the local event store, building it if the store changed
+     * since it was last built. Must be called off the main thread.
+     */
+    static EventIndex get(EarthquakeCache cache) {
+        synchronized (sLock) {
+            if (sIndex == null) {
+                sIndex = new EventIndex(cache.readEvents());
+            }
+            return sIndex;
+        }
+    }
+
+    /** Drops the shared index after the local event store changed. */
+    static void invalidate() {
+        synchronized (sLock) {
+            sIndex = null;
+        }
+    }
+
+    /**
+     * Builds an index over the given events.
+     * @param events are the events to index, newest first
+     */
+    EventIndex(final EarthquakeStore events) {
+        mEvents = events;
+        int size = events.size();
+
+        // Sort once by magnitude; ties keep time order because the sort is stable
+        Integer[] byMagnitude = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            byMagnitude[i] = i;
+        }
+        Arrays.sort(byMagnitude, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(events.getMagnitude(b), events.getMagnitude(a));
+            }
+        });
+        mByMagnitude = new int[size];
+        mSortedMagnitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            mByMagnitude[i] = byMagnitude[i];
+            mSortedMagnitudes[i] = events.getMagnitude(byMagnitude[i]);
+        }
+
+        // Bucket by tenth of magnitude, counting first; positions go in ascending, i.e. newest first
+        int bucketCount = MAX_BUCKET_KEY - MIN_BUCKET_KEY + 1;
+        int[] buckets = new int[size];
+        mBucketStarts = new int[bucketCount + 1];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = bucketOf(events.getMagnitude(i));
+            mBucketStarts[buckets[i] + 1]++;
+        }
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            mBucketStarts[bucket + 1] += mBucketStarts[bucket];
+        }
+        mBucketPositions = new int[size];
+        int[] next = Arrays.copyOf(mBucketStarts, bucketCount);
+        for (int i = 0; i < size; i++) {
+            mBucketPositions[next[buckets[i]]++] = i;
+        }
+    }
+
+    /** Returns the number of events in the index. */
+    int size() {
+        return mEvents.size();
+    }
+
+    /** Returns a spatial index over the same events, building it on first use. */
+    synchronized SpatialIndex getSpatialIndex() {
+        if (mSpatialIndex == null) {
+            mSpatialIndex = new SpatialIndex(mEvents);
+        }
+        return mSpatialIndex;
+    }
+
+    /**
+     * Returns one page of the events at or above a magnitude that happened since a
+     * given time, in the given order, the way USGS would answer the same query.
+     * @param minMagnitude is the minmag threshold
+     * @param orderBy is an FDSN orderby value
+     * @param since is the earliest time included, in milliseconds
+     * @param offset is the number of matching events to skip
+     * @param limit is the most events to return
+     */
+    List<Earthquake> query(double minMagnitude, String orderBy, long since, int offset, int limit) {
+        int end = firstOlderThan(since);
+        switch (orderBy) {
+            case "magnitude":
+            case "magnitude-asc":
+                return queryByMagnitude(minMagnitude, "magnitude-asc".equals(orderBy), end, offset, limit);
+            default:
+                return queryByTime(minMagnitude, "time-asc".equals(orderBy), end, offset, limit);
+        }
+    }
+
+    /** Pages through the slice of the magnitude order at or above the threshold. */
+    private List<Earthquake> queryByMagnitude(double minMagnitude, boolean ascending, int end,
+                                              int offset, int limit) {
+        // Entries [0, count) of the strongest-first order are at or above the threshold
+        int count = countAtLeast(minMagnitude);
+        List<Earthquake> page = new ArrayList<>(Math.min(limit, count));
+        int skipped = 0;
+        for (int i = 0; i < count && page.size() < limit; i++) {
+            int position = mByMagnitude[ascending ? count - 1 - i : i];
+            // The event store is trimmed to the window by sync, so this rarely skips
+            if (position >= end) {
+                continue;
+            }
+            if (skipped++ >= offset) {
+                page.add(mEvents.get(position));
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Merges the buckets at or above the threshold in time order. Each bucket is
+     * already in time order, so this is a merge over a few dozen cursors at most.
+     */
+    private List<Earthquake> queryByTime(double minMagnitude, boolean ascending, int end,
+                                         int offset, int limit) {
+        int firstBucket = bucketOf(minMagnitude);
+        int bucketCount = mBucketStarts.length - 1;
+
+        // One cursor per non-empty bucket, limited to events since the cutoff
+        int[] cursors = new int[bucketCount - firstBucket];
+        int[] stops = new int[cursors.length];
+        int cursorCount = 0;
+        for (int bucket = firstBucket; bucket < bucketCount; bucket++) {
+            int from = mBucketStarts[bucket];
+            int to = lowerBound(mBucketPositions, from, mBucketStarts[bucket + 1], end);
+            if (from < to) {
+                cursors[cursorCount] = ascending ? to - 1 : from;
+                stops[cursorCount] = ascending ? from - 1 : to;
+                cursorCount++;
+            }
+        }
+
+        List<Earthquake> page = new ArrayList<>(limit);
+        int skipped = 0;
+        while (page.size() < limit) {
+            // Pick the newest (or oldest) head among the buckets
+            int best = -1;
+            for (int c = 0; c < cursorCount; c++) {
+                if (cursors[c] == stops[c]) {
+                    continue;
+                }
+                if (best < 0 || (ascending
+                        ? mBucketPositions[cursors[c]] > mBucketPositions[cursors[best]]
+                        : mBucketPositions[cursors[c]] < mBucketPositions[cursors[best]])) {
+                    best = c;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            int position = mBucketPositions[cursors[best]];
+            cursors[best] += ascending ? -1 : 1;
+
+            // Only the threshold's own bucket can hold events below it
+            if (mEvents.getMagnitude(position) < minMagnitude) {
+                continue;
+            }
+            if (skipped++ >= offset) {
+                page.add(mEvents.get(position));
+            }
+        }
+        return page;
+    }
+
+    /** Returns the number of events at or above the given magnitude. */
+    private int countAtLeast(double minMagnitude) {
+        // The magnitudes are sorted descending, so search for the first one below
+        int low = 0;
+        int high = mSortedMagnitudes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mSortedMagnitudes[middle] >= minMagnitude) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** Returns the position of the first event older than the given time. */
+    private int firstOlderThan(long since) {
+        int low = 0;
+        int high = mEvents.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mEvents.getTimeInMilliseconds(middle) >= since) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** Returns the first index in [from, to) of the sorted array holding a value >= key. */
+    private static int lowerBound(int[] values, int from, int to, int key) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (values[middle] < key) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
+    /** Returns the bucket of a magnitude, by tenth, counted from {@link #MIN_BUCKET_KEY}. */
+    private static int bucketOf(double magnitude) {
+        int key = (int) Math.floor(magnitude * 10);
+        return Math.min(MAX_BUCKET_KEY, Math.max(MIN_BUCKET_KEY, key)) - MIN_BUCKET_KEY;
+    }
+}
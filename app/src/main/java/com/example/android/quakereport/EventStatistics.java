@@ -0,0 +1,384 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link EventStatistics} keeps summary statistics of the local event store up to date
+ * as events are written, so reading them never scans the events:
+ * <ul>
+ *   <li>the number of events per magnitude bucket, the same buckets that pick the
+ *   magnitude circle colors;</li>
+ *   <li>the number of events per hour and per day, in rings that cover the last
+ *   {@link #RING_DAYS} days;</li>
+ *   <li>the number of events and the strongest magnitude per region, where the region
+ *   is the last part of the place, i.e. "CA" for "10km NE of Ridgecrest, CA".</li>
+ * </ul>
+ * Each event's contribution is remembered by id, so an update takes back what the
+ * previous version added and a delete takes back all of it. Every insert, update or
+ * delete costs O(1). Strongest magnitudes are kept as counts per tenth of magnitude,
+ * so the strongest one is found again in a bounded number of steps when it goes away.
+ *
+ * One instance is shared by the whole process. It is filled from the store once, on
+ * first use, and from then on {@link EarthquakeCache} reports every committed write to
+ * it. Applying a write twice changes nothing, so a write that lands while the store is
+ * being read is safe. All methods are thread-safe.
+ */
+final class EventStatistics {
+
+    /** Days covered by the hourly and daily rings; the store holds 30 */
+    static final int RING_DAYS = 32;
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    /** Lowest tenth-of-magnitude key; weaker events share it */
+    private static final int MIN_MAGNITUDE_KEY = -20;
+
+    /** Highest tenth-of-magnitude key; stronger events share it */
+    private static final int MAX_MAGNITUDE_KEY = 100;
+
+    /** Guards {@link #sStatistics} */
+    private static final Object sLock = new Object();
+
+    /** Statistics of the local event store, or null until they are first needed */
+    private static EventStatistics sStatistics;
+
+    /** What each event added, by id */
+    private final Map<String, Contribution> mContributions = new HashMap<>();
+
+    /** Events per magnitude bucket, as picked by {@link EarthquakeFormatter#magnitudeBucket(double)} */
+    private final int[] mMagnitudeCounts = new int[EarthquakeFormatter.MAGNITUDE_BUCKET_COUNT];
+
+    /** Events in the whole store, counted by tenth of magnitude */
+    private final MagnitudeCounts mAllMagnitudes = new MagnitudeCounts();
+
+    /** Events per hour and per day */
+    private final TimeRing mHours = new TimeRing(RING_DAYS * 24, HOUR_MILLIS);
+    private final TimeRing mDays = new TimeRing(RING_DAYS, DAY_MILLIS);
+
+    /** Events per region */
+    private final Map<String, MagnitudeCounts> mRegions = new HashMap<>();
+
+    /**
+     * Returns the statistics of the local event store, reading the store if this is
+     * the first call in the process. Must be called off the main thread.
+     */
+    static EventStatistics get(EarthquakeCache cache) {
+        synchronized (sLock) {
+            if (sStatistics == null) {
+                EventStatistics statistics = new EventStatistics();
+                statistics.addAll(cache.readEvents());
+                sStatistics = statistics;
+            }
+            return sStatistics;
+        }
+    }
+
+    /**
+     * Applies events the store just wrote, each replacing its previous version. Does
+     * nothing until the statistics are first needed, since they then read the store.
+     */
+    static void onEventsWritten(List<Earthquake> earthquakes) {
+        synchronized (sLock) {
+            if (sStatistics != null) {
+                sStatistics.putAll(earthquakes);
+            }
+        }
+    }
+
+    /** Applies events the store just deleted. */
+    static void onEventsDeleted(List<String> ids) {
+        synchronized (sLock) {
+            if (sStatistics != null) {
+                sStatistics.removeAll(ids);
+            }
+        }
+    }
+
+    /** Applies the store dropping every event that happened before the given time. */
+    static void onEventsDeletedBefore(long timeInMilliseconds) {
+        synchronized (sLock) {
+            if (sStatistics != null) {
+                sStatistics.removeEventsBefore(timeInMilliseconds);
+            }
+        }
+    }
+
+    /** Adds every event of a store. */
+    synchronized void addAll(EarthquakeStore events) {
+        for (int i = 0; i < events.size(); i++) {
+            put(events.getId(i), events.getMagnitude(i), events.getTimeInMilliseconds(i),
+                    regionOf(events.getLocation(i)));
+        }
+    }
+
+    /** Adds every event in the list, each replacing its previous version. */
+    synchronized void putAll(List<Earthquake> earthquakes) {
+        for (int i = 0; i < earthquakes.size(); i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            put(earthquake.getId(), earthquake.getMagnitude(), earthquake.getTimeInMilliseconds(),
+                    regionOf(earthquake.getLocation()));
+        }
+    }
+
+    /** Removes the events with the given ids. */
+    synchronized void removeAll(List<String> ids) {
+        for (int i = 0; i < ids.size(); i++) {
+            Contribution previous = mContributions.remove(ids.get(i));
+            if (previous != null) {
+                subtract(previous);
+            }
+        }
+    }
+
+    /**
+     * Removes the events that happened before the given time, as the store does once
+     * per sync. This is the one pass over every event.
+     */
+    synchronized void removeEventsBefore(long timeInMilliseconds) {
+        Iterator<Map.Entry<String, Contribution>> iterator = mContributions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Contribution contribution = iterator.next().getValue();
+            if (contribution.mTime < timeInMilliseconds) {
+                subtract(contribution);
+                iterator.remove();
+            }
+        }
+    }
+
+    /** Returns the number of events in the store. */
+    synchronized int getEventCount() {
+        return mContributions.size();
+    }
+
+    /** Returns the number of events in a magnitude bucket, as picked for the circle colors. */
+    synchronized int getMagnitudeBucketCount(int bucket) {
+        return mMagnitudeCounts[bucket];
+    }
+
+    /** Returns the number of events in the hour that holds the given time. */
+    synchronized int getEventsInHour(long timeInMilliseconds) {
+        return mHours.get(timeInMilliseconds);
+    }
+
+    /** Returns the number of events on the UTC day that holds the given time. */
+    synchronized int getEventsOnDay(long timeInMilliseconds) {
+        return mDays.get(timeInMilliseconds);
+    }
+
+    /**
+     * Returns the strongest magnitude in a region, to a tenth, or NaN if the store has
+     * no events there.
+     */
+    synchronized double getMaxMagnitude(String region) {
+        MagnitudeCounts counts = mRegions.get(region);
+        return counts == null ? Double.NaN : counts.getMax();
+    }
+
+    /** Returns the number of events in a region. */
+    synchronized int getRegionCount(String region) {
+        MagnitudeCounts counts = mRegions.get(region);
+        return counts == null ? 0 : counts.mCount;
+    }
+
+    /** Returns every region with at least one event, in no particular order. */
+    synchronized List<String> getRegions() {
+        return new ArrayList<>(mRegions.keySet());
+    }
+
+    /**
+     * Returns the figures of the summary header as of the given time. This doesn't
+     * depend on the number of events.
+     */
+    synchronized Summary getSummary(long now) {
+        int lastDay = 0;
+        for (int hour = 0; hour < 24; hour++) {
+            lastDay += mHours.get(now - hour * HOUR_MILLIS);
+        }
+        return new Summary(mContributions.size(), lastDay, mAllMagnitudes.getMax(),
+                mMagnitudeCounts.clone());
+    }
+
+    /** Returns the region of a place: the part after its last comma, or its primary location. */
+    static String regionOf(String place) {
+        int comma = place.lastIndexOf(',');
+        if (comma >= 0) {
+            return place.substring(comma + 1).trim();
+        }
+        int separator = place.indexOf(" of ");
+        return separator >= 0 ? place.substring(separator + " of ".length()) : place;
+    }
+
+    /** Adds an event, first taking back its previous version if there is one. */
+    private void put(String id, double magnitude, long time, String region) {
+        Contribution contribution = new Contribution(magnitude, time, region);
+        Contribution previous = mContributions.put(id, contribution);
+        if (previous != null) {
+            subtract(previous);
+        }
+        mMagnitudeCounts[EarthquakeFormatter.magnitudeBucket(magnitude)]++;
+        mAllMagnitudes.add(contribution.mMagnitudeKey, 1);
+        mHours.add(time, 1);
+        mDays.add(time, 1);
+        MagnitudeCounts regionCounts = mRegions.get(region);
+        if (regionCounts == null) {
+            regionCounts = new MagnitudeCounts();
+            mRegions.put(region, regionCounts);
+        }
+        regionCounts.add(contribution.mMagnitudeKey, 1);
+    }
+
+    /** Takes back everything an event added. */
+    private void subtract(Contribution contribution) {
+        mMagnitudeCounts[EarthquakeFormatter.magnitudeBucket(contribution.mMagnitude)]--;
+        mAllMagnitudes.add(contribution.mMagnitudeKey, -1);
+        mHours.add(contribution.mTime, -1);
+        mDays.add(contribution.mTime, -1);
+        MagnitudeCounts regionCounts = mRegions.get(contribution.mRegion);
+        regionCounts.add(contribution.mMagnitudeKey, -1);
+        if (regionCounts.mCount == 0) {
+            mRegions.remove(contribution.mRegion);
+        }
+    }
+
+    /** Returns the tenth-of-magnitude key a magnitude is counted under, as it is shown. */
+    private static int magnitudeKey(double magnitude) {
+        if (Double.isNaN(magnitude)) {
+            return MIN_MAGNITUDE_KEY;
+        }
+        long key = Math.round(magnitude * 10);
+        return (int) Math.max(MIN_MAGNITUDE_KEY, Math.min(MAX_MAGNITUDE_KEY, key));
+    }
+
+    /**
+     * Figures shown in the summary header, copied out so they can be handed to the UI.
+     */
+    static final class Summary {
+        private final int mEventCount;
+        private final int mEventsInLastDay;
+        private final double mMaxMagnitude;
+        private final int[] mMagnitudeBucketCounts;
+
+        Summary(int eventCount, int eventsInLastDay, double maxMagnitude, int[] magnitudeBucketCounts) {
+            mEventCount = eventCount;
+            mEventsInLastDay = eventsInLastDay;
+            mMaxMagnitude = maxMagnitude;
+            mMagnitudeBucketCounts = magnitudeBucketCounts;
+        }
+
+        int getEventCount() {
+            return mEventCount;
+        }
+
+        /** Returns the number of events in the last 24 hours, counted by whole hours. */
+        int getEventsInLastDay() {
+            return mEventsInLastDay;
+        }
+
+        /** Returns the strongest magnitude, to a tenth, or NaN if there are no events. */
+        double getMaxMagnitude() {
+            return mMaxMagnitude;
+        }
+
+        /** Returns the number of events in a magnitude bucket, as picked for the circle colors. */
+        int getMagnitudeBucketCount(int bucket) {
+            return mMagnitudeBucketCounts[bucket];
+        }
+    }
+
+    /** What one event added to the statistics. */
+    private static final class Contribution {
+        final double mMagnitude;
+        final int mMagnitudeKey;
+        final long mTime;
+        final String mRegion;
+
+        Contribution(double magnitude, long time, String region) {
+            mMagnitude = magnitude;
+            mMagnitudeKey = magnitudeKey(magnitude);
+            mTime = time;
+            mRegion = region;
+        }
+    }
+
+    /**
+     * Event counts per tenth of magnitude, which keep track of the strongest one.
+     * Finding the next strongest after a removal walks at most every key once.
+     */
+    private static final class MagnitudeCounts {
+        private final int[] mCounts = new int[MAX_MAGNITUDE_KEY - MIN_MAGNITUDE_KEY + 1];
+        private int mCount;
+        private int mMaxKey = MIN_MAGNITUDE_KEY - 1;
+
+        void add(int key, int delta) {
+            mCounts[key - MIN_MAGNITUDE_KEY] += delta;
+            mCount += delta;
+            if (delta > 0 && key > mMaxKey) {
+                mMaxKey = key;
+            } else if (delta < 0 && key == mMaxKey) {
+                while (mMaxKey >= MIN_MAGNITUDE_KEY && mCounts[mMaxKey - MIN_MAGNITUDE_KEY] == 0) {
+                    mMaxKey--;
+                }
+            }
+        }
+
+        /** Returns the strongest magnitude, to a tenth, or NaN if there are no events. */
+        double getMax() {
+            return mMaxKey < MIN_MAGNITUDE_KEY ? Double.NaN : mMaxKey / 10.0;
+        }
+    }
+
+    /**
+     * Event counts per period, in a ring of slots that each remember which period they
+     * count. A slot is taken over by a later period once the ring has gone round, so
+     * periods older than the ring read as 0.
+     */
+    private static final class TimeRing {
+        private final long mPeriodMillis;
+        private final long[] mPeriods;
+        private final int[] mCounts;
+
+        TimeRing(int size, long periodMillis) {
+            mPeriodMillis = periodMillis;
+            mPeriods = new long[size];
+            mCounts = new int[size];
+            Arrays.fill(mPeriods, Long.MIN_VALUE);
+        }
+
+        void add(long timeInMilliseconds, int delta) {
+            long period = floorDiv(timeInMilliseconds, mPeriodMillis);
+            int slot = slotOf(period);
+            if (mPeriods[slot] != period) {
+                if (delta < 0 || period < mPeriods[slot]) {
+                    // Counted in a period the ring has moved past, or too old to count
+                    return;
+                }
+                mPeriods[slot] = period;
+                mCounts[slot] = 0;
+            }
+            mCounts[slot] += delta;
+        }
+
+        int get(long timeInMilliseconds) {
+            long period = floorDiv(timeInMilliseconds, mPeriodMillis);
+            int slot = slotOf(period);
+            return mPeriods[slot] == period ? mCounts[slot] : 0;
+        }
+
+        private int slotOf(long period) {
+            int slot = (int) (period % mPeriods.length);
+            return slot < 0 ? slot + mPeriods.length : slot;
+        }
+
+        /** Math.floorDiv, which needs API 24. */
+        private static long floorDiv(long x, long y) {
+            long quotient = x / y;
+            return (x % y != 0 && (x < 0) != (y < 0)) ? quotient - 1 : quotient;
+        }
+    }
+}
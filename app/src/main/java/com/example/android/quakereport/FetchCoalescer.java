@@ -0,0 +1,168 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Makes sure only one request for a given URL is in flight at a time.
+ *
+ * The first caller for a URL sends the request; callers asking for the same URL while it
+ * is running wait for that response instead of sending their own. Each caller can give up
+ * through its own {@link FetchCancellation}. The request itself, HTTP read and parse
+ * included, is only aborted once every caller has given up on it.
+ */
+final class FetchCoalescer {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = FetchCoalescer.class.getSimpleName();
+
+    /** Requests in flight, by URL. Also guards the counters below. */
+    private static final Map<String, Fetch> sInFlight = new HashMap<>();
+
+    /** Number of requests actually sent */
+    private static int sFetchCount;
+
+    /** Number of callers that shared a request already in flight instead of sending one */
+    private static int sCoalescedCount;
+
+    /** Number of requests aborted because every caller gave up on them */
+    private static int sAbortedCount;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link FetchCoalescer}
+     * object. This class only holds static methods.
+     */
+    private FetchCoalescer() {
+    }
+
+    /**
+     * Query USGS dataset like {@link QueryUtils#fetchEarthquakeData(String, QueryResult)},
+     * sharing the response with anyone else asking for the same URL at the same time.
+     * @param requestUrl to query
+     * @param previous is the stored response for the same URL, or null
+     * @param cancellation lets the caller give up on the response
+     * @return the current response, or null if the request failed or the caller gave up
+     */
+    static QueryResult fetchEarthquakeData(String requestUrl, QueryResult previous,
+                                           FetchCancellation cancellation) {
+        final Fetch fetch;
+        boolean sender;
+        synchronized (sInFlight) {
+            Fetch inFlight = sInFlight.get(requestUrl);
+            // A request everyone gave up on is being aborted, so don't join it
+            sender = inFlight == null || inFlight.mCallers == 0;
+            if (sender) {
+                fetch = new Fetch();
+                sInFlight.put(requestUrl, fetch);
+                sFetchCount++;
+            } else {
+                fetch = inFlight;
+                sCoalescedCount++;
+                Log.d(LOG_TAG, "Sharing the request in flight, " + sCoalescedCount
+                        + " shared so far: " + requestUrl);
+            }
+            fetch.mCallers++;
+        }
+
+        cancellation.setOnCancelListener(new Runnable() {
+            @Override
+            public void run() {
+                fetch.leave();
+            }
+        });
+
+        try {
+            if (!sender) {
+                return fetch.await(cancellation);
+            }
+
+            QueryResult result = null;
+            try {
+                result = QueryUtils.fetchEarthquakeData(requestUrl, previous, fetch.mCancellation);
+            } finally {
+                synchronized (sInFlight) {
+                    if (sInFlight.get(requestUrl) == fetch) {
+                        sInFlight.remove(requestUrl);
+                    }
+                }
+                fetch.complete(result);
+            }
+            return cancellation.isCanceled() ? null : result;
+        } finally {
+            cancellation.setOnCancelListener(null);
+        }
+    }
+
+    /** Returns the number of requests actually sent. */
+    static int getFetchCount() {
+        synchronized (sInFlight) {
+            return sFetchCount;
+        }
+    }
+
+    /** Returns the number of requests avoided by sharing one already in flight. */
+    static int getCoalescedCount() {
+        synchronized (sInFlight) {
+            return sCoalescedCount;
+        }
+    }
+
+    /** Returns the number of requests aborted because nobody wanted them any more. */
+    static int getAbortedCount() {
+        synchronized (sInFlight) {
+            return sAbortedCount;
+        }
+    }
+
+    /** One request in flight and the callers waiting for it. */
+    private static final class Fetch {
+        /** Aborts the request once no caller wants it */
+        final FetchCancellation mCancellation = new FetchCancellation();
+
+        /** Callers that haven't given up yet, guarded by sInFlight */
+        int mCallers;
+
+        private boolean mDone;
+        private QueryResult mResult;
+
+        /** Called when a caller gives up; aborts the request if it was the last one. */
+        void leave() {
+            boolean abort;
+            synchronized (sInFlight) {
+                abort = --mCallers == 0;
+            }
+            synchronized (this) {
+                abort &= !mDone;
+                // Wake a waiting caller so it can notice it was cancelled
+                notifyAll();
+            }
+            if (abort) {
+                synchronized (sInFlight) {
+                    sAbortedCount++;
+                }
+                mCancellation.cancel();
+            }
+        }
+
+        synchronized void complete(QueryResult result) {
+            mDone = true;
+            mResult = result;
+            notifyAll();
+        }
+
+        /** Waits for the response, returning null if the caller gives up first. */
+        synchronized QueryResult await(FetchCancellation cancellation) {
+            while (!mDone && !cancellation.isCanceled()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            return cancellation.isCanceled() ? null : mResult;
+        }
+    }
+}
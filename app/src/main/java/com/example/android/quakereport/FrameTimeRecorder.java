@@ -0,0 +1,55 @@
+package com.example.android.quakereport;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.view.Choreographer;
+
+/**
+ * Records the interval between frames into {@link Metrics#FRAME} while a list scrolls.
+ * At 60 fps every interval is about 16.7 ms; longer ones are dropped frames.
+ *
+ * Nothing is posted to the {@link Choreographer} while the list is idle or while
+ * {@link Metrics} are disabled, so an idle list costs nothing.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+final class FrameTimeRecorder extends RecyclerView.OnScrollListener
+        implements Choreographer.FrameCallback {
+
+    /* Frame time of the previous frame while scrolling, or 0 before the first one */
+    private long mLastFrameNanos;
+
+    /* True while a frame callback is posted */
+    private boolean mRunning;
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            stop();
+        } else if (!mRunning && Metrics.isEnabled()) {
+            mRunning = true;
+            mLastFrameNanos = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) {
+            return;
+        }
+        if (mLastFrameNanos != 0) {
+            Metrics.FRAME.recordMicros((frameTimeNanos - mLastFrameNanos) / 1000);
+        }
+        mLastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /** Stops recording, i.e. when the list stops scrolling or goes away. */
+    void stop() {
+        if (mRunning) {
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+}
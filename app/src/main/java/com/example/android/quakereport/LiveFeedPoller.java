@@ -0,0 +1,184 @@
+package com.example.android.quakereport;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Polls a USGS summary feed, such as the one of every earthquake in the last hour,
+ * and reports the events that are new or were updated since the previous poll.
+ *
+ * USGS regenerates the summary feeds about once a minute, so that is how often we
+ * ask. Every poll after the first is a conditional request, which costs a 304 and no
+ * parsing when the feed didn't change. Each poll that brings nothing new doubles the
+ * interval, up to {@link #MAX_INTERVAL_MILLIS}, and the first change drops it back.
+ * The owner stops the poller while the app is in the background; background sync
+ * covers that time.
+ *
+ * {@link #start()} and {@link #stop()} must be called on the main thread, and the
+ * listener is called there. The feed URL can point at a local feed server.
+ */
+final class LiveFeedPoller {
+
+    /**
+     * Receives the events that changed in the feed.
+     */
+    interface Listener {
+        /**
+         * Called on the main thread with every event that is new or was updated
+         * since the previous poll.
+         */
+        void onEarthquakesChanged(List<Earthquake> earthquakes);
+    }
+
+    /** USGS summary feed of every earthquake in the last hour */
+    static final String ALL_HOUR_FEED_URL =
+            BuildConfig.USGS_BASE_URL + "/earthquakes/feed/v1.0/summary/all_hour.geojson";
+
+    /** Shortest time between polls; USGS updates the feeds about once a minute */
+    static final long MIN_INTERVAL_MILLIS = 60 * 1000;
+
+    /** Longest time between polls while nothing changes */
+    static final long MAX_INTERVAL_MILLIS = 15 * 60 * 1000;
+
+    /* Thread that runs the polls, shared by every poller */
+    private static final Executor POLL_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /* Feed to poll */
+    private final String mFeedUrl;
+
+    /* Receives the changes */
+    private final Listener mListener;
+
+    /* Schedules polls and calls the listener; created on start, so poll() runs without a looper */
+    private Handler mMainHandler;
+
+    /* Last response of the feed, for conditional requests; only touched by POLL_EXECUTOR */
+    private QueryResult mPrevious;
+
+    /* Update time of every event seen in the feed, by id; only touched by POLL_EXECUTOR */
+    private Map<String, Long> mSeenUpdates = new HashMap<>();
+
+    /* Time until the next poll */
+    private long mIntervalMillis = MIN_INTERVAL_MILLIS;
+
+    /* Incremented on every start and stop, so polls from an earlier run are dropped */
+    private int mGeneration;
+
+    /* True between start() and stop() */
+    private boolean mRunning;
+
+    private final Runnable mPollRunnable = new Runnable() {
+        @Override
+        public void run() {
+            pollInBackground(mGeneration);
+        }
+    };
+
+    /**
+     * Constructs a new {@link LiveFeedPoller}.
+     * @param feedUrl is the GeoJSON summary feed to poll
+     * @param listener receives the changes
+     */
+    LiveFeedPoller(String feedUrl, Listener listener) {
+        mFeedUrl = feedUrl;
+        mListener = listener;
+    }
+
+    /** Polls right away and then keeps polling until {@link #stop()}. */
+    void start() {
+        if (mRunning) {
+            return;
+        }
+        if (mMainHandler == null) {
+            mMainHandler = new Handler(Looper.getMainLooper());
+        }
+        mRunning = true;
+        mGeneration++;
+        mIntervalMillis = MIN_INTERVAL_MILLIS;
+        mMainHandler.post(mPollRunnable);
+    }
+
+    /** Stops polling. A poll in flight finishes, but its changes are dropped. */
+    void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        mGeneration++;
+        mMainHandler.removeCallbacks(mPollRunnable);
+    }
+
+    boolean isRunning() {
+        return mRunning;
+    }
+
+    /** Returns the time until the next poll. */
+    long getIntervalMillis() {
+        return mIntervalMillis;
+    }
+
+    /** Main thread. Runs one poll on the poll thread and schedules the next one. */
+    private void pollInBackground(final int generation) {
+        POLL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Earthquake> changes = poll();
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Stopped, and maybe started again, while this poll ran
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        if (changes != null && !changes.isEmpty()) {
+                            mIntervalMillis = MIN_INTERVAL_MILLIS;
+                            mListener.onEarthquakesChanged(changes);
+                        } else {
+                            // Nothing new or the feed couldn't be reached, so ask less often
+                            mIntervalMillis = Math.min(mIntervalMillis * 2, MAX_INTERVAL_MILLIS);
+                        }
+                        mMainHandler.postDelayed(mPollRunnable, mIntervalMillis);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Fetches the feed once and returns the events that are new or were updated since
+     * the previous poll. Must be called off the main thread, one call at a time.
+     * @return the changed events, which is empty if the feed didn't change, or null if
+     * the feed couldn't be fetched
+     */
+    List<Earthquake> poll() {
+        QueryResult result = QueryUtils.fetchEarthquakeData(mFeedUrl, mPrevious);
+        if (result == null) {
+            return null;
+        }
+        mPrevious = result;
+        if (result.isNotModified()) {
+            return new ArrayList<>();
+        }
+
+        List<Earthquake> changes = new ArrayList<>();
+        Map<String, Long> seenUpdates = new HashMap<>();
+        for (Earthquake earthquake : result.getEarthquakes()) {
+            Long seen = mSeenUpdates.get(earthquake.getId());
+            long updated = earthquake.getUpdatedInMilliseconds();
+            if (seen == null || seen < updated) {
+                changes.add(earthquake);
+            }
+            seenUpdates.put(earthquake.getId(), updated);
+        }
+        // Only remember what is still in the feed, so the map stays the feed's size
+        mSeenUpdates = seenUpdates;
+        return changes;
+    }
+}
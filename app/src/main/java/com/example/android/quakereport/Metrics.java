@@ -0,0 +1,316 @@
+package com.example.android.quakereport;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process registry of timings and counts along the fetch, parse and render pipeline,
+ * so a report of "slow loading" can be pinned on a stage.
+ *
+ * Every stage has a fixed {@link Histogram} of latencies or a {@link Counter}, created
+ * up front, so recording never looks anything up or allocates. When metrics are disabled,
+ * which is the default in release builds, {@link #start()} returns 0 and every record
+ * call returns after one volatile read.
+ *
+ * Run {@code adb shell dumpsys activity com.example.android.quakereport} to print the
+ * registry from {@link EarthquakeActivity}.
+ */
+public final class Metrics {
+
+    /** Whether anything is recorded */
+    private static volatile boolean sEnabled = BuildConfig.DEBUG;
+
+    /** Time spent opening the connection, DNS and TLS included */
+    public static final Histogram HTTP_CONNECT = new Histogram("http.connect");
+
+    /** Time from sending the request to having the response headers */
+    public static final Histogram HTTP_FIRST_BYTE = new Histogram("http.first_byte");
+
+    /** Time spent waiting on the network while reading one response body */
+    public static final Histogram HTTP_READ = new Histogram("http.read");
+
+    /** Time spent parsing one response, not counting the waits in {@link #HTTP_READ} */
+    public static final Histogram PARSE = new Histogram("parse");
+
+    /** Time one loader pass takes, whichever source answers it */
+    public static final Histogram LOAD = new Histogram("loader.load");
+
+    /** Time the adapter spends computing the difference between two lists */
+    public static final Histogram DIFF = new Histogram("adapter.diff");
+
+    /** Time the adapter spends binding one row */
+    public static final Histogram BIND = new Histogram("adapter.bind");
+
+    /** Time between frames while the list is scrolling */
+    public static final Histogram FRAME = new Histogram("list.frame");
+
+    /** Time from creating the activity to having rows to show, when they came from the snapshot */
+    public static final Histogram FIRST_ROWS_RESTORED = new Histogram("activity.first_rows.snapshot");
+
+    /** Time from creating the activity to having rows to show, when there was no snapshot */
+    public static final Histogram FIRST_ROWS_LOADED = new Histogram("activity.first_rows.loaded");
+
+    /** Bytes received over the wire, before decompression */
+    public static final Counter BYTES_RECEIVED = new Counter("http.bytes_received");
+
+    /** Earthquakes read off responses */
+    public static final Counter FEATURES_PARSED = new Counter("parse.features");
+
+    /** Pages answered by the index over the synced local event store */
+    public static final Counter LOCAL_INDEX_HITS = new Counter("loader.local_index_hits");
+
+    /** Pages answered by the in-memory {@link QueryCache} */
+    public static final Counter MEMORY_CACHE_HITS = new Counter("loader.memory_cache_hits");
+
+    /** Pages answered by a fresh copy in the on-disk cache */
+    public static final Counter DISK_CACHE_HITS = new Counter("loader.disk_cache_hits");
+
+    /** Pages delivered from a stale copy in the on-disk cache, then revalidated */
+    public static final Counter DISK_CACHE_STALE = new Counter("loader.disk_cache_stale");
+
+    /** Launches that showed the snapshot of the previous list first */
+    public static final Counter SNAPSHOT_RESTORES = new Counter("loader.snapshot_restores");
+
+    /** Pages USGS sent in full */
+    public static final Counter NETWORK_FETCHES = new Counter("loader.network_fetches");
+
+    /** Pages USGS confirmed with 304 Not Modified */
+    public static final Counter NOT_MODIFIED = new Counter("loader.not_modified");
+
+    private static final Histogram[] HISTOGRAMS = {
+            HTTP_CONNECT, HTTP_FIRST_BYTE, HTTP_READ, PARSE, LOAD, DIFF, BIND, FRAME,
+            FIRST_ROWS_RESTORED, FIRST_ROWS_LOADED
+    };
+
+    private static final Counter[] COUNTERS = {
+            BYTES_RECEIVED, FEATURES_PARSED, LOCAL_INDEX_HITS, MEMORY_CACHE_HITS,
+            DISK_CACHE_HITS, DISK_CACHE_STALE, SNAPSHOT_RESTORES, NETWORK_FETCHES, NOT_MODIFIED
+    };
+
+    /** Nanoseconds the current thread has spent waiting in {@link #HTTP_READ} so far */
+    private static final ThreadLocal<long[]> sReadNanos = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    /**
+     * Create a private constructor because no one should ever create a {@link Metrics} object.
+     * This class only holds the registry.
+     */
+    private Metrics() {
+    }
+
+    /** Returns true while timings and counts are being recorded. */
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /** Turns recording on or off. What was recorded so far is kept. */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /** Returns a start time for {@link Histogram#recordSince(long)}, or 0 while disabled. */
+    public static long start() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /** Adds to the time the current thread has spent waiting for response bytes. */
+    static void addReadNanos(long nanos) {
+        sReadNanos.get()[0] += nanos;
+    }
+
+    /** Returns the time the current thread has spent waiting for response bytes so far. */
+    static long getReadNanos() {
+        return sEnabled ? sReadNanos.get()[0] : 0;
+    }
+
+    /** Returns the histogram with the given name, or null if there is none. */
+    public static Histogram getHistogram(String name) {
+        for (Histogram histogram : HISTOGRAMS) {
+            if (histogram.getName().equals(name)) {
+                return histogram;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the counter with the given name, or null if there is none. */
+    public static Counter getCounter(String name) {
+        for (Counter counter : COUNTERS) {
+            if (counter.getName().equals(name)) {
+                return counter;
+            }
+        }
+        return null;
+    }
+
+    /** Clears every histogram and counter. */
+    public static void reset() {
+        for (Histogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+        for (Counter counter : COUNTERS) {
+            counter.reset();
+        }
+    }
+
+    /** Prints every histogram and counter, plus the {@link QueryCache} statistics. */
+    public static void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("Metrics (" + (sEnabled ? "enabled" : "disabled") + "), latencies in microseconds:");
+        for (Histogram histogram : HISTOGRAMS) {
+            writer.print(prefix);
+            writer.print("  ");
+            writer.println(histogram);
+        }
+        for (Counter counter : COUNTERS) {
+            writer.print(prefix);
+            writer.print("  ");
+            writer.println(counter);
+        }
+        writer.print(prefix);
+        writer.println("  query_cache hits=" + QueryCache.getHitCount()
+                + " superset_hits=" + QueryCache.getSupersetHitCount()
+                + " misses=" + QueryCache.getMissCount()
+                + " evictions=" + QueryCache.getEvictionCount());
+        writer.print(prefix);
+        writer.println("  fetch_coalescer sent=" + FetchCoalescer.getFetchCount()
+                + " shared=" + FetchCoalescer.getCoalescedCount()
+                + " aborted=" + FetchCoalescer.getAbortedCount());
+    }
+
+    /**
+     * Latency histogram with power-of-two buckets in microseconds: bucket b holds
+     * values from 2^(b-1) up to 2^b, so percentiles are accurate to a factor of two.
+     */
+    public static final class Histogram {
+        private static final int BUCKET_COUNT = 32;
+
+        private final String mName;
+        private final long[] mBuckets = new long[BUCKET_COUNT];
+        private long mCount;
+        private long mSumMicros;
+        private long mMaxMicros;
+
+        Histogram(String name) {
+            mName = name;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /** Records the time since a value returned by {@link Metrics#start()}. */
+        public void recordSince(long startNanos) {
+            recordSince(startNanos, 0);
+        }
+
+        /**
+         * Records the time since a value returned by {@link Metrics#start()}, minus time
+         * that belongs to another stage.
+         */
+        public void recordSince(long startNanos, long excludedNanos) {
+            if (startNanos == 0 || !sEnabled) {
+                return;
+            }
+            recordMicros((System.nanoTime() - startNanos - excludedNanos) / 1000);
+        }
+
+        /** Records a latency in microseconds. */
+        public synchronized void recordMicros(long micros) {
+            if (!sEnabled) {
+                return;
+            }
+            micros = Math.max(0, micros);
+            int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+            mBuckets[bucket]++;
+            mCount++;
+            mSumMicros += micros;
+            mMaxMicros = Math.max(mMaxMicros, micros);
+        }
+
+        public synchronized long getCount() {
+            return mCount;
+        }
+
+        public synchronized long getMeanMicros() {
+            return mCount == 0 ? 0 : mSumMicros / mCount;
+        }
+
+        public synchronized long getMaxMicros() {
+            return mMaxMicros;
+        }
+
+        /**
+         * Returns an upper bound of the given percentile in microseconds.
+         * @param percentile between 0 and 100
+         */
+        public synchronized long getPercentileMicros(double percentile) {
+            long rank = (long) Math.ceil(mCount * percentile / 100);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                seen += mBuckets[bucket];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(mMaxMicros, 1L << bucket);
+                }
+            }
+            return mMaxMicros;
+        }
+
+        synchronized void reset() {
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                mBuckets[bucket] = 0;
+            }
+            mCount = 0;
+            mSumMicros = 0;
+            mMaxMicros = 0;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return mName + " count=" + mCount + " mean=" + getMeanMicros()
+                    + " p50<=" + getPercentileMicros(50) + " p90<=" + getPercentileMicros(90)
+                    + " p99<=" + getPercentileMicros(99) + " max=" + mMaxMicros;
+        }
+    }
+
+    /** Running total of some quantity. */
+    public static final class Counter {
+        private final String mName;
+        private final AtomicLong mValue = new AtomicLong();
+
+        Counter(String name) {
+            mName = name;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public void add(long amount) {
+            if (sEnabled) {
+                mValue.addAndGet(amount);
+            }
+        }
+
+        public void increment() {
+            add(1);
+        }
+
+        public long get() {
+            return mValue.get();
+        }
+
+        void reset() {
+            mValue.set(0);
+        }
+
+        @Override
+        public String toString() {
+            return mName + "=" + mValue.get();
+        }
+    }
+}
@@ -1,22 +1,25 @@
 package com.example.android.quakereport;
 
-import android.text.TextUtils;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.google.gson.stream.MalformedJsonException;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
 
 /**
  * Helper methods related to requesting and receiving earthquake data from USGS.
@@ -24,9 +27,36 @@ import java.util.List;
 @SuppressWarnings("ALL")
 public final class QueryUtils {
 
+    /**
+     * Sees the earthquakes of every full response from USGS, such as an {@link AlertNotifier}.
+     */
+    interface ResponseListener {
+        /** Called on the thread that fetched the earthquakes, before they are returned. */
+        void onEarthquakesFetched(List<Earthquake> earthquakes);
+    }
+
     /** Tag for log messages */
     private static final String LOG_TAG = QueryUtils.class.getSimpleName();
 
+    /** Milliseconds to wait for a connection to USGS */
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+
+    /** Milliseconds to wait for each read from USGS */
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+
+    /** Times a request is sent at most before giving up */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /** Delay before the first retry, doubled for each one after it */
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+
+    /** Sends requests to USGS */
+    private static volatile HttpTransport sTransport = new UrlConnectionTransport(
+            CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS, MAX_ATTEMPTS, INITIAL_BACKOFF_MILLIS);
+
+    /** Sees every full response, or null */
+    private static volatile ResponseListener sResponseListener;
+
     /**
      * Create a private constructor because no one should ever create a {@link QueryUtils} object.
      * This class is only meant to hold static variables and methods, which can be accessed
@@ -35,8 +65,65 @@ public final class QueryUtils {
     private QueryUtils() {
     }
 
+    /**
+     * Replaces the transport used to reach USGS, for example with one pointed at a
+     * local mock server.
+     */
+    public static void setTransport(HttpTransport transport) {
+        sTransport = transport;
+    }
+
+    /**
+     * Sets who sees the earthquakes of every full response, whichever part of the app
+     * asked for them. Responses that were not modified are left out, as they were seen.
+     */
+    static void setResponseListener(ResponseListener listener) {
+        sResponseListener = listener;
+    }
+
+    /** Returns true if there is an active data network to reach USGS over. */
+    public static boolean isNetworkAvailable(Context context) {
+        // Get a reference to ConnectivityManager to check state of the network connectivity
+        ConnectivityManager connMgr = (ConnectivityManager)
+                context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connMgr == null) {
+            return false;
+        }
+
+        // Get details on currently active default data network
+        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
     /** Query USGS dataset and return list of {@link Earthquake} objects. */
     public static List<Earthquake> fetchEarthquakeData(String requestUrl) {
+        QueryResult result = fetchEarthquakeData(requestUrl, null);
+        return result == null ? null : result.getEarthquakes();
+    }
+
+    /**
+     * Query USGS dataset, revalidating a previously stored response if there is one.
+     * When USGS answers 304 Not Modified the previous earthquakes are returned
+     * without downloading or parsing anything.
+     * @param requestUrl to query
+     * @param previous is the stored response for the same URL, or null
+     * @return the current response, or null if the request failed or the response was
+     *         malformed or cut off
+     */
+    public static QueryResult fetchEarthquakeData(String requestUrl, QueryResult previous) {
+        return fetchEarthquakeData(requestUrl, previous, new FetchCancellation());
+    }
+
+    /**
+     * Query USGS dataset like {@link #fetchEarthquakeData(String, QueryResult)}, stopping
+     * the HTTP read and the parse as soon as the fetch is cancelled.
+     * @param requestUrl to query
+     * @param previous is the stored response for the same URL, or null
+     * @param cancellation aborts the request when cancelled
+     * @return the current response, or null if the request failed or was cancelled
+     */
+    static QueryResult fetchEarthquakeData(String requestUrl, QueryResult previous,
+                                           FetchCancellation cancellation) {
 
         /*try {
             Thread.sleep(2000);
@@ -46,23 +133,28 @@ public final class QueryUtils {
 
         URL url = createUrl(requestUrl);
 
-        // Perform HTTP request to URL and receive JSON response
-        String jsonResponse = null;
+        // Perform HTTP request to URL and parse the JSON response as it arrives
+        QueryResult result = null;
         try {
-            jsonResponse = makeHttpRequest(url);
+            result = makeHttpRequest(url, previous, cancellation);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Problem making HTTP request.", e);
         }
 
-        // Extract relevant fields from JSON response and create list of {@link Earthquake}s
-        List<Earthquake> earthquakes = extractFeatureFromJson(jsonResponse);
-
-        // Return list of {@link Earthquake}s
-        return earthquakes;
+        // Return the response
+        return result;
 
     }
 
 
+    /** Returns the given time in the ISO 8601 form USGS expects for starttime and the like. */
+    static String formatIsoTime(long timeInMilliseconds) {
+        // SimpleDateFormat isn't thread safe, and this is called from several threads
+        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return isoFormat.format(new Date(timeInMilliseconds));
+    }
+
     /** Returns new URL object from given string URL. */
     private static URL createUrl(String stringUrl) {
         URL url = null;
@@ -74,127 +166,132 @@ public final class QueryUtils {
         return url;
     }
 
-    /** Make HTTP request to given URL and return String response. */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
+    /**
+     * Make HTTP request to given URL and return the {@link Earthquake}s parsed
+     * straight off the response stream, along with the response's validators.
+     */
+    private static QueryResult makeHttpRequest(URL url, QueryResult previous,
+                                               FetchCancellation cancellation) throws IOException {
+        QueryResult result = null;
+
+        // If URL is null or nobody wants the response any more, return early
+        if (url == null || cancellation.isCanceled()) {
+            return result;
+        }
+
+        ResponseFormat format = ResponseFormats.forUrl(url);
+        if (format == null) {
+            Log.e(LOG_TAG, "No parser for the response format of " + url);
+            return result;
+        }
 
-        // If URL is null, return early
-        if (url == null) {
-            return jsonResponse;
+        // Ask USGS to skip the body if nothing changed since our copy
+        Map<String, String> headers = new HashMap<>();
+        if (previous != null) {
+            if (previous.getETag() != null) {
+                headers.put("If-None-Match", previous.getETag());
+            }
+            if (previous.getLastModified() != null) {
+                headers.put("If-Modified-Since", previous.getLastModified());
+            }
         }
 
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
+        HttpTransport.Response response = null;
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(10000 /* milliseconds */);
-            urlConnection.setConnectTimeout(15000 /* milliseconds */);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
+            // Cancelling aborts the request, from connecting up to the end of the body
+            response = sTransport.get(url, headers, cancellation);
 
             // If request was successful (response code 200),
             // then read input stream and parse response.
-            if (urlConnection.getResponseCode() == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
+            int responseCode = response.getCode();
+            long now = System.currentTimeMillis();
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                // Time the parse, leaving out the time spent waiting on the network
+                long parseStart = Metrics.start();
+                long readNanosBefore = Metrics.getReadNanos();
+                List<Earthquake> earthquakes = extractFeatureFromStream(response.getBody(), format);
+                Metrics.PARSE.recordSince(parseStart, Metrics.getReadNanos() - readNanosBefore);
+                if (earthquakes != null) {
+                    Metrics.FEATURES_PARSED.add(earthquakes.size());
+                    result = new QueryResult(earthquakes, response.getHeader("ETag"),
+                            response.getHeader("Last-Modified"), now, false);
+                }
+            } else if (responseCode == HttpURLConnection.HTTP_NO_CONTENT) {
+                // USGS answers a query that matches nothing with 204 and no body. That's
+                // an empty list, and it's cached like any other so the old rows go away
+                result = new QueryResult(new ArrayList<Earthquake>(), response.getHeader("ETag"),
+                        response.getHeader("Last-Modified"), now, false);
+            } else if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && previous != null) {
+                result = new QueryResult(previous.getEarthquakes(), previous.getETag(),
+                        previous.getLastModified(), now, true);
             } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
+                Log.e(LOG_TAG, "Error response code: " + responseCode);
             }
         } catch (IOException e) {
+            if (cancellation.isCanceled()) {
+                // We aborted the read ourselves, so this is expected
+                return null;
+            }
             Log.e(LOG_TAG, "Problem retrieving the earthquake JSON results.", e);
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (inputStream != null) {
-                // Closing input stream could throw IOException, which is why the
-                // makeHttpRequest(URL url) method signature specifies that
-                inputStream.close();
+            cancellation.setOnCancelListener(null);
+            if (response != null) {
+                closeQuietly(response);
             }
         }
-        return jsonResponse;
-    }
 
-    /** Convert the {@link InputStream} into a String containing the whole JSON response */
-    private static String readFromStream(InputStream inputStream) throws IOException {
-        StringBuilder output = new StringBuilder();
-        if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line = reader.readLine();
-            while (line != null) {
-                output.append(line);
-                line = reader.readLine();
-            }
+        ResponseListener listener = sResponseListener;
+        if (result != null && !result.isNotModified() && listener != null) {
+            listener.onEarthquakesFetched(result.getEarthquakes());
         }
-        return output.toString();
+        return result;
     }
 
     /**
-     * Returning a list of the {@link Earthquake} objects that have
-     * beeen built up from parsing the given JSON response.
+     * Releases a response. The body has been read in full by now, so a failure to release
+     * the connection doesn't make the earthquakes read from it any less valid.
      */
-    private static List<Earthquake> extractFeatureFromJson(String earthquakeJSON) {
-        // If JSON string's empty or null return early
-        if (TextUtils.isEmpty(earthquakeJSON)) {
-            return null;
+    private static void closeQuietly(HttpTransport.Response response) {
+        try {
+            response.close();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Problem closing the response", e);
         }
+    }
 
+    /**
+     * Returning a list of the {@link Earthquake} objects that have been built up by
+     * pulling tokens off the given GeoJSON stream with a {@link GeoJsonParser}.
+     */
+    static List<Earthquake> extractFeatureFromStream(InputStream inputStream) throws IOException {
+        return extractFeatureFromStream(inputStream, ResponseFormats.GEOJSON);
+    }
+
+    /**
+     * Returning a list of the {@link Earthquake} objects that have been built up by
+     * reading the given stream in the given format, or null if the response turned out
+     * to be malformed or cut off part way through.
+     */
+    static List<Earthquake> extractFeatureFromStream(InputStream inputStream, ResponseFormat format)
+            throws IOException {
         // Create an empty ArrayList we can start adding quakes to
         List<Earthquake> earthquakes = new ArrayList<>();
 
-
-        /**
-         * Try to parse the JSON response string. If there's a problem with the way JSON
-         * is formatted, a JSON exception object will be thrown.
-         * Catch the exception so the app doesn't crash & print error to logs
+        /*
+         * Try to walk the response. If there's a problem with the way it
+         * is formatted, an exception will be thrown part way through the stream.
+         * Catch it so the app doesn't crash. The quakes read so far are only part of
+         * the response, and passing them on would get them cached as the whole of it,
+         * so the fetch fails instead.
          */
-
-            try {
-                // Create JSONObject from response string
-                JSONObject baseJsonResponse = new JSONObject(earthquakeJSON);
-
-                // Extract JSONArray associated with key called "features",
-                // which represents a list of features (or earthquakes).
-                JSONArray earthquakeArray = baseJsonResponse.getJSONArray("features");
-
-                // For each quake in the earthquakeArray, create an {@link Earthquake} object
-                for (int i = 0; i < earthquakeArray.length(); i++) {
-
-                    // Get a single earthquake at position i within the list of quakes
-                    JSONObject currentEarthquake = earthquakeArray.getJSONObject(i);
-
-                    // For a given earthquake, extract the JSONObject associated with the
-                    // key called "properties", which represents a list of all properties
-                    // for that earthquake.
-                    JSONObject properties = currentEarthquake.getJSONObject("properties");
-
-                    // Extract value for key "mag"
-                    double magnitude = properties.getDouble("mag");
-
-                    // Extract value for key "place"
-                    String location = properties.getString("place");
-
-                    // Extract value for key "time"
-                    long time = properties.getLong("time");
-
-                    // Extract value for key "url"
-                    String url = properties.getString("url");
-
-                    // Create new {@link Earthquake} object with mag, location, time,
-                    // and url from JSON response.
-                    Earthquake earthquake = new Earthquake(magnitude, location, time, url);
-
-                    // Add new {@link Earthquake} to list of earthquakes.
-                    earthquakes.add(earthquake);
-                }
-            } catch (JSONException e) {
-                // If an error is thrown when executing any of the statements above, catch it
-                // here so the app doesn't crash. Print it to the logs with the message.
-                Log.e("QueryUtils", "Problem parsing the earthquake JSON results", e);
-            }
-            // Return the list of earthquakes
-            return earthquakes;
+        try {
+            format.parse(inputStream, earthquakes);
+        } catch (IllegalStateException | NumberFormatException | MalformedJsonException e) {
+            // Print it to the logs with the message.
+            Log.e(LOG_TAG, "Problem parsing the earthquake " + format.getName() + " results", e);
+            return null;
+        }
+        // Return the list of earthquakes
+        return earthquakes;
     }
 }
-
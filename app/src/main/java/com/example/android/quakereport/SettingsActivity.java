@@ -7,6 +7,7 @@ import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceManager;
 import android.support.v7.app.AppCompatActivity;
+import android.widget.Toast;
 
 
 public class SettingsActivity extends AppCompatActivity {
@@ -30,12 +31,21 @@ public class SettingsActivity extends AppCompatActivity {
 
             Preference orderBy = findPreference(getString(R.string.settings_order_by_key));
             bindPreferenceSummaryToValue(orderBy);
+
+            Preference alertHome = findPreference(getString(R.string.settings_alert_home_key));
+            bindPreferenceSummaryToValue(alertHome);
+
+            Preference alertRules = findPreference(getString(R.string.settings_alert_rules_key));
+            bindPreferenceSummaryToValue(alertRules);
         }
 
         @Override
         public boolean onPreferenceChange(Preference preference, Object value) {
             // This code updates the displayed preference summary after changes
             String stringValue = value.toString();
+            if (!isAlertSettingValid(preference, stringValue)) {
+                return false;
+            }
             if (preference instanceof ListPreference) {
                 ListPreference listPreference = (ListPreference) preference;
                 int prefIndex = listPreference.findIndexOfValue(stringValue);
@@ -49,6 +59,39 @@ public class SettingsActivity extends AppCompatActivity {
             return true;
         }
 
+        /**
+         * Returns true if the new value of an alert preference is a location or the alert
+         * rules can still be read with it, and tells the user why not otherwise, so broken
+         * rules aren't saved.
+         */
+        private boolean isAlertSettingValid(Preference preference, String value) {
+            String rulesKey = getString(R.string.settings_alert_rules_key);
+            String homeKey = getString(R.string.settings_alert_home_key);
+            if (!preference.getKey().equals(rulesKey) && !preference.getKey().equals(homeKey)) {
+                return true;
+            }
+            SharedPreferences preferences =
+                    PreferenceManager.getDefaultSharedPreferences(preference.getContext());
+            String rules = preference.getKey().equals(rulesKey) ? value : preferences.getString(rulesKey, "");
+            String home = preference.getKey().equals(homeKey) ? value : preferences.getString(homeKey, "");
+            double[] location = AlertNotifier.parseHome(home);
+            if (location == null && !home.trim().isEmpty()) {
+                Toast.makeText(preference.getContext(), R.string.settings_alert_home_invalid,
+                        Toast.LENGTH_LONG).show();
+                return false;
+            }
+            try {
+                AlertRule.parseAll(rules, location != null ? location[0] : Double.NaN,
+                        location != null ? location[1] : Double.NaN, null);
+                return true;
+            } catch (IllegalArgumentException e) {
+                Toast.makeText(preference.getContext(),
+                        getString(R.string.settings_alert_rules_invalid, e.getMessage()),
+                        Toast.LENGTH_LONG).show();
+                return false;
+            }
+        }
+
         private void bindPreferenceSummaryToValue(Preference preference) {
             preference.setOnPreferenceChangeListener(this);
             SharedPreferences preferences =
@@ -0,0 +1,41 @@
+package com.example.android.quakereport;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+
+/**
+ * Loads the figures of the summary header from the {@link EventStatistics} of the
+ * local event store. The first load in a process reads the store; after that the
+ * statistics are kept up to date as the store changes, so a load costs the same
+ * however many events there are. It reloads every time the activity starts.
+ */
+public class SummaryLoader extends AsyncTaskLoader<EventStatistics.Summary> {
+
+    /** On-disk store the statistics are read from */
+    private final EarthquakeCache mCache;
+
+    /**
+     * Constructs a new {@link SummaryLoader}.
+     * @param context of the activity
+     */
+    public SummaryLoader(Context context) {
+        super(context);
+        mCache = new EarthquakeCache(context);
+    }
+
+    @Override
+    protected void onStartLoading() {
+        forceLoad();
+    }
+
+    /** Background thread */
+    @Override
+    public EventStatistics.Summary loadInBackground() {
+        return EventStatistics.get(mCache).getSummary(System.currentTimeMillis());
+    }
+
+    @Override
+    protected void onReset() {
+        cancelLoad();
+    }
+}
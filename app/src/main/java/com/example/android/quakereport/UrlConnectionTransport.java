@@ -0,0 +1,343 @@
+package com.example.android.quakereport;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link HttpTransport} built on {@link HttpURLConnection}.
+ *
+ * Responses are released by closing their stream instead of calling
+ * {@link HttpURLConnection#disconnect()}, which hands the socket back to the platform's
+ * keep-alive pool, so paging through a query reuses one TLS connection. Bodies are
+ * requested gzip-compressed and inflated while they are parsed. Failed connections and
+ * overloaded-server responses are retried a few times with exponential backoff.
+ *
+ * Cancelling a request drops its connection on a thread of its own, as disconnecting
+ * can write to the socket and cancellation usually comes from the main thread. That also
+ * stops a connection still being made. A request waiting to retry stops waiting.
+ */
+public final class UrlConnectionTransport implements HttpTransport {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = UrlConnectionTransport.class.getSimpleName();
+
+    /** HTTP 429, which {@link HttpURLConnection} has no constant for */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /** Size of the buffer used to inflate gzip bodies */
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    /** Drops the connections of cancelled requests, away from the thread that cancelled them */
+    private static final Executor DISCONNECT_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final int mConnectTimeoutMillis;
+    private final int mReadTimeoutMillis;
+    private final int mMaxAttempts;
+    private final long mInitialBackoffMillis;
+
+    /**
+     * Constructs a new {@link UrlConnectionTransport}.
+     * @param connectTimeoutMillis how long to wait for a connection
+     * @param readTimeoutMillis how long to wait for each read from the connection
+     * @param maxAttempts how many times a request is sent at most, including the first time
+     * @param initialBackoffMillis delay before the first retry; it doubles for every retry after that
+     */
+    public UrlConnectionTransport(int connectTimeoutMillis, int readTimeoutMillis,
+                                  int maxAttempts, long initialBackoffMillis) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+        mMaxAttempts = Math.max(1, maxAttempts);
+        mInitialBackoffMillis = initialBackoffMillis;
+    }
+
+    @Override
+    public Response get(URL url, Map<String, String> headers, FetchCancellation cancellation)
+            throws IOException {
+        long backoffMillis = mInitialBackoffMillis;
+        for (int attempt = 1; ; attempt++) {
+            long startedAt = SystemClock.elapsedRealtime();
+            HttpURLConnection urlConnection = null;
+            try {
+                urlConnection = open(url, headers);
+                // From here on cancelling drops the connection, whether it's made yet or not.
+                // The listener stays on for the body of the response returned.
+                final HttpURLConnection connection = urlConnection;
+                cancellation.setOnCancelListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        disconnectInBackground(connection);
+                    }
+                });
+                throwIfCanceled(cancellation);
+
+                long connectStart = Metrics.start();
+                urlConnection.connect();
+                Metrics.HTTP_CONNECT.recordSince(connectStart);
+
+                long requestStart = Metrics.start();
+                int responseCode = urlConnection.getResponseCode();
+                Metrics.HTTP_FIRST_BYTE.recordSince(requestStart);
+                throwIfCanceled(cancellation);
+                if (!isRetryable(responseCode) || attempt >= mMaxAttempts) {
+                    return new ConnectionResponse(urlConnection, responseCode, startedAt);
+                }
+                cancellation.setOnCancelListener(null);
+                Log.w(LOG_TAG, "Response code " + responseCode + ", retrying " + url);
+                release(urlConnection, responseCode);
+            } catch (IOException e) {
+                cancellation.setOnCancelListener(null);
+                if (urlConnection != null) {
+                    urlConnection.disconnect();
+                }
+                if (cancellation.isCanceled() || attempt >= mMaxAttempts) {
+                    throw e;
+                }
+                Log.w(LOG_TAG, "Request failed, retrying " + url, e);
+            } catch (RuntimeException e) {
+                // HttpURLConnection may trip over a disconnect from another thread with an
+                // unchecked exception rather than an IOException
+                cancellation.setOnCancelListener(null);
+                if (!cancellation.isCanceled()) {
+                    throw e;
+                }
+                InterruptedIOException cancelled = new InterruptedIOException("Request cancelled");
+                cancelled.initCause(e);
+                throw cancelled;
+            }
+
+            try {
+                if (cancellation.awaitCancel(backoffMillis)) {
+                    throw new InterruptedIOException("Cancelled while backing off");
+                }
+            } catch (InterruptedException e) {
+                // The loader was cancelled; don't keep it waiting
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while backing off");
+            }
+            backoffMillis *= 2;
+        }
+    }
+
+    /**
+     * Returns a connection for a GET request with the given headers, not connected yet,
+     * so it can be dropped while it connects.
+     */
+    private HttpURLConnection open(URL url, Map<String, String> headers) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setReadTimeout(mReadTimeoutMillis);
+        urlConnection.setConnectTimeout(mConnectTimeoutMillis);
+        urlConnection.setRequestMethod("GET");
+
+        // Setting this ourselves means we have to inflate the body ourselves, see getBody()
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                urlConnection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        return urlConnection;
+    }
+
+    private static void throwIfCanceled(FetchCancellation cancellation) throws InterruptedIOException {
+        if (cancellation.isCanceled()) {
+            throw new InterruptedIOException("Request cancelled");
+        }
+    }
+
+    /** Drops a connection on another thread, for callers that may be on the main thread. */
+    private static void disconnectInBackground(final HttpURLConnection urlConnection) {
+        DISCONNECT_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                urlConnection.disconnect();
+            }
+        });
+    }
+
+    /** Returns true if the server may answer the same request successfully a little later. */
+    private static boolean isRetryable(int responseCode) {
+        return responseCode == HTTP_TOO_MANY_REQUESTS
+                || responseCode == HttpURLConnection.HTTP_INTERNAL_ERROR
+                || responseCode == HttpURLConnection.HTTP_BAD_GATEWAY
+                || responseCode == HttpURLConnection.HTTP_UNAVAILABLE
+                || responseCode == HttpURLConnection.HTTP_GATEWAY_TIMEOUT;
+    }
+
+    /**
+     * Closes the response stream so the connection goes back to the keep-alive pool.
+     * If even that fails, the connection is dropped instead.
+     */
+    private static void release(HttpURLConnection urlConnection, int responseCode) {
+        try {
+            InputStream stream = responseCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                    ? urlConnection.getErrorStream() : urlConnection.getInputStream();
+            if (stream != null) {
+                stream.close();
+            }
+        } catch (IOException e) {
+            urlConnection.disconnect();
+        }
+    }
+
+    /** Returns the value of a Content-Length header, or -1 if it is missing or not a number. */
+    private static long parseContentLength(String header) {
+        if (header == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * {@link HttpTransport.Response} reading from an open {@link HttpURLConnection}.
+     */
+    private static final class ConnectionResponse implements Response {
+        private final HttpURLConnection mConnection;
+        private final int mCode;
+        private final long mStartedAt;
+        private CountingInputStream mRawBody;
+        private InputStream mBody;
+
+        ConnectionResponse(HttpURLConnection connection, int code, long startedAt) {
+            mConnection = connection;
+            mCode = code;
+            mStartedAt = startedAt;
+        }
+
+        @Override
+        public int getCode() {
+            return mCode;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (mBody == null) {
+                mRawBody = new CountingInputStream(mConnection.getInputStream(),
+                        parseContentLength(mConnection.getHeaderField("Content-Length")));
+                mBody = "gzip".equalsIgnoreCase(mConnection.getContentEncoding())
+                        ? new GZIPInputStream(mRawBody, GZIP_BUFFER_SIZE) : mRawBody;
+            }
+            return mBody;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mBody == null) {
+                release(mConnection, mCode);
+                return;
+            }
+            mBody.close();
+            Metrics.HTTP_READ.recordMicros(mRawBody.getReadNanos() / 1000);
+            Metrics.BYTES_RECEIVED.add(mRawBody.getCount());
+            Log.d(LOG_TAG, mConnection.getURL() + ": " + mRawBody.getCount() + " bytes in "
+                    + (SystemClock.elapsedRealtime() - mStartedAt) + " ms");
+        }
+
+        @Override
+        public void abort() {
+            // Closes the socket underneath any read in progress
+            disconnectInBackground(mConnection);
+        }
+    }
+
+    /**
+     * Counts the bytes read through it, which for a gzip body are the bytes sent over the wire,
+     * and, while {@link Metrics} are enabled, the time spent waiting for them.
+     *
+     * A body that ends before its Content-Length fails with an {@link EOFException}. Some
+     * connections just report the end of the stream when the server drops them, and a
+     * line-based format cut off between two lines would otherwise look complete.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final long mExpectedCount;
+        private long mCount;
+        private long mReadNanos;
+
+        /**
+         * @param in is the raw body
+         * @param expectedCount is the Content-Length of the body, or -1 if it's unknown
+         */
+        CountingInputStream(InputStream in, long expectedCount) {
+            super(in);
+            mExpectedCount = expectedCount;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        long getReadNanos() {
+            return mReadNanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = Metrics.start();
+            int b = super.read();
+            recordWait(start);
+            if (b != -1) {
+                mCount++;
+            } else {
+                checkComplete();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = Metrics.start();
+            int read = super.read(buffer, offset, length);
+            recordWait(start);
+            if (read > 0) {
+                mCount += read;
+            } else if (read == -1) {
+                checkComplete();
+            }
+            return read;
+        }
+
+        /** Called at the end of the stream. Throws if the body is shorter than it said it is. */
+        private void checkComplete() throws EOFException {
+            if (mExpectedCount >= 0 && mCount < mExpectedCount) {
+                throw new EOFException("Response ended after " + mCount + " of "
+                        + mExpectedCount + " bytes");
+            }
+        }
+
+        /** Adds the time since start to this body's wait and to the reading thread's. */
+        private void recordWait(long start) {
+            if (start != 0) {
+                long nanos = System.nanoTime() - start;
+                mReadNanos += nanos;
+                Metrics.addReadNanos(nanos);
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.android.quakereport;
+
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fetches a long time range from USGS as several shorter windows at once.
+ *
+ * USGS caps the number of events a single request returns, and a single request is one
+ * serial download followed by one serial parse. The range is split into sub-windows by
+ * starttime and endtime, and those are fetched and parsed in parallel on a pool sized to
+ * the device's cores. A window that comes back full may have been cut short, so it is
+ * split in half and fetched again. The windows are then merged into one list in the
+ * query's orderby order, keeping each event once.
+ *
+ * {@link #cancel()}, or interrupting the thread that called {@link #fetch}, stops every
+ * window still in flight.
+ *
+ * Windows come from a {@link WindowSource}, which asks USGS unless another one is given,
+ * so the splitting and merging can be tested without a network.
+ */
+final class WindowedFetcher {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = WindowedFetcher.class.getSimpleName();
+
+    /** Most events USGS returns for one request */
+    static final int MAX_RESULTS_PER_REQUEST = 20000;
+
+    /** Windows this short are never split, even if they come back full */
+    private static final long MIN_WINDOW_MILLIS = 60 * 1000;
+
+    /** Windows fetched at the same time. Every one holds a connection, so keep it small. */
+    private static final int THREAD_COUNT =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /** Threads that fetch and parse windows, shared by every fetcher */
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREAD_COUNT);
+
+    /** Fetches the events of each window */
+    private final WindowSource mSource;
+
+    /** Order the merged results are returned in */
+    private final Comparator<Earthquake> mComparator;
+
+    /** Windows submitted by the fetch in progress */
+    private final List<Future<Window>> mFutures = new ArrayList<>();
+
+    /** True once {@link #cancel()} was called */
+    private volatile boolean mCanceled;
+
+    /**
+     * Constructs a new {@link WindowedFetcher}.
+     * @param queryUrl to fetch, without starttime, endtime, offset or limit parameters
+     */
+    WindowedFetcher(String queryUrl) {
+        this(new UsgsWindowSource(queryUrl), comparatorFor(queryUrl));
+    }
+
+    /**
+     * Constructs a new {@link WindowedFetcher} fetching its windows from the given source.
+     * @param source fetches the events of each window, each in the comparator's order
+     * @param comparator is the order the merged results are returned in
+     */
+    WindowedFetcher(WindowSource source, Comparator<Earthquake> comparator) {
+        mSource = source;
+        mComparator = comparator;
+    }
+
+    /** Returns the order of the orderby parameter of a query URL. */
+    private static Comparator<Earthquake> comparatorFor(String queryUrl) {
+        String orderBy = Uri.parse(queryUrl).getQueryParameter("orderby");
+        return EventQuery.comparatorFor(orderBy == null ? "time" : orderBy);
+    }
+
+    /** Returns a sensible number of windows to split a range into. */
+    static int defaultWindowCount() {
+        return THREAD_COUNT * 2;
+    }
+
+    /**
+     * Fetches every event between the two times. Must be called off the main thread.
+     * @param startTime is the start of the range, in milliseconds since the epoch
+     * @param endTime is the end of the range, in milliseconds since the epoch
+     * @param windowCount is the number of windows to split the range into to begin with
+     * @return the merged events, or null if a window failed or the fetch was cancelled
+     */
+    List<Earthquake> fetch(long startTime, long endTime, int windowCount) {
+        CompletionService<Window> completion = new ExecutorCompletionService<>(EXECUTOR);
+        List<Window> windows = new ArrayList<>();
+        int pending = 0;
+
+        long step = Math.max(MIN_WINDOW_MILLIS, (endTime - startTime + windowCount - 1) / windowCount);
+        for (long windowStart = startTime; windowStart < endTime; windowStart += step) {
+            if (!submit(completion, windowStart, Math.min(windowStart + step, endTime))) {
+                return null;
+            }
+            pending++;
+        }
+
+        try {
+            while (pending > 0) {
+                Window window = completion.take().get();
+                pending--;
+                if (mCanceled) {
+                    return null;
+                }
+                if (window.mEarthquakes == null) {
+                    Log.e(LOG_TAG, "Giving up, a window failed: " + window.mStartTime);
+                    cancel();
+                    return null;
+                }
+                if (window.mEarthquakes.size() >= MAX_RESULTS_PER_REQUEST
+                        && window.mEndTime - window.mStartTime > MIN_WINDOW_MILLIS) {
+                    // USGS may have cut this window short, so ask again for each half
+                    long middle = window.mStartTime + (window.mEndTime - window.mStartTime) / 2;
+                    if (!submit(completion, window.mStartTime, middle)
+                            || !submit(completion, middle, window.mEndTime)) {
+                        return null;
+                    }
+                    pending += 2;
+                    continue;
+                }
+                windows.add(window);
+            }
+        } catch (InterruptedException e) {
+            // The caller was cancelled; stop the windows still running
+            Thread.currentThread().interrupt();
+            cancel();
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Problem fetching a window", e);
+            cancel();
+            return null;
+        } finally {
+            synchronized (mFutures) {
+                mFutures.clear();
+            }
+        }
+
+        return merge(windows);
+    }
+
+    /**
+     * Stops the fetch in progress. Windows being parsed are interrupted and
+     * {@link #fetch} returns null.
+     */
+    void cancel() {
+        mCanceled = true;
+        synchronized (mFutures) {
+            for (Future<Window> future : mFutures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Starts fetching the events from startTime up to, but not including, endTime.
+     * @return false if the fetch has been cancelled
+     */
+    private boolean submit(CompletionService<Window> completion, final long startTime,
+                        final long endTime) {
+        synchronized (mFutures) {
+            if (mCanceled) {
+                return false;
+            }
+            mFutures.add(completion.submit(new Callable<Window>() {
+                @Override
+                public Window call() {
+                    return new Window(startTime, endTime, mSource.fetch(startTime, endTime));
+                }
+            }));
+        }
+        return true;
+    }
+
+    /**
+     * Merges windows that are each already in order into one ordered list. An event
+     * that turns up in more than one window is kept once.
+     */
+    private List<Earthquake> merge(List<Window> windows) {
+        // Ties are broken by window start, so equal events come out in the same order every time
+        Collections.sort(windows, new Comparator<Window>() {
+            @Override
+            public int compare(Window a, Window b) {
+                return a.mStartTime < b.mStartTime ? -1 : (a.mStartTime == b.mStartTime ? 0 : 1);
+            }
+        });
+
+        int total = 0;
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(Math.max(1, windows.size()));
+        for (int i = 0; i < windows.size(); i++) {
+            List<Earthquake> earthquakes = windows.get(i).mEarthquakes;
+            total += earthquakes.size();
+            if (!earthquakes.isEmpty()) {
+                cursors.add(new Cursor(earthquakes, i));
+            }
+        }
+
+        List<Earthquake> merged = new ArrayList<>(total);
+        Set<String> seenIds = new HashSet<>(total * 2);
+        while (!cursors.isEmpty()) {
+            Cursor cursor = cursors.poll();
+            Earthquake earthquake = cursor.current();
+            if (seenIds.add(earthquake.getId())) {
+                merged.add(earthquake);
+            }
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Fetches the events of one window of time.
+     */
+    interface WindowSource {
+
+        /**
+         * Returns the events from startTime up to, but not including, endTime, in the order
+         * the fetcher merges them in, or null if they couldn't be fetched. At most
+         * {@link WindowedFetcher#MAX_RESULTS_PER_REQUEST} events are returned. Called on
+         * several threads at once.
+         */
+        List<Earthquake> fetch(long startTime, long endTime);
+    }
+
+    /**
+     * {@link WindowSource} that asks USGS.
+     */
+    private static final class UsgsWindowSource implements WindowSource {
+        /** Query URL without starttime, endtime, offset or limit */
+        private final String mQueryUrl;
+
+        UsgsWindowSource(String queryUrl) {
+            mQueryUrl = queryUrl;
+        }
+
+        @Override
+        public List<Earthquake> fetch(long startTime, long endTime) {
+            String url = Uri.parse(mQueryUrl).buildUpon()
+                    .appendQueryParameter("starttime", QueryUtils.formatIsoTime(startTime))
+                    // USGS includes the endtime itself, and the next window starts there
+                    .appendQueryParameter("endtime", QueryUtils.formatIsoTime(endTime - 1))
+                    .appendQueryParameter("limit", String.valueOf(MAX_RESULTS_PER_REQUEST))
+                    .toString();
+            return QueryUtils.fetchEarthquakeData(url);
+        }
+    }
+
+    /** The events fetched for one window, or null if fetching them failed. */
+    private static final class Window {
+        private final long mStartTime;
+        private final long mEndTime;
+        private final List<Earthquake> mEarthquakes;
+
+        Window(long startTime, long endTime, List<Earthquake> earthquakes) {
+            mStartTime = startTime;
+            mEndTime = endTime;
+            mEarthquakes = earthquakes;
+        }
+    }
+
+    /** Position within one window's events during {@link #merge}. */
+    private final class Cursor implements Comparable<Cursor> {
+        private final List<Earthquake> mEarthquakes;
+        private final int mWindowIndex;
+        private int mPosition;
+
+        Cursor(List<Earthquake> earthquakes, int windowIndex) {
+            mEarthquakes = earthquakes;
+            mWindowIndex = windowIndex;
+        }
+
+        Earthquake current() {
+            return mEarthquakes.get(mPosition);
+        }
+
+        /** Moves to the next event, returning false if there isn't one. */
+        boolean advance() {
+            return ++mPosition < mEarthquakes.size();
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int order = mComparator.compare(current(), other.current());
+            return order != 0 ? order : mWindowIndex - other.mWindowIndex;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EarthquakeAdapterTest {
+
+    private static final long TIME = 1530403200000L;
+
+    @Test
+    public void matchesRowsByEventId() {
+        EarthquakeAdapter.EarthquakeDiffCallback callback = new EarthquakeAdapter.EarthquakeDiffCallback(
+                store("us1000abcd", "us1000efgh"), store("us1000efgh", "us1000abcd"));
+
+        assertTrue(callback.areItemsTheSame(0, 1));
+        assertTrue(callback.areItemsTheSame(1, 0));
+        assertFalse(callback.areItemsTheSame(0, 0));
+    }
+
+    @Test
+    public void neverMatchesRowsWithoutAnId() {
+        EarthquakeAdapter.EarthquakeDiffCallback callback = new EarthquakeAdapter.EarthquakeDiffCallback(
+                store(null, "us1000abcd"), store(null, null));
+
+        assertFalse(callback.areItemsTheSame(0, 0));
+        assertFalse(callback.areItemsTheSame(1, 0));
+    }
+
+    private static EarthquakeStore store(String... ids) {
+        EarthquakeStore store = new EarthquakeStore();
+        for (String id : ids) {
+            store.append(new Earthquake(id, 4.5, "10km NE of Anchorage, Alaska", TIME,
+                    "https://example.com/" + id, Double.NaN, Double.NaN, Double.NaN, TIME, false));
+        }
+        return store.snapshot();
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Merges live events into pages fetched from a local feed server, then fetches the next
+ * page, and checks the rows are the ones USGS would have returned for both pages.
+ */
+public class EarthquakeLoaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int PAGE_SIZE = 10;
+
+    private static final long MINUTE = 60 * 1000;
+
+    /** 2018-07-01T00:00:00Z */
+    private static final long NOW = 1530403200000L;
+
+    private static final Comparator<Earthquake> BY_TIME = EventQuery.comparatorFor("time");
+
+    private HttpServer mServer;
+
+    /** Every event the server holds, in no particular order, guarded by itself */
+    private final List<Earthquake> mCatalog = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < 30; i++) {
+            mCatalog.add(earthquake("ev" + i, 4.0, NOW - i * MINUTE));
+        }
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/query", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int offset = 1;
+                int limit = Integer.MAX_VALUE;
+                for (String parameter : exchange.getRequestURI().getRawQuery().split("&")) {
+                    String[] pair = parameter.split("=");
+                    if (pair[0].equals("offset")) {
+                        offset = Integer.parseInt(pair[1]);
+                    } else if (pair[0].equals("limit")) {
+                        limit = Integer.parseInt(pair[1]);
+                    }
+                }
+                List<Earthquake> results = results();
+                int from = Math.min(offset - 1, results.size());
+                byte[] body = geoJson(results.subList(from, Math.min(from + limit, results.size())))
+                        .getBytes(UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.start();
+        QueryUtils.setTransport(new UrlConnectionTransport(2000, 2000, 1, 0));
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void takesTheLastRowFromTheNextPageWhenItsUpdateSortsAfterIt() throws IOException {
+        // Still before the first row of the next page, which the loader can't know
+        Earthquake update = earthquake("ev9", 4.4, NOW - 9 * MINUTE - MINUTE / 2);
+
+        List<Earthquake> rows = loadTwoPages(update);
+
+        assertEquals(ids(results().subList(0, 2 * PAGE_SIZE - 1)), ids(rows));
+        assertEquals(4.4, rows.get(9).getMagnitude(), 0);
+    }
+
+    @Test
+    public void keepsTheLastRowWhenItsUpdateKeepsItsTime() throws IOException {
+        Earthquake update = earthquake("ev9", 5.1, NOW - 9 * MINUTE);
+
+        List<Earthquake> rows = loadTwoPages(update);
+
+        assertEquals(ids(results().subList(0, 2 * PAGE_SIZE)), ids(rows));
+        assertEquals(5.1, rows.get(9).getMagnitude(), 0);
+    }
+
+    @Test
+    public void leavesTheLastRowToTheNextPageWhenItsUpdateMovesPastIt() throws IOException {
+        Earthquake update = earthquake("ev9", 4.0, NOW - 12 * MINUTE - MINUTE / 2);
+
+        List<Earthquake> rows = loadTwoPages(update);
+
+        assertEquals(ids(results().subList(0, 2 * PAGE_SIZE - 1)), ids(rows));
+    }
+
+    @Test
+    public void leavesAnEarlierRowToTheNextPageWhenItsUpdateMovesPastTheLastRow() throws IOException {
+        Earthquake update = earthquake("ev3", 4.0, NOW - 9 * MINUTE - MINUTE / 2);
+
+        List<Earthquake> rows = loadTwoPages(update);
+
+        assertEquals(ids(results().subList(0, 2 * PAGE_SIZE - 1)), ids(rows));
+    }
+
+    @Test
+    public void insertsANewEventAndMovesTheNextPageOn() throws IOException {
+        Earthquake update = earthquake("new", 4.0, NOW + MINUTE);
+
+        List<Earthquake> rows = loadTwoPages(update);
+
+        assertEquals(ids(results().subList(0, 2 * PAGE_SIZE + 1)), ids(rows));
+        assertEquals("new", rows.get(0).getId());
+    }
+
+    @Test
+    public void takesOutADeletedLastRow() throws IOException {
+        Earthquake update = new Earthquake("ev9", 4.0, "Somewhere", NOW - 9 * MINUTE,
+                EarthquakeStore.EVENT_PAGE_URL + "ev9", Double.NaN, Double.NaN, Double.NaN, NOW, true);
+
+        List<Earthquake> rows = loadTwoPages(update);
+
+        assertEquals(ids(results().subList(0, 2 * PAGE_SIZE - 1)), ids(rows));
+    }
+
+    @Test
+    public void appendsEveryInsertOnceEveryResultIsLoaded() {
+        EarthquakeStore loaded = new EarthquakeStore();
+        loaded.appendAll(Arrays.asList(earthquake("ev0", 4.0, NOW), earthquake("ev1", 4.0, NOW - MINUTE)));
+
+        EarthquakeStore merged = EarthquakeLoader.merge(loaded,
+                Collections.singletonList(earthquake("old", 4.0, NOW - 60 * MINUTE)), Double.NaN, BY_TIME,
+                true, null);
+
+        assertEquals(Arrays.asList("ev0", "ev1", "old"), ids(merged));
+    }
+
+    @Test
+    public void takesOutARowRevisedBelowMinmag() {
+        EarthquakeStore loaded = new EarthquakeStore();
+        loaded.appendAll(Arrays.asList(earthquake("ev0", 4.6, NOW), earthquake("ev1", 4.6, NOW - MINUTE)));
+
+        EarthquakeStore merged = EarthquakeLoader.merge(loaded,
+                Collections.singletonList(earthquake("ev0", 4.4, NOW)), 4.5, BY_TIME, false, null);
+
+        assertEquals(Collections.singletonList("ev1"), ids(merged));
+    }
+
+    /**
+     * Loads the first page, applies the update on the server and merges it in as a live
+     * event, then loads the next page from the offset the merge leaves, as the loader does.
+     */
+    private List<Earthquake> loadTwoPages(Earthquake update) throws IOException {
+        EarthquakeStore loaded = new EarthquakeStore();
+        loaded.appendAll(fetchPage(1));
+        int nextOffset = 1 + loaded.size();
+
+        synchronized (mCatalog) {
+            for (int i = 0; i < mCatalog.size(); i++) {
+                if (mCatalog.get(i).getId().equals(update.getId())) {
+                    mCatalog.remove(i);
+                    break;
+                }
+            }
+            if (!update.isDeleted()) {
+                mCatalog.add(update);
+            }
+        }
+        EarthquakeStore merged = EarthquakeLoader.merge(loaded, Collections.singletonList(update),
+                Double.NaN, BY_TIME, false, null);
+        nextOffset += merged.size() - loaded.size();
+
+        List<Earthquake> rows = new ArrayList<Earthquake>(merged);
+        rows.addAll(fetchPage(nextOffset));
+        return rows;
+    }
+
+    private List<Earthquake> fetchPage(int offset) throws IOException {
+        QueryResult result = QueryUtils.fetchEarthquakeData("http://127.0.0.1:" + mServer.getAddress().getPort()
+                + "/query?format=geojson&orderby=time&offset=" + offset + "&limit=" + PAGE_SIZE, null);
+        if (result == null) {
+            throw new IOException("The feed server didn't answer");
+        }
+        return result.getEarthquakes();
+    }
+
+    /** Returns every result of the server, in its order. */
+    private List<Earthquake> results() {
+        List<Earthquake> results;
+        synchronized (mCatalog) {
+            results = new ArrayList<>(mCatalog);
+        }
+        Collections.sort(results, BY_TIME);
+        return results;
+    }
+
+    private static String geoJson(List<Earthquake> earthquakes) {
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < earthquakes.size(); i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.US, "{\"type\":\"Feature\",\"properties\":{\"mag\":%.1f,"
+                            + "\"place\":\"%s\",\"time\":%d,\"updated\":%d},\"id\":\"%s\"}",
+                    earthquake.getMagnitude(), earthquake.getLocation(), earthquake.getTimeInMilliseconds(),
+                    earthquake.getUpdatedInMilliseconds(), earthquake.getId()));
+        }
+        return json.append("]}").toString();
+    }
+
+    private static List<String> ids(List<Earthquake> earthquakes) {
+        List<String> ids = new ArrayList<>(earthquakes.size());
+        for (Earthquake earthquake : earthquakes) {
+            ids.add(earthquake.getId());
+        }
+        return ids;
+    }
+
+    private static Earthquake earthquake(String id, double magnitude, long time) {
+        return new Earthquake(id, magnitude, "Somewhere", time, EarthquakeStore.EVENT_PAGE_URL + id,
+                Double.NaN, Double.NaN, Double.NaN, NOW, false);
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.android.quakereport;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EarthquakeSnapshotTest {
+
+    private static final String QUERY_URL =
+            "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&minmag=2.5";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void readsBackEveryColumn() throws IOException {
+        EarthquakeSnapshot snapshot = new EarthquakeSnapshot(mFolder.newFile());
+        EarthquakeStore written = store();
+
+        assertTrue(snapshot.write(QUERY_URL, written, 100));
+        EarthquakeStore read = snapshot.read(QUERY_URL, null);
+
+        assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(written.getId(i), read.getId(i));
+            assertEquals(written.getMagnitude(i), read.getMagnitude(i), 0);
+            assertEquals(written.getTimeInMilliseconds(i), read.getTimeInMilliseconds(i));
+            assertEquals(written.getLatitude(i), read.getLatitude(i), 0);
+            assertEquals(written.getLongitude(i), read.getLongitude(i), 0);
+            assertEquals(written.getDepth(i), read.getDepth(i), 0);
+            assertEquals(written.getLocationOffset(i), read.getLocationOffset(i));
+            assertEquals(written.getPrimaryLocation(i), read.getPrimaryLocation(i));
+            assertEquals(written.getUrlOverride(i), read.getUrlOverride(i));
+            assertEquals(written.getUrl(i), read.getUrl(i));
+        }
+    }
+
+    @Test
+    public void formatsTheRowsItReads() throws IOException {
+        EarthquakeSnapshot snapshot = new EarthquakeSnapshot(mFolder.newFile());
+        snapshot.write(QUERY_URL, store(), 100);
+
+        EarthquakeStore read = snapshot.read(QUERY_URL, new EarthquakeFormatter(new int[10], 0, "near the"));
+
+        assertEquals("4.6", read.getMagnitudeText(0));
+        assertEquals("near the", read.getLocationOffsetText(1));
+    }
+
+    @Test
+    public void keepsOnlyTheFirstRows() throws IOException {
+        EarthquakeSnapshot snapshot = new EarthquakeSnapshot(mFolder.newFile());
+        snapshot.write(QUERY_URL, store(), 2);
+
+        EarthquakeStore read = snapshot.read(QUERY_URL, null);
+
+        assertEquals(2, read.size());
+        assertEquals("us2", read.getId(1));
+    }
+
+    @Test
+    public void ignoresASnapshotOfAnotherQuery() throws IOException {
+        EarthquakeSnapshot snapshot = new EarthquakeSnapshot(mFolder.newFile());
+        snapshot.write(QUERY_URL, store(), 100);
+
+        assertNull(snapshot.read(QUERY_URL + "&orderby=magnitude", null));
+    }
+
+    @Test
+    public void ignoresAMissingSnapshot() {
+        EarthquakeSnapshot snapshot = new EarthquakeSnapshot(new File(mFolder.getRoot(), "none"));
+
+        assertNull(snapshot.read(QUERY_URL, null));
+    }
+
+    @Test
+    public void ignoresASnapshotCutShort() throws IOException {
+        File file = mFolder.newFile();
+        EarthquakeSnapshot snapshot = new EarthquakeSnapshot(file);
+        snapshot.write(QUERY_URL, store(), 100);
+
+        // Every length the file could have been cut to
+        long length = file.length();
+        for (long cut = length - 1; cut > 0; cut--) {
+            RandomAccessFile out = new RandomAccessFile(file, "rw");
+            out.setLength(cut);
+            out.close();
+            assertNull("Read a snapshot cut to " + cut + " of " + length + " bytes",
+                    snapshot.read(QUERY_URL, null));
+        }
+    }
+
+    @Test
+    public void ignoresASnapshotOfAnotherVersion() throws IOException {
+        File file = mFolder.newFile();
+        EarthquakeSnapshot snapshot = new EarthquakeSnapshot(file);
+        snapshot.write(QUERY_URL, store(), 100);
+
+        // The version follows the four bytes of the magic number
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        out.seek(4);
+        out.writeInt(99);
+        out.close();
+
+        assertNull(snapshot.read(QUERY_URL, null));
+    }
+
+    @Test
+    public void replacesThePreviousSnapshot() throws IOException {
+        File file = mFolder.newFile();
+        EarthquakeSnapshot snapshot = new EarthquakeSnapshot(file);
+        snapshot.write(QUERY_URL, store(), 100);
+
+        EarthquakeStore second = new EarthquakeStore();
+        second.append(new Earthquake("nc9", 1.2, "Geysers, CA", 5000, EarthquakeStore.EVENT_PAGE_URL + "nc9"));
+        snapshot.write(QUERY_URL, second, 100);
+
+        EarthquakeStore read = snapshot.read(QUERY_URL, null);
+        assertEquals(1, read.size());
+        assertEquals("nc9", read.getId(0));
+        assertEquals(1, file.getParentFile().list().length);
+    }
+
+    @Test
+    public void deletesTheSnapshot() throws IOException {
+        EarthquakeSnapshot snapshot = new EarthquakeSnapshot(mFolder.newFile());
+        snapshot.write(QUERY_URL, store(), 100);
+
+        snapshot.delete();
+
+        assertNull(snapshot.read(QUERY_URL, null));
+    }
+
+    private static EarthquakeStore store() {
+        EarthquakeStore store = new EarthquakeStore();
+        store.appendAll(Arrays.asList(
+                new Earthquake("hv1", 4.62, "12km NNE of Hilo, Hawaii", 1000,
+                        EarthquakeStore.EVENT_PAGE_URL + "hv1", 19.8, -155.0, 10.5),
+                new Earthquake("us2", 5.1, "Fiji region", 2000,
+                        EarthquakeStore.EVENT_PAGE_URL + "us2", -17.9, 178.5, 550),
+                new Earthquake("hv3", 2.0, "3km S of Hilo, Hawaii", 3000,
+                        "https://example.com/hv3", Double.NaN, Double.NaN, Double.NaN),
+                // Not ASCII, so strings are written as UTF-8 bytes
+                new Earthquake("ci4", 3.3, "5km N of Pe\u00f1asco, Mexico", 4000,
+                        EarthquakeStore.EVENT_PAGE_URL + "ci4", 32.1, -116.2, 4.0)));
+        return store;
+    }
+}
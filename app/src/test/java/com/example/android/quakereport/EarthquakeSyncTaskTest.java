@@ -0,0 +1,82 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EarthquakeSyncTaskTest {
+
+    @Test
+    public void keepsSyncingDeltasAtTheSameOrAHigherMinmag() {
+        assertFalse(EarthquakeSyncTask.needsBackfill("4.5", "4.5"));
+        assertFalse(EarthquakeSyncTask.needsBackfill("6", "4.5"));
+    }
+
+    @Test
+    public void backfillsWhenMinmagDropsBelowTheLastSyncedOne() {
+        assertTrue(EarthquakeSyncTask.needsBackfill("2.5", "4.5"));
+    }
+
+    @Test
+    public void backfillsAfterARaisedMinmagIsLoweredAgain() {
+        // Synced at 2.5, then a delta at 6 leaves 6 as the synced minmag
+        String synced = "2.5";
+        assertFalse(EarthquakeSyncTask.needsBackfill("6", synced));
+        synced = "6";
+
+        // Events between 2.5 and 6 stopped being updated, so going back to 2.5 refetches them
+        assertTrue(EarthquakeSyncTask.needsBackfill("2.5", synced));
+    }
+
+    @Test
+    public void backfillsWhenEitherMinmagIsntANumber() {
+        assertTrue(EarthquakeSyncTask.needsBackfill("", "4.5"));
+        assertTrue(EarthquakeSyncTask.needsBackfill("4.5", "strong"));
+        assertTrue(EarthquakeSyncTask.needsBackfill("4.5", null));
+    }
+
+    @Test
+    public void parsesMinmagValues() {
+        assertEquals(4.5, EarthquakeSyncTask.parseMagnitude("4.5"), 0);
+        assertTrue(Double.isNaN(EarthquakeSyncTask.parseMagnitude("x")));
+        assertTrue(Double.isNaN(EarthquakeSyncTask.parseMagnitude(null)));
+    }
+
+    @Test
+    public void dropsChangesBelowMinmagWithoutDeletingThem() {
+        Earthquake kept = earthquake("us1", 4.5, false);
+        Earthquake lowered = earthquake("us2", 4.4, false);
+        Earthquake deleted = earthquake("us3", 3.0, true);
+        List<Earthquake> merged = new ArrayList<>();
+        List<Earthquake> dropped = new ArrayList<>();
+
+        EarthquakeSyncTask.splitAt(4.5, Arrays.asList(kept, lowered, deleted), merged, dropped);
+
+        // Deletions are merged at any magnitude; a lowered event is only dropped, as it is
+        assertEquals(Arrays.asList(kept, deleted), merged);
+        assertEquals(Arrays.asList(lowered), dropped);
+        assertFalse(dropped.get(0).isDeleted());
+    }
+
+    @Test
+    public void keepsEveryChangeWithoutAMinmag() {
+        List<Earthquake> merged = new ArrayList<>();
+        List<Earthquake> dropped = new ArrayList<>();
+
+        EarthquakeSyncTask.splitAt(Double.NaN, Arrays.asList(earthquake("us1", 0.1, false)), merged, dropped);
+
+        assertEquals(1, merged.size());
+        assertTrue(dropped.isEmpty());
+    }
+
+    private static Earthquake earthquake(String id, double magnitude, boolean deleted) {
+        return new Earthquake(id, magnitude, "Somewhere", 1000, "", Double.NaN, Double.NaN, Double.NaN,
+                2000, deleted);
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventStatisticsTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long DAY = 24 * HOUR;
+
+    /** 2018-07-01T00:00:00Z */
+    private static final long NOW = 1530403200000L;
+
+    private static final String[] PLACES = {
+            "10km NE of Ridgecrest, CA", "5km S of Volcano, Hawaii", "Fiji region",
+            "20km W of Anchorage, Alaska", "3km N of Trona, CA", "South of the Kermadec Islands"};
+
+    @Test
+    public void countsAnEventOnce() {
+        EventStatistics statistics = new EventStatistics();
+        statistics.putAll(Arrays.asList(earthquake("ci1", 3.4, PLACES[0], NOW - HOUR)));
+
+        assertEquals(1, statistics.getEventCount());
+        assertEquals(1, statistics.getMagnitudeBucketCount(3));
+        assertEquals(1, statistics.getEventsInHour(NOW - HOUR));
+        assertEquals(1, statistics.getEventsOnDay(NOW - HOUR));
+        assertEquals(1, statistics.getRegionCount("CA"));
+        assertEquals(3.4, statistics.getMaxMagnitude("CA"), 0);
+    }
+
+    @Test
+    public void updatesTakeBackThePreviousVersion() {
+        EventStatistics statistics = new EventStatistics();
+        statistics.putAll(Arrays.asList(earthquake("ci1", 3.4, PLACES[0], NOW - HOUR)));
+
+        // Revised to another magnitude, hour, day and region
+        statistics.putAll(Arrays.asList(earthquake("ci1", 5.1, PLACES[1], NOW - DAY - 2 * HOUR)));
+
+        assertEquals(1, statistics.getEventCount());
+        assertEquals(0, statistics.getMagnitudeBucketCount(3));
+        assertEquals(1, statistics.getMagnitudeBucketCount(5));
+        assertEquals(0, statistics.getEventsInHour(NOW - HOUR));
+        assertEquals(1, statistics.getEventsInHour(NOW - DAY - 2 * HOUR));
+        assertEquals(0, statistics.getEventsOnDay(NOW - HOUR));
+        assertEquals(1, statistics.getEventsOnDay(NOW - DAY - 2 * HOUR));
+        assertEquals(0, statistics.getRegionCount("CA"));
+        assertTrue(Double.isNaN(statistics.getMaxMagnitude("CA")));
+        assertEquals(5.1, statistics.getMaxMagnitude("Hawaii"), 0);
+        assertEquals(Collections.singletonList("Hawaii"), statistics.getRegions());
+    }
+
+    @Test
+    public void deletesTakeBackEverything() {
+        EventStatistics statistics = new EventStatistics();
+        statistics.putAll(Arrays.asList(
+                earthquake("ci1", 3.4, PLACES[0], NOW - HOUR),
+                earthquake("ci2", 4.8, PLACES[4], NOW - HOUR)));
+
+        statistics.removeAll(Arrays.asList("ci2", "unknown"));
+
+        assertEquals(1, statistics.getEventCount());
+        assertEquals(0, statistics.getMagnitudeBucketCount(4));
+        assertEquals(1, statistics.getEventsInHour(NOW - HOUR));
+        assertEquals(1, statistics.getRegionCount("CA"));
+        // The strongest event went away, so the next strongest takes its place
+        assertEquals(3.4, statistics.getMaxMagnitude("CA"), 0);
+    }
+
+    @Test
+    public void applyingAWriteTwiceChangesNothing() {
+        List<Earthquake> writes = Arrays.asList(
+                earthquake("ci1", 3.4, PLACES[0], NOW - HOUR),
+                earthquake("us2", 6.0, PLACES[2], NOW - 3 * DAY));
+        EventStatistics once = new EventStatistics();
+        once.putAll(writes);
+        EventStatistics twice = new EventStatistics();
+        twice.putAll(writes);
+        twice.putAll(writes);
+
+        assertSameStatistics(once, twice);
+    }
+
+    @Test
+    public void removesEventsBeforeATime() {
+        EventStatistics statistics = new EventStatistics();
+        statistics.putAll(Arrays.asList(
+                earthquake("ci1", 3.4, PLACES[0], NOW - HOUR),
+                earthquake("us2", 6.0, PLACES[2], NOW - 3 * DAY)));
+
+        statistics.removeEventsBefore(NOW - DAY);
+
+        assertEquals(1, statistics.getEventCount());
+        assertEquals(0, statistics.getEventsOnDay(NOW - 3 * DAY));
+        assertEquals(0, statistics.getRegionCount("Fiji region"));
+        assertEquals(3.4, statistics.getSummary(NOW).getMaxMagnitude(), 0);
+    }
+
+    @Test
+    public void ringsDontCountPeriodsTheyHaveMovedPast() {
+        EventStatistics statistics = new EventStatistics();
+        long old = NOW - EventStatistics.RING_DAYS * DAY;
+        statistics.putAll(Arrays.asList(earthquake("us1", 2.0, PLACES[2], old)));
+
+        // Same slot of the daily ring, a full ring later
+        statistics.putAll(Arrays.asList(earthquake("us2", 2.0, PLACES[2], NOW)));
+        assertEquals(0, statistics.getEventsOnDay(old));
+        assertEquals(1, statistics.getEventsOnDay(NOW));
+
+        // Taking back the old event mustn't take from the period that took its slot
+        statistics.removeAll(Collections.singletonList("us1"));
+        assertEquals(1, statistics.getEventsOnDay(NOW));
+        assertEquals(1, statistics.getEventCount());
+    }
+
+    @Test
+    public void summarizesTheLastDayByWholeHours() {
+        EventStatistics statistics = new EventStatistics();
+        statistics.putAll(Arrays.asList(
+                earthquake("a", 1.0, PLACES[0], NOW - 1),
+                earthquake("b", 2.0, PLACES[0], NOW - 23 * HOUR),
+                earthquake("c", 7.2, PLACES[3], NOW - 25 * HOUR)));
+
+        EventStatistics.Summary summary = statistics.getSummary(NOW - 1);
+
+        assertEquals(3, summary.getEventCount());
+        assertEquals(2, summary.getEventsInLastDay());
+        assertEquals(7.2, summary.getMaxMagnitude(), 0);
+        assertEquals(1, summary.getMagnitudeBucketCount(7));
+    }
+
+    /**
+     * Applies random inserts, updates, deletes and expiries, and checks the result against
+     * statistics built from scratch out of the events that are left.
+     */
+    @Test
+    public void randomWritesMatchStatisticsBuiltFromScratch() {
+        Random random = new Random(19);
+        EventStatistics statistics = new EventStatistics();
+        Map<String, Earthquake> events = new HashMap<>();
+
+        for (int step = 0; step < 20000; step++) {
+            String id = "ev" + random.nextInt(500);
+            int action = random.nextInt(20);
+            if (action < 12) {
+                Earthquake earthquake = randomEarthquake(random, id);
+                statistics.putAll(Collections.singletonList(earthquake));
+                events.put(id, earthquake);
+            } else if (action < 19) {
+                statistics.removeAll(Collections.singletonList(id));
+                events.remove(id);
+            } else {
+                long cutoff = NOW - 30 * DAY + random.nextInt(5) * DAY;
+                statistics.removeEventsBefore(cutoff);
+                for (Earthquake earthquake : new ArrayList<>(events.values())) {
+                    if (earthquake.getTimeInMilliseconds() < cutoff) {
+                        events.remove(earthquake.getId());
+                    }
+                }
+            }
+
+            if (step % 1000 == 999) {
+                EventStatistics expected = new EventStatistics();
+                expected.putAll(new ArrayList<>(events.values()));
+                assertSameStatistics(expected, statistics);
+            }
+        }
+    }
+
+    private static void assertSameStatistics(EventStatistics expected, EventStatistics actual) {
+        assertEquals(expected.getEventCount(), actual.getEventCount());
+        for (int bucket = 0; bucket < EarthquakeFormatter.MAGNITUDE_BUCKET_COUNT; bucket++) {
+            assertEquals("bucket " + bucket, expected.getMagnitudeBucketCount(bucket),
+                    actual.getMagnitudeBucketCount(bucket));
+        }
+        for (long time = NOW - EventStatistics.RING_DAYS * DAY; time <= NOW; time += HOUR) {
+            assertEquals("hour " + time, expected.getEventsInHour(time), actual.getEventsInHour(time));
+            assertEquals("day " + time, expected.getEventsOnDay(time), actual.getEventsOnDay(time));
+        }
+        List<String> expectedRegions = expected.getRegions();
+        List<String> actualRegions = actual.getRegions();
+        Collections.sort(expectedRegions);
+        Collections.sort(actualRegions);
+        assertEquals(expectedRegions, actualRegions);
+        for (String region : expectedRegions) {
+            assertEquals(region, expected.getRegionCount(region), actual.getRegionCount(region));
+            assertEquals(region, expected.getMaxMagnitude(region), actual.getMaxMagnitude(region), 0);
+        }
+        assertEquals(expected.getSummary(NOW).getMaxMagnitude(), actual.getSummary(NOW).getMaxMagnitude(), 0);
+        assertEquals(expected.getSummary(NOW).getEventsInLastDay(), actual.getSummary(NOW).getEventsInLastDay());
+    }
+
+    private static Earthquake randomEarthquake(Random random, String id) {
+        // Tenths of magnitude, as the feed reports them
+        double magnitude = random.nextInt(90) / 10.0;
+        long time = NOW - (long) (random.nextDouble() * 30 * DAY);
+        return earthquake(id, magnitude, PLACES[random.nextInt(PLACES.length)], time);
+    }
+
+    private static Earthquake earthquake(String id, double magnitude, String place, long time) {
+        return new Earthquake(id, magnitude, place, time, EarthquakeStore.EVENT_PAGE_URL + id);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String FEATURE = "{\"type\":\"Feature\",\"properties\":{\"mag\":4.6,"
+            + "\"place\":\"12km NNE of Hilo, Hawaii\",\"time\":1530403200000},\"id\":\"hv%d\"}";
+
+    private static final String BODY = "{\"type\":\"FeatureCollection\",\"features\":["
+            + String.format(FEATURE, 1) + "," + String.format(FEATURE, 2) + "," + String.format(FEATURE, 3) + "]}";
+
+    private boolean mWasEnabled;
+
+    @Before
+    public void setUp() {
+        mWasEnabled = Metrics.isEnabled();
+        Metrics.setEnabled(true);
+        Metrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.reset();
+        Metrics.setEnabled(mWasEnabled);
+    }
+
+    @Test
+    public void countersOnlyCountWhileEnabled() {
+        Metrics.NETWORK_FETCHES.increment();
+        Metrics.BYTES_RECEIVED.add(1500);
+
+        Metrics.setEnabled(false);
+        Metrics.NETWORK_FETCHES.increment();
+        Metrics.BYTES_RECEIVED.add(1500);
+        Metrics.PARSE.recordMicros(10);
+        assertEquals(0, Metrics.start());
+
+        assertEquals(1, Metrics.NETWORK_FETCHES.get());
+        assertEquals(1500, Metrics.BYTES_RECEIVED.get());
+        assertEquals(0, Metrics.PARSE.getCount());
+    }
+
+    @Test
+    public void histogramsBoundPercentilesByPowersOfTwo() {
+        Metrics.Histogram histogram = Metrics.getHistogram("parse");
+        assertSame(Metrics.PARSE, histogram);
+        for (long micros : new long[] {1, 3, 3, 100, 1000}) {
+            histogram.recordMicros(micros);
+        }
+
+        assertEquals(5, histogram.getCount());
+        assertEquals(221, histogram.getMeanMicros());
+        assertEquals(1000, histogram.getMaxMicros());
+        assertEquals(4, histogram.getPercentileMicros(50));
+        assertEquals(128, histogram.getPercentileMicros(80));
+        assertEquals(1000, histogram.getPercentileMicros(100));
+
+        Metrics.reset();
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void aFetchRecordsEveryStage() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = BODY.getBytes(UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        try {
+            QueryUtils.setTransport(new UrlConnectionTransport(2000, 2000, 1, 0));
+            QueryResult result = QueryUtils.fetchEarthquakeData("http://127.0.0.1:"
+                    + server.getAddress().getPort() + "/query?format=geojson", null);
+
+            assertNotNull(result);
+            assertEquals(3, result.getEarthquakes().size());
+        } finally {
+            server.stop(0);
+        }
+
+        assertEquals(1, Metrics.HTTP_CONNECT.getCount());
+        assertEquals(1, Metrics.HTTP_FIRST_BYTE.getCount());
+        assertEquals(1, Metrics.HTTP_READ.getCount());
+        assertEquals(1, Metrics.PARSE.getCount());
+        assertEquals(3, Metrics.getCounter("parse.features").get());
+        assertEquals(BODY.getBytes(UTF_8).length, Metrics.BYTES_RECEIVED.get());
+        assertTrue(Metrics.HTTP_CONNECT.getMaxMicros() < 2000 * 1000);
+    }
+}
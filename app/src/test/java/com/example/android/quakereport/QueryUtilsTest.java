@@ -0,0 +1,135 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueryUtilsTest {
+
+    private static final String FEATURE = "{\"properties\":{\"mag\":4.6,\"place\":\"Hilo, Hawaii\","
+            + "\"time\":1530000000000},\"id\":\"hv1\"}";
+
+    @Test
+    public void returnsEveryFeatureOfACompleteResponse() throws IOException {
+        List<Earthquake> earthquakes = QueryUtils.extractFeatureFromStream(
+                stream("{\"features\":[" + FEATURE + "," + FEATURE + "]}"), ResponseFormats.GEOJSON);
+
+        assertEquals(2, earthquakes.size());
+    }
+
+    @Test
+    public void failsAResponseOfAnotherShapeInsteadOfReturningPartOfIt() throws IOException {
+        assertNull(QueryUtils.extractFeatureFromStream(
+                stream("{\"features\":[" + FEATURE + ",[]]}"), ResponseFormats.GEOJSON));
+    }
+
+    @Test
+    public void failsMalformedJson() throws IOException {
+        assertNull(QueryUtils.extractFeatureFromStream(
+                stream("{\"features\":[" + FEATURE + ",}"), ResponseFormats.GEOJSON));
+    }
+
+    @Test
+    public void failsANonNumericValue() throws IOException {
+        assertNull(QueryUtils.extractFeatureFromStream(
+                stream("{\"features\":[" + FEATURE.replace("4.6", "\"big\"") + "]}"), ResponseFormats.GEOJSON));
+    }
+
+    @Test
+    public void failsAMalformedTextLine() throws IOException {
+        String text = "#EventID|Time|Latitude|Longitude|Depth/km|Author|Catalog|Contributor|ContributorID"
+                + "|MagType|Magnitude|MagAuthor|EventLocationName|EventType\n"
+                + "hv1|2018-06-26T08:00:00.000|19.8|-155.0|8.4|hv|hv|hv|hv1|ml|4.6|hv|Hilo, Hawaii|earthquake\n"
+                + "hv2|2018-06-26T08:00:00.000|19.8|-155.0|8.4|hv|hv|hv\n";
+
+        assertNull(QueryUtils.extractFeatureFromStream(stream(text), ResponseFormats.TEXT));
+    }
+
+    @Test
+    public void failsATextResponseCutInTheLastPlace() throws IOException {
+        String text = "#EventID|Time|Latitude|Longitude|Depth/km|Author|Catalog|Contributor|ContributorID"
+                + "|MagType|Magnitude|MagAuthor|EventLocationName|EventType\n"
+                + "hv1|2018-06-26T08:00:00.000|19.8|-155.0|8.4|hv|hv|hv|hv1|ml|4.6|hv|Hilo, Hawaii|earthquake\n"
+                + "hv2|2018-06-26T08:00:00.000|19.8|-155.0|8.4|hv|hv|hv|hv2|ml|4.6|hv|Hil";
+
+        assertNull(QueryUtils.extractFeatureFromStream(stream(text), ResponseFormats.TEXT));
+    }
+
+    @Test
+    public void aQueryMatchingNothingIsAnEmptyResult() {
+        QueryUtils.setTransport(new StatusTransport(HttpURLConnection.HTTP_NO_CONTENT));
+        QueryResult previous = new QueryResult(Arrays.asList(new Earthquake("hv1", 4.6, "Hilo, Hawaii",
+                1530000000000L, EarthquakeStore.EVENT_PAGE_URL + "hv1")), "\"1\"", null, 0, false);
+
+        QueryResult result = QueryUtils.fetchEarthquakeData(
+                "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&minmag=9", previous);
+
+        // Not a failure, which would leave the old rows on screen, and not "not modified" either
+        assertNotNull(result);
+        assertTrue(result.getEarthquakes().isEmpty());
+        assertFalse(result.isNotModified());
+    }
+
+    @Test
+    public void anErrorResponseIsNoResult() {
+        QueryUtils.setTransport(new StatusTransport(HttpURLConnection.HTTP_BAD_REQUEST));
+
+        assertNull(QueryUtils.fetchEarthquakeData(
+                "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&minmag=9", null));
+    }
+
+    /** {@link HttpTransport} answering every request with a status and no body. */
+    private static final class StatusTransport implements HttpTransport {
+        private final int mCode;
+
+        StatusTransport(int code) {
+            mCode = code;
+        }
+
+        @Override
+        public Response get(URL url, Map<String, String> headers, FetchCancellation cancellation) {
+            return new Response() {
+                @Override
+                public int getCode() {
+                    return mCode;
+                }
+
+                @Override
+                public String getHeader(String name) {
+                    return null;
+                }
+
+                @Override
+                public InputStream getBody() {
+                    return new ByteArrayInputStream(new byte[0]);
+                }
+
+                @Override
+                public void close() {
+                }
+
+                @Override
+                public void abort() {
+                }
+            };
+        }
+    }
+
+    private static InputStream stream(String string) {
+        return new ByteArrayInputStream(string.getBytes(Charset.forName("UTF-8")));
+    }
+}
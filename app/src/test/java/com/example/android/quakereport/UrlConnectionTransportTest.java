@@ -0,0 +1,357 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs {@link UrlConnectionTransport} against a local HTTP server.
+ */
+public class UrlConnectionTransportTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String BODY = "{\"type\":\"FeatureCollection\",\"features\":[]}";
+
+    private final UrlConnectionTransport mTransport = new UrlConnectionTransport(2000, 2000, 3, 1);
+
+    private HttpServer mServer;
+
+    /** Status codes still to be answered before 200, one per request */
+    private final List<Integer> mFailures = Collections.synchronizedList(new ArrayList<Integer>());
+
+    /** What the server saw of each request: its Accept-Encoding and the client's port */
+    private final List<String> mEncodings = Collections.synchronizedList(new ArrayList<String>());
+    private final List<Integer> mClientPorts = Collections.synchronizedList(new ArrayList<Integer>());
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String encoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                mEncodings.add(encoding);
+                mClientPorts.add(exchange.getRemoteAddress().getPort());
+                if (!mFailures.isEmpty()) {
+                    exchange.sendResponseHeaders(mFailures.remove(0), -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] body = BODY.getBytes(UTF_8);
+                if (encoding != null && encoding.contains("gzip")) {
+                    body = gzip(body);
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void requestsGzipAndInflatesTheBody() throws IOException {
+        HttpTransport.Response response = mTransport.get(url(), null, new FetchCancellation());
+        try {
+            assertEquals(200, response.getCode());
+            assertEquals("gzip", response.getHeader("Content-Encoding"));
+            assertEquals(BODY, read(response.getBody()));
+        } finally {
+            response.close();
+        }
+        assertEquals("gzip", mEncodings.get(0));
+    }
+
+    @Test
+    public void reusesTheConnectionForTheNextRequest() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            HttpTransport.Response response = mTransport.get(url(), null, new FetchCancellation());
+            read(response.getBody());
+            response.close();
+        }
+
+        assertEquals(3, mClientPorts.size());
+        assertEquals(mClientPorts.get(0), mClientPorts.get(1));
+        assertEquals(mClientPorts.get(0), mClientPorts.get(2));
+    }
+
+    @Test
+    public void retriesOverloadedServerResponses() throws IOException {
+        mFailures.add(503);
+        mFailures.add(429);
+
+        HttpTransport.Response response = mTransport.get(url(), null, new FetchCancellation());
+        try {
+            assertEquals(200, response.getCode());
+            assertEquals(BODY, read(response.getBody()));
+        } finally {
+            response.close();
+        }
+        assertEquals(3, mEncodings.size());
+    }
+
+    @Test
+    public void returnsTheLastFailureOnceAttemptsRunOut() throws IOException {
+        mFailures.add(503);
+        mFailures.add(503);
+        mFailures.add(502);
+
+        HttpTransport.Response response = mTransport.get(url(), null, new FetchCancellation());
+        response.close();
+
+        assertEquals(502, response.getCode());
+        assertEquals(3, mEncodings.size());
+    }
+
+    @Test
+    public void doesntRetryClientErrors() throws IOException {
+        mFailures.add(400);
+
+        HttpTransport.Response response = mTransport.get(url(), null, new FetchCancellation());
+        response.close();
+
+        assertEquals(400, response.getCode());
+        assertEquals(1, mEncodings.size());
+    }
+
+    @Test
+    public void sendsExtraHeaders() throws IOException {
+        final List<String> validators = new ArrayList<>();
+        mServer.createContext("/etag", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                validators.add(exchange.getRequestHeaders().getFirst("If-None-Match"));
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+            }
+        });
+
+        HttpTransport.Response response = mTransport.get(
+                new URL(url(), "/etag"), Collections.singletonMap("If-None-Match", "\"v1\""),
+                new FetchCancellation());
+        response.close();
+
+        assertEquals(304, response.getCode());
+        assertEquals(Collections.singletonList("\"v1\""), validators);
+    }
+
+    @Test
+    public void failsABodyCutShortOfItsContentLength() throws IOException {
+        final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Thread server = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Socket socket = serverSocket.accept();
+                    InputStream in = socket.getInputStream();
+                    // Wait for the end of the request headers
+                    int matched = 0;
+                    while (matched < 4) {
+                        int b = in.read();
+                        if (b == -1) {
+                            break;
+                        }
+                        matched = (b == "\r\n\r\n".charAt(matched)) ? matched + 1 : (b == '\r' ? 1 : 0);
+                    }
+                    OutputStream out = socket.getOutputStream();
+                    out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n"
+                            + "Content-Length: 100\r\n\r\n#EventID|Time|Lat").getBytes(UTF_8));
+                    out.flush();
+                    socket.close();
+                } catch (IOException e) {
+                    // The test fails on the client side
+                }
+            }
+        };
+        server.start();
+
+        try {
+            HttpTransport.Response response = mTransport.get(
+                    new URL("http://127.0.0.1:" + serverSocket.getLocalPort() + "/"), null,
+                    new FetchCancellation());
+            try {
+                read(response.getBody());
+                fail("A body shorter than its Content-Length was read as complete");
+            } catch (IOException expected) {
+            } finally {
+                response.abort();
+            }
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void failsWhenNoConnectionCanBeMade() throws IOException {
+        ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        int port = serverSocket.getLocalPort();
+        serverSocket.close();
+
+        try {
+            mTransport.get(new URL("http://127.0.0.1:" + port + "/"), null, new FetchCancellation()).close();
+            fail("Connected to a closed port");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void cancellingStopsARequestWaitingForItsResponse() throws Exception {
+        final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        final CountDownLatch requested = new CountDownLatch(1);
+        final CountDownLatch dropped = new CountDownLatch(1);
+        Thread server = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    // Read the request, never answer it, and see the client hang up
+                    Socket socket = serverSocket.accept();
+                    InputStream in = socket.getInputStream();
+                    in.read();
+                    requested.countDown();
+                    while (in.read() != -1) {
+                        // Rest of the request
+                    }
+                    dropped.countDown();
+                    socket.close();
+                } catch (IOException e) {
+                    dropped.countDown();
+                }
+            }
+        };
+        server.start();
+
+        try {
+            // Long enough that only the cancellation can end the wait
+            UrlConnectionTransport transport = new UrlConnectionTransport(60000, 60000, 3, 1);
+            FetchCancellation cancellation = new FetchCancellation();
+            Future<HttpTransport.Response> request = getInBackground(transport,
+                    new URL("http://127.0.0.1:" + serverSocket.getLocalPort() + "/"), cancellation);
+            assertTrue(requested.await(5, TimeUnit.SECONDS));
+
+            cancellation.cancel();
+
+            assertFailsSoon(request);
+            assertTrue("The connection was kept open", dropped.await(5, TimeUnit.SECONDS));
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void cancellingStopsTheWaitBeforeARetry() throws Exception {
+        mFailures.add(503);
+        mFailures.add(503);
+        // Long enough that only the cancellation can end the wait
+        UrlConnectionTransport transport = new UrlConnectionTransport(2000, 2000, 3, 60000);
+        FetchCancellation cancellation = new FetchCancellation();
+        Future<HttpTransport.Response> request = getInBackground(transport, url(), cancellation);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mEncodings.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        cancellation.cancel();
+
+        assertFailsSoon(request);
+        assertEquals("The request was sent again", 1, mEncodings.size());
+    }
+
+    @Test
+    public void aCancelledRequestIsNeverSent() throws Exception {
+        FetchCancellation cancellation = new FetchCancellation();
+        cancellation.cancel();
+
+        try {
+            mTransport.get(url(), null, cancellation).close();
+            fail("Sent a cancelled request");
+        } catch (IOException expected) {
+        }
+        assertEquals(0, mEncodings.size());
+    }
+
+    /** Sends a request on another thread. */
+    private static Future<HttpTransport.Response> getInBackground(final HttpTransport transport, final URL url,
+                                                                  final FetchCancellation cancellation) {
+        FutureTask<HttpTransport.Response> request = new FutureTask<>(new Callable<HttpTransport.Response>() {
+            @Override
+            public HttpTransport.Response call() throws IOException {
+                return transport.get(url, null, cancellation);
+            }
+        });
+        new Thread(request).start();
+        return request;
+    }
+
+    /** Checks the request ends with an IOException within a few seconds. */
+    private static void assertFailsSoon(Future<HttpTransport.Response> request) throws InterruptedException {
+        try {
+            request.get(5, TimeUnit.SECONDS).close();
+            fail("A cancelled request returned a response");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        } catch (TimeoutException e) {
+            fail("A cancelled request kept going");
+        } catch (IOException e) {
+            fail("A cancelled request returned a response");
+        }
+    }
+
+    private URL url() throws IOException {
+        return new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + "/query");
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), UTF_8);
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(bytes);
+        gzip.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WindowedFetcherTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    /** 2018-07-01T00:00:00Z */
+    private static final long END = 1530403200000L;
+    private static final long START = END - 30 * 24 * HOUR;
+
+    @Test
+    public void mergesWindowsIntoOneOrderedList() {
+        List<Earthquake> catalog = catalog(5000, START, END, 1);
+        Comparator<Earthquake> byTime = EventQuery.comparatorFor("time");
+
+        List<Earthquake> fetched = new WindowedFetcher(new CatalogSource(catalog, byTime), byTime)
+                .fetch(START, END, 8);
+
+        assertEquals(sorted(catalog, byTime), fetched);
+    }
+
+    @Test
+    public void mergesByMagnitudeWhenOrderedByMagnitude() {
+        List<Earthquake> catalog = catalog(5000, START, END, 2);
+        Comparator<Earthquake> byMagnitude = EventQuery.comparatorFor("magnitude");
+
+        List<Earthquake> fetched = new WindowedFetcher(new CatalogSource(catalog, byMagnitude), byMagnitude)
+                .fetch(START, END, 8);
+
+        assertEquals(catalog.size(), fetched.size());
+        for (int i = 1; i < fetched.size(); i++) {
+            assertTrue(byMagnitude.compare(fetched.get(i - 1), fetched.get(i)) <= 0);
+        }
+    }
+
+    @Test
+    public void keepsAnEventOnceWhenTwoWindowsReturnIt() {
+        List<Earthquake> catalog = catalog(1000, START, END, 3);
+        final Earthquake everywhere = new Earthquake("us1", 9.0, "Everywhere", END,
+                EarthquakeStore.EVENT_PAGE_URL + "us1");
+        Comparator<Earthquake> byTime = EventQuery.comparatorFor("time");
+        final CatalogSource catalogSource = new CatalogSource(catalog, byTime);
+
+        // As if the event were revised to another time between two requests
+        WindowedFetcher.WindowSource source = new WindowedFetcher.WindowSource() {
+            @Override
+            public List<Earthquake> fetch(long startTime, long endTime) {
+                List<Earthquake> earthquakes = new ArrayList<>(catalogSource.fetch(startTime, endTime));
+                earthquakes.add(0, everywhere);
+                return earthquakes;
+            }
+        };
+        List<Earthquake> fetched = new WindowedFetcher(source, byTime).fetch(START, END, 4);
+
+        assertEquals(catalog.size() + 1, fetched.size());
+        assertEquals(everywhere, fetched.get(0));
+    }
+
+    @Test
+    public void splitsWindowsThatComeBackFull() {
+        // One hour holding more events than a request returns
+        List<Earthquake> catalog = catalog(WindowedFetcher.MAX_RESULTS_PER_REQUEST * 3 / 2,
+                END - HOUR, END, 4);
+        Comparator<Earthquake> byTime = EventQuery.comparatorFor("time");
+        CatalogSource source = new CatalogSource(catalog, byTime);
+
+        List<Earthquake> fetched = new WindowedFetcher(source, byTime).fetch(END - HOUR, END, 1);
+
+        assertEquals(sorted(catalog, byTime), fetched);
+        assertTrue(source.mRequests.get() > 1);
+    }
+
+    @Test
+    public void failsWhenAWindowFails() {
+        List<Earthquake> catalog = catalog(1000, START, END, 5);
+        Comparator<Earthquake> byTime = EventQuery.comparatorFor("time");
+        final CatalogSource catalogSource = new CatalogSource(catalog, byTime);
+        WindowedFetcher.WindowSource source = new WindowedFetcher.WindowSource() {
+            @Override
+            public List<Earthquake> fetch(long startTime, long endTime) {
+                return startTime == START ? null : catalogSource.fetch(startTime, endTime);
+            }
+        };
+
+        assertNull(new WindowedFetcher(source, byTime).fetch(START, END, 4));
+    }
+
+    @Test
+    public void cancelStopsWindowsInFlight() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        WindowedFetcher.WindowSource source = new WindowedFetcher.WindowSource() {
+            @Override
+            public List<Earthquake> fetch(long startTime, long endTime) {
+                started.countDown();
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return Collections.emptyList();
+            }
+        };
+        final WindowedFetcher fetcher = new WindowedFetcher(source, EventQuery.comparatorFor("time"));
+        final AtomicReference<List<Earthquake>> result = new AtomicReference<>();
+        final CountDownLatch returned = new CountDownLatch(1);
+        Thread caller = new Thread() {
+            @Override
+            public void run() {
+                result.set(fetcher.fetch(START, END, 2));
+                returned.countDown();
+            }
+        };
+        caller.start();
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        fetcher.cancel();
+
+        assertTrue("fetch didn't return after cancel()", returned.await(5, TimeUnit.SECONDS));
+        assertNull(result.get());
+        assertTrue("A window kept running after cancel()", interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void interruptingTheCallerStopsTheFetch() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        WindowedFetcher.WindowSource source = new WindowedFetcher.WindowSource() {
+            @Override
+            public List<Earthquake> fetch(long startTime, long endTime) {
+                started.countDown();
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return Collections.emptyList();
+            }
+        };
+        final WindowedFetcher fetcher = new WindowedFetcher(source, EventQuery.comparatorFor("time"));
+        final AtomicReference<List<Earthquake>> result = new AtomicReference<>();
+        final CountDownLatch returned = new CountDownLatch(1);
+        Thread caller = new Thread() {
+            @Override
+            public void run() {
+                result.set(fetcher.fetch(START, END, 2));
+                returned.countDown();
+            }
+        };
+        caller.start();
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        caller.interrupt();
+
+        assertTrue("fetch didn't return after an interrupt", returned.await(5, TimeUnit.SECONDS));
+        assertNull(result.get());
+        assertTrue("A window kept running after an interrupt", interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * {@link WindowedFetcher.WindowSource} answering from a list, capped the way USGS caps
+     * a request.
+     */
+    private static final class CatalogSource implements WindowedFetcher.WindowSource {
+        private final List<Earthquake> mCatalog;
+        private final Comparator<Earthquake> mComparator;
+        final AtomicInteger mRequests = new AtomicInteger();
+
+        CatalogSource(List<Earthquake> catalog, Comparator<Earthquake> comparator) {
+            mCatalog = catalog;
+            mComparator = comparator;
+        }
+
+        @Override
+        public List<Earthquake> fetch(long startTime, long endTime) {
+            mRequests.incrementAndGet();
+            List<Earthquake> earthquakes = new ArrayList<>();
+            for (Earthquake earthquake : mCatalog) {
+                long time = earthquake.getTimeInMilliseconds();
+                if (time >= startTime && time < endTime) {
+                    earthquakes.add(earthquake);
+                }
+            }
+            Collections.sort(earthquakes, mComparator);
+            if (earthquakes.size() > WindowedFetcher.MAX_RESULTS_PER_REQUEST) {
+                earthquakes = earthquakes.subList(0, WindowedFetcher.MAX_RESULTS_PER_REQUEST);
+            }
+            return earthquakes;
+        }
+    }
+
+    /** Returns events at random times between start and end, each at a time of its own. */
+    private static List<Earthquake> catalog(int count, long start, long end, long seed) {
+        Random random = new Random(seed);
+        List<Earthquake> earthquakes = new ArrayList<>(count);
+        long step = (end - start) / count;
+        for (int i = 0; i < count; i++) {
+            String id = "ev" + i;
+            long time = start + i * step + random.nextInt((int) Math.max(1, step));
+            earthquakes.add(new Earthquake(id, random.nextInt(80) / 10.0, "Somewhere", time,
+                    EarthquakeStore.EVENT_PAGE_URL + id));
+        }
+        Collections.shuffle(earthquakes, random);
+        return earthquakes;
+    }
+
+    private static List<Earthquake> sorted(List<Earthquake> earthquakes, Comparator<Earthquake> comparator) {
+        List<Earthquake> sorted = new ArrayList<>(earthquakes);
+        Collections.sort(sorted, comparator);
+        return sorted;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.android.quakereport.batch;
+
+import com.example.android.quakereport.Earthquake;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Counts earthquakes per group, i.e. per day or per whole magnitude, and keeps the
+ * largest and the mean magnitude of every group.
+ *
+ * Each thread fills an {@link Aggregation} of its own, and they are merged at the end,
+ * so no lock is taken per earthquake.
+ */
+final class Aggregation {
+
+    /** Groupings, by their name on the command line */
+    static final String BY_MAGNITUDE = "magnitude";
+    static final String BY_DAY = "day";
+    static final String BY_MONTH = "month";
+    static final String BY_YEAR = "year";
+    static final String BY_REGION = "region";
+
+    /** Separator in front of the region of a place, i.e. "Ridgecrest, CA" */
+    private static final String REGION_SEPARATOR = ", ";
+
+    /** What one group holds */
+    private static final class Group {
+        long mCount;
+        double mMaxMagnitude = Double.NEGATIVE_INFINITY;
+        double mMagnitudeSum;
+    }
+
+    private final String mGrouping;
+
+    /** Groups by key */
+    private final Map<String, Group> mGroups = new HashMap<>();
+
+    /** Reused to build the date keys */
+    private final StringBuilder mKeyBuilder = new StringBuilder();
+
+    /**
+     * Constructs a new {@link Aggregation}.
+     * @param grouping is one of the BY_ constants
+     * @throws IllegalArgumentException for another grouping
+     */
+    Aggregation(String grouping) {
+        switch (grouping) {
+            case BY_MAGNITUDE:
+            case BY_DAY:
+            case BY_MONTH:
+            case BY_YEAR:
+            case BY_REGION:
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown grouping " + grouping);
+        }
+        mGrouping = grouping;
+    }
+
+    /** Counts an earthquake in its group. */
+    void add(Earthquake earthquake) {
+        String key = keyOf(earthquake);
+        Group group = mGroups.get(key);
+        if (group == null) {
+            group = new Group();
+            mGroups.put(key, group);
+        }
+        double magnitude = earthquake.getMagnitude();
+        group.mCount++;
+        group.mMaxMagnitude = Math.max(group.mMaxMagnitude, magnitude);
+        group.mMagnitudeSum += magnitude;
+    }
+
+    /** Adds the groups of another aggregation of the same grouping to this one. */
+    void merge(Aggregation other) {
+        for (Map.Entry<String, Group> entry : other.mGroups.entrySet()) {
+            Group group = mGroups.get(entry.getKey());
+            Group otherGroup = entry.getValue();
+            if (group == null) {
+                mGroups.put(entry.getKey(), otherGroup);
+            } else {
+                group.mCount += otherGroup.mCount;
+                group.mMaxMagnitude = Math.max(group.mMaxMagnitude, otherGroup.mMaxMagnitude);
+                group.mMagnitudeSum += otherGroup.mMagnitudeSum;
+            }
+        }
+    }
+
+    /** Writes one CSV line per group, in the order of the keys, after a header line. */
+    void write(Writer writer) throws IOException {
+        List<String> keys = new ArrayList<>(mGroups.keySet());
+        if (mGrouping.equals(BY_MAGNITUDE)) {
+            // Magnitude keys are numbers, which don't sort as strings
+            Collections.sort(keys, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    return Integer.valueOf(a).compareTo(Integer.valueOf(b));
+                }
+            });
+        } else {
+            Collections.sort(keys);
+        }
+
+        writer.write(mGrouping + ",count,max_magnitude,mean_magnitude\n");
+        for (String key : keys) {
+            Group group = mGroups.get(key);
+            String name = mGrouping.equals(BY_REGION) ? "\"" + key.replace("\"", "\"\"") + "\"" : key;
+            writer.write(name + "," + group.mCount + "," + group.mMaxMagnitude + ","
+                    + String.format(Locale.US, "%.3f", group.mMagnitudeSum / group.mCount) + "\n");
+        }
+    }
+
+    /** Returns the key of the group an earthquake belongs to. */
+    private String keyOf(Earthquake earthquake) {
+        switch (mGrouping) {
+            case BY_MAGNITUDE:
+                return String.valueOf((int) Math.floor(earthquake.getMagnitude()));
+            case BY_REGION:
+                String place = earthquake.getLocation();
+                int separator = place.lastIndexOf(REGION_SEPARATOR);
+                return separator >= 0 ? place.substring(separator + REGION_SEPARATOR.length()) : place;
+            default:
+                mKeyBuilder.setLength(0);
+                int fields = mGrouping.equals(BY_YEAR) ? 1 : mGrouping.equals(BY_MONTH) ? 2 : 3;
+                UtcTime.appendDate(mKeyBuilder, earthquake.getTimeInMilliseconds(), fields);
+                return mKeyBuilder.toString();
+        }
+    }
+}
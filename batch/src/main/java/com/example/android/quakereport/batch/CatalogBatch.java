@@ -0,0 +1,365 @@
+package com.example.android.quakereport.batch;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.EventArchive;
+import com.example.android.quakereport.EventQuery;
+import com.example.android.quakereport.ResponseFormat;
+import com.example.android.quakereport.ResponseFormats;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Command-line batch processor for archived USGS catalogs in GeoJSON, CSV or the FDSN
+ * text format, of any size.
+ * <pre>
+ * catalog-batch [options] &lt;catalog file, optionally .gz, or - for stdin&gt;
+ *   --format geojson|csv|text    catalog format; guessed from the file name by default
+ *   --threads N                  parsing threads; the number of cores by default
+ *   --chunk-size BYTES[k|m]      bytes of records per chunk; 4m by default
+ *   --output FILE                where to write; stdout by default
+ *   --group-by magnitude|day|month|year|region
+ *                                write counts per group instead of the matching events
+ *   --archive DIR                add the matching events to an event archive, as the
+ *                                app keeps them, instead of writing them
+ *   --minmagnitude, --maxmagnitude, --starttime, --endtime, --minlatitude,
+ *   --maxlatitude, --minlongitude, --maxlongitude VALUE
+ *                                keep only the events USGS would return for these
+ *                                FDSN parameters; short names such as --minmag work too
+ * </pre>
+ *
+ * One thread cuts the catalog into chunks of whole records, which a pool of threads
+ * parses and filters in parallel with the same parsers and query logic as the app.
+ * Matching events are written as CSV in catalog order. At most two chunks per thread
+ * are in memory at a time, so memory use doesn't grow with the catalog. Statistics,
+ * including events per second per core, go to stderr. Archiving reports the bytes the
+ * archive takes per event, compacted.
+ */
+public final class CatalogBatch {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /** Chunks in flight per thread; enough to keep every thread busy while one is written */
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    /** What processing one chunk produced */
+    private static final class ChunkResult {
+        int mParsed;
+        int mMatched;
+        /** CSV lines of the matching events, when not aggregating */
+        String mOutput;
+        /** Groups of the matching events, when aggregating */
+        Aggregation mAggregation;
+        /** The matching events, when archiving */
+        List<Earthquake> mMatching;
+        /** Why the chunk couldn't be read to its end, or null */
+        String mError;
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a {@link CatalogBatch}
+     * object. This class only holds static methods.
+     */
+    private CatalogBatch() {
+    }
+
+    public static void main(String[] args) {
+        try {
+            System.exit(run(args, System.out, System.err));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: catalog-batch [--format geojson|csv|text] [--threads N]"
+                    + " [--chunk-size BYTES] [--output FILE] [--group-by GROUPING | --archive DIR]"
+                    + " [--FDSN-PARAMETER VALUE]... CATALOG");
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Problem processing the catalog: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Processes a catalog as told by the command-line arguments.
+     * @param out receives the output unless it goes to a file
+     * @param log receives the statistics and problems
+     * @return the exit status: 0, or 1 if some records couldn't be read
+     * @throws IllegalArgumentException if the arguments are wrong
+     * @throws IOException if the catalog or the output fails
+     */
+    static int run(String[] args, PrintStream out, PrintStream log) throws IOException {
+        String inputPath = null;
+        String formatName = null;
+        String outputPath = null;
+        String grouping = null;
+        String archivePath = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        Map<String, String> parameters = new HashMap<>();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--") || arg.length() == 2) {
+                if (inputPath != null) {
+                    throw new IllegalArgumentException("More than one catalog: " + arg);
+                }
+                inputPath = arg;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("No value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--format":
+                    formatName = value;
+                    break;
+                case "--threads":
+                    threads = parseSize(arg, value);
+                    break;
+                case "--chunk-size":
+                    chunkSize = parseSize(arg, value);
+                    break;
+                case "--output":
+                    outputPath = value;
+                    break;
+                case "--group-by":
+                    grouping = value;
+                    break;
+                case "--archive":
+                    archivePath = value;
+                    break;
+                case "--orderby":
+                    throw new IllegalArgumentException("Events are written in catalog order");
+                default:
+                    parameters.put(arg.substring(2), value);
+                    break;
+            }
+        }
+        if (inputPath == null) {
+            throw new IllegalArgumentException("No catalog given");
+        }
+        if (formatName == null) {
+            formatName = guessFormat(inputPath);
+        }
+        ResponseFormat format = ResponseFormats.forName(formatName);
+        if (format == null) {
+            throw new IllegalArgumentException("Unknown format " + formatName);
+        }
+        EventQuery query = EventQuery.fromParameters(parameters);
+        if (grouping != null) {
+            // Fail on a bad grouping before reading anything
+            new Aggregation(grouping);
+        }
+        if (grouping != null && archivePath != null) {
+            throw new IllegalArgumentException("Either group or archive the events");
+        }
+        EventArchive archive = archivePath != null ? new EventArchive(new File(archivePath)) : null;
+
+        InputStream input = null;
+        OutputStream output = null;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            input = inputPath.equals("-") ? System.in : new FileInputStream(inputPath);
+            if (inputPath.endsWith(".gz")) {
+                input = new GZIPInputStream(input, 64 * 1024);
+            } else {
+                input = new BufferedInputStream(input, 64 * 1024);
+            }
+            output = outputPath == null ? out : new FileOutputStream(outputPath);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, UTF_8), 64 * 1024);
+            return process(CatalogChunker.forFormat(format, input, chunkSize), format, query,
+                    grouping, archive, executor, threads, writer, log);
+        } finally {
+            executor.shutdownNow();
+            if (input != null && input != System.in) {
+                input.close();
+            }
+            if (output != null && output != out) {
+                output.close();
+            }
+        }
+    }
+
+    /** Runs the chunks through the executor and writes or archives their results in order. */
+    private static int process(CatalogChunker chunker, final ResponseFormat format,
+                               final EventQuery query, final String grouping,
+                               final EventArchive archive, ExecutorService executor, int threads, Writer writer,
+                               PrintStream log) throws IOException {
+        long start = System.nanoTime();
+        long bytes = 0;
+        long parsed = 0;
+        long matched = 0;
+        int errors = 0;
+        Aggregation total = grouping != null ? new Aggregation(grouping) : null;
+        if (total == null && archive == null) {
+            writer.write(EventCsvWriter.HEADER);
+        }
+
+        ArrayDeque<Future<ChunkResult>> inFlight = new ArrayDeque<>();
+        boolean more = true;
+        while (more || !inFlight.isEmpty()) {
+            // Keep the pool fed, then write the oldest chunk once it is done
+            while (more && inFlight.size() < threads * CHUNKS_PER_THREAD) {
+                final CatalogChunk chunk = chunker.next();
+                if (chunk == null) {
+                    more = false;
+                    break;
+                }
+                bytes += chunk.getLength();
+                inFlight.add(executor.submit(new Callable<ChunkResult>() {
+                    @Override
+                    public ChunkResult call() {
+                        return processChunk(chunk, format, query, grouping, archive != null);
+                    }
+                }));
+            }
+            if (inFlight.isEmpty()) {
+                break;
+            }
+
+            ChunkResult result = await(inFlight.remove());
+            parsed += result.mParsed;
+            matched += result.mMatched;
+            if (result.mError != null) {
+                errors++;
+                log.println(result.mError);
+            }
+            if (total != null) {
+                total.merge(result.mAggregation);
+            } else if (archive != null) {
+                archive.append(result.mMatching);
+            } else {
+                writer.write(result.mOutput);
+            }
+        }
+        if (total != null) {
+            total.write(writer);
+        }
+        writer.flush();
+        if (archive != null) {
+            archive.compactAll();
+        }
+
+        // Threads beyond the number of cores don't add throughput, so divide by what runs at once
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int cores = Math.min(threads, Runtime.getRuntime().availableProcessors());
+        log.println(String.format(Locale.US,
+                "%d events read, %d matched, %.1f MB in %.2f s: %.0f events/s, %.0f events/s per core (%d threads on %d cores)",
+                parsed, matched, bytes / 1e6, seconds, parsed / seconds, parsed / seconds / cores, threads, cores));
+        if (archive != null && matched > 0) {
+            long archived = archive.getSizeInBytes();
+            log.println(String.format(Locale.US, "Archive: %.1f MB, %.1f bytes per event",
+                    archived / 1e6, archived / (double) matched));
+        }
+        return errors == 0 ? 0 : 1;
+    }
+
+    /** Parses one chunk and filters, then formats, aggregates or keeps, its events. */
+    private static ChunkResult processChunk(CatalogChunk chunk, ResponseFormat format,
+                                            EventQuery query, String grouping, boolean archiving) {
+        ChunkResult result = new ChunkResult();
+        List<Earthquake> earthquakes = new ArrayList<>();
+        try {
+            format.parse(chunk.open(), earthquakes);
+        } catch (IOException | IllegalStateException e) {
+            // The chunk is in memory, so this is a malformed record; keep what came before it
+            result.mError = "Problem reading chunk " + chunk.getIndex() + ", skipped the rest of it: "
+                    + e.getMessage();
+        }
+        result.mParsed = earthquakes.size();
+
+        List<Earthquake> matching = new ArrayList<>();
+        for (int i = 0; i < earthquakes.size(); i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            if (query.matches(earthquake)) {
+                matching.add(earthquake);
+            }
+        }
+        result.mMatched = matching.size();
+
+        if (archiving) {
+            result.mMatching = matching;
+        } else if (grouping != null) {
+            result.mAggregation = new Aggregation(grouping);
+            for (int i = 0; i < matching.size(); i++) {
+                result.mAggregation.add(matching.get(i));
+            }
+        } else {
+            StringBuilder builder = new StringBuilder(matching.size() * 128);
+            EventCsvWriter.append(builder, matching);
+            result.mOutput = builder.toString();
+        }
+        return result;
+    }
+
+    private static ChunkResult await(Future<ChunkResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /** Returns the format a catalog's file name suggests, ignoring a .gz suffix. */
+    private static String guessFormat(String path) {
+        String name = path.toLowerCase(Locale.US);
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - ".gz".length());
+        }
+        if (name.endsWith(".csv")) {
+            return ResponseFormats.CSV.getName();
+        } else if (name.endsWith(".txt") || name.endsWith(".text")) {
+            return ResponseFormats.TEXT.getName();
+        } else if (name.endsWith(".geojson") || name.endsWith(".json")) {
+            return ResponseFormats.GEOJSON.getName();
+        }
+        throw new IllegalArgumentException("Can't tell the format of " + path + ", use --format");
+    }
+
+    /** Reads a positive count, with an optional k or m suffix for KiB or MiB. */
+    private static int parseSize(String name, String value) {
+        String lower = value.toLowerCase(Locale.US);
+        int multiplier = 1;
+        if (lower.endsWith("k")) {
+            multiplier = 1024;
+        } else if (lower.endsWith("m")) {
+            multiplier = 1024 * 1024;
+        }
+        try {
+            int size = Integer.parseInt(multiplier == 1 ? lower : lower.substring(0, lower.length() - 1));
+            if (size > 0) {
+                return size * multiplier;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Bad " + name + ": " + value);
+    }
+}
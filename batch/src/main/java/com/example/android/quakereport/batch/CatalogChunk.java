@@ -0,0 +1,57 @@
+package com.example.android.quakereport.batch;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+/**
+ * A run of whole records cut out of a catalog file, which parses on its own: the bytes
+ * of the records, plus what has to come before and after them to make a complete
+ * document of the catalog's format, such as the CSV header line.
+ */
+final class CatalogChunk {
+
+    private static final byte[] NONE = new byte[0];
+
+    /** Position of the chunk in the file, counted from 0 */
+    private final int mIndex;
+
+    private final byte[] mPrefix;
+    private final byte[] mData;
+    private final int mStart;
+    private final int mEnd;
+    private final byte[] mSuffix;
+
+    /**
+     * Constructs a new {@link CatalogChunk}. The chunk takes over the data array, which
+     * must not be changed afterwards.
+     * @param index is the position of the chunk in the file
+     * @param prefix goes before the records, or null for nothing
+     * @param data holds the records in data[start, end)
+     * @param suffix goes after the records, or null for nothing
+     */
+    CatalogChunk(int index, byte[] prefix, byte[] data, int start, int end, byte[] suffix) {
+        mIndex = index;
+        mPrefix = prefix != null ? prefix : NONE;
+        mData = data;
+        mStart = start;
+        mEnd = end;
+        mSuffix = suffix != null ? suffix : NONE;
+    }
+
+    int getIndex() {
+        return mIndex;
+    }
+
+    /** Returns the number of bytes of records. */
+    int getLength() {
+        return mEnd - mStart;
+    }
+
+    /** Returns the chunk as a document of the catalog's format. */
+    InputStream open() {
+        return new SequenceInputStream(new ByteArrayInputStream(mPrefix),
+                new SequenceInputStream(new ByteArrayInputStream(mData, mStart, mEnd - mStart),
+                        new ByteArrayInputStream(mSuffix)));
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.android.quakereport.batch;
+
+import com.example.android.quakereport.ResponseFormat;
+import com.example.android.quakereport.ResponseFormats;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Cuts a catalog stream into {@link CatalogChunk}s of about the same size that can be
+ * parsed independently, on different threads.
+ *
+ * Finding where records end only takes a pass over the bytes looking for a few
+ * characters, which is much cheaper than parsing them, so one thread can keep several
+ * parsing threads busy. Only a chunk or two is held in memory at a time, however large
+ * the stream is.
+ */
+abstract class CatalogChunker {
+
+    /** The catalog */
+    protected final InputStream mInput;
+
+    /** Bytes of records to put in each chunk; a chunk ends at the first record end after this */
+    protected final int mChunkSize;
+
+    /** Index of the next chunk */
+    private int mNextIndex;
+
+    CatalogChunker(InputStream input, int chunkSize) {
+        mInput = input;
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * Returns a chunker for a catalog of the given format.
+     * @throws IllegalArgumentException if the format can't be cut into chunks
+     */
+    static CatalogChunker forFormat(ResponseFormat format, InputStream input, int chunkSize) {
+        if (format == ResponseFormats.GEOJSON) {
+            return new GeoJsonChunker(input, chunkSize);
+        } else if (format == ResponseFormats.CSV) {
+            return new LineChunker(input, chunkSize, true);
+        } else if (format == ResponseFormats.TEXT) {
+            return new LineChunker(input, chunkSize, false);
+        }
+        throw new IllegalArgumentException("Can't split " + format.getName() + " into chunks");
+    }
+
+    /**
+     * Returns the next chunk, or null at the end of the stream.
+     * @throws IOException if the stream fails
+     */
+    abstract CatalogChunk next() throws IOException;
+
+    /** Returns the index for the next chunk and moves past it. */
+    protected int nextIndex() {
+        return mNextIndex++;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.android.quakereport.batch;
+
+import com.example.android.quakereport.Earthquake;
+
+import java.util.List;
+
+/**
+ * Writes earthquakes as CSV lines with the column names of USGS catalog downloads, so
+ * the output reads back in as a CSV catalog.
+ */
+final class EventCsvWriter {
+
+    /** Header line naming the columns written */
+    static final String HEADER = "time,latitude,longitude,depth,mag,id,updated,place\n";
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EventCsvWriter}
+     * object. This class only holds static methods.
+     */
+    private EventCsvWriter() {
+    }
+
+    /** Appends one line per earthquake. Unknown coordinates are left empty. */
+    static void append(StringBuilder builder, List<Earthquake> earthquakes) {
+        for (int i = 0; i < earthquakes.size(); i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            UtcTime.appendDateTime(builder, earthquake.getTimeInMilliseconds());
+            builder.append(',');
+            appendCoordinate(builder, earthquake.getLatitude());
+            builder.append(',');
+            appendCoordinate(builder, earthquake.getLongitude());
+            builder.append(',');
+            appendCoordinate(builder, earthquake.getDepth());
+            builder.append(',').append(earthquake.getMagnitude());
+            builder.append(',').append(earthquake.getId()).append(',');
+            UtcTime.appendDateTime(builder, earthquake.getUpdatedInMilliseconds());
+            // Places hold commas, so they are always quoted
+            builder.append(",\"").append(earthquake.getLocation().replace("\"", "\"\"")).append("\"\n");
+        }
+    }
+
+    private static void appendCoordinate(StringBuilder builder, double value) {
+        if (!Double.isNaN(value)) {
+            builder.append(value);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.android.quakereport.batch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Cuts a GeoJSON FeatureCollection into chunks of whole features. Each chunk is wrapped
+ * into a FeatureCollection of its own, so the regular GeoJSON parser reads it.
+ *
+ * The bytes are scanned for brackets, keeping track of strings so brackets inside them
+ * don't count, to find the "features" array of the top-level object and the end of
+ * every feature in it. Everything outside the array, such as the metadata, is dropped.
+ * A catalog that is cut short yields the features that are complete.
+ */
+final class GeoJsonChunker extends CatalogChunker {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] PREFIX = "{\"features\":[".getBytes(UTF_8);
+    private static final byte[] SUFFIX = "]}".getBytes(UTF_8);
+
+    /** Name of the top-level member holding the features */
+    private static final byte[] FEATURES = "features".getBytes(UTF_8);
+
+    /** Depth of the features array's elements: top-level object, then the array */
+    private static final int FEATURE_DEPTH = 2;
+
+    /** Bytes read but not handed out yet, in mBuffer[0, mLength); scanned up to mScanned */
+    private byte[] mBuffer;
+    private int mLength;
+    private int mScanned;
+
+    /** Number of objects and arrays open at mScanned */
+    private int mDepth;
+    private boolean mInString;
+    private boolean mEscaped;
+
+    /** Bytes of the string being scanned that match "features" so far, or -1 */
+    private int mNameMatch;
+    private boolean mLastStringIsFeatures;
+
+    /** True after a top-level name "features" and its colon */
+    private boolean mValueIsFeatures;
+
+    /** True inside the features array */
+    private boolean mInFeatures;
+
+    /** True once the features array is closed, or the stream ended inside it */
+    private boolean mFeaturesEnded;
+
+    /** Where the features not handed out yet start, or -1 once they all were */
+    private int mContentStart = -1;
+
+    /** Where the last complete feature ends, or, once the features ended, where they end */
+    private int mLastCut;
+
+    private boolean mEndOfStream;
+
+    GeoJsonChunker(InputStream input, int chunkSize) {
+        super(input, chunkSize);
+        mBuffer = new byte[chunkSize + chunkSize / 8];
+    }
+
+    @Override
+    CatalogChunk next() throws IOException {
+        while (true) {
+            scan();
+            if (mFeaturesEnded) {
+                // The rest of the features, if any, and then nothing
+                CatalogChunk chunk = mContentStart >= 0 ? cut(mContentStart, mLastCut) : null;
+                mContentStart = -1;
+                return chunk;
+            }
+            if (mInFeatures && mLastCut - mContentStart >= mChunkSize) {
+                CatalogChunk chunk = cut(mContentStart, mLastCut);
+                // The chunk owns the buffer now, so keep what follows in a new one
+                byte[] rest = new byte[mBuffer.length];
+                System.arraycopy(mBuffer, mLastCut, rest, 0, mLength - mLastCut);
+                mBuffer = rest;
+                mLength -= mLastCut;
+                mScanned -= mLastCut;
+                mContentStart = 0;
+                mLastCut = 0;
+                if (chunk != null) {
+                    return chunk;
+                }
+            }
+            if (!mInFeatures) {
+                // Nothing before the features is needed
+                mLength = 0;
+                mScanned = 0;
+            }
+            if (mEndOfStream) {
+                if (!mInFeatures) {
+                    return null;
+                }
+                // Cut short inside the features; the last one is incomplete, so drop it
+                mInFeatures = false;
+                mFeaturesEnded = true;
+                continue;
+            }
+
+            if (mLength == mBuffer.length) {
+                mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2);
+            }
+            int read = mInput.read(mBuffer, mLength, mBuffer.length - mLength);
+            if (read < 0) {
+                mEndOfStream = true;
+            } else {
+                mLength += read;
+            }
+        }
+    }
+
+    /**
+     * Scans the bytes read since the last scan, stopping early at the end of the
+     * features array.
+     */
+    private void scan() {
+        for (int i = mScanned; i < mLength; i++) {
+            byte b = mBuffer[i];
+            if (mInString) {
+                if (mEscaped) {
+                    mEscaped = false;
+                } else if (b == '\\') {
+                    mEscaped = true;
+                    mNameMatch = -1;
+                } else if (b == '"') {
+                    mInString = false;
+                    mLastStringIsFeatures = mNameMatch == FEATURES.length;
+                } else if (mNameMatch >= 0) {
+                    mNameMatch = mNameMatch < FEATURES.length && b == FEATURES[mNameMatch]
+                            ? mNameMatch + 1 : -1;
+                }
+                continue;
+            }
+            switch (b) {
+                case '"':
+                    mInString = true;
+                    // Only names of the top-level object can be "features"
+                    mNameMatch = mDepth == 1 ? 0 : -1;
+                    break;
+                case ':':
+                    mValueIsFeatures = mDepth == 1 && mLastStringIsFeatures;
+                    break;
+                case '[':
+                    if (mValueIsFeatures && !mFeaturesEnded) {
+                        mInFeatures = true;
+                        mContentStart = i + 1;
+                        mLastCut = i + 1;
+                    }
+                    mValueIsFeatures = false;
+                    mDepth++;
+                    break;
+                case '{':
+                    mValueIsFeatures = false;
+                    mDepth++;
+                    break;
+                case '}':
+                case ']':
+                    mDepth--;
+                    if (mInFeatures && mDepth == FEATURE_DEPTH && b == '}') {
+                        mLastCut = i + 1;
+                    } else if (mInFeatures && mDepth < FEATURE_DEPTH) {
+                        mInFeatures = false;
+                        mFeaturesEnded = true;
+                        mLastCut = i;
+                        mScanned = i + 1;
+                        return;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        mScanned = mLength;
+    }
+
+    /**
+     * Returns the features in mBuffer[start, end) as a chunk, or null if there are
+     * none. A comma left over from the previous cut is skipped.
+     */
+    private CatalogChunk cut(int start, int end) {
+        while (start < end && (mBuffer[start] == ',' || mBuffer[start] <= ' ')) {
+            start++;
+        }
+        if (start >= end) {
+            return null;
+        }
+        return new CatalogChunk(nextIndex(), PREFIX, mBuffer, start, end, SUFFIX);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.android.quakereport.batch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Cuts a catalog with one record per line, i.e. CSV or the FDSN text format, into chunks
+ * that end at a line end. The header line of a CSV catalog is repeated in front of every
+ * chunk after the first, so each one names its columns.
+ */
+final class LineChunker extends CatalogChunker {
+
+    /** True if the first line names the columns */
+    private final boolean mHasHeader;
+
+    /** The header line with its line end, once read */
+    private byte[] mHeader;
+
+    /** Bytes read but not handed out yet, in mBuffer[0, mLength) */
+    private byte[] mBuffer;
+    private int mLength;
+
+    private boolean mEndOfStream;
+
+    LineChunker(InputStream input, int chunkSize, boolean hasHeader) {
+        super(input, chunkSize);
+        mHasHeader = hasHeader;
+        mBuffer = new byte[chunkSize + chunkSize / 8];
+    }
+
+    @Override
+    CatalogChunk next() throws IOException {
+        while (true) {
+            if (mLength >= mChunkSize || mEndOfStream) {
+                int cut = mEndOfStream ? mLength : lastIndexOf(mBuffer, (byte) '\n', mLength) + 1;
+                if (cut > 0) {
+                    return cut(cut);
+                }
+                if (mEndOfStream) {
+                    return null;
+                }
+                // A line longer than a chunk, so read on until it ends
+            }
+            if (mLength == mBuffer.length) {
+                mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2);
+            }
+            int read = mInput.read(mBuffer, mLength, mBuffer.length - mLength);
+            if (read < 0) {
+                mEndOfStream = true;
+            } else {
+                mLength += read;
+            }
+        }
+    }
+
+    /** Hands out mBuffer[0, cut) as a chunk and keeps the rest in a new buffer. */
+    private CatalogChunk cut(int cut) {
+        byte[] prefix = mHeader;
+        if (mHasHeader && mHeader == null) {
+            // This is the first chunk, which starts with the header itself
+            mHeader = Arrays.copyOf(mBuffer, indexOf(mBuffer, (byte) '\n', cut) + 1);
+        }
+        CatalogChunk chunk = new CatalogChunk(nextIndex(), prefix, mBuffer, 0, cut, null);
+
+        byte[] rest = new byte[mBuffer.length];
+        System.arraycopy(mBuffer, cut, rest, 0, mLength - cut);
+        mBuffer = rest;
+        mLength -= cut;
+        return chunk;
+    }
+
+    /** Returns the index of the first byte b in bytes[0, end), or end - 1 if there is none. */
+    private static int indexOf(byte[] bytes, byte b, int end) {
+        for (int i = 0; i < end; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return end - 1;
+    }
+
+    /** Returns the index of the last byte b in bytes[0, end), or -1 if there is none. */
+    private static int lastIndexOf(byte[] bytes, byte b, int end) {
+        for (int i = end - 1; i >= 0; i--) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.android.quakereport.batch;
+
+/**
+ * Writes UTC times in the ISO 8601 form USGS uses, i.e. 2019-07-06T03:19:53.040Z,
+ * without a {@link java.text.SimpleDateFormat}, which is slow and can't be shared
+ * between threads.
+ */
+final class UtcTime {
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link UtcTime}
+     * object. This class only holds static methods.
+     */
+    private UtcTime() {
+    }
+
+    /** Appends the date and time, i.e. 2019-07-06T03:19:53.040Z. */
+    static void appendDateTime(StringBuilder builder, long timeInMilliseconds) {
+        long day = epochDay(timeInMilliseconds);
+        int millisOfDay = (int) (timeInMilliseconds - day * MILLIS_PER_DAY);
+        appendEpochDay(builder, day, 3);
+        builder.append('T');
+        appendPadded(builder, millisOfDay / 3600000, 2);
+        builder.append(':');
+        appendPadded(builder, millisOfDay / 60000 % 60, 2);
+        builder.append(':');
+        appendPadded(builder, millisOfDay / 1000 % 60, 2);
+        builder.append('.');
+        appendPadded(builder, millisOfDay % 1000, 3);
+        builder.append('Z');
+    }
+
+    /**
+     * Appends the first fields of the date of a time: 1 for the year, 2 for the year and
+     * month, 3 for the whole date.
+     */
+    static void appendDate(StringBuilder builder, long timeInMilliseconds, int fields) {
+        appendEpochDay(builder, epochDay(timeInMilliseconds), fields);
+    }
+
+    /** Same as above, for a day counted from 1970-01-01. */
+    private static void appendEpochDay(StringBuilder builder, long epochDay, int fields) {
+        // Civil date from a day count, with years starting in March so the leap day is last
+        long days = epochDay + 719468;
+        long era = (days >= 0 ? days : days - 146096) / 146097;
+        int dayOfEra = (int) (days - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int monthFromMarch = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * monthFromMarch + 2) / 5 + 1;
+        int month = monthFromMarch < 10 ? monthFromMarch + 3 : monthFromMarch - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        appendPadded(builder, year, 4);
+        if (fields > 1) {
+            builder.append('-');
+            appendPadded(builder, month, 2);
+        }
+        if (fields > 2) {
+            builder.append('-');
+            appendPadded(builder, day, 2);
+        }
+    }
+
+    /** Returns the day of a time counted from 1970-01-01, rounding down before it. */
+    private static long epochDay(long timeInMilliseconds) {
+        long day = timeInMilliseconds / MILLIS_PER_DAY;
+        return timeInMilliseconds % MILLIS_PER_DAY < 0 ? day - 1 : day;
+    }
+
+    private static void appendPadded(StringBuilder builder, long value, int digits) {
+        if (value < 0) {
+            builder.append('-');
+            value = -value;
+        }
+        for (long limit = 10; --digits > 0; limit *= 10) {
+            if (value < limit) {
+                builder.append('0');
+            }
+        }
+        builder.append(value);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.AlertRule;
+import com.example.android.quakereport.AlertRuleEngine;
+import com.example.android.quakereport.Earthquake;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Events per second checked against many alert rules, by an {@link AlertRuleEngine} and by
+ * trying every rule in turn. Scores are per event.
+ *
+ * The rules are a mix a crowd of users could write: magnitude thresholds for the whole
+ * world, circles of 50 to 1000 km around random points, and words of the fixture places,
+ * a third of them with a depth range too. The events are the 1000 fixture events.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AlertRuleBenchmark {
+
+    private static final int EVENTS = 1000;
+
+    /** Words of the places in the fixtures, as users would look for them */
+    private static final String[] WORDS = {
+            "CA", "Alaska", "Japan", "Hawaii", "Chile", "Peru", "Mexico", "Indonesia", "Turkey",
+            "Greece", "Nevada", "Utah", "Tokyo", "Anchorage", "Kermadec Islands", "Fiji"};
+
+    @Param({"1000", "10000"})
+    public int rules;
+
+    private List<Earthquake> mEarthquakes;
+    private List<AlertRule> mRules;
+    private AlertRuleEngine mEngine;
+
+    @Setup
+    public void setUp() throws IOException {
+        mEarthquakes = Fixtures.earthquakes(EVENTS);
+        Random random = new Random(1);
+        mRules = new ArrayList<>(rules);
+        for (int i = 0; i < rules; i++) {
+            mRules.add(AlertRule.parse(randomRule(random), Double.NaN, Double.NaN));
+        }
+        mEngine = new AlertRuleEngine(mRules);
+    }
+
+    @Benchmark
+    public AlertRuleEngine compile() {
+        return new AlertRuleEngine(mRules);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public int engine() {
+        int matches = 0;
+        for (int i = 0; i < mEarthquakes.size(); i++) {
+            matches += mEngine.match(mEarthquakes.get(i)).size();
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public int everyRule() {
+        int matches = 0;
+        for (int i = 0; i < mEarthquakes.size(); i++) {
+            Earthquake earthquake = mEarthquakes.get(i);
+            for (int j = 0; j < mRules.size(); j++) {
+                if (mRules.get(j).matches(earthquake)) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static String randomRule(Random random) {
+        StringBuilder text = new StringBuilder();
+        text.append("M >= ").append(random.nextInt(70) / 10.0).append(' ');
+        switch (random.nextInt(3)) {
+            case 0:
+                text.append(String.format(Locale.US, "within %d km of %.2f,%.2f ", 50 + random.nextInt(950),
+                        Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1)), random.nextDouble() * 360 - 180));
+                break;
+            case 1:
+                text.append("place contains \"").append(WORDS[random.nextInt(WORDS.length)]).append("\" ");
+                break;
+            default:
+                text.append("any ");
+                break;
+        }
+        if (random.nextInt(3) == 0) {
+            text.append("and depth < ").append(10 + random.nextInt(90));
+        }
+        return text.toString();
+    }
+}
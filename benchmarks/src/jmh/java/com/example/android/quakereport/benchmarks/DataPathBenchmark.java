@@ -0,0 +1,59 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.EarthquakeFormatter;
+import com.example.android.quakereport.EarthquakeStore;
+import com.example.android.quakereport.ResponseFormats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The loader's whole path from a response body to rows ready to bind: parsing the
+ * response as a stream, then splitting and formatting every row into an
+ * {@link EarthquakeStore}, as the loader does on its background thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DataPathBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int events;
+
+    private byte[] mResponse;
+    private EarthquakeFormatter mFormatter;
+
+    @Setup
+    public void setUp() throws IOException {
+        mResponse = Fixtures.geoJson(events);
+        mFormatter = Fixtures.newFormatter();
+    }
+
+    @Benchmark
+    public EarthquakeStore parseAndFormat() throws IOException {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        ResponseFormats.GEOJSON.parse(new ByteArrayInputStream(mResponse), earthquakes);
+        EarthquakeStore store = new EarthquakeStore(earthquakes.size(), mFormatter);
+        store.appendAll(earthquakes);
+        return store;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.EarthquakeFormatter;
+import com.example.android.quakereport.ResponseFormats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads the recorded responses in src/jmh/resources/fixtures, which
+ * {@code ./gradlew :benchmarks:recordFixtures} writes with the feed simulator: the newest
+ * 10, 1000, 10000 and 100000 events of the same made-up catalog, in GeoJSON and in the
+ * FDSN text format, with every property USGS sends.
+ */
+final class Fixtures {
+
+    /** The app's magnitude colors, as resolved from its resources */
+    private static final int[] MAGNITUDE_COLORS = {
+            0xFF4A7BA7, 0xFF4A7BA7, 0xFF04B4B3, 0xFF10CAC9, 0xFFF5A623,
+            0xFFFF7D50, 0xFFFC6644, 0xFFE75F40, 0xFFE13A20, 0xFFD93218
+    };
+    private static final int MAGNITUDE_COLOR_OVERFLOW = 0xFFC03823;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link Fixtures}
+     * object. This class only holds static methods.
+     */
+    private Fixtures() {
+    }
+
+    /** Returns the GeoJSON response of the newest events of the catalog, uncompressed. */
+    static byte[] geoJson(int events) throws IOException {
+        return load("events-" + events + ".geojson.gz");
+    }
+
+    /** Returns the FDSN text response of the newest events of the catalog, uncompressed. */
+    static byte[] text(int events) throws IOException {
+        return load("events-" + events + ".txt.gz");
+    }
+
+    /** Returns the newest events of the catalog. */
+    static List<Earthquake> earthquakes(int events) throws IOException {
+        List<Earthquake> earthquakes = new ArrayList<>(events);
+        ResponseFormats.GEOJSON.parse(new ByteArrayInputStream(geoJson(events)), earthquakes);
+        return earthquakes;
+    }
+
+    /** Returns a formatter with the app's colors and strings. */
+    static EarthquakeFormatter newFormatter() {
+        return new EarthquakeFormatter(MAGNITUDE_COLORS, MAGNITUDE_COLOR_OVERFLOW, "near the");
+    }
+
+    /** Returns the gzipped fixture of the given name, inflated. */
+    static byte[] load(String name) throws IOException {
+        InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name);
+        if (in == null) {
+            throw new IOException("No fixture " + name + "; run ./gradlew :benchmarks:recordFixtures");
+        }
+        try {
+            in = new GZIPInputStream(in);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[65536];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
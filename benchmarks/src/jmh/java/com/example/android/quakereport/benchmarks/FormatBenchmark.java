@@ -0,0 +1,124 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.EarthquakeFormatter;
+import com.example.android.quakereport.EarthquakeStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting the 1000 rows of a list: date, time, magnitude, place split and magnitude
+ * color. {@link #legacyGetView} does what EarthquakeAdapter.getView used to do for every
+ * row it showed. {@link #formatIntoStore} is what the loader does now, once per row, and
+ * {@link #bindFromStore} is what is left for the adapter to do when a row is shown.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormatBenchmark {
+
+    private static final int ROWS = 1000;
+
+    private static final String LOCATION_SEPARATOR = " of ";
+
+    private List<Earthquake> mEarthquakes;
+    private EarthquakeFormatter mFormatter;
+    private EarthquakeStore mStore;
+
+    @Setup
+    public void setUp() throws IOException {
+        mEarthquakes = Fixtures.earthquakes(ROWS);
+        mFormatter = Fixtures.newFormatter();
+        mStore = new EarthquakeStore(ROWS, mFormatter);
+        mStore.appendAll(mEarthquakes);
+    }
+
+    /** The old getView without its views: new formatters, a Date and a regex split per row. */
+    @Benchmark
+    public void legacyGetView(Blackhole blackhole) {
+        for (int i = 0; i < mEarthquakes.size(); i++) {
+            Earthquake earthquake = mEarthquakes.get(i);
+            String initialLocation = earthquake.getLocation();
+            if (initialLocation.contains(LOCATION_SEPARATOR)) {
+                String[] parts = initialLocation.split(LOCATION_SEPARATOR);
+                blackhole.consume(parts[0] + LOCATION_SEPARATOR);
+                blackhole.consume(parts[1]);
+            } else {
+                blackhole.consume(initialLocation);
+            }
+            blackhole.consume(new DecimalFormat("0.0").format(earthquake.getMagnitude()));
+            Date dateObject = new Date(earthquake.getTimeInMilliseconds());
+            blackhole.consume(new SimpleDateFormat("MMM DD, yyyy").format(dateObject));
+            blackhole.consume(new SimpleDateFormat("h:mm a").format(dateObject));
+            blackhole.consume(legacyMagnitudeColor(earthquake.getMagnitude()));
+        }
+    }
+
+    /** The loader's part now: every row split and formatted once, into a store. */
+    @Benchmark
+    public EarthquakeStore formatIntoStore() {
+        EarthquakeStore store = new EarthquakeStore(ROWS, mFormatter);
+        store.appendAll(mEarthquakes);
+        return store;
+    }
+
+    /** The adapter's part now: every value of a row read from the store as it is. */
+    @Benchmark
+    public void bindFromStore(Blackhole blackhole) {
+        for (int row = 0; row < mStore.size(); row++) {
+            blackhole.consume(mStore.getMagnitudeText(row));
+            blackhole.consume(mStore.getPrimaryLocation(row));
+            blackhole.consume(mStore.getLocationOffsetText(row));
+            blackhole.consume(mStore.getDateText(row));
+            blackhole.consume(mStore.getTimeText(row));
+            blackhole.consume(mStore.getMagnitudeColor(row));
+        }
+    }
+
+    /** The old color lookup, which went through a switch to a color resource per row. */
+    private static int legacyMagnitudeColor(double magnitude) {
+        switch ((int) Math.floor(magnitude)) {
+            case 0:
+            case 1:
+                return 0xFF4A7BA7;
+            case 2:
+                return 0xFF04B4B3;
+            case 3:
+                return 0xFF10CAC9;
+            case 4:
+                return 0xFFF5A623;
+            case 5:
+                return 0xFFFF7D50;
+            case 6:
+                return 0xFFFC6644;
+            case 7:
+                return 0xFFE75F40;
+            case 8:
+                return 0xFFE13A20;
+            case 9:
+                return 0xFFD93218;
+            default:
+                return 0xFFC03823;
+        }
+    }
+}
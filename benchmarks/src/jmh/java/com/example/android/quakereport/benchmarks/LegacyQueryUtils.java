@@ -0,0 +1,72 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.Earthquake;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The way QueryUtils read responses before it parsed them as a stream, kept as the
+ * baseline of the parse benchmarks: the whole response is joined into one String, then
+ * turned into an org.json tree, and four properties are read from every feature.
+ */
+final class LegacyQueryUtils {
+
+    /**
+     * Create a private constructor because no one should ever create a {@link LegacyQueryUtils}
+     * object. This class only holds static methods.
+     */
+    private LegacyQueryUtils() {
+    }
+
+    /** Convert the {@link InputStream} into a String containing the whole JSON response */
+    static String readFromStream(InputStream inputStream) throws IOException {
+        StringBuilder output = new StringBuilder();
+        if (inputStream != null) {
+            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
+            BufferedReader reader = new BufferedReader(inputStreamReader);
+            String line = reader.readLine();
+            while (line != null) {
+                output.append(line);
+                line = reader.readLine();
+            }
+        }
+        return output.toString();
+    }
+
+    /**
+     * Returning a list of the {@link Earthquake} objects that have
+     * been built up from parsing the given JSON response.
+     */
+    static List<Earthquake> extractFeatureFromJson(String earthquakeJSON) {
+        if (earthquakeJSON == null || earthquakeJSON.isEmpty()) {
+            return null;
+        }
+        List<Earthquake> earthquakes = new ArrayList<>();
+        try {
+            JSONObject baseJsonResponse = new JSONObject(earthquakeJSON);
+            JSONArray earthquakeArray = baseJsonResponse.getJSONArray("features");
+            for (int i = 0; i < earthquakeArray.length(); i++) {
+                JSONObject currentEarthquake = earthquakeArray.getJSONObject(i);
+                JSONObject properties = currentEarthquake.getJSONObject("properties");
+                double magnitude = properties.getDouble("mag");
+                String location = properties.getString("place");
+                long time = properties.getLong("time");
+                String url = properties.getString("url");
+                earthquakes.add(new Earthquake("", magnitude, location, time, url));
+            }
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        return earthquakes;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.ResponseFormats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a GeoJSON response the way the app does now, as a stream, against the way it
+ * used to: {@link LegacyQueryUtils#readFromStream} and
+ * {@link LegacyQueryUtils#extractFeatureFromJson}, timed apart and together. Responses
+ * are read from memory, so the network is left out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ParseBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int events;
+
+    private byte[] mResponse;
+    private String mResponseString;
+
+    @Setup
+    public void setUp() throws IOException {
+        mResponse = Fixtures.geoJson(events);
+        mResponseString = LegacyQueryUtils.readFromStream(new ByteArrayInputStream(mResponse));
+    }
+
+    /** The stream parser, which reads only the properties the app uses. */
+    @Benchmark
+    public List<Earthquake> streaming() throws IOException {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        ResponseFormats.GEOJSON.parse(new ByteArrayInputStream(mResponse), earthquakes);
+        return earthquakes;
+    }
+
+    /** The old path as a whole: the response joined into a String, then an org.json tree. */
+    @Benchmark
+    public List<Earthquake> legacy() throws IOException {
+        return LegacyQueryUtils.extractFeatureFromJson(
+                LegacyQueryUtils.readFromStream(new ByteArrayInputStream(mResponse)));
+    }
+
+    /** The first half of the old path, joining the response into a String. */
+    @Benchmark
+    public String legacyReadFromStream() throws IOException {
+        return LegacyQueryUtils.readFromStream(new ByteArrayInputStream(mResponse));
+    }
+
+    /** The second half of the old path, building the org.json tree from the String. */
+    @Benchmark
+    public List<Earthquake> legacyExtractFeatureFromJson() {
+        return LegacyQueryUtils.extractFeatureFromJson(mResponseString);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.ResponseFormats;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Prints the smallest heap each way of parsing a GeoJSON response gets through, which is
+ * the peak of the heap it needs, for 10000 and 100000 events.
+ * <pre>
+ * ./gradlew :benchmarks:peakHeap
+ * </pre>
+ * Every attempt runs in a JVM of its own with a given -Xmx, reading the gzipped fixture
+ * as a stream the way the app reads a response off the network, and keeping the parsed
+ * list to the end. A binary search over -Xmx finds the smallest heap that doesn't run
+ * out of memory. "drain" only reads the stream, which is what the JVM needs anyway.
+ */
+public final class PeakHeap {
+
+    private static final String[] MODES = {"drain", "streaming", "legacy"};
+
+    private static final int[] EVENT_COUNTS = {10000, 100000};
+
+    /** Range of -Xmx searched, in MB */
+    private static final int MIN_HEAP_MB = 2;
+    private static final int MAX_HEAP_MB = 4096;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link PeakHeap}
+     * object. This class only holds static methods.
+     */
+    private PeakHeap() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("--run")) {
+            System.exit(run(args[1], Integer.parseInt(args[2])) > 0 ? 0 : 1);
+        }
+
+        System.out.println(String.format(Locale.US, "%8s  %10s  %10s  %10s", "events", MODES[0], MODES[1], MODES[2]));
+        for (int events : EVENT_COUNTS) {
+            StringBuilder line = new StringBuilder(String.format(Locale.US, "%8d", events));
+            for (String mode : MODES) {
+                line.append(String.format(Locale.US, "  %8d MB", smallestHeapMb(mode, events)));
+            }
+            System.out.println(line);
+        }
+    }
+
+    /** Returns the smallest -Xmx, in MB, that parses the fixture the given way. */
+    private static int smallestHeapMb(String mode, int events) throws IOException, InterruptedException {
+        int low = MIN_HEAP_MB;
+        int high = MAX_HEAP_MB;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (runs(mode, events, middle)) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /** Returns true if a JVM with the given heap parses the fixture the given way. */
+    private static boolean runs(String mode, int events, int heapMb) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>(Arrays.asList(java, "-Xmx" + heapMb + "m",
+                "-XX:+UseSerialGC", "-cp", System.getProperty("java.class.path"),
+                PeakHeap.class.getName(), "--run", mode, String.valueOf(events)));
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.to(new File(nullDevice())))
+                .start();
+        return process.waitFor() == 0;
+    }
+
+    /** Parses the fixture the given way and returns what it read, in events or bytes. */
+    private static int run(String mode, int events) throws IOException {
+        InputStream in = Fixtures.class.getResourceAsStream("/fixtures/events-" + events + ".geojson.gz");
+        try {
+            in = new GZIPInputStream(in);
+            switch (mode) {
+                case "drain":
+                    byte[] buffer = new byte[8192];
+                    int total = 0;
+                    for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                        total += read;
+                    }
+                    return total;
+                case "streaming":
+                    List<Earthquake> earthquakes = new ArrayList<>();
+                    ResponseFormats.GEOJSON.parse(in, earthquakes);
+                    return earthquakes.size();
+                case "legacy":
+                    return LegacyQueryUtils.extractFeatureFromJson(LegacyQueryUtils.readFromStream(in)).size();
+                default:
+                    throw new IllegalArgumentException("Unknown mode " + mode);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String nullDevice() {
+        return System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null";
+    }
+}
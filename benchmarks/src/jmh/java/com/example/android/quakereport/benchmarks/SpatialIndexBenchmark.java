@@ -0,0 +1,120 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.EarthquakeStore;
+import com.example.android.quakereport.SpatialIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Radius and bounding-box queries answered by a {@link SpatialIndex} against a scan of
+ * every row, over the fixture events, plus what building the index costs. Every call
+ * queries the next of a few places, so no single cell stays in the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SpatialIndexBenchmark {
+
+    /** Latitude and longitude of the places queried: Ridgecrest, Tokyo, Santiago, Lima, Reykjavik */
+    private static final double[][] CENTERS = {
+            {35.7, -117.6}, {35.7, 139.7}, {-33.4, -70.7}, {-12.0, -77.0}, {64.1, -21.9}
+    };
+
+    private static final double RADIUS_KM = 300;
+
+    /** Half the side of the bounding boxes queried, in degrees */
+    private static final double BOX_DEGREES = 3;
+
+    @Param({"10000", "100000"})
+    public int events;
+
+    private EarthquakeStore mStore;
+    private SpatialIndex mIndex;
+    private int mNext;
+
+    @Setup
+    public void setUp() throws IOException {
+        mStore = new EarthquakeStore(events, null);
+        mStore.appendAll(Fixtures.earthquakes(events));
+        mIndex = new SpatialIndex(mStore);
+    }
+
+    @Benchmark
+    public SpatialIndex build() {
+        return new SpatialIndex(mStore);
+    }
+
+    @Benchmark
+    public int[] indexRadius() {
+        double[] center = nextCenter();
+        return mIndex.withinRadius(center[0], center[1], RADIUS_KM);
+    }
+
+    @Benchmark
+    public int[] linearRadius() {
+        double[] center = nextCenter();
+        int[] rows = new int[16];
+        int count = 0;
+        for (int i = 0; i < mStore.size(); i++) {
+            if (SpatialIndex.distanceKm(center[0], center[1], mStore.getLatitude(i), mStore.getLongitude(i))
+                    <= RADIUS_KM) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = i;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    @Benchmark
+    public int[] indexBox() {
+        double[] center = nextCenter();
+        return mIndex.withinBoundingBox(center[0] - BOX_DEGREES, center[1] - BOX_DEGREES,
+                center[0] + BOX_DEGREES, center[1] + BOX_DEGREES);
+    }
+
+    @Benchmark
+    public int[] linearBox() {
+        double[] center = nextCenter();
+        double south = center[0] - BOX_DEGREES;
+        double north = center[0] + BOX_DEGREES;
+        double west = center[1] - BOX_DEGREES;
+        double east = center[1] + BOX_DEGREES;
+        int[] rows = new int[16];
+        int count = 0;
+        for (int i = 0; i < mStore.size(); i++) {
+            double latitude = mStore.getLatitude(i);
+            double longitude = mStore.getLongitude(i);
+            if (latitude >= south && latitude <= north && longitude >= west && longitude <= east) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = i;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private double[] nextCenter() {
+        mNext = (mNext + 1) % CENTERS.length;
+        return CENTERS[mNext];
+    }
+}
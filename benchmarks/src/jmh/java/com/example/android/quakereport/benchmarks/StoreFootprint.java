@@ -0,0 +1,55 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.EarthquakeStore;
+
+import org.openjdk.jol.info.GraphLayout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Prints the heap an {@link EarthquakeStore} holds against the ArrayList of
+ * {@link Earthquake}s it replaced, for 1000, 10000 and 100000 parsed events. Sizes are
+ * everything reachable from each, measured by walking the object graph with JOL, so
+ * strings shared between rows are counted once.
+ * <pre>
+ * ./gradlew :benchmarks:footprint
+ * </pre>
+ */
+public final class StoreFootprint {
+
+    private static final int[] EVENT_COUNTS = {1000, 10000, 100000};
+
+    /**
+     * Create a private constructor because no one should ever create a {@link StoreFootprint}
+     * object. This class only holds static methods.
+     */
+    private StoreFootprint() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.println(String.format(Locale.US, "%8s  %14s  %14s  %14s",
+                "events", "ArrayList", "store", "store+display"));
+        for (int events : EVENT_COUNTS) {
+            // Parsed as the app parses them, so every row has strings of its own
+            List<Earthquake> earthquakes = new ArrayList<>(Fixtures.earthquakes(events));
+
+            EarthquakeStore store = new EarthquakeStore(events, null);
+            store.appendAll(earthquakes);
+            EarthquakeStore display = new EarthquakeStore(events, Fixtures.newFormatter());
+            display.appendAll(earthquakes);
+
+            System.out.println(String.format(Locale.US, "%8d  %14s  %14s  %14s", events,
+                    describe(earthquakes, events), describe(store, events), describe(display, events)));
+        }
+    }
+
+    /** Returns the bytes reachable from the root, in all and per event. */
+    private static String describe(Object root, int events) {
+        long bytes = GraphLayout.parseInstance(root).totalSize();
+        return String.format(Locale.US, "%d (%d/ev)", bytes, bytes / events);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.ResponseFormats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing the same events from the FDSN text format the list requests against GeoJSON.
+ * Responses are read from memory, so the network is left out; the bytes each format
+ * puts on the wire are in benchmarks/results/text-format.txt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TextParseBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int events;
+
+    private byte[] mGeoJson;
+    private byte[] mText;
+
+    @Setup
+    public void setUp() throws IOException {
+        mGeoJson = Fixtures.geoJson(events);
+        mText = Fixtures.text(events);
+    }
+
+    @Benchmark
+    public List<Earthquake> geoJson() throws IOException {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        ResponseFormats.GEOJSON.parse(new ByteArrayInputStream(mGeoJson), earthquakes);
+        return earthquakes;
+    }
+
+    @Benchmark
+    public List<Earthquake> text() throws IOException {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        ResponseFormats.TEXT.parse(new ByteArrayInputStream(mText), earthquakes);
+        return earthquakes;
+    }
+}
@@ -0,0 +1,407 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link AlertRule} is one condition a user wants to be alerted about, such as
+ * "M &gt;= 5 within 300 km of home". A rule is written as conditions one after the
+ * other, which may be joined by "and", with an optional name in front:
+ * <pre>
+ * Home: M &gt;= 5 within 300 km of home
+ * Big ones: any M &gt;= 7
+ * place contains "California" and depth &lt; 10
+ * </pre>
+ * Conditions:
+ * <ul>
+ *     <li>M, mag or magnitude &gt;= X, or &gt; X</li>
+ *     <li>depth &lt; X, &lt;= X, &gt; X or &gt;= X, in km</li>
+ *     <li>within X km of LATITUDE,LONGITUDE, or of home</li>
+ *     <li>place contains "WORDS", matching whole words in any case</li>
+ *     <li>any, which matches every event and reads well on its own</li>
+ * </ul>
+ * Rules are immutable. An {@link AlertRuleEngine} finds the rules an event matches
+ * without trying every one.
+ */
+public final class AlertRule {
+
+    /** Mean radius of the earth in km */
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    /** Name shown when an event matches, the rule's text if it has none */
+    private final String mName;
+
+    /** Smallest magnitude, or negative infinity for every event */
+    private final double mMinMagnitude;
+
+    /** Depth range in km, both ends inclusive; the whole line if there is no depth clause */
+    private final double mMinDepth;
+    private final double mMaxDepth;
+
+    /** Center and radius of the area, or NaN if the rule covers the whole world */
+    private final double mLatitude;
+    private final double mLongitude;
+    private final double mRadiusKm;
+
+    /** Lower case words the place has to contain in a row, or null */
+    private final String[] mPlaceWords;
+
+    private AlertRule(String name, double minMagnitude, double minDepth, double maxDepth,
+                      double latitude, double longitude, double radiusKm, String[] placeWords) {
+        mName = name;
+        mMinMagnitude = minMagnitude;
+        mMinDepth = minDepth;
+        mMaxDepth = maxDepth;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mRadiusKm = radiusKm;
+        mPlaceWords = placeWords;
+    }
+
+    /**
+     * Parses a rule.
+     * @param text is the rule as the user wrote it
+     * @param homeLatitude and homeLongitude are where "home" is, or NaN if unknown
+     * @throws IllegalArgumentException if the rule can't be read, with a message saying why
+     */
+    public static AlertRule parse(String text, double homeLatitude, double homeLongitude) {
+        String name = null;
+        String rest = text.trim();
+        int colon = rest.indexOf(':');
+        int quote = firstQuote(rest);
+        if (colon > 0 && (quote < 0 || colon < quote)) {
+            name = rest.substring(0, colon).trim();
+            rest = rest.substring(colon + 1).trim();
+        }
+        List<String> tokens = tokenize(rest, text);
+        if (tokens.isEmpty()) {
+            throw new IllegalArgumentException("Empty rule: " + text);
+        }
+
+        double minMagnitude = Double.NEGATIVE_INFINITY;
+        double minDepth = Double.NEGATIVE_INFINITY;
+        double maxDepth = Double.POSITIVE_INFINITY;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        double radiusKm = Double.NaN;
+        String[] placeWords = null;
+
+        // Conditions follow each other, with or without "and" between them
+        int next = 0;
+        while (next < tokens.size()) {
+            String subject = tokens.get(next++).toLowerCase(Locale.US);
+            if (subject.equals("and") || subject.equals("any")) {
+                // "any M >= 7" reads better than "M >= 7"
+                continue;
+            }
+            if (subject.equals("m") || subject.equals("mag") || subject.equals("magnitude")) {
+                String operator = tokenAt(tokens, next++, "a comparison after " + subject, text);
+                double value = parseNumber(tokenAt(tokens, next++, "a magnitude", text), text);
+                if (operator.equals(">=")) {
+                    minMagnitude = Math.max(minMagnitude, value);
+                } else if (operator.equals(">")) {
+                    minMagnitude = Math.max(minMagnitude, Math.nextUp(value));
+                } else {
+                    throw new IllegalArgumentException("Magnitudes can only be at least a value: " + text);
+                }
+            } else if (subject.equals("depth")) {
+                String operator = tokenAt(tokens, next++, "a comparison after depth", text);
+                double value = parseNumber(tokenAt(tokens, next++, "a depth", text), text);
+                if (operator.equals("<")) {
+                    maxDepth = Math.min(maxDepth, Math.nextAfter(value, Double.NEGATIVE_INFINITY));
+                } else if (operator.equals("<=")) {
+                    maxDepth = Math.min(maxDepth, value);
+                } else if (operator.equals(">")) {
+                    minDepth = Math.max(minDepth, Math.nextUp(value));
+                } else if (operator.equals(">=")) {
+                    minDepth = Math.max(minDepth, value);
+                } else {
+                    throw new IllegalArgumentException("Expected a comparison after depth: " + text);
+                }
+            } else if (subject.equals("within")) {
+                // within 300 km of home, within 300km of 37.77,-122.42
+                String radius = tokenAt(tokens, next++, "a distance", text).toLowerCase(Locale.US);
+                if (radius.endsWith("km") && radius.length() > 2) {
+                    radius = radius.substring(0, radius.length() - 2);
+                } else if (!tokenAt(tokens, next++, "km", text).equalsIgnoreCase("km")) {
+                    throw new IllegalArgumentException("Expected a distance in km: " + text);
+                }
+                radiusKm = parseNumber(radius, text);
+                if (!tokenAt(tokens, next++, "of", text).equalsIgnoreCase("of")) {
+                    throw new IllegalArgumentException("Expected within X km of a place: " + text);
+                }
+                String where = tokenAt(tokens, next++, "home or latitude,longitude", text);
+                if (where.equalsIgnoreCase("home")) {
+                    if (Double.isNaN(homeLatitude) || Double.isNaN(homeLongitude)) {
+                        throw new IllegalArgumentException("No home location set: " + text);
+                    }
+                    latitude = homeLatitude;
+                    longitude = homeLongitude;
+                } else {
+                    String[] coordinates = where.split(",");
+                    if (coordinates.length != 2) {
+                        throw new IllegalArgumentException("Expected home or latitude,longitude: " + text);
+                    }
+                    latitude = parseNumber(coordinates[0], text);
+                    longitude = parseNumber(coordinates[1], text);
+                }
+                if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180 || !(radiusKm > 0)) {
+                    throw new IllegalArgumentException("No such area: " + text);
+                }
+            } else if (subject.equals("place")) {
+                if (!tokenAt(tokens, next++, "contains", text).equalsIgnoreCase("contains")) {
+                    throw new IllegalArgumentException("Expected place contains: " + text);
+                }
+                // Quoted words, or the words up to the next "and"
+                StringBuilder words = new StringBuilder();
+                String word = tokenAt(tokens, next++, "words to look for", text);
+                if (firstQuote(word) == 0) {
+                    words.append(word, 1, word.length() - 1);
+                } else {
+                    words.append(word);
+                    while (next < tokens.size() && !tokens.get(next).equalsIgnoreCase("and")) {
+                        words.append(' ').append(tokens.get(next++));
+                    }
+                }
+                placeWords = splitWords(words.toString());
+                if (placeWords.length == 0) {
+                    throw new IllegalArgumentException("No words to look for: " + text);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown condition " + subject + ": " + text);
+            }
+        }
+        return new AlertRule(name != null && !name.isEmpty() ? name : rest, minMagnitude,
+                minDepth, maxDepth, latitude, longitude, radiusKm, placeWords);
+    }
+
+    /**
+     * Parses a rule per line, skipping blank lines and lines starting with #.
+     * @param problems receives why lines couldn't be read, which are then left out,
+     *                 or is null to throw for the first of them instead
+     * @throws IllegalArgumentException for the first line that can't be read, if there is
+     *                                  no list of problems
+     */
+    public static List<AlertRule> parseAll(String text, double homeLatitude, double homeLongitude,
+                                           List<String> problems) {
+        List<AlertRule> rules = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                rules.add(parse(line, homeLatitude, homeLongitude));
+            } catch (IllegalArgumentException e) {
+                if (problems == null) {
+                    throw e;
+                }
+                problems.add(e.getMessage());
+            }
+        }
+        return rules;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /** Returns the smallest magnitude, or negative infinity if any magnitude will do. */
+    public double getMinMagnitude() {
+        return mMinMagnitude;
+    }
+
+    /** Returns true if the rule only matches events in a circle around a point. */
+    public boolean hasArea() {
+        return !Double.isNaN(mRadiusKm);
+    }
+
+    double getLatitude() {
+        return mLatitude;
+    }
+
+    double getLongitude() {
+        return mLongitude;
+    }
+
+    double getRadiusKm() {
+        return mRadiusKm;
+    }
+
+    /** Returns the words the place has to contain, in lower case, or null. */
+    String[] getPlaceWords() {
+        return mPlaceWords;
+    }
+
+    /**
+     * Returns true if the earthquake meets every clause of the rule. Unknown values meet
+     * no clause about them: an event without a magnitude only matches rules without one.
+     */
+    public boolean matches(Earthquake earthquake) {
+        return matches(earthquake, null);
+    }
+
+    /**
+     * Returns true if the earthquake meets every clause of the rule.
+     * @param placeWords are the words of the earthquake's place from {@link #splitWords(String)},
+     *                   or null to split them here
+     */
+    boolean matches(Earthquake earthquake, String[] placeWords) {
+        if (mMinMagnitude != Double.NEGATIVE_INFINITY && !(earthquake.getMagnitude() >= mMinMagnitude)) {
+            return false;
+        }
+        if (mMinDepth != Double.NEGATIVE_INFINITY || mMaxDepth != Double.POSITIVE_INFINITY) {
+            double depth = earthquake.getDepth();
+            if (!(depth >= mMinDepth && depth <= mMaxDepth)) {
+                return false;
+            }
+        }
+        if (hasArea() && !(distanceKm(mLatitude, mLongitude, earthquake.getLatitude(),
+                earthquake.getLongitude()) <= mRadiusKm)) {
+            return false;
+        }
+        if (mPlaceWords != null) {
+            if (placeWords == null) {
+                placeWords = splitWords(earthquake.getLocation());
+            }
+            return containsInOrder(placeWords, mPlaceWords);
+        }
+        return true;
+    }
+
+    /** Returns the great-circle distance between two points in km, NaN if one is unknown. */
+    static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLatitude = Math.toRadians(latitude2 - latitude1);
+        double dLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLatitude / 2) * Math.sin(dLatitude / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * Math.sin(dLongitude / 2) * Math.sin(dLongitude / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /** Returns the lower case words of a text, splitting at anything but letters and digits. */
+    static String[] splitWords(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.US));
+                start = -1;
+            }
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    /** Returns true if the words contain the wanted words next to each other, in order. */
+    private static boolean containsInOrder(String[] words, String[] wanted) {
+        for (int i = 0; i + wanted.length <= words.length; i++) {
+            int matched = 0;
+            while (matched < wanted.length && words[i + matched].equals(wanted[matched])) {
+                matched++;
+            }
+            if (matched == wanted.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns where the first quote, double or single, is in a text, or -1. */
+    private static int firstQuote(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '"' || text.charAt(i) == '\'') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Splits a rule into words. Comparisons are words of their own, so "M>=5" and
+     * "M >= 5" read the same, and the signs for at least and at most count as &gt;= and
+     * &lt;=. Quoted text stays one word, quotes included, and "37.7, -122.4" becomes
+     * "37.7,-122.4".
+     */
+    private static List<String> tokenize(String rule, String text) {
+        List<String> tokens = new ArrayList<>();
+        boolean joinNext = false;
+        int i = 0;
+        while (i < rule.length()) {
+            char c = rule.charAt(i);
+            String token;
+            int length;
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            } else if (c == '"' || c == '\'') {
+                int end = rule.indexOf(c, i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Missing closing quote: " + text);
+                }
+                token = rule.substring(i, end + 1);
+                length = token.length();
+            } else if (c == '\u2265' || c == '\u2264') {
+                token = c == '\u2265' ? ">=" : "<=";
+                length = 1;
+            } else if (c == '<' || c == '>') {
+                token = i + 1 < rule.length() && rule.charAt(i + 1) == '=' ? c + "=" : String.valueOf(c);
+                length = token.length();
+            } else if (c == ',') {
+                if (tokens.isEmpty()) {
+                    throw new IllegalArgumentException("Unexpected comma: " + text);
+                }
+                tokens.set(tokens.size() - 1, tokens.get(tokens.size() - 1) + ",");
+                joinNext = true;
+                i++;
+                continue;
+            } else {
+                int end = i;
+                while (end < rule.length() && !Character.isWhitespace(rule.charAt(end))
+                        && "<>,\u2265\u2264".indexOf(rule.charAt(end)) < 0) {
+                    end++;
+                }
+                token = rule.substring(i, end);
+                length = token.length();
+            }
+            i += length;
+            if (joinNext) {
+                tokens.set(tokens.size() - 1, tokens.get(tokens.size() - 1) + token);
+                joinNext = false;
+            } else {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static String tokenAt(List<String> tokens, int index, String expected, String text) {
+        if (index >= tokens.size()) {
+            throw new IllegalArgumentException("Expected " + expected + " at the end: " + text);
+        }
+        return tokens.get(index);
+    }
+
+    private static double parseNumber(String number, String text) {
+        try {
+            double value = Double.parseDouble(number.trim());
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                throw new NumberFormatException();
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + number + " in " + text);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mName;
+    }
+}
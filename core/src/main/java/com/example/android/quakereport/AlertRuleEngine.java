@@ -0,0 +1,291 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link AlertRuleEngine} finds the {@link AlertRule}s an earthquake matches, out of
+ * thousands, by only trying the rules that could match it.
+ *
+ * Compiling the rules files each of them under the one condition that narrows it down
+ * most:
+ * <ul>
+ *     <li>Rules with an area go into every cell of a grid of two by two degree cells
+ *     that their circle touches. An event only tries the rules of its own cell.</li>
+ *     <li>Rules that look for words in the place go under the longest of those words.
+ *     An event only tries the rules under the words of its place.</li>
+ *     <li>The rest are the rules for the whole world.</li>
+ * </ul>
+ * Each list is sorted by the rules' smallest magnitude, so a binary search cuts it off
+ * at the event's magnitude, and the rules above it are never looked at. The rules that
+ * are left are checked against every condition with {@link AlertRule#matches(Earthquake)}.
+ * Circles too big for the grid, which would only fill it up, count as rules for the
+ * whole world.
+ *
+ * The engine is immutable and can be used from any thread.
+ */
+public final class AlertRuleEngine {
+
+    /** Size of a grid cell in degrees */
+    private static final double CELL_DEGREES = 2;
+
+    private static final int GRID_ROWS = (int) (180 / CELL_DEGREES);
+    private static final int GRID_COLUMNS = (int) (360 / CELL_DEGREES);
+
+    /** Most cells a rule is put in; bigger circles are tried for every event instead */
+    private static final int MAX_CELLS_PER_RULE = 256;
+
+    /** Length of one degree of latitude in km, a little short so circles are never cut */
+    private static final double KM_PER_DEGREE = 111.0;
+
+    /** Rules sorted by their smallest magnitude, with the magnitudes next to each other */
+    private static final class RuleList {
+        final AlertRule[] mRules;
+        final double[] mMinMagnitudes;
+
+        RuleList(List<AlertRule> rules) {
+            Collections.sort(rules, BY_MIN_MAGNITUDE);
+            mRules = rules.toArray(new AlertRule[rules.size()]);
+            mMinMagnitudes = new double[mRules.length];
+            for (int i = 0; i < mRules.length; i++) {
+                mMinMagnitudes[i] = mRules[i].getMinMagnitude();
+            }
+        }
+
+        /** Returns the number of rules at the start of the list an event of the magnitude meets. */
+        int countUpTo(double magnitude) {
+            if (Double.isNaN(magnitude)) {
+                magnitude = Double.NEGATIVE_INFINITY;
+            }
+            // First rule whose smallest magnitude is above the event's
+            int low = 0;
+            int high = mMinMagnitudes.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (mMinMagnitudes[middle] <= magnitude) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    private static final Comparator<AlertRule> BY_MIN_MAGNITUDE = new Comparator<AlertRule>() {
+        @Override
+        public int compare(AlertRule a, AlertRule b) {
+            return Double.compare(a.getMinMagnitude(), b.getMinMagnitude());
+        }
+    };
+
+    private final int mRuleCount;
+
+    /** True if some rule looks for words in the place */
+    private final boolean mHasPlaceRules;
+
+    /** Rules with an area by grid cell, row of the grid first; null for empty cells */
+    private final RuleList[] mCells;
+
+    /** Rules that look for words in the place, by their longest word */
+    private final Map<String, RuleList> mWords;
+
+    /** Rules for the whole world */
+    private final RuleList mWorld;
+
+    /**
+     * Compiles the rules.
+     * @param rules are the user's rules, in any order
+     */
+    public AlertRuleEngine(List<AlertRule> rules) {
+        mRuleCount = rules.size();
+        List<List<AlertRule>> cells = new ArrayList<>(GRID_ROWS * GRID_COLUMNS);
+        for (int i = 0; i < GRID_ROWS * GRID_COLUMNS; i++) {
+            cells.add(null);
+        }
+        Map<String, List<AlertRule>> words = new HashMap<>();
+        List<AlertRule> world = new ArrayList<>();
+        boolean hasPlaceRules = false;
+
+        for (AlertRule rule : rules) {
+            hasPlaceRules |= rule.getPlaceWords() != null;
+            if (rule.hasArea() && addToCells(rule, cells)) {
+                continue;
+            }
+            String[] placeWords = rule.getPlaceWords();
+            if (placeWords != null) {
+                String longest = placeWords[0];
+                for (String word : placeWords) {
+                    if (word.length() > longest.length()) {
+                        longest = word;
+                    }
+                }
+                List<AlertRule> list = words.get(longest);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    words.put(longest, list);
+                }
+                list.add(rule);
+            } else {
+                world.add(rule);
+            }
+        }
+
+        mCells = new RuleList[cells.size()];
+        for (int i = 0; i < mCells.length; i++) {
+            if (cells.get(i) != null) {
+                mCells[i] = new RuleList(cells.get(i));
+            }
+        }
+        mWords = new HashMap<>();
+        for (Map.Entry<String, List<AlertRule>> entry : words.entrySet()) {
+            mWords.put(entry.getKey(), new RuleList(entry.getValue()));
+        }
+        mWorld = new RuleList(world);
+        mHasPlaceRules = hasPlaceRules;
+    }
+
+    /** Returns the number of rules compiled. */
+    public int size() {
+        return mRuleCount;
+    }
+
+    /**
+     * Returns the rules the earthquake matches, in no particular order. Deleted events
+     * match nothing.
+     */
+    public List<AlertRule> match(Earthquake earthquake) {
+        List<AlertRule> matches = new ArrayList<>();
+        if (earthquake.isDeleted()) {
+            return matches;
+        }
+        double magnitude = earthquake.getMagnitude();
+
+        // Split the place once for every rule that looks at it
+        String[] placeWords = mHasPlaceRules ? AlertRule.splitWords(earthquake.getLocation()) : null;
+
+        matchAll(mWorld, earthquake, magnitude, placeWords, matches);
+
+        int cell = cellOf(earthquake.getLatitude(), earthquake.getLongitude());
+        if (cell >= 0 && mCells[cell] != null) {
+            matchAll(mCells[cell], earthquake, magnitude, placeWords, matches);
+        }
+
+        if (!mWords.isEmpty() && placeWords.length > 0) {
+            // A word may come up twice in a place, but its rules must only be tried once
+            Set<String> tried = null;
+            for (String word : placeWords) {
+                RuleList rules = mWords.get(word);
+                if (rules == null) {
+                    continue;
+                }
+                if (tried == null) {
+                    tried = new HashSet<>();
+                }
+                if (tried.add(word)) {
+                    matchAll(rules, earthquake, magnitude, placeWords, matches);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /** Tries the rules of a list that the magnitude meets. */
+    private static void matchAll(RuleList rules, Earthquake earthquake, double magnitude,
+                                 String[] placeWords, List<AlertRule> matches) {
+        int count = rules.countUpTo(magnitude);
+        for (int i = 0; i < count; i++) {
+            if (rules.mRules[i].matches(earthquake, placeWords)) {
+                matches.add(rules.mRules[i]);
+            }
+        }
+    }
+
+    /**
+     * Adds a rule to every cell its circle touches.
+     * @return false if the circle is too big for the grid
+     */
+    private static boolean addToCells(AlertRule rule, List<List<AlertRule>> cells) {
+        double latitude = rule.getLatitude();
+        double radiusDegrees = rule.getRadiusKm() / KM_PER_DEGREE;
+        double south = latitude - radiusDegrees;
+        double north = latitude + radiusDegrees;
+        if (south <= -90 || north >= 90) {
+            // Circles around a pole cover every longitude there
+            return false;
+        }
+        // Degrees of longitude shrink towards the poles, so widen the box at its widest latitude
+        double widest = Math.max(Math.abs(south), Math.abs(north));
+        double longitudeDegrees = radiusDegrees / Math.cos(Math.toRadians(widest));
+        if (2 * longitudeDegrees >= 360 - CELL_DEGREES) {
+            // Its ends could fall in the same column, which would then look like the only one
+            return false;
+        }
+
+        int firstRow = rowOf(south);
+        int lastRow = rowOf(north);
+        int firstColumn = columnOf(rule.getLongitude() - longitudeDegrees);
+        int columns = columnOf(rule.getLongitude() + longitudeDegrees) - firstColumn;
+        if (columns < 0) {
+            // Crosses the antimeridian
+            columns += GRID_COLUMNS;
+        }
+        columns++;
+        if ((long) (lastRow - firstRow + 1) * columns > MAX_CELLS_PER_RULE) {
+            return false;
+        }
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int i = 0; i < columns; i++) {
+                int cell = row * GRID_COLUMNS + (firstColumn + i) % GRID_COLUMNS;
+                List<AlertRule> list = cells.get(cell);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    cells.set(cell, list);
+                }
+                list.add(rule);
+            }
+        }
+        return true;
+    }
+
+    /** Returns the cell of a point, or -1 if the point is unknown. */
+    private static int cellOf(double latitude, double longitude) {
+        if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+            return -1;
+        }
+        return rowOf(latitude) * GRID_COLUMNS + columnOf(longitude);
+    }
+
+    private static int rowOf(double latitude) {
+        int row = (int) Math.floor((latitude + 90) / CELL_DEGREES);
+        return Math.max(0, Math.min(GRID_ROWS - 1, row));
+    }
+
+    private static int columnOf(double longitude) {
+        // Wrap into [-180, 180) first, so boxes reaching past the antimeridian find their cells
+        double wrapped = longitude - 360 * Math.floor((longitude + 180) / 360);
+        int column = (int) Math.floor((wrapped + 180) / CELL_DEGREES);
+        return Math.max(0, Math.min(GRID_COLUMNS - 1, column));
+    }
+
+    /** Describes how the rules were filed, for the logs. */
+    @Override
+    public String toString() {
+        int cells = 0;
+        long entries = 0;
+        for (RuleList list : mCells) {
+            if (list != null) {
+                cells++;
+                entries += list.mRules.length;
+            }
+        }
+        return "AlertRuleEngine{" + mRuleCount + " rules, " + mWorld.mRules.length + " worldwide, "
+                + mWords.size() + " words, " + cells + " cells holding " + entries + " entries}";
+    }
+}
@@ -0,0 +1,470 @@
+package com.example.android.quakereport;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * One block of an {@link EventArchive}: up to a few hundred earthquakes of one day,
+ * sorted by time and stored column by column, behind a fixed-size header.
+ * <pre>
+ * header   payload length, CRC32 of the payload, flags, count,
+ *          min and max time, min and max quantized magnitude
+ * payload  times         first time, then the change of the gap to the previous event
+ *                        (delta-of-delta), which for events at a steady rate is near 0
+ *          updated       update time minus event time
+ *          magnitudes    in hundredths
+ *          latitudes, longitudes in hundred-thousandths of a degree, depths in meters
+ *          deleted       one bit per event, only if the flags say some are
+ *          ids           length of the prefix shared with the previous id, then the rest
+ *          places        dictionaries of the parts before and after " of ", then two
+ *                        indexes per event: "12km NNE" | "Hilo, Hawaii"
+ * </pre>
+ * Numbers are zigzag varints, so small values of either sign take one or two bytes.
+ * Magnitudes with up to two decimals and coordinates with up to five come back exactly,
+ * and URLs aren't stored, since they are the USGS event page of the id. The header
+ * lets a scan skip blocks outside its time range or below its magnitude without
+ * reading their payload.
+ */
+final class ArchiveBlock {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Bytes of the header in front of every payload */
+    static final int HEADER_SIZE = 4 + 4 + 1 + 4 + 8 + 8 + 4 + 4;
+
+    /** Set on blocks written by a compaction, which hold one version of each event */
+    static final int FLAG_COMPACTED = 1;
+
+    /** Set on blocks holding deleted events, which have the deleted column */
+    private static final int FLAG_HAS_DELETED = 2;
+
+    /** Quantized value of an unknown magnitude or coordinate */
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private static final double MAGNITUDE_SCALE = 100;
+    private static final double COORDINATE_SCALE = 100000;
+    private static final double DEPTH_SCALE = 1000;
+
+    /** Separates the offset from the location in a USGS place, i.e. "12km NNE of Hilo, Hawaii" */
+    private static final String PLACE_SEPARATOR = " of ";
+
+    /** Growable byte array the payload is written to */
+    private static final class Sink {
+        byte[] mBytes = new byte[4096];
+        int mLength;
+
+        void writeByte(int b) {
+            if (mLength == mBytes.length) {
+                mBytes = Arrays.copyOf(mBytes, mLength * 2);
+            }
+            mBytes[mLength++] = (byte) b;
+        }
+
+        void writeUnsigned(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeSigned(long value) {
+            writeUnsigned((value << 1) ^ (value >> 63));
+        }
+
+        void writeBytes(byte[] bytes, int offset, int length) {
+            while (mLength + length > mBytes.length) {
+                mBytes = Arrays.copyOf(mBytes, mBytes.length * 2);
+            }
+            System.arraycopy(bytes, offset, mBytes, mLength, length);
+            mLength += length;
+        }
+
+        void writeString(String string) {
+            byte[] bytes = string.getBytes(UTF_8);
+            writeUnsigned(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        }
+
+        void writeInt(int value) {
+            writeByte(value >>> 24);
+            writeByte(value >>> 16);
+            writeByte(value >>> 8);
+            writeByte(value);
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+    }
+
+    /** Reads what a {@link Sink} wrote, from a byte array */
+    private static final class Source {
+        final byte[] mBytes;
+        int mPosition;
+
+        Source(byte[] bytes, int position) {
+            mBytes = bytes;
+            mPosition = position;
+        }
+
+        long readUnsigned() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = mBytes[mPosition++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        long readSigned() {
+            long value = readUnsigned();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() {
+            int length = (int) readUnsigned();
+            String string = new String(mBytes, mPosition, length, UTF_8);
+            mPosition += length;
+            return string;
+        }
+    }
+
+    /** Where the block starts in its day file */
+    final long mPosition;
+    final int mPayloadLength;
+    final int mFlags;
+    final int mCount;
+    final long mMinTime;
+    final long mMaxTime;
+    private final int mCrc;
+    private final int mMinMagnitude;
+    private final int mMaxMagnitude;
+
+    private ArchiveBlock(long position, int payloadLength, int crc, int flags, int count, long minTime,
+                         long maxTime, int minMagnitude, int maxMagnitude) {
+        mPosition = position;
+        mPayloadLength = payloadLength;
+        mCrc = crc;
+        mFlags = flags;
+        mCount = count;
+        mMinTime = minTime;
+        mMaxTime = maxTime;
+        mMinMagnitude = minMagnitude;
+        mMaxMagnitude = maxMagnitude;
+    }
+
+    /**
+     * Returns the header and payload of a block holding earthquakes [from, to) of the
+     * given list, which must be sorted by time.
+     * @param compacted marks the block as written by a compaction
+     */
+    static byte[] encode(List<Earthquake> earthquakes, int from, int to, boolean compacted) {
+        Sink payload = new Sink();
+        int count = to - from;
+        int minMagnitude = UNKNOWN;
+        int maxMagnitude = UNKNOWN;
+        boolean hasDeleted = false;
+
+        long previousTime = 0;
+        long previousDelta = 0;
+        for (int i = from; i < to; i++) {
+            long time = earthquakes.get(i).getTimeInMilliseconds();
+            if (i == from) {
+                payload.writeSigned(time);
+            } else {
+                long delta = time - previousTime;
+                payload.writeSigned(delta - previousDelta);
+                previousDelta = delta;
+            }
+            previousTime = time;
+        }
+        for (int i = from; i < to; i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            payload.writeSigned(earthquake.getUpdatedInMilliseconds() - earthquake.getTimeInMilliseconds());
+        }
+        for (int i = from; i < to; i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            int magnitude = quantize(earthquake.getMagnitude(), MAGNITUDE_SCALE);
+            payload.writeSigned(magnitude);
+            if (magnitude != UNKNOWN) {
+                minMagnitude = minMagnitude == UNKNOWN ? magnitude : Math.min(minMagnitude, magnitude);
+                maxMagnitude = Math.max(maxMagnitude, magnitude);
+            }
+            hasDeleted |= earthquake.isDeleted();
+        }
+        for (int i = from; i < to; i++) {
+            payload.writeSigned(quantize(earthquakes.get(i).getLatitude(), COORDINATE_SCALE));
+        }
+        for (int i = from; i < to; i++) {
+            payload.writeSigned(quantize(earthquakes.get(i).getLongitude(), COORDINATE_SCALE));
+        }
+        for (int i = from; i < to; i++) {
+            payload.writeSigned(quantize(earthquakes.get(i).getDepth(), DEPTH_SCALE));
+        }
+        if (hasDeleted) {
+            for (int i = from; i < to; i += 8) {
+                int bits = 0;
+                for (int bit = 0; bit < 8 && i + bit < to; bit++) {
+                    if (earthquakes.get(i + bit).isDeleted()) {
+                        bits |= 1 << bit;
+                    }
+                }
+                payload.writeByte(bits);
+            }
+        }
+
+        byte[] previousId = new byte[0];
+        for (int i = from; i < to; i++) {
+            byte[] id = earthquakes.get(i).getId().getBytes(UTF_8);
+            int shared = 0;
+            int limit = Math.min(id.length, previousId.length);
+            while (shared < limit && id[shared] == previousId[shared]) {
+                shared++;
+            }
+            payload.writeUnsigned(shared);
+            payload.writeUnsigned(id.length - shared);
+            payload.writeBytes(id, shared, id.length - shared);
+            previousId = id;
+        }
+
+        // Offsets repeat a little and locations a lot, so each gets a dictionary of its own.
+        // Offset index 0 means the place has no offset.
+        Map<String, Integer> offsets = new HashMap<>();
+        Map<String, Integer> locations = new HashMap<>();
+        int[] offsetIndexes = new int[count];
+        int[] locationIndexes = new int[count];
+        Sink offsetDictionary = new Sink();
+        Sink locationDictionary = new Sink();
+        for (int i = from; i < to; i++) {
+            String place = earthquakes.get(i).getLocation();
+            if (place == null) {
+                place = "";
+            }
+            int separator = place.indexOf(PLACE_SEPARATOR);
+            if (separator >= 0) {
+                offsetIndexes[i - from] = 1 + indexOf(offsets, offsetDictionary, place.substring(0, separator));
+                place = place.substring(separator + PLACE_SEPARATOR.length());
+            }
+            locationIndexes[i - from] = indexOf(locations, locationDictionary, place);
+        }
+        payload.writeUnsigned(offsets.size());
+        payload.writeBytes(offsetDictionary.mBytes, 0, offsetDictionary.mLength);
+        payload.writeUnsigned(locations.size());
+        payload.writeBytes(locationDictionary.mBytes, 0, locationDictionary.mLength);
+        for (int i = 0; i < count; i++) {
+            payload.writeUnsigned(offsetIndexes[i]);
+            payload.writeUnsigned(locationIndexes[i]);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.mBytes, 0, payload.mLength);
+        Sink block = new Sink();
+        block.mBytes = new byte[HEADER_SIZE + payload.mLength];
+        block.writeInt(payload.mLength);
+        block.writeInt((int) crc.getValue());
+        block.writeByte((compacted ? FLAG_COMPACTED : 0) | (hasDeleted ? FLAG_HAS_DELETED : 0));
+        block.writeInt(count);
+        block.writeLong(earthquakes.get(from).getTimeInMilliseconds());
+        block.writeLong(earthquakes.get(to - 1).getTimeInMilliseconds());
+        block.writeInt(minMagnitude);
+        block.writeInt(maxMagnitude);
+        block.writeBytes(payload.mBytes, 0, payload.mLength);
+        return block.mBytes;
+    }
+
+    /**
+     * Returns the header at the given offset of the array, or null if there is none or the
+     * payload it announces runs past the end of the file, as after a crash during an append.
+     * @param position is where the block starts in its day file
+     * @param fileLength is the length of the day file
+     */
+    static ArchiveBlock readHeader(byte[] bytes, int offset, long position, long fileLength) {
+        if (fileLength - position < HEADER_SIZE) {
+            return null;
+        }
+        ByteReader reader = new ByteReader(bytes, offset);
+        int payloadLength = reader.readInt();
+        int crc = reader.readInt();
+        int flags = bytes[reader.mPosition++];
+        int count = reader.readInt();
+        long minTime = reader.readLong();
+        long maxTime = reader.readLong();
+        int minMagnitude = reader.readInt();
+        int maxMagnitude = reader.readInt();
+        if (payloadLength < 0 || payloadLength > fileLength - position - HEADER_SIZE || count <= 0) {
+            return null;
+        }
+        return new ArchiveBlock(position, payloadLength, crc, flags, count, minTime, maxTime,
+                minMagnitude, maxMagnitude);
+    }
+
+    /** Returns the number of bytes of the block, header included. */
+    int getLength() {
+        return HEADER_SIZE + mPayloadLength;
+    }
+
+    /**
+     * Returns true if the payload matches its checksum.
+     * @param bytes holds the block at the given offset
+     */
+    boolean isIntact(byte[] bytes, int offset) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset + HEADER_SIZE, mPayloadLength);
+        return (int) crc.getValue() == mCrc;
+    }
+
+    /** Returns true if the block may hold events in the time range at or above the magnitude. */
+    boolean mayMatch(long startTime, long endTime, double minMagnitude) {
+        if (mMaxTime < startTime || mMinTime > endTime) {
+            return false;
+        }
+        if (minMagnitude == Double.NEGATIVE_INFINITY) {
+            return true;
+        }
+        return mMaxMagnitude != UNKNOWN && mMaxMagnitude / MAGNITUDE_SCALE >= minMagnitude;
+    }
+
+    /**
+     * Decodes the events of the block in the time range at or above the magnitude, in
+     * time order. Only matching events are turned into objects.
+     * @param bytes holds the block at the given offset
+     * @param minMagnitude is the smallest magnitude, or negative infinity for every
+     *                     event, those without a magnitude included
+     */
+    void decode(byte[] bytes, int offset, long startTime, long endTime, double minMagnitude,
+                List<Earthquake> out) {
+        Source source = new Source(bytes, offset + HEADER_SIZE);
+        int count = mCount;
+        long[] times = new long[count];
+        long time = 0;
+        long delta = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                time = source.readSigned();
+            } else {
+                delta += source.readSigned();
+                time += delta;
+            }
+            times[i] = time;
+        }
+        long[] updated = new long[count];
+        for (int i = 0; i < count; i++) {
+            updated[i] = times[i] + source.readSigned();
+        }
+        double[] magnitudes = new double[count];
+        boolean[] matches = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            magnitudes[i] = dequantize(source.readSigned(), MAGNITUDE_SCALE);
+            matches[i] = times[i] >= startTime && times[i] <= endTime
+                    && (minMagnitude == Double.NEGATIVE_INFINITY || magnitudes[i] >= minMagnitude);
+        }
+        double[] latitudes = new double[count];
+        for (int i = 0; i < count; i++) {
+            latitudes[i] = dequantize(source.readSigned(), COORDINATE_SCALE);
+        }
+        double[] longitudes = new double[count];
+        for (int i = 0; i < count; i++) {
+            longitudes[i] = dequantize(source.readSigned(), COORDINATE_SCALE);
+        }
+        double[] depths = new double[count];
+        for (int i = 0; i < count; i++) {
+            depths[i] = dequantize(source.readSigned(), DEPTH_SCALE);
+        }
+        boolean[] deleted = new boolean[count];
+        if ((mFlags & FLAG_HAS_DELETED) != 0) {
+            for (int i = 0; i < count; i += 8) {
+                int bits = bytes[source.mPosition++];
+                for (int bit = 0; bit < 8 && i + bit < count; bit++) {
+                    deleted[i + bit] = (bits & (1 << bit)) != 0;
+                }
+            }
+        }
+
+        // Ids build on each other, so all are read, but only matching ones become strings
+        String[] ids = new String[count];
+        byte[] id = new byte[64];
+        for (int i = 0; i < count; i++) {
+            int shared = (int) source.readUnsigned();
+            int rest = (int) source.readUnsigned();
+            if (shared + rest > id.length) {
+                id = Arrays.copyOf(id, (shared + rest) * 2);
+            }
+            System.arraycopy(bytes, source.mPosition, id, shared, rest);
+            source.mPosition += rest;
+            if (matches[i]) {
+                ids[i] = new String(id, 0, shared + rest, UTF_8);
+            }
+        }
+
+        String[] offsets = new String[(int) source.readUnsigned()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = source.readString();
+        }
+        String[] locations = new String[(int) source.readUnsigned()];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = source.readString();
+        }
+        for (int i = 0; i < count; i++) {
+            int placeOffset = (int) source.readUnsigned();
+            int placeLocation = (int) source.readUnsigned();
+            if (!matches[i]) {
+                continue;
+            }
+            String place = placeOffset == 0 ? locations[placeLocation]
+                    : offsets[placeOffset - 1] + PLACE_SEPARATOR + locations[placeLocation];
+            out.add(new Earthquake(ids[i], magnitudes[i], place, times[i],
+                    EarthquakeStore.EVENT_PAGE_URL + ids[i], latitudes[i], longitudes[i], depths[i],
+                    updated[i], deleted[i]));
+        }
+    }
+
+    /** Returns the index of a string in a dictionary, adding it at the end if it is new. */
+    private static int indexOf(Map<String, Integer> indexes, Sink dictionary, String string) {
+        Integer index = indexes.get(string);
+        if (index == null) {
+            index = indexes.size();
+            indexes.put(string, index);
+            dictionary.writeString(string);
+        }
+        return index;
+    }
+
+    private static int quantize(double value, double scale) {
+        return Double.isNaN(value) ? UNKNOWN : (int) Math.round(value * scale);
+    }
+
+    private static double dequantize(long value, double scale) {
+        // Dividing an integer is exact to the last bit, so 456 comes back as 4.56
+        return value == UNKNOWN ? Double.NaN : value / scale;
+    }
+
+    /** Reads the big-endian numbers of a header */
+    private static final class ByteReader {
+        final byte[] mBytes;
+        int mPosition;
+
+        ByteReader(byte[] bytes, int position) {
+            mBytes = bytes;
+            mPosition = position;
+        }
+
+        int readInt() {
+            int value = (mBytes[mPosition] & 0xFF) << 24 | (mBytes[mPosition + 1] & 0xFF) << 16
+                    | (mBytes[mPosition + 2] & 0xFF) << 8 | (mBytes[mPosition + 3] & 0xFF);
+            mPosition += 4;
+            return value;
+        }
+
+        long readLong() {
+            return (long) readInt() << 32 | (readInt() & 0xFFFFFFFFL);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pulls {@link Earthquake}s off a USGS response or catalog download in CSV, which starts
+ * with a header line naming the columns:
+ * <pre>
+ * time,latitude,longitude,depth,mag,magType,nst,gap,dmin,rms,net,id,updated,place,type,...,status,...
+ * 2019-07-06T03:19:53.040Z,35.7695,-117.5993,8,7.1,mw,73,46,0.0426,0.19,ci,ci38457511,2019-07-25T17:42:32.418Z,"2km SW of Searles Valley, CA",earthquake,...
+ * </pre>
+ *
+ * Columns are found by their header name, so their order doesn't matter. Fields may be
+ * quoted, with "" for a quote inside them, but not span lines, which USGS never does.
+ * Lines are read and split in place by {@link DelimitedText}; only the id and the
+ * place become strings. Unlike the FDSN text format, CSV has the update time and the
+ * status, so deleted events are recognized.
+ */
+final class CsvParser implements DelimitedText.LineParser {
+
+    /** Header names of the columns that are read */
+    private static final String[] COLUMN_NAMES = {
+            "id", "time", "latitude", "longitude", "depth", "mag", "place", "updated", "status"
+    };
+    private static final int COLUMN_ID = 0;
+    private static final int COLUMN_TIME = 1;
+    private static final int COLUMN_LATITUDE = 2;
+    private static final int COLUMN_LONGITUDE = 3;
+    private static final int COLUMN_DEPTH = 4;
+    private static final int COLUMN_MAGNITUDE = 5;
+    private static final int COLUMN_PLACE = 6;
+    private static final int COLUMN_UPDATED = 7;
+    private static final int COLUMN_STATUS = 8;
+
+    /** Columns before this one must be in the header; the rest are optional */
+    private static final int FIRST_OPTIONAL_COLUMN = COLUMN_UPDATED;
+
+    private static final char[] DELETED = "deleted".toCharArray();
+
+    /** Position of each read column in a line, in the order of COLUMN_NAMES, or -1 if absent */
+    private int[] mPositions;
+
+    /** Position of the last column read, so the rest of a line can be skipped */
+    private int mLastPosition;
+
+    /** Bounds of every field of the current line up to mLastPosition, by position */
+    private int[] mFieldStarts;
+    private int[] mFieldEnds;
+
+    /** True for fields of the current line that were quoted and hold a "" */
+    private boolean[] mFieldEscaped;
+
+    /**
+     * Create a private constructor; a parser only lives for one call to
+     * {@link #parse(InputStream, List)}.
+     */
+    private CsvParser() {
+    }
+
+    /**
+     * Reads every event line of the CSV stream into the given list. If a line turns out
+     * to be malformed, the earthquakes read so far stay in the list and the exception is
+     * thrown.
+     * @throws IOException if the stream fails
+     * @throws IllegalStateException if the header lacks a column or a line is malformed
+     */
+    static void parse(InputStream inputStream, List<Earthquake> earthquakes) throws IOException {
+        DelimitedText.parse(inputStream, new CsvParser(), earthquakes);
+    }
+
+    @Override
+    public Earthquake parseLine(char[] line, int start, int end, int lineNumber) {
+        if (mPositions == null) {
+            readHeader(line, start, end);
+            return null;
+        }
+
+        int fields = splitFields(line, start, end, lineNumber);
+        if (fields <= mLastPosition) {
+            throw new IllegalStateException("Line " + lineNumber + " has " + fields + " columns");
+        }
+
+        try {
+            String id = fieldString(line, COLUMN_ID);
+            long time = DelimitedText.parseTime(line, fieldStart(COLUMN_TIME), fieldEnd(COLUMN_TIME));
+            double latitude = DelimitedText.parseDecimal(line, fieldStart(COLUMN_LATITUDE),
+                    fieldEnd(COLUMN_LATITUDE), Double.NaN);
+            double longitude = DelimitedText.parseDecimal(line, fieldStart(COLUMN_LONGITUDE),
+                    fieldEnd(COLUMN_LONGITUDE), Double.NaN);
+            double depth = DelimitedText.parseDecimal(line, fieldStart(COLUMN_DEPTH),
+                    fieldEnd(COLUMN_DEPTH), Double.NaN);
+            // GeoJSON leaves an unknown magnitude at 0 too
+            double magnitude = DelimitedText.parseDecimal(line, fieldStart(COLUMN_MAGNITUDE),
+                    fieldEnd(COLUMN_MAGNITUDE), 0);
+            String location = fieldString(line, COLUMN_PLACE);
+
+            long updated = time;
+            if (mPositions[COLUMN_UPDATED] >= 0 && fieldStart(COLUMN_UPDATED) < fieldEnd(COLUMN_UPDATED)) {
+                updated = Math.max(updated,
+                        DelimitedText.parseTime(line, fieldStart(COLUMN_UPDATED), fieldEnd(COLUMN_UPDATED)));
+            }
+            boolean deleted = mPositions[COLUMN_STATUS] >= 0
+                    && fieldEquals(line, COLUMN_STATUS, DELETED);
+
+            return new Earthquake(id, magnitude, location, time, EarthquakeStore.EVENT_PAGE_URL + id,
+                    latitude, longitude, depth, updated, deleted);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Line " + lineNumber + ": " + e.getMessage());
+        }
+    }
+
+    /** Finds the position of every read column in the header line. */
+    private void readHeader(char[] line, int start, int end) {
+        int[] positions = new int[COLUMN_NAMES.length];
+        Arrays.fill(positions, -1);
+        int position = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || line[i] == ',') {
+                String name = new String(line, fieldStart, i - fieldStart).trim();
+                for (int column = 0; column < COLUMN_NAMES.length; column++) {
+                    if (COLUMN_NAMES[column].equals(name)) {
+                        positions[column] = position;
+                    }
+                }
+                position++;
+                fieldStart = i + 1;
+            }
+        }
+
+        mLastPosition = 0;
+        for (int column = 0; column < COLUMN_NAMES.length; column++) {
+            if (positions[column] < 0 && column < FIRST_OPTIONAL_COLUMN) {
+                throw new IllegalStateException("The CSV header has no " + COLUMN_NAMES[column] + " column");
+            }
+            mLastPosition = Math.max(mLastPosition, positions[column]);
+        }
+        mPositions = positions;
+        mFieldStarts = new int[mLastPosition + 1];
+        mFieldEnds = new int[mLastPosition + 1];
+        mFieldEscaped = new boolean[mLastPosition + 1];
+    }
+
+    /**
+     * Records the bounds of the fields of a line, without their quotes, up to the last
+     * column read, and returns how many were found.
+     */
+    private int splitFields(char[] line, int start, int end, int lineNumber) {
+        int field = 0;
+        int i = start;
+        while (field <= mLastPosition) {
+            boolean escaped = false;
+            int fieldEnd;
+            if (i < end && line[i] == '"') {
+                // A quoted field ends at a quote that isn't followed by another one
+                mFieldStarts[field] = ++i;
+                while (true) {
+                    if (i >= end) {
+                        throw new IllegalStateException("Line " + lineNumber + " has an unclosed quote");
+                    }
+                    if (line[i] == '"') {
+                        if (i + 1 < end && line[i + 1] == '"') {
+                            escaped = true;
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                fieldEnd = i++;
+            } else {
+                mFieldStarts[field] = i;
+                while (i < end && line[i] != ',') {
+                    i++;
+                }
+                fieldEnd = i;
+            }
+            mFieldEnds[field] = fieldEnd;
+            mFieldEscaped[field] = escaped;
+            field++;
+            if (i >= end) {
+                break;
+            }
+            // Step over the comma
+            i++;
+        }
+        return field;
+    }
+
+    private int fieldStart(int column) {
+        return mFieldStarts[mPositions[column]];
+    }
+
+    private int fieldEnd(int column) {
+        return mFieldEnds[mPositions[column]];
+    }
+
+    /** Returns a field as a string, turning every "" back into a quote. */
+    private String fieldString(char[] line, int column) {
+        int position = mPositions[column];
+        String value = new String(line, mFieldStarts[position], mFieldEnds[position] - mFieldStarts[position]);
+        return mFieldEscaped[position] ? value.replace("\"\"", "\"") : value;
+    }
+
+    private boolean fieldEquals(char[] line, int column, char[] value) {
+        int start = fieldStart(column);
+        if (fieldEnd(column) - start != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (line[start + i] != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads USGS responses that have one event per line, such as the FDSN text format and
+ * CSV, and converts the numbers and times in them.
+ *
+ * The stream is read through one growing char buffer and each line is handed to a
+ * {@link LineParser} as a range of that buffer, so no string is made of a line and
+ * nothing is split with a regular expression. Numbers and times are converted by
+ * hand, exactly for the short decimals USGS sends.
+ */
+final class DelimitedText {
+
+    /**
+     * Turns one line into an {@link Earthquake}.
+     */
+    interface LineParser {
+        /**
+         * Returns the earthquake on line[start, end), which has no line terminator,
+         * or null if the line holds none, i.e. a header or comment.
+         * @throws IllegalStateException if the line doesn't have the expected shape
+         */
+        Earthquake parseLine(char[] line, int start, int end, int lineNumber);
+    }
+
+    /** Every USGS response is UTF-8 */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    /** Powers of ten that a double holds exactly, for converting decimals */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** Decimals with more digits than this can't be converted exactly by hand */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link DelimitedText}
+     * object. This class only holds static methods.
+     */
+    private DelimitedText() {
+    }
+
+    /**
+     * Hands every non-blank line of the stream to the parser and adds the earthquakes it
+     * returns to the given list. If a line turns out to be malformed, the earthquakes read
+     * so far stay in the list and the exception is thrown.
+     * @throws IOException if the stream fails
+     * @throws IllegalStateException if the parser finds a malformed line
+     */
+    static void parse(InputStream inputStream, LineParser parser, List<Earthquake> earthquakes)
+            throws IOException {
+        Reader reader = new InputStreamReader(inputStream, UTF_8);
+        char[] buffer = new char[INITIAL_BUFFER_SIZE];
+        int start = 0;
+        int end = 0;
+        int scanned = 0;
+        int lineNumber = 0;
+        boolean endOfStream = false;
+
+        while (true) {
+            int newline = indexOf(buffer, '\n', scanned, end);
+            if (newline >= 0 || (endOfStream && start < end)) {
+                int lineEnd = newline >= 0 ? newline : end;
+                if (lineEnd > start && buffer[lineEnd - 1] == '\r') {
+                    lineEnd--;
+                }
+                lineNumber++;
+                // Stop parsing as soon as whoever wanted these results is cancelled
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Parsing was interrupted");
+                }
+                if (lineEnd > start) {
+                    Earthquake earthquake = parser.parseLine(buffer, start, lineEnd, lineNumber);
+                    if (earthquake != null) {
+                        earthquakes.add(earthquake);
+                    }
+                }
+                start = newline >= 0 ? newline + 1 : end;
+                scanned = start;
+                continue;
+            }
+            if (endOfStream) {
+                return;
+            }
+
+            // Make room behind the unfinished line and read more
+            scanned = end;
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                scanned -= start;
+                start = 0;
+            } else if (end == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = reader.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                endOfStream = true;
+            } else {
+                end += read;
+            }
+        }
+    }
+
+    /**
+     * Returns the decimal number in line[start, end), or the given value if the range
+     * is empty. Plain decimals of up to 15 digits are converted exactly by dividing by a
+     * power of ten; anything else goes to {@link Double#parseDouble(String)}.
+     * @throws NumberFormatException if the range is not a number
+     */
+    static double parseDecimal(char[] line, int start, int end, double emptyValue) {
+        if (start == end) {
+            return emptyValue;
+        }
+        int i = start;
+        boolean negative = line[i] == '-';
+        if (negative || line[i] == '+') {
+            i++;
+        }
+        long digits = 0;
+        int digitCount = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            char c = line[i];
+            if (c >= '0' && c <= '9') {
+                digits = digits * 10 + (c - '0');
+                digitCount++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        if (i < end || digitCount == 0 || digitCount > MAX_EXACT_DIGITS) {
+            // An exponent, too many digits or not a number at all
+            return Double.parseDouble(new String(line, start, end - start));
+        }
+        double value = fractionDigits > 0 ? digits / POWERS_OF_TEN[fractionDigits] : digits;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Returns the UTC time in line[start, end) in milliseconds, which is in the form
+     * 2019-07-06T03:19:53.040, optionally with fewer or more fraction digits and a Z.
+     * @throws NumberFormatException if the range is not such a time
+     */
+    static long parseTime(char[] line, int start, int end) {
+        if (end - start < 19 || line[start + 4] != '-' || line[start + 7] != '-'
+                || line[start + 10] != 'T' || line[start + 13] != ':' || line[start + 16] != ':') {
+            throw new NumberFormatException("Bad time " + new String(line, start, end - start));
+        }
+        int year = parseDigits(line, start, 4);
+        int month = parseDigits(line, start + 5, 2);
+        int day = parseDigits(line, start + 8, 2);
+        int hour = parseDigits(line, start + 11, 2);
+        int minute = parseDigits(line, start + 14, 2);
+        int second = parseDigits(line, start + 17, 2);
+
+        // Milliseconds from the fraction, of however many digits
+        int millis = 0;
+        int i = start + 19;
+        if (i < end && line[i] == '.') {
+            int scale = 100;
+            for (i++; i < end && line[i] >= '0' && line[i] <= '9'; i++) {
+                millis += (line[i] - '0') * scale;
+                scale /= 10;
+            }
+        }
+        if (i < end && line[i] == 'Z') {
+            i++;
+        }
+        if (i != end || month < 1 || month > 12 || day < 1 || day > 31) {
+            throw new NumberFormatException("Bad time " + new String(line, start, end - start));
+        }
+
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute) * 60 + second) * 1000 + millis;
+    }
+
+    private static int parseDigits(char[] line, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = line[i];
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Bad digit " + c);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of days from 1970-01-01 to the given date of the proleptic
+     * Gregorian calendar, without going through {@link java.util.Calendar}.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        // Count years from March, so the leap day is the last day of the year
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static int indexOf(char[] buffer, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
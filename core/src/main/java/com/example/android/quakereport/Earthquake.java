@@ -0,0 +1,166 @@
+package com.example.android.quakereport;
+
+/**
+ * {@link Earthquake} represents a single earthquake at some location.
+ * Each object has 5 properties: id, magnitude, place, date and url, plus
+ * where the earthquake was, when USGS last updated the event and whether
+ * USGS has deleted it.
+ */
+
+@SuppressWarnings("ALL")
+public class Earthquake {
+
+    // USGS event id of the earthquake (i.e. us2000ahv0)
+    private String mId;
+
+    // Magnitude of the earthquake (i.e. 4.5)
+    private double mMagnitude;
+
+    // Location of the earthquake (i.e. San Francisco)
+    private String mLocation;
+
+    // Time of the earthquake
+    private long mTimeInMilliseconds;
+
+    // Get URL
+    private String mUrl;
+
+    // Latitude of the epicenter in degrees, or NaN if unknown
+    private double mLatitude;
+
+    // Longitude of the epicenter in degrees, or NaN if unknown
+    private double mLongitude;
+
+    // Depth of the hypocenter in km, or NaN if unknown
+    private double mDepth;
+
+    // Time USGS last updated the event
+    private long mUpdatedInMilliseconds;
+
+    // True if USGS has deleted the event
+    private boolean mDeleted;
+
+    /**
+     * Create a new Earthquake object.
+     * @param id is the USGS event id of the earthquake
+     * @param magnitude is the magnitude, or strength, of the earthquake
+     * @param location is the where the earthquake happened
+     * @param timeInMilliseconds is the time the earthquake occurred
+     * @param url is the website URL to find more details about each earthquake
+     */
+    public Earthquake(String id, double magnitude, String location, long timeInMilliseconds, String url) {
+        this(id, magnitude, location, timeInMilliseconds, url, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Create a new Earthquake object, including where it happened.
+     * @param id is the USGS event id of the earthquake
+     * @param magnitude is the magnitude, or strength, of the earthquake
+     * @param location is the where the earthquake happened
+     * @param timeInMilliseconds is the time the earthquake occurred
+     * @param url is the website URL to find more details about each earthquake
+     * @param latitude is the latitude of the epicenter in degrees, or NaN if unknown
+     * @param longitude is the longitude of the epicenter in degrees, or NaN if unknown
+     * @param depth is the depth of the hypocenter in km, or NaN if unknown
+     */
+    public Earthquake(String id, double magnitude, String location, long timeInMilliseconds, String url,
+                      double latitude, double longitude, double depth) {
+        this(id, magnitude, location, timeInMilliseconds, url, latitude, longitude, depth,
+                timeInMilliseconds, false);
+    }
+
+    /**
+     * Create a new Earthquake object, including where it happened and its update state.
+     * @param id is the USGS event id of the earthquake
+     * @param magnitude is the magnitude, or strength, of the earthquake
+     * @param location is the where the earthquake happened
+     * @param timeInMilliseconds is the time the earthquake occurred
+     * @param url is the website URL to find more details about each earthquake
+     * @param latitude is the latitude of the epicenter in degrees, or NaN if unknown
+     * @param longitude is the longitude of the epicenter in degrees, or NaN if unknown
+     * @param depth is the depth of the hypocenter in km, or NaN if unknown
+     * @param updatedInMilliseconds is the time USGS last updated the event
+     * @param deleted is true if USGS has deleted the event
+     */
+    public Earthquake(String id, double magnitude, String location, long timeInMilliseconds, String url,
+                      double latitude, double longitude, double depth,
+                      long updatedInMilliseconds, boolean deleted) {
+        mId = id;
+        mMagnitude = magnitude;
+        mLocation = location;
+        mTimeInMilliseconds = timeInMilliseconds;
+        mUrl = url;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mDepth = depth;
+        mUpdatedInMilliseconds = updatedInMilliseconds;
+        mDeleted = deleted;
+    }
+
+    /*
+    Get the USGS event id of the earthquake
+     */
+    public String getId() {
+        return mId;
+    }
+
+    /*
+    Get the magnitude of the earthquake
+     */
+    public double getMagnitude() {
+        return mMagnitude;
+    }
+
+    /*
+    Get the location of the earthquake
+     */
+    public String getLocation() {
+        return mLocation;
+    }
+
+    public long getTimeInMilliseconds() {
+        return mTimeInMilliseconds;
+    }
+
+    /*
+    Returns website URL to find more info about quakes
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /*
+    Returns the latitude of the epicenter in degrees, or NaN if unknown
+     */
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    /*
+    Returns the longitude of the epicenter in degrees, or NaN if unknown
+     */
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /*
+    Returns the depth of the hypocenter in km, or NaN if unknown
+     */
+    public double getDepth() {
+        return mDepth;
+    }
+
+    /*
+    Returns the time USGS last updated the event
+     */
+    public long getUpdatedInMilliseconds() {
+        return mUpdatedInMilliseconds;
+    }
+
+    /*
+    Returns true if USGS has deleted the event
+     */
+    public boolean isDeleted() {
+        return mDeleted;
+    }
+}
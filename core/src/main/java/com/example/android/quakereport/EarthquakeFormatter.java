@@ -0,0 +1,100 @@
+package com.example.android.quakereport;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Turns earthquake fields into the text and colors shown in a list item.
+ *
+ * The colors and strings are resolved before the formatter is created (the app reads
+ * them from its resources), so nothing here touches Android. The formatters inside are
+ * not thread-safe, so an instance must only be used by one thread at a time.
+ */
+public class EarthquakeFormatter {
+
+    /** Magnitude bucket shared by magnitudes below 0 and from 10 up, which get the overflow color */
+    static final int MAGNITUDE_BUCKET_OVERFLOW = 10;
+
+    /** Number of magnitude buckets, the overflow bucket included */
+    static final int MAGNITUDE_BUCKET_COUNT = MAGNITUDE_BUCKET_OVERFLOW + 1;
+
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("MMM DD, yyyy");
+    private final SimpleDateFormat mTimeFormat = new SimpleDateFormat("h:mm a");
+    private final DecimalFormat mMagnitudeFormat = new DecimalFormat("0.0");
+    private final Date mDate = new Date();
+
+    /* Resolved magnitude circle colors, indexed by magnitude bucket */
+    private final int[] mMagnitudeColors;
+    private final int mMagnitudeColorOverflow;
+
+    /* Offset text for places that have no offset part, i.e. "near the" */
+    private final String mOffsetAlternative;
+
+    /**
+     * Constructs a new {@link EarthquakeFormatter} from values that are already resolved.
+     * @param magnitudeColors are the magnitude circle colors, indexed by the floor of the magnitude
+     * @param magnitudeColorOverflow is the color for magnitudes beyond the end of magnitudeColors
+     * @param offsetAlternative is the offset text for places without one, i.e. "near the"
+     */
+    public EarthquakeFormatter(int[] magnitudeColors, int magnitudeColorOverflow, String offsetAlternative) {
+        mMagnitudeColors = magnitudeColors.clone();
+        mMagnitudeColorOverflow = magnitudeColorOverflow;
+        mOffsetAlternative = offsetAlternative;
+    }
+
+    /**
+     * Returns the bucket a magnitude falls in, which picks its circle color: the floor
+     * of the magnitude, or {@link #MAGNITUDE_BUCKET_OVERFLOW} outside 0 to 10.
+     */
+    static int magnitudeBucket(double magnitude) {
+        int magnitudeFloor = (int) Math.floor(magnitude);
+        if (magnitudeFloor >= 0 && magnitudeFloor < MAGNITUDE_BUCKET_OVERFLOW) {
+            return magnitudeFloor;
+        }
+        return MAGNITUDE_BUCKET_OVERFLOW;
+    }
+
+    /**
+     * Return the magnitude circle's color based on the strength of the quake
+     */
+    public int getMagnitudeColor(double magnitude) {
+        int bucket = magnitudeBucket(magnitude);
+        if (bucket < mMagnitudeColors.length) {
+            return mMagnitudeColors[bucket];
+        }
+        return mMagnitudeColorOverflow;
+    }
+
+    /**
+     * Return the formatted magnitude double showing 1 decimal place (i.e. "3.2")
+     * from a decimal magnitude value
+     */
+    public String formatMagnitude(double magnitude) {
+        return mMagnitudeFormat.format(magnitude);
+    }
+
+    /**
+     * Return the formatted date string (i.e. "March 3, 1984") from a time in milliseconds.
+     */
+    public String formatDate(long timeInMilliseconds) {
+        mDate.setTime(timeInMilliseconds);
+        return mDateFormat.format(mDate);
+    }
+
+    /**
+     * Return the formatted time string (i.e. "4:30PM") from a time in milliseconds.
+     */
+    public String formatTime(long timeInMilliseconds) {
+        mDate.setTime(timeInMilliseconds);
+        return mTimeFormat.format(mDate);
+    }
+
+    /**
+     * Return the offset text to show for a place, i.e. "88km N of ", or "near the"
+     * if the place has no offset part.
+     */
+    public String formatLocationOffset(String locationOffset) {
+        return locationOffset == null ? mOffsetAlternative : locationOffset;
+    }
+}
@@ -0,0 +1,412 @@
+package com.example.android.quakereport;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * {@link EarthquakeStore} holds a list of earthquakes column by column instead of
+ * as one {@link Earthquake} object per event.
+ *
+ * Magnitudes, times and coordinates live in primitive arrays. Place strings are
+ * split into their offset ("88km N of ") and primary location ("Ridgecrest, CA")
+ * once, when they are added, and both parts are dictionary-encoded, so a place
+ * that shows up many times is only stored once. Event page URLs are rebuilt from the event id
+ * and only stored when they don't follow the USGS pattern.
+ *
+ * A store created with an {@link EarthquakeFormatter} also keeps the text and color of
+ * every row as shown in the list. They are formatted when the row is added, which
+ * happens on the loader's background thread, so the UI thread only assigns them.
+ *
+ * A store is filled with {@link #append(Earthquake)}. {@link #snapshot()} returns
+ * a read-only view of the rows added so far that shares the columns with the store,
+ * so it is cheap to hand to the UI while the store keeps growing. Rows can be read
+ * by index without creating {@link Earthquake} objects; the {@link List} methods
+ * create them on demand.
+ */
+public final class EarthquakeStore extends AbstractList<Earthquake> implements RandomAccess {
+
+    /** Separator between the offset and the primary location of a place */
+    private static final String LOCATION_SEPARATOR = " of ";
+
+    /** USGS event page URLs are this prefix followed by the event id */
+    static final String EVENT_PAGE_URL = "https://earthquake.usgs.gov/earthquakes/eventpage/";
+
+    /** Marks a place without an offset part */
+    private static final int NO_OFFSET = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Columns, one entry per earthquake
+    private String[] mIds;
+    private double[] mMagnitudes;
+    private long[] mTimes;
+    private double[] mLatitudes;
+    private double[] mLongitudes;
+    private double[] mDepths;
+    private int[] mOffsetCodes;
+    private int[] mPrimaryCodes;
+    private String[] mUrlOverrides;
+
+    // Display columns, only filled in when the store has a formatter
+    private String[] mMagnitudeTexts;
+    private String[] mDateTexts;
+    private String[] mTimeTexts;
+    private int[] mMagnitudeColors;
+
+    // Dictionary of place parts, indexed by the codes above
+    private String[] mPlaceParts;
+    private int mPlacePartCount;
+
+    // Codes of the place parts seen so far; null for read-only snapshots
+    private Map<String, Integer> mPlacePartCodes;
+
+    // Formats the display columns; null if the store has none
+    private EarthquakeFormatter mFormatter;
+
+    // Offset text shown for places without an offset part
+    private String mOffsetAlternative;
+
+    // Number of earthquakes in this store
+    private int mSize;
+
+    // Shared by a store and its snapshots, which all hold the same rows at the start
+    private final Object mLineage;
+
+    /** Create a new, empty store without display columns. */
+    public EarthquakeStore() {
+        this(INITIAL_CAPACITY, null);
+    }
+
+    /**
+     * Create a new, empty store.
+     * @param capacity is the number of earthquakes to make room for up front
+     * @param formatter formats the display columns as rows are added, or null for none
+     */
+    public EarthquakeStore(int capacity, EarthquakeFormatter formatter) {
+        capacity = Math.max(capacity, 1);
+        mFormatter = formatter;
+        if (formatter != null) {
+            mOffsetAlternative = formatter.formatLocationOffset(null);
+            mMagnitudeTexts = new String[capacity];
+            mDateTexts = new String[capacity];
+            mTimeTexts = new String[capacity];
+            mMagnitudeColors = new int[capacity];
+        }
+        mIds = new String[capacity];
+        mMagnitudes = new double[capacity];
+        mTimes = new long[capacity];
+        mLatitudes = new double[capacity];
+        mLongitudes = new double[capacity];
+        mDepths = new double[capacity];
+        mOffsetCodes = new int[capacity];
+        mPrimaryCodes = new int[capacity];
+        mUrlOverrides = new String[capacity];
+        mPlaceParts = new String[capacity];
+        mPlacePartCodes = new HashMap<>();
+        mLineage = new Object();
+    }
+
+    /** Create a read-only view of the first {@code size} rows of another store. */
+    private EarthquakeStore(EarthquakeStore store, int size) {
+        mIds = store.mIds;
+        mMagnitudes = store.mMagnitudes;
+        mTimes = store.mTimes;
+        mLatitudes = store.mLatitudes;
+        mLongitudes = store.mLongitudes;
+        mDepths = store.mDepths;
+        mOffsetCodes = store.mOffsetCodes;
+        mPrimaryCodes = store.mPrimaryCodes;
+        mUrlOverrides = store.mUrlOverrides;
+        mMagnitudeTexts = store.mMagnitudeTexts;
+        mDateTexts = store.mDateTexts;
+        mTimeTexts = store.mTimeTexts;
+        mMagnitudeColors = store.mMagnitudeColors;
+        mOffsetAlternative = store.mOffsetAlternative;
+        mPlaceParts = store.mPlaceParts;
+        mPlacePartCount = store.mPlacePartCount;
+        mSize = size;
+        mLineage = store.mLineage;
+    }
+
+    /**
+     * Returns a read-only view of the rows added so far. Rows appended to this store
+     * later don't show up in the view, so it can be handed to another thread.
+     */
+    public EarthquakeStore snapshot() {
+        return new EarthquakeStore(this, mSize);
+    }
+
+    /**
+     * Returns a new writable store holding the same rows as this one.
+     * @param formatter formats the display columns of rows added to the copy, or null for none
+     */
+    public EarthquakeStore copy(EarthquakeFormatter formatter) {
+        EarthquakeStore copy = new EarthquakeStore(mSize + INITIAL_CAPACITY, formatter);
+        // Rows formatted here already don't need formatting again
+        boolean copyDisplay = formatter != null && mFormatter != null;
+        for (int i = 0; i < mSize; i++) {
+            copy.append(mIds[i], mMagnitudes[i], mTimes[i], mLatitudes[i], mLongitudes[i],
+                    mDepths[i], getLocationOffset(i), getPrimaryLocation(i), mUrlOverrides[i],
+                    !copyDisplay);
+        }
+        if (copyDisplay) {
+            System.arraycopy(mMagnitudeTexts, 0, copy.mMagnitudeTexts, 0, mSize);
+            System.arraycopy(mDateTexts, 0, copy.mDateTexts, 0, mSize);
+            System.arraycopy(mTimeTexts, 0, copy.mTimeTexts, 0, mSize);
+            System.arraycopy(mMagnitudeColors, 0, copy.mMagnitudeColors, 0, mSize);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns true if this store holds every row of the given one, unchanged, at the
+     * start. That is only known for a store and its snapshots: rows are never changed
+     * once appended, so the longer of the two starts with the rows of the shorter.
+     * Stores filled separately return false even if they happen to hold the same rows.
+     */
+    boolean startsWith(EarthquakeStore store) {
+        return mLineage == store.mLineage && mSize >= store.mSize;
+    }
+
+    /** Adds an earthquake to the end of the store. */
+    public void append(Earthquake earthquake) {
+        String location = earthquake.getLocation();
+        String offset = null;
+        String primary = location;
+        int separator = location.indexOf(LOCATION_SEPARATOR);
+        if (separator >= 0) {
+            offset = location.substring(0, separator + LOCATION_SEPARATOR.length());
+            primary = location.substring(separator + LOCATION_SEPARATOR.length());
+        }
+
+        String id = earthquake.getId();
+        String url = earthquake.getUrl();
+        String urlOverride = url.equals(EVENT_PAGE_URL + id) ? null : url;
+
+        append(id, earthquake.getMagnitude(), earthquake.getTimeInMilliseconds(),
+                earthquake.getLatitude(), earthquake.getLongitude(), earthquake.getDepth(),
+                offset, primary, urlOverride, true);
+    }
+
+    /**
+     * Adds a row of another store to the end of this one. The row's display columns are
+     * copied if both stores have them, and formatted otherwise.
+     */
+    void append(EarthquakeStore source, int index) {
+        source.checkIndex(index);
+        boolean copyDisplay = mFormatter != null && source.mMagnitudeTexts != null;
+        append(source.mIds[index], source.mMagnitudes[index], source.mTimes[index],
+                source.mLatitudes[index], source.mLongitudes[index], source.mDepths[index],
+                source.getLocationOffset(index), source.getPrimaryLocation(index),
+                source.mUrlOverrides[index], !copyDisplay);
+        if (copyDisplay) {
+            int row = mSize - 1;
+            mMagnitudeTexts[row] = source.mMagnitudeTexts[index];
+            mDateTexts[row] = source.mDateTexts[index];
+            mTimeTexts[row] = source.mTimeTexts[index];
+            mMagnitudeColors[row] = source.mMagnitudeColors[index];
+        }
+    }
+
+    /** Adds every earthquake in the list to the end of the store. */
+    public void appendAll(List<Earthquake> earthquakes) {
+        ensureCapacity(mSize + earthquakes.size());
+        for (int i = 0; i < earthquakes.size(); i++) {
+            append(earthquakes.get(i));
+        }
+    }
+
+    /**
+     * Adds an earthquake whose place is already split into its offset and primary
+     * location, i.e. one read back from the app's snapshot of the list.
+     * @param urlOverride is the website URL if it doesn't follow the USGS pattern, or null
+     */
+    void append(String id, double magnitude, long time, double latitude, double longitude,
+                double depth, String offset, String primary, String urlOverride) {
+        append(id, magnitude, time, latitude, longitude, depth, offset, primary, urlOverride, true);
+    }
+
+    private void append(String id, double magnitude, long time, double latitude,
+                        double longitude, double depth, String offset, String primary,
+                        String urlOverride, boolean format) {
+        if (mPlacePartCodes == null) {
+            throw new UnsupportedOperationException("Snapshots of an EarthquakeStore are read-only");
+        }
+        ensureCapacity(mSize + 1);
+        mIds[mSize] = id;
+        mMagnitudes[mSize] = magnitude;
+        mTimes[mSize] = time;
+        mLatitudes[mSize] = latitude;
+        mLongitudes[mSize] = longitude;
+        mDepths[mSize] = depth;
+        mOffsetCodes[mSize] = offset == null ? NO_OFFSET : encodePlacePart(offset);
+        mPrimaryCodes[mSize] = encodePlacePart(primary);
+        mUrlOverrides[mSize] = urlOverride;
+        if (mFormatter != null && format) {
+            mMagnitudeTexts[mSize] = mFormatter.formatMagnitude(magnitude);
+            mDateTexts[mSize] = mFormatter.formatDate(time);
+            mTimeTexts[mSize] = mFormatter.formatTime(time);
+            mMagnitudeColors[mSize] = mFormatter.getMagnitudeColor(magnitude);
+        }
+        mSize++;
+    }
+
+    /** Returns the dictionary code of a place part, adding it if it's new. */
+    private int encodePlacePart(String part) {
+        Integer code = mPlacePartCodes.get(part);
+        if (code == null) {
+            if (mPlacePartCount == mPlaceParts.length) {
+                mPlaceParts = Arrays.copyOf(mPlaceParts, mPlaceParts.length * 2);
+            }
+            code = mPlacePartCount;
+            mPlaceParts[mPlacePartCount++] = part;
+            mPlacePartCodes.put(part, code);
+        }
+        return code;
+    }
+
+    /**
+     * Grows every column to hold at least the given number of rows. Columns are
+     * replaced rather than resized in place, so existing snapshots keep theirs.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, mIds.length * 2);
+        mIds = Arrays.copyOf(mIds, newCapacity);
+        mMagnitudes = Arrays.copyOf(mMagnitudes, newCapacity);
+        mTimes = Arrays.copyOf(mTimes, newCapacity);
+        mLatitudes = Arrays.copyOf(mLatitudes, newCapacity);
+        mLongitudes = Arrays.copyOf(mLongitudes, newCapacity);
+        mDepths = Arrays.copyOf(mDepths, newCapacity);
+        mOffsetCodes = Arrays.copyOf(mOffsetCodes, newCapacity);
+        mPrimaryCodes = Arrays.copyOf(mPrimaryCodes, newCapacity);
+        mUrlOverrides = Arrays.copyOf(mUrlOverrides, newCapacity);
+        if (mFormatter != null) {
+            mMagnitudeTexts = Arrays.copyOf(mMagnitudeTexts, newCapacity);
+            mDateTexts = Arrays.copyOf(mDateTexts, newCapacity);
+            mTimeTexts = Arrays.copyOf(mTimeTexts, newCapacity);
+            mMagnitudeColors = Arrays.copyOf(mMagnitudeColors, newCapacity);
+        }
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /** Returns the earthquake at the given index as a new {@link Earthquake} object. */
+    @Override
+    public Earthquake get(int index) {
+        checkIndex(index);
+        return new Earthquake(mIds[index], mMagnitudes[index], getLocation(index),
+                mTimes[index], getUrl(index), mLatitudes[index], mLongitudes[index], mDepths[index]);
+    }
+
+    public String getId(int index) {
+        checkIndex(index);
+        return mIds[index];
+    }
+
+    public double getMagnitude(int index) {
+        checkIndex(index);
+        return mMagnitudes[index];
+    }
+
+    public long getTimeInMilliseconds(int index) {
+        checkIndex(index);
+        return mTimes[index];
+    }
+
+    /** Returns the latitude of the epicenter in degrees, or NaN if unknown. */
+    public double getLatitude(int index) {
+        checkIndex(index);
+        return mLatitudes[index];
+    }
+
+    /** Returns the longitude of the epicenter in degrees, or NaN if unknown. */
+    public double getLongitude(int index) {
+        checkIndex(index);
+        return mLongitudes[index];
+    }
+
+    /** Returns the depth of the hypocenter in km, or NaN if unknown. */
+    public double getDepth(int index) {
+        checkIndex(index);
+        return mDepths[index];
+    }
+
+    /** Returns the full place string, i.e. "88km N of Ridgecrest, CA". */
+    public String getLocation(int index) {
+        String offset = getLocationOffset(index);
+        String primary = getPrimaryLocation(index);
+        return offset == null ? primary : offset + primary;
+    }
+
+    /** Returns the offset part of the place, i.e. "88km N of ", or null if it has none. */
+    public String getLocationOffset(int index) {
+        checkIndex(index);
+        int code = mOffsetCodes[index];
+        return code == NO_OFFSET ? null : mPlaceParts[code];
+    }
+
+    /** Returns the primary location part of the place, i.e. "Ridgecrest, CA". */
+    public String getPrimaryLocation(int index) {
+        checkIndex(index);
+        return mPlaceParts[mPrimaryCodes[index]];
+    }
+
+    /** Returns the website URL to find more details about the earthquake. */
+    public String getUrl(int index) {
+        checkIndex(index);
+        String url = mUrlOverrides[index];
+        return url != null ? url : EVENT_PAGE_URL + mIds[index];
+    }
+
+    /** Returns the website URL if it doesn't follow the USGS pattern, or null if it does. */
+    String getUrlOverride(int index) {
+        checkIndex(index);
+        return mUrlOverrides[index];
+    }
+
+    /** Returns the magnitude as shown in the list, i.e. "3.2". Needs a formatter. */
+    public String getMagnitudeText(int index) {
+        checkIndex(index);
+        return mMagnitudeTexts[index];
+    }
+
+    /** Returns the date as shown in the list, i.e. "Mar 3, 1984". Needs a formatter. */
+    public String getDateText(int index) {
+        checkIndex(index);
+        return mDateTexts[index];
+    }
+
+    /** Returns the time as shown in the list, i.e. "4:30 PM". Needs a formatter. */
+    public String getTimeText(int index) {
+        checkIndex(index);
+        return mTimeTexts[index];
+    }
+
+    /** Returns the magnitude circle color as shown in the list. Needs a formatter. */
+    public int getMagnitudeColor(int index) {
+        checkIndex(index);
+        return mMagnitudeColors[index];
+    }
+
+    /** Returns the offset as shown in the list, i.e. "88km N of " or "near the". Needs a formatter. */
+    public String getLocationOffsetText(int index) {
+        String offset = getLocationOffset(index);
+        return offset == null ? mOffsetAlternative : offset;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package com.example.android.quakereport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link EventArchive} keeps years of earthquakes on disk in a few dozen bytes each,
+ * for trends over far longer than the local event store holds.
+ *
+ * There is one file per UTC day, named after the number of days since 1970, holding a
+ * run of {@link ArchiveBlock}s. New events are only ever appended, as a block per day
+ * they fall on, so an update of an event appends its new version next to the old one.
+ * An update that moves an event to another day also appends a deleted version of it to
+ * the day it was on, which the ids file names: it holds the day of every archived event,
+ * a few bytes each, and is read into memory on the first append.
+ * Compacting a day rewrites it with the latest version of each event, deleted ones left
+ * out, in blocks sorted by time. A day is compacted once it has
+ * {@link #MAX_APPENDED_BLOCKS} appended blocks, and {@link #compactAll()} does the rest.
+ *
+ * Scans only open the days of their time range, and on compacted days skip every block
+ * whose header says it is out of the range or below the magnitude. A block cut short by
+ * a crash during an append fails its checksum and is left out, along with anything
+ * after it in the same file.
+ *
+ * Appends and compactions are serialized. Scans can run alongside them on any thread.
+ */
+public final class EventArchive {
+
+    /** Receives the events a scan finds */
+    public interface Visitor {
+        void visit(Earthquake earthquake);
+    }
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    private static final String DAY_FILE_SUFFIX = ".day";
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+
+    /** Name of the file holding the day of every event, as records of id and day */
+    private static final String ID_FILE = "ids";
+
+    /** Most events in a block written by a compaction */
+    static final int BLOCK_SIZE = 512;
+
+    /** Number of appended blocks that gets a day compacted */
+    static final int MAX_APPENDED_BLOCKS = 4;
+
+    /** Orders events by time, then by id, as they are stored */
+    private static final Comparator<Earthquake> BY_TIME = new Comparator<Earthquake>() {
+        @Override
+        public int compare(Earthquake a, Earthquake b) {
+            long timeA = a.getTimeInMilliseconds();
+            long timeB = b.getTimeInMilliseconds();
+            if (timeA != timeB) {
+                return timeA < timeB ? -1 : 1;
+            }
+            return a.getId().compareTo(b.getId());
+        }
+    };
+
+    private final File mDirectory;
+
+    /** Day of every event archived, by id; read from the ids file on the first append */
+    private Map<String, Integer> mEventDays;
+
+    /**
+     * Opens the archive in the given directory, which is created on the first append.
+     * @param directory holds nothing but the archive
+     */
+    public EventArchive(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Appends new events and new versions of events to the archive, compacting the days
+     * that have collected enough appended blocks. Deletions of events the archive doesn't
+     * hold are left out.
+     */
+    public synchronized void append(List<Earthquake> earthquakes) throws IOException {
+        if (earthquakes.isEmpty()) {
+            return;
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+        if (mEventDays == null) {
+            mEventDays = readEventDays();
+        }
+
+        // An event revised across midnight leaves its old version on the old day, so
+        // that day gets a deleted version, updated with the new one, to hide it
+        List<Earthquake> sorted = new ArrayList<>(earthquakes.size());
+        Map<String, Integer> newDays = new HashMap<>();
+        ByteArrayOutputStream movedBytes = new ByteArrayOutputStream();
+        DataOutputStream moved = new DataOutputStream(movedBytes);
+        for (Earthquake earthquake : earthquakes) {
+            int day = (int) epochDay(earthquake.getTimeInMilliseconds());
+            Integer previousDay = newDays.get(earthquake.getId());
+            if (previousDay == null) {
+                previousDay = mEventDays.get(earthquake.getId());
+            }
+            if (previousDay == null && earthquake.isDeleted()) {
+                // Deleting an event the archive never had leaves nothing to hide
+                continue;
+            }
+            sorted.add(earthquake);
+            newDays.put(earthquake.getId(), day);
+            if (previousDay == null || previousDay != day) {
+                if (previousDay != null) {
+                    sorted.add(new Earthquake(earthquake.getId(), Double.NaN, "",
+                            previousDay * MILLIS_PER_DAY, "", Double.NaN, Double.NaN, Double.NaN,
+                            earthquake.getUpdatedInMilliseconds(), true));
+                }
+                moved.writeUTF(earthquake.getId());
+                moved.writeInt(day);
+            }
+        }
+        Collections.sort(sorted, BY_TIME);
+
+        int from = 0;
+        while (from < sorted.size()) {
+            long day = epochDay(sorted.get(from).getTimeInMilliseconds());
+            int to = from + 1;
+            while (to < sorted.size() && epochDay(sorted.get(to).getTimeInMilliseconds()) == day) {
+                to++;
+            }
+            int appended;
+            RandomAccessFile file = new RandomAccessFile(dayFile(day), "rw");
+            try {
+                List<ArchiveBlock> blocks = readHeaders(file);
+                appended = countAppendedBlocks(blocks);
+                // Cut off what a crash left of a block, or new blocks would be lost behind it
+                long end = blocks.isEmpty() ? 0 : blocks.get(blocks.size() - 1).mPosition
+                        + blocks.get(blocks.size() - 1).getLength();
+                if (end < file.length()) {
+                    file.setLength(end);
+                }
+                file.seek(end);
+                for (int start = from; start < to; start += BLOCK_SIZE) {
+                    file.write(ArchiveBlock.encode(sorted, start, Math.min(to, start + BLOCK_SIZE), false));
+                    appended++;
+                }
+            } finally {
+                file.close();
+            }
+            if (appended >= MAX_APPENDED_BLOCKS) {
+                compact(day);
+            }
+            from = to;
+        }
+        appendEventDays(movedBytes.toByteArray());
+        // Only once everything is written, so the days match the ids file
+        mEventDays.putAll(newDays);
+    }
+
+    /**
+     * Rewrites a day with the latest version of each of its events, deleted ones left
+     * out, in compacted blocks. A day left with no events is removed.
+     * @param epochDay is the number of days since 1970-01-01 UTC
+     */
+    public synchronized void compact(long epochDay) throws IOException {
+        File file = dayFile(epochDay);
+        if (!file.exists()) {
+            return;
+        }
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (Earthquake earthquake : readLatestVersions(readFile(file))) {
+            if (!earthquake.isDeleted()) {
+                earthquakes.add(earthquake);
+            }
+        }
+        if (earthquakes.isEmpty()) {
+            if (!file.delete()) {
+                throw new IOException("Cannot delete " + file);
+            }
+            return;
+        }
+
+        // Write the new day next to the old one, then swap them, so a scan or a crash
+        // sees one or the other
+        File temporary = new File(mDirectory, epochDay + TEMPORARY_FILE_SUFFIX);
+        OutputStream out = new FileOutputStream(temporary);
+        try {
+            for (int start = 0; start < earthquakes.size(); start += BLOCK_SIZE) {
+                out.write(ArchiveBlock.encode(earthquakes, start,
+                        Math.min(earthquakes.size(), start + BLOCK_SIZE), true));
+            }
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    /** Compacts every day that has appended blocks, i.e. after an import. */
+    public synchronized void compactAll() throws IOException {
+        for (long day : listDays(Long.MIN_VALUE, Long.MAX_VALUE)) {
+            RandomAccessFile file = new RandomAccessFile(dayFile(day), "r");
+            int appended;
+            try {
+                appended = countAppendedBlocks(readHeaders(file));
+            } finally {
+                file.close();
+            }
+            if (appended > 0) {
+                compact(day);
+            }
+        }
+    }
+
+    /**
+     * Hands the latest version of every event in the time range at or above the magnitude
+     * to the visitor, in time order. Deleted events are left out.
+     * @param startTime is the earliest time in milliseconds, inclusive
+     * @param endTime is the latest time in milliseconds, inclusive
+     * @param minMagnitude is the smallest magnitude, or negative infinity for every
+     *                     event, those without a magnitude included
+     * @return the number of events visited
+     */
+    public int scan(long startTime, long endTime, double minMagnitude, Visitor visitor) throws IOException {
+        int visited = 0;
+        byte[] buffer = new byte[64 * 1024];
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (long day : listDays(epochDay(startTime), epochDay(endTime))) {
+            RandomAccessFile file;
+            try {
+                file = new RandomAccessFile(dayFile(day), "r");
+            } catch (FileNotFoundException e) {
+                // Compacted away since the listing
+                continue;
+            }
+            earthquakes.clear();
+            try {
+                List<ArchiveBlock> blocks = readHeaders(file);
+                if (countAppendedBlocks(blocks) == 0) {
+                    // One version of each event, so only the blocks that may match are read
+                    for (ArchiveBlock block : blocks) {
+                        if (!block.mayMatch(startTime, endTime, minMagnitude)) {
+                            continue;
+                        }
+                        if (buffer.length < block.getLength()) {
+                            buffer = new byte[block.getLength()];
+                        }
+                        file.seek(block.mPosition);
+                        file.readFully(buffer, 0, block.getLength());
+                        if (!block.isIntact(buffer, 0)) {
+                            break;
+                        }
+                        block.decode(buffer, 0, startTime, endTime, minMagnitude, earthquakes);
+                    }
+                } else {
+                    // Versions of an event may be in any block, so the whole day is read
+                    byte[] bytes = new byte[(int) file.length()];
+                    file.seek(0);
+                    file.readFully(bytes);
+                    for (Earthquake earthquake : readLatestVersions(bytes)) {
+                        long time = earthquake.getTimeInMilliseconds();
+                        if (!earthquake.isDeleted() && time >= startTime && time <= endTime
+                                && (minMagnitude == Double.NEGATIVE_INFINITY
+                                || earthquake.getMagnitude() >= minMagnitude)) {
+                            earthquakes.add(earthquake);
+                        }
+                    }
+                }
+            } finally {
+                file.close();
+            }
+            for (Earthquake earthquake : earthquakes) {
+                visitor.visit(earthquake);
+            }
+            visited += earthquakes.size();
+        }
+        return visited;
+    }
+
+    /** Returns the number of bytes the archive takes on disk. */
+    public long getSizeInBytes() {
+        long size = 0;
+        for (long day : listDays(Long.MIN_VALUE, Long.MAX_VALUE)) {
+            size += dayFile(day).length();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the day of every event in the archive, by id, from the ids file. An archive
+     * without one, i.e. one written before it existed, has it written from the day files.
+     */
+    private Map<String, Integer> readEventDays() throws IOException {
+        Map<String, Integer> days = new HashMap<>();
+        File file = new File(mDirectory, ID_FILE);
+        if (!file.exists()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (long day : listDays(Long.MIN_VALUE, Long.MAX_VALUE)) {
+                for (Earthquake earthquake : readLatestVersions(readFile(dayFile(day)))) {
+                    days.put(earthquake.getId(), (int) day);
+                    out.writeUTF(earthquake.getId());
+                    out.writeInt((int) day);
+                }
+            }
+            appendEventDays(bytes.toByteArray());
+            return days;
+        }
+
+        byte[] bytes = readFile(file);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int end = 0;
+        try {
+            while (end < bytes.length) {
+                String id = in.readUTF();
+                days.put(id, in.readInt());
+                end = bytes.length - in.available();
+            }
+        } catch (EOFException e) {
+            // Cut short by a crash during an append, so the last record is dropped
+        }
+        if (end < bytes.length) {
+            RandomAccessFile out = new RandomAccessFile(file, "rw");
+            try {
+                out.setLength(end);
+            } finally {
+                out.close();
+            }
+        }
+        return days;
+    }
+
+    /** Appends records of ids and days to the ids file. */
+    private void appendEventDays(byte[] records) throws IOException {
+        OutputStream out = new FileOutputStream(new File(mDirectory, ID_FILE), true);
+        try {
+            out.write(records);
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Returns the number of days since 1970-01-01 UTC at the given time. */
+    static long epochDay(long timeInMilliseconds) {
+        long day = timeInMilliseconds / MILLIS_PER_DAY;
+        return timeInMilliseconds < 0 && day * MILLIS_PER_DAY != timeInMilliseconds ? day - 1 : day;
+    }
+
+    private File dayFile(long epochDay) {
+        return new File(mDirectory, epochDay + DAY_FILE_SUFFIX);
+    }
+
+    /** Returns the days in [firstDay, lastDay] that have a file, in order. */
+    private long[] listDays(long firstDay, long lastDay) {
+        String[] names = mDirectory.list();
+        if (names == null) {
+            return new long[0];
+        }
+        long[] days = new long[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (!name.endsWith(DAY_FILE_SUFFIX)) {
+                continue;
+            }
+            try {
+                long day = Long.parseLong(name.substring(0, name.length() - DAY_FILE_SUFFIX.length()));
+                if (day >= firstDay && day <= lastDay) {
+                    days[count++] = day;
+                }
+            } catch (NumberFormatException e) {
+                // Not one of ours
+            }
+        }
+        days = Arrays.copyOf(days, count);
+        Arrays.sort(days);
+        return days;
+    }
+
+    /**
+     * Returns the headers of the blocks of a day file, up to the first one cut short.
+     * Only the headers are read; payloads are checked when they are decoded.
+     */
+    private static List<ArchiveBlock> readHeaders(RandomAccessFile file) throws IOException {
+        List<ArchiveBlock> blocks = new ArrayList<>();
+        byte[] header = new byte[ArchiveBlock.HEADER_SIZE];
+        long length = file.length();
+        long position = 0;
+        while (position + ArchiveBlock.HEADER_SIZE <= length) {
+            file.seek(position);
+            file.readFully(header);
+            ArchiveBlock block = ArchiveBlock.readHeader(header, 0, position, length);
+            if (block == null) {
+                break;
+            }
+            blocks.add(block);
+            position += block.getLength();
+        }
+        return blocks;
+    }
+
+    /** Returns the number of blocks that no compaction wrote. */
+    private static int countAppendedBlocks(List<ArchiveBlock> blocks) {
+        int appended = 0;
+        for (ArchiveBlock block : blocks) {
+            if ((block.mFlags & ArchiveBlock.FLAG_COMPACTED) == 0) {
+                appended++;
+            }
+        }
+        return appended;
+    }
+
+    /**
+     * Decodes the blocks of a whole day file, up to the first one cut short or damaged,
+     * and returns the latest version of each event, deleted ones included, in time order.
+     * Of two versions updated at the same time the one appended later wins.
+     */
+    private static List<Earthquake> readLatestVersions(byte[] bytes) {
+        List<Earthquake> versions = new ArrayList<>();
+        int position = 0;
+        ArchiveBlock block;
+        while ((block = ArchiveBlock.readHeader(bytes, position, position, bytes.length)) != null
+                && block.isIntact(bytes, position)) {
+            block.decode(bytes, position, Long.MIN_VALUE, Long.MAX_VALUE, Double.NEGATIVE_INFINITY,
+                    versions);
+            position += block.getLength();
+        }
+        Map<String, Earthquake> latest = new HashMap<>();
+        for (Earthquake earthquake : versions) {
+            Earthquake previous = latest.get(earthquake.getId());
+            if (previous == null
+                    || earthquake.getUpdatedInMilliseconds() >= previous.getUpdatedInMilliseconds()) {
+                latest.put(earthquake.getId(), earthquake);
+            }
+        }
+        List<Earthquake> earthquakes = new ArrayList<>(latest.values());
+        Collections.sort(earthquakes, BY_TIME);
+        return earthquakes;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.android.quakereport;
+
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * The part of an FDSN event query that picks and orders events: magnitude and time
+ * bounds, a latitude and longitude box and the orderby value. It decides for a single
+ * {@link Earthquake} what USGS decides for the query, so results can be filtered and
+ * sorted the same way without USGS, i.e. over an archived catalog.
+ *
+ * Bounds are inclusive, as they are at USGS. Deleted events never match.
+ * An {@link EventQuery} is immutable and can be shared between threads.
+ */
+public final class EventQuery {
+
+    /** USGS sorts by time when no orderby is given */
+    public static final String DEFAULT_ORDER_BY = "time";
+
+    private final double mMinMagnitude;
+    private final double mMaxMagnitude;
+    private final long mStartTime;
+    private final long mEndTime;
+    private final double mMinLatitude;
+    private final double mMaxLatitude;
+    private final double mMinLongitude;
+    private final double mMaxLongitude;
+    private final String mOrderBy;
+
+    private EventQuery(double minMagnitude, double maxMagnitude, long startTime, long endTime,
+                       double minLatitude, double maxLatitude, double minLongitude,
+                       double maxLongitude, String orderBy) {
+        mMinMagnitude = minMagnitude;
+        mMaxMagnitude = maxMagnitude;
+        mStartTime = startTime;
+        mEndTime = endTime;
+        mMinLatitude = minLatitude;
+        mMaxLatitude = maxLatitude;
+        mMinLongitude = minLongitude;
+        mMaxLongitude = maxLongitude;
+        mOrderBy = orderBy;
+    }
+
+    /**
+     * Returns the query made of the given FDSN parameters, by their full or short names:
+     * minmagnitude (minmag), maxmagnitude (maxmag), starttime (start), endtime (end),
+     * minlatitude (minlat), maxlatitude (maxlat), minlongitude (minlon), maxlongitude
+     * (maxlon) and orderby. Times are UTC, i.e. 2019-07-06 or 2019-07-06T03:19:53.
+     * A missing parameter leaves that side unbounded.
+     * @throws IllegalArgumentException for an unknown parameter or a value that can't be read
+     */
+    public static EventQuery fromParameters(Map<String, String> parameters) {
+        double minMagnitude = Double.NEGATIVE_INFINITY;
+        double maxMagnitude = Double.POSITIVE_INFINITY;
+        long startTime = Long.MIN_VALUE;
+        long endTime = Long.MAX_VALUE;
+        double minLatitude = -90;
+        double maxLatitude = 90;
+        double minLongitude = -180;
+        double maxLongitude = 180;
+        String orderBy = DEFAULT_ORDER_BY;
+
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            String value = parameter.getValue();
+            switch (parameter.getKey()) {
+                case "minmagnitude":
+                case "minmag":
+                    minMagnitude = parseNumber(parameter.getKey(), value);
+                    break;
+                case "maxmagnitude":
+                case "maxmag":
+                    maxMagnitude = parseNumber(parameter.getKey(), value);
+                    break;
+                case "starttime":
+                case "start":
+                    startTime = parseTime(parameter.getKey(), value);
+                    break;
+                case "endtime":
+                case "end":
+                    endTime = parseTime(parameter.getKey(), value);
+                    break;
+                case "minlatitude":
+                case "minlat":
+                    minLatitude = parseNumber(parameter.getKey(), value);
+                    break;
+                case "maxlatitude":
+                case "maxlat":
+                    maxLatitude = parseNumber(parameter.getKey(), value);
+                    break;
+                case "minlongitude":
+                case "minlon":
+                    minLongitude = parseNumber(parameter.getKey(), value);
+                    break;
+                case "maxlongitude":
+                case "maxlon":
+                    maxLongitude = parseNumber(parameter.getKey(), value);
+                    break;
+                case "orderby":
+                    orderBy = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown parameter " + parameter.getKey());
+            }
+        }
+        return new EventQuery(minMagnitude, maxMagnitude, startTime, endTime, minLatitude,
+                maxLatitude, minLongitude, maxLongitude, orderBy);
+    }
+
+    /** Returns true if USGS would return the earthquake for this query. */
+    public boolean matches(Earthquake earthquake) {
+        if (earthquake.isDeleted()) {
+            return false;
+        }
+        double magnitude = earthquake.getMagnitude();
+        long time = earthquake.getTimeInMilliseconds();
+        if (magnitude < mMinMagnitude || magnitude > mMaxMagnitude
+                || time < mStartTime || time > mEndTime) {
+            return false;
+        }
+        if (!hasBox()) {
+            return true;
+        }
+        // An event without an epicenter can't be inside a box
+        double latitude = earthquake.getLatitude();
+        double longitude = earthquake.getLongitude();
+        return latitude >= mMinLatitude && latitude <= mMaxLatitude
+                && longitude >= mMinLongitude && longitude <= mMaxLongitude;
+    }
+
+    /** Returns the order of the results, which is the one of {@link #comparatorFor(String)}. */
+    public Comparator<Earthquake> getComparator() {
+        return comparatorFor(mOrderBy);
+    }
+
+    /** Returns the comparator that matches an FDSN orderby value. */
+    public static Comparator<Earthquake> comparatorFor(String orderBy) {
+        switch (orderBy) {
+            case "magnitude":
+                return new Comparator<Earthquake>() {
+                    @Override
+                    public int compare(Earthquake a, Earthquake b) {
+                        return Double.compare(b.getMagnitude(), a.getMagnitude());
+                    }
+                };
+            case "magnitude-asc":
+                return new Comparator<Earthquake>() {
+                    @Override
+                    public int compare(Earthquake a, Earthquake b) {
+                        return Double.compare(a.getMagnitude(), b.getMagnitude());
+                    }
+                };
+            case "time-asc":
+                return new Comparator<Earthquake>() {
+                    @Override
+                    public int compare(Earthquake a, Earthquake b) {
+                        return compareLongs(a.getTimeInMilliseconds(), b.getTimeInMilliseconds());
+                    }
+                };
+            default:
+                return new Comparator<Earthquake>() {
+                    @Override
+                    public int compare(Earthquake a, Earthquake b) {
+                        return compareLongs(b.getTimeInMilliseconds(), a.getTimeInMilliseconds());
+                    }
+                };
+        }
+    }
+
+    /** Returns true if the query narrows the latitude or longitude. */
+    private boolean hasBox() {
+        return mMinLatitude > -90 || mMaxLatitude < 90 || mMinLongitude > -180 || mMaxLongitude < 180;
+    }
+
+    /** Same as Long.compare(), which only exists from API 19. */
+    private static int compareLongs(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    private static double parseNumber(String name, String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + name + ": " + value);
+        }
+    }
+
+    /** Reads a UTC date or date and time, with or without fraction digits and a Z. */
+    private static long parseTime(String name, String value) {
+        String time = value.length() == "yyyy-mm-dd".length() ? value + "T00:00:00" : value;
+        try {
+            return DelimitedText.parseTime(time.toCharArray(), 0, time.length());
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Bad " + name + ": " + value);
+        }
+    }
+}
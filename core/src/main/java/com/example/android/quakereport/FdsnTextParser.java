@@ -0,0 +1,141 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Pulls {@link Earthquake}s off a USGS response in the FDSN text format, which has one
+ * line per event with pipe-separated columns:
+ * <pre>
+ * #EventID|Time|Latitude|Longitude|Depth/km|Author|Catalog|Contributor|ContributorID|MagType|Magnitude|MagAuthor|EventLocationName|EventType
+ * us7000abcd|2019-07-06T03:19:53.040|35.77|-117.6|8|ci|ci|ci|ci38457511|mw|7.1|ci|2km SW of Searles Valley, CA|earthquake
+ * </pre>
+ *
+ * Lines are read and split in place by {@link DelimitedText}: no regular expressions,
+ * no split() and no intermediate strings. Only the id and the place become strings.
+ *
+ * The format has no update time, status or URL. The update time is taken to be the
+ * event time, and the URL is the USGS event page of the id, which is what the GeoJSON
+ * format sends too. Deleted events can't be told apart, so background sync, which
+ * needs both, stays on GeoJSON.
+ *
+ * A line with fewer columns than the header names is taken to be cut short and fails
+ * the parse, so a truncated response isn't read as a shorter complete one. Without a
+ * header, a line needs the columns up to the place.
+ *
+ * Like {@link GeoJsonParser}, this needs no Android and doesn't log.
+ */
+final class FdsnTextParser implements DelimitedText.LineParser {
+
+    /** Columns of the format, counted from 0 */
+    private static final int COLUMN_ID = 0;
+    private static final int COLUMN_TIME = 1;
+    private static final int COLUMN_LATITUDE = 2;
+    private static final int COLUMN_LONGITUDE = 3;
+    private static final int COLUMN_DEPTH = 4;
+    private static final int COLUMN_MAGNITUDE = 10;
+    private static final int COLUMN_PLACE = 12;
+
+    /** A line needs at least the columns up to the place */
+    private static final int MIN_COLUMNS = COLUMN_PLACE + 1;
+
+    /** Header lines name the columns; they start with this */
+    private static final String HEADER_START = "#EventID";
+
+    /** Columns read beyond this are ignored */
+    private static final int MAX_COLUMNS = 16;
+
+    /** Where each column of the current line starts; the entry after the last is one past its end */
+    private final int[] mColumnStarts = new int[MAX_COLUMNS + 1];
+
+    /** Columns every event line must have, raised to those the header names */
+    private int mRequiredColumns = MIN_COLUMNS;
+
+    /**
+     * Create a private constructor; a parser only lives for one call to
+     * {@link #parse(InputStream, List)}.
+     */
+    private FdsnTextParser() {
+    }
+
+    /**
+     * Reads every event line of the text stream into the given list. Comment lines,
+     * which start with '#', and blank lines are skipped. If a line turns out to be
+     * malformed, the earthquakes read so far stay in the list and the exception is thrown.
+     * @throws IOException if the stream fails
+     * @throws IllegalStateException if a line doesn't have the shape of a USGS event line
+     */
+    static void parse(InputStream inputStream, List<Earthquake> earthquakes) throws IOException {
+        DelimitedText.parse(inputStream, new FdsnTextParser(), earthquakes);
+    }
+
+    @Override
+    public Earthquake parseLine(char[] line, int start, int end, int lineNumber) {
+        if (line[start] == '#') {
+            if (startsWith(line, start, end, HEADER_START)) {
+                mRequiredColumns = Math.max(MIN_COLUMNS, splitColumns(line, start, end));
+            }
+            return null;
+        }
+
+        int columns = splitColumns(line, start, end);
+        if (columns < mRequiredColumns) {
+            throw new IllegalStateException("Line " + lineNumber + " has " + columns + " columns, not "
+                    + mRequiredColumns);
+        }
+
+        try {
+            String id = new String(line, mColumnStarts[COLUMN_ID], columnLength(COLUMN_ID));
+            long time = DelimitedText.parseTime(line, mColumnStarts[COLUMN_TIME], columnEnd(COLUMN_TIME));
+            double latitude = DelimitedText.parseDecimal(line, mColumnStarts[COLUMN_LATITUDE],
+                    columnEnd(COLUMN_LATITUDE), Double.NaN);
+            double longitude = DelimitedText.parseDecimal(line, mColumnStarts[COLUMN_LONGITUDE],
+                    columnEnd(COLUMN_LONGITUDE), Double.NaN);
+            double depth = DelimitedText.parseDecimal(line, mColumnStarts[COLUMN_DEPTH],
+                    columnEnd(COLUMN_DEPTH), Double.NaN);
+            // GeoJSON leaves an unknown magnitude at 0 too
+            double magnitude = DelimitedText.parseDecimal(line, mColumnStarts[COLUMN_MAGNITUDE],
+                    columnEnd(COLUMN_MAGNITUDE), 0);
+            String location = new String(line, mColumnStarts[COLUMN_PLACE], columnLength(COLUMN_PLACE));
+
+            return new Earthquake(id, magnitude, location, time, EarthquakeStore.EVENT_PAGE_URL + id,
+                    latitude, longitude, depth, time, false);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Line " + lineNumber + ": " + e.getMessage());
+        }
+    }
+
+    /** Finds the columns of line[start, end) and returns how many there are, up to the most read. */
+    private int splitColumns(char[] line, int start, int end) {
+        int columns = 0;
+        mColumnStarts[columns++] = start;
+        for (int i = start; i < end && columns < MAX_COLUMNS; i++) {
+            if (line[i] == '|') {
+                mColumnStarts[columns++] = i + 1;
+            }
+        }
+        mColumnStarts[columns] = end + 1;
+        return columns;
+    }
+
+    private static boolean startsWith(char[] line, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int columnEnd(int column) {
+        return mColumnStarts[column + 1] - 1;
+    }
+
+    private int columnLength(int column) {
+        return columnEnd(column) - mColumnStarts[column];
+    }
+}
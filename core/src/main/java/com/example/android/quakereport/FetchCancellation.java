@@ -0,0 +1,78 @@
+package com.example.android.quakereport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets one thread abort a fetch that another thread is running.
+ *
+ * This does the job of android.os.CancellationSignal, which needs API 16. Like it,
+ * {@link #cancel()} may be called on the main thread, so listeners must not block.
+ */
+public final class FetchCancellation {
+
+    private boolean mCanceled;
+
+    /** Runs once when {@link #cancel()} is called */
+    private Runnable mOnCancelListener;
+
+    /** Returns true once {@link #cancel()} has been called. */
+    public synchronized boolean isCanceled() {
+        return mCanceled;
+    }
+
+    /**
+     * Cancels the fetch. The listener, if any, runs on the calling thread.
+     * Calling this more than once has no further effect.
+     */
+    public void cancel() {
+        Runnable listener;
+        synchronized (this) {
+            if (mCanceled) {
+                return;
+            }
+            mCanceled = true;
+            listener = mOnCancelListener;
+            mOnCancelListener = null;
+            // Wake anyone in awaitCancel()
+            notifyAll();
+        }
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Sets what to run when the fetch is cancelled, replacing any earlier listener.
+     * If the fetch is already cancelled the listener runs straight away.
+     * @param listener to run, or null to stop listening
+     */
+    public void setOnCancelListener(Runnable listener) {
+        synchronized (this) {
+            if (!mCanceled) {
+                mOnCancelListener = listener;
+                return;
+            }
+        }
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Waits until the fetch is cancelled or the given time has passed, for fetches that
+     * have to wait before trying again.
+     * @return true if the fetch was cancelled
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public synchronized boolean awaitCancel(long millis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (!mCanceled) {
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                break;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+        }
+        return mCanceled;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.android.quakereport;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Pulls {@link Earthquake}s off a USGS GeoJSON stream.
+ *
+ * Only features[].id, features[].geometry.coordinates and
+ * features[].properties.{mag,place,time,url,updated,status} are read; every other value is
+ * skipped without being materialized, so the whole response is never held in memory.
+ *
+ * The parser needs nothing but gson's streaming {@link JsonReader}, which has the API of
+ * android.util.JsonReader but runs on any JVM: no Android, no logging. Callers decide
+ * what a malformed response means.
+ */
+final class GeoJsonParser {
+
+    /** Every USGS response is UTF-8 */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Create a private constructor because no one should ever create a {@link GeoJsonParser}
+     * object. This class only holds static methods.
+     */
+    private GeoJsonParser() {
+    }
+
+    /**
+     * Reads every feature of the GeoJSON stream into the given list.
+     * If the JSON turns out to be malformed part way through, the earthquakes read so far
+     * stay in the list and the exception is thrown.
+     * @throws IOException if the stream fails, or is malformed JSON
+     * @throws IllegalStateException if the JSON doesn't have the shape of a USGS response
+     */
+    static void parse(InputStream inputStream, List<Earthquake> earthquakes) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, UTF_8));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            // The "features" array represents a list of features (or earthquakes)
+            if ("features".equals(reader.nextName())) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    // Stop parsing as soon as whoever wanted these results is cancelled
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Parsing was interrupted");
+                    }
+                    Earthquake earthquake = readFeature(reader);
+                    if (earthquake != null) {
+                        earthquakes.add(earthquake);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads a single GeoJSON feature and returns its {@link Earthquake}, or null
+     * if the feature has no "properties" object.
+     */
+    private static Earthquake readFeature(JsonReader reader) throws IOException {
+        String id = "";
+        boolean hasProperties = false;
+        double magnitude = 0;
+        String location = "";
+        long time = 0;
+        String url = "";
+        long updated = 0;
+        boolean deleted = false;
+        double[] coordinates = {Double.NaN, Double.NaN, Double.NaN};
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("id".equals(name) && reader.peek() == JsonToken.STRING) {
+                id = reader.nextString();
+            } else if ("geometry".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readCoordinates(reader, coordinates);
+            } else if ("properties".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                // The "properties" object holds mag, place, time, url and update state
+                hasProperties = true;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String property = reader.nextName();
+                    // USGS sends null for values it doesn't know, so leave the default in place
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    switch (property) {
+                        case "mag":
+                            magnitude = reader.nextDouble();
+                            break;
+                        case "place":
+                            location = reader.nextString();
+                            break;
+                        case "time":
+                            time = reader.nextLong();
+                            break;
+                        case "url":
+                            url = reader.nextString();
+                            break;
+                        case "updated":
+                            updated = reader.nextLong();
+                            break;
+                        case "status":
+                            // Only sent for deleted events when asked with includedeleted=true
+                            deleted = "deleted".equals(reader.nextString());
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!hasProperties) {
+            return null;
+        }
+
+        // Create new {@link Earthquake} object with id, mag, location, time, url and
+        // coordinates from JSON response. The id usually comes after the properties.
+        return new Earthquake(id, magnitude, location, time, url,
+                coordinates[1], coordinates[0], coordinates[2], Math.max(updated, time), deleted);
+    }
+
+    /**
+     * Reads a GeoJSON point geometry into the given array as longitude, latitude
+     * and depth, which is the order USGS sends them in. Missing values stay NaN.
+     */
+    private static void readCoordinates(JsonReader reader, double[] coordinates) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("coordinates".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                for (int i = 0; reader.hasNext(); i++) {
+                    if (i < coordinates.length && reader.peek() == JsonToken.NUMBER) {
+                        coordinates[i] = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Performs the HTTP GET requests the app's {@code QueryUtils} sends to USGS.
+ *
+ * The app uses {@code UrlConnectionTransport}. Another implementation can be installed
+ * with {@code QueryUtils.setTransport(HttpTransport)}, for example one pointed at a
+ * local mock server.
+ */
+public interface HttpTransport {
+
+    /**
+     * Sends a GET request and returns once the response headers have arrived.
+     * Cancelling stops the request wherever it is, connecting, waiting to retry or
+     * reading the body, and makes it fail with an {@link IOException}.
+     * @param url to request
+     * @param headers extra request headers, such as validators for a stored response
+     * @param cancellation aborts the request, and the response once it is returned
+     * @return the response, which must be closed by the caller
+     * @throws IOException if no response could be received
+     */
+    Response get(URL url, Map<String, String> headers, FetchCancellation cancellation) throws IOException;
+
+    /**
+     * An HTTP response whose body has not been read yet.
+     */
+    interface Response {
+
+        /** Returns the HTTP status code, such as 200 or 304. */
+        int getCode();
+
+        /** Returns the value of the given response header, or null if it wasn't sent. */
+        String getHeader(String name);
+
+        /** Returns the response body, already decompressed. */
+        InputStream getBody() throws IOException;
+
+        /**
+         * Releases the response. The connection is kept for reuse when the
+         * transport supports it.
+         */
+        void close() throws IOException;
+
+        /**
+         * Aborts the response from another thread, possibly the main thread, so it
+         * returns without waiting for the network. A read blocked on the body fails
+         * with an {@link IOException}, and the connection is not reused.
+         */
+        void abort();
+    }
+}
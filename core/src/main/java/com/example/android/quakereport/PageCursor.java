@@ -0,0 +1,94 @@
+package com.example.android.quakereport;
+
+/**
+ * How far paging through the results of an FDSN query has got: the offset of the next
+ * page and whether there is one. Offsets start at 1, as they do at USGS.
+ *
+ * A page shorter than the page size is the last one. Rows that come or go from the
+ * pages loaded so far, i.e. merged live events, move the next offset along with them
+ * so the next page starts where USGS would now start it.
+ *
+ * A {@link PageCursor} is not thread safe.
+ */
+public final class PageCursor {
+
+    /** FDSN offsets start counting at 1, not 0 */
+    public static final int FIRST_OFFSET = 1;
+
+    /** Query URL, without offset or limit parameters */
+    private final String mQueryUrl;
+
+    /** Number of results requested per page */
+    private final int mPageSize;
+
+    /** Offset of the next page to request */
+    private int mNextOffset = FIRST_OFFSET;
+
+    /** False once a page came back shorter than {@link #mPageSize} */
+    private boolean mHasMorePages = true;
+
+    /**
+     * Starts at the first page.
+     * @param queryUrl is the query, without offset or limit parameters
+     * @param pageSize is the number of results to request per page
+     */
+    public PageCursor(String queryUrl, int pageSize) {
+        mQueryUrl = queryUrl;
+        mPageSize = pageSize;
+    }
+
+    /** Returns the number of results requested per page. */
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    /** Returns the offset of the next page. */
+    public int getNextOffset() {
+        return mNextOffset;
+    }
+
+    /** Returns the number of results before the next page. */
+    public int getLoadedCount() {
+        return mNextOffset - FIRST_OFFSET;
+    }
+
+    /** Returns false once the last page has been loaded, or paging was stopped. */
+    public boolean hasMorePages() {
+        return mHasMorePages;
+    }
+
+    /** Returns the query URL of the next page. */
+    public String getNextPageUrl() {
+        String separator = mQueryUrl.indexOf('?') < 0 ? "?"
+                : mQueryUrl.endsWith("?") || mQueryUrl.endsWith("&") ? "" : "&";
+        return mQueryUrl + separator + "offset=" + mNextOffset + "&limit=" + mPageSize;
+    }
+
+    /**
+     * Moves past a page that was loaded.
+     * @param size is the number of results the page held
+     */
+    public void onPageLoaded(int size) {
+        mNextOffset += size;
+        mHasMorePages = size == mPageSize;
+    }
+
+    /**
+     * Moves the next page along with rows added to or taken out of the pages loaded so far.
+     * @param delta is the number of rows gained, or minus the number lost
+     */
+    public void onRowsShifted(int delta) {
+        mNextOffset += delta;
+    }
+
+    /** Stops paging, i.e. after a page failed to load. */
+    public void stop() {
+        mHasMorePages = false;
+    }
+
+    /** Goes back to the first page. */
+    public void reset() {
+        mNextOffset = FIRST_OFFSET;
+        mHasMorePages = true;
+    }
+}
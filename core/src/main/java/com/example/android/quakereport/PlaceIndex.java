@@ -0,0 +1,214 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * {@link PlaceIndex} finds the rows of an {@link EarthquakeStore} whose primary location
+ * has words starting with what the user typed, i.e. "ala" finds "Alaska" and
+ * "Akutan, Alaska", and "jap hon" finds "Honshu, Japan".
+ *
+ * Primary locations repeat a lot, so the index is built over the distinct ones:
+ * <ul>
+ *   <li>a sorted term dictionary maps every lower-cased word to the places that hold
+ *   it, so a prefix is one range of the dictionary;</li>
+ *   <li>every place keeps the posting list of rows it appears in, in row order;</li>
+ *   <li>every row keeps its place, so a prefix matching most rows is answered by one
+ *   pass over that column instead of merging posting lists.</li>
+ * </ul>
+ * Rows are indexed as they are appended to the store, so a growing list only costs the
+ * new rows. Any store other than the indexed one or a snapshot of it is indexed again
+ * from scratch.
+ *
+ * Not thread-safe; the owner uses it from one thread.
+ */
+final class PlaceIndex {
+
+    /** A prefix matching fewer rows than 1/this of the store is answered from the posting lists */
+    private static final int POSTING_LIST_FRACTION = 16;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Places holding each word, by word */
+    private final TreeMap<String, int[]> mTerms = new TreeMap<>();
+
+    /** Code of each distinct primary location */
+    private final Map<String, Integer> mPlaceCodes = new HashMap<>();
+
+    /** Rows of each place, by place code; each list is sized by mPlaceRowCounts */
+    private int[][] mPlaceRows = new int[INITIAL_CAPACITY][];
+    private int[] mPlaceRowCounts = new int[INITIAL_CAPACITY];
+
+    /** Place code of each row */
+    private int[] mRowPlaces = new int[INITIAL_CAPACITY];
+
+    /** The store indexed, and how many of its rows */
+    private EarthquakeStore mStore;
+    private int mIndexedSize;
+
+    /**
+     * Brings the index up to date with the given store. Rows appended since the last
+     * update are added; if the store is not the previous one, or a snapshot of it, with
+     * rows appended, the whole store is indexed again.
+     */
+    void update(EarthquakeStore store) {
+        if (!extendsIndexedStore(store)) {
+            mTerms.clear();
+            mPlaceCodes.clear();
+            mPlaceRows = new int[INITIAL_CAPACITY][];
+            mPlaceRowCounts = new int[INITIAL_CAPACITY];
+            mRowPlaces = new int[Math.max(store.size(), INITIAL_CAPACITY)];
+            mIndexedSize = 0;
+        }
+        mStore = store;
+        if (mRowPlaces.length < store.size()) {
+            mRowPlaces = Arrays.copyOf(mRowPlaces, Math.max(store.size(), mRowPlaces.length * 2));
+        }
+        for (int row = mIndexedSize; row < store.size(); row++) {
+            int place = encodePlace(store.getPrimaryLocation(row));
+            mRowPlaces[row] = place;
+            addPosting(place, row);
+        }
+        mIndexedSize = store.size();
+    }
+
+    /**
+     * Returns the rows, in order, whose primary location has a word starting with every
+     * word of the query. An empty query matches every row.
+     */
+    int[] search(String query) {
+        List<String> prefixes = tokenize(query);
+        if (prefixes.isEmpty()) {
+            int[] rows = new int[mIndexedSize];
+            for (int row = 0; row < rows.length; row++) {
+                rows[row] = row;
+            }
+            return rows;
+        }
+
+        // Places with a word starting with every prefix
+        boolean[] matches = null;
+        for (String prefix : prefixes) {
+            boolean[] prefixMatches = matchPlaces(prefix);
+            if (matches != null) {
+                for (int place = 0; place < matches.length; place++) {
+                    matches[place] &= prefixMatches[place];
+                }
+            } else {
+                matches = prefixMatches;
+            }
+        }
+
+        int matchedRows = 0;
+        for (int place = 0; place < matches.length; place++) {
+            if (matches[place]) {
+                matchedRows += mPlaceRowCounts[place];
+            }
+        }
+        int[] rows = new int[matchedRows];
+        if (matchedRows < mIndexedSize / POSTING_LIST_FRACTION) {
+            // Few rows, so gather the posting lists and put them in row order
+            int count = 0;
+            for (int place = 0; place < matches.length; place++) {
+                if (matches[place]) {
+                    System.arraycopy(mPlaceRows[place], 0, rows, count, mPlaceRowCounts[place]);
+                    count += mPlaceRowCounts[place];
+                }
+            }
+            Arrays.sort(rows);
+        } else {
+            // Most rows, so one pass over the place column is cheaper than sorting them
+            int count = 0;
+            for (int row = 0; row < mIndexedSize; row++) {
+                if (matches[mRowPlaces[row]]) {
+                    rows[count++] = row;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /** Returns which places have a word starting with the given prefix, by place code. */
+    private boolean[] matchPlaces(String prefix) {
+        boolean[] matches = new boolean[mPlaceCodes.size()];
+        // Every word starting with the prefix sorts between it and the prefix followed by the last char
+        SortedMap<String, int[]> range = mTerms.subMap(prefix, prefix + Character.MAX_VALUE);
+        for (int[] places : range.values()) {
+            for (int i = 1; i <= places[0]; i++) {
+                matches[places[i]] = true;
+            }
+        }
+        return matches;
+    }
+
+    /** Returns the code of a place, indexing its words if it's new. */
+    private int encodePlace(String place) {
+        Integer code = mPlaceCodes.get(place);
+        if (code != null) {
+            return code;
+        }
+        code = mPlaceCodes.size();
+        mPlaceCodes.put(place, code);
+        if (code == mPlaceRows.length) {
+            mPlaceRows = Arrays.copyOf(mPlaceRows, code * 2);
+            mPlaceRowCounts = Arrays.copyOf(mPlaceRowCounts, code * 2);
+        }
+        mPlaceRows[code] = new int[4];
+
+        for (String term : tokenize(place)) {
+            // Entry 0 holds the number of places that follow
+            int[] places = mTerms.get(term);
+            if (places == null) {
+                places = new int[4];
+            } else if (places[places[0]] == code) {
+                // The word appears twice in this place
+                continue;
+            } else if (places[0] + 1 == places.length) {
+                places = Arrays.copyOf(places, places.length * 2);
+            }
+            places[++places[0]] = code;
+            mTerms.put(term, places);
+        }
+        return code;
+    }
+
+    private void addPosting(int place, int row) {
+        int[] rows = mPlaceRows[place];
+        int count = mPlaceRowCounts[place];
+        if (count == rows.length) {
+            rows = Arrays.copyOf(rows, count * 2);
+            mPlaceRows[place] = rows;
+        }
+        rows[count] = row;
+        mPlaceRowCounts[place] = count + 1;
+    }
+
+    /** Returns true if the given store holds every indexed row, unchanged, at the start. */
+    private boolean extendsIndexedStore(EarthquakeStore store) {
+        // Stores loaded separately may hold the same rows in another order, so only
+        // snapshots of the indexed store are known to extend it
+        return mStore != null && store.startsWith(mStore);
+    }
+
+    /** Splits text into lower-case words of letters and digits. */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.US));
+                start = -1;
+            }
+        }
+        return words;
+    }
+}
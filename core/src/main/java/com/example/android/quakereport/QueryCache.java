@@ -0,0 +1,269 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Process-wide, size-bounded memory cache of USGS results, shared by every loader.
+ *
+ * Each entry is the window of results a query returned from offset 1 onwards,
+ * keyed by the query's normalized parameters. A page of a query can be answered
+ * from the query's own window, or from the window of a query that only differs
+ * by a lower minmag: filtering that window keeps the order USGS would have used.
+ * A window that holds every result of its query can also be re-sorted locally to
+ * answer another orderby.
+ */
+public final class QueryCache {
+
+    /** Entries older than this are ignored and USGS is asked again */
+    public static final long TIME_TO_LIVE_MILLIS = 60 * 1000;
+
+    /** Upper bound on the number of earthquakes held across all entries */
+    private static final int MAX_EARTHQUAKES = 10000;
+
+    /** FDSN parameters that every query is normalized on */
+    private static final String PARAM_MIN_MAGNITUDE = "minmag";
+    private static final String PARAM_ORDER_BY = "orderby";
+    private static final String PARAM_OFFSET = "offset";
+    private static final String PARAM_LIMIT = "limit";
+
+    /** USGS sorts by time when no orderby is given */
+    private static final String DEFAULT_ORDER_BY = "time";
+
+    /** Cached windows, least recently used first */
+    private static final LinkedHashMap<String, Window> sWindows = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Earthquakes held across all windows, counting each window as one more */
+    private static int sSize;
+
+    private static int sEvictionCount;
+    private static int sHitCount;
+    private static int sSupersetHitCount;
+    private static int sMissCount;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link QueryCache} object.
+     */
+    private QueryCache() {
+    }
+
+    /**
+     * Returns the page of results the given query URL would return, or null if
+     * no live entry can answer it.
+     * @param pageUrl is a query URL, usually with offset and limit parameters
+     */
+    public static synchronized QueryResult get(String pageUrl) {
+        Query query = new Query(pageUrl);
+        long now = System.currentTimeMillis();
+
+        Window exact = sWindows.get(query.key());
+        if (exact != null && exact.isAlive(now)) {
+            List<Earthquake> page = exact.page(query, exact.mEarthquakes);
+            if (page != null) {
+                sHitCount++;
+                return new QueryResult(page, null, null, exact.mFetchedAt, false);
+            }
+        }
+
+        // Look for a broader query we can filter and, if it is complete, re-sort
+        for (Window window : sWindows.values()) {
+            if (window == exact || !window.canAnswer(query, now)) {
+                continue;
+            }
+            List<Earthquake> earthquakes = new ArrayList<>();
+            for (Earthquake earthquake : window.mEarthquakes) {
+                if (earthquake.getMagnitude() >= query.mMinMagnitude) {
+                    earthquakes.add(earthquake);
+                }
+            }
+            if (!window.mOrderBy.equals(query.mOrderBy)) {
+                Collections.sort(earthquakes, EventQuery.comparatorFor(query.mOrderBy));
+            }
+            List<Earthquake> page = window.page(query, earthquakes);
+            if (page != null) {
+                sSupersetHitCount++;
+                return new QueryResult(page, null, null, window.mFetchedAt, false);
+            }
+        }
+
+        sMissCount++;
+        return null;
+    }
+
+    /**
+     * Stores the results a query returned from offset 1 onwards.
+     * @param queryUrl is the query URL; any offset or limit parameter is ignored
+     * @param earthquakes are the results in the order USGS returned them
+     * @param complete is true if USGS has no more results for the query
+     * @param fetchedAt is when the oldest of the results was confirmed by USGS
+     */
+    public static synchronized void put(String queryUrl, List<Earthquake> earthquakes,
+                                        boolean complete, long fetchedAt) {
+        Query query = new Query(queryUrl);
+        Window window = new Window(query, earthquakes, complete, fetchedAt);
+        Window previous = sWindows.put(query.key(), window);
+        if (previous != null) {
+            sSize -= previous.size();
+        }
+        sSize += window.size();
+
+        // Drop the least recently used windows until the rest fit
+        Iterator<Window> windows = sWindows.values().iterator();
+        while (sSize > MAX_EARTHQUAKES && windows.hasNext()) {
+            sSize -= windows.next().size();
+            windows.remove();
+            sEvictionCount++;
+        }
+    }
+
+    /** Drops every entry. */
+    public static synchronized void clear() {
+        sWindows.clear();
+        sSize = 0;
+    }
+
+    /** Number of pages answered from the query's own entry. */
+    public static synchronized int getHitCount() {
+        return sHitCount;
+    }
+
+    /** Number of pages answered by filtering or re-sorting a broader query's entry. */
+    public static synchronized int getSupersetHitCount() {
+        return sSupersetHitCount;
+    }
+
+    /** Number of pages no entry could answer. */
+    public static synchronized int getMissCount() {
+        return sMissCount;
+    }
+
+    /** Number of entries dropped to stay within {@link #MAX_EARTHQUAKES}. */
+    public static synchronized int getEvictionCount() {
+        return sEvictionCount;
+    }
+
+    /**
+     * A query URL split into the parameters the cache reasons about and
+     * everything else, which has to match exactly. Parameters are compared as
+     * they are written in the URL, without decoding them.
+     */
+    private static final class Query {
+        private final String mBase;
+        private final double mMinMagnitude;
+        private final String mOrderBy;
+        private final int mOffset;
+        private final int mLimit;
+
+        Query(String url) {
+            int queryStart = url.indexOf('?');
+            int queryEnd = url.indexOf('#');
+            if (queryEnd < 0) {
+                queryEnd = url.length();
+            }
+            if (queryStart > queryEnd) {
+                queryStart = -1;
+            }
+            Map<String, String> parameters = new TreeMap<>();
+            if (queryStart >= 0) {
+                for (String parameter : url.substring(queryStart + 1, queryEnd).split("&")) {
+                    if (parameter.isEmpty()) {
+                        continue;
+                    }
+                    int equals = parameter.indexOf('=');
+                    String name = equals < 0 ? parameter : parameter.substring(0, equals);
+                    // The first value of a repeated parameter is the one that counts
+                    if (!parameters.containsKey(name)) {
+                        parameters.put(name, equals < 0 ? "" : parameter.substring(equals + 1));
+                    }
+                }
+            }
+
+            // The rest are sorted so their order in the URL doesn't matter
+            Map<String, String> others = new TreeMap<>(parameters);
+            others.remove(PARAM_MIN_MAGNITUDE);
+            others.remove(PARAM_ORDER_BY);
+            others.remove(PARAM_OFFSET);
+            others.remove(PARAM_LIMIT);
+            mBase = url.substring(0, queryStart >= 0 ? queryStart : queryEnd) + others;
+
+            mMinMagnitude = parseDouble(parameters.get(PARAM_MIN_MAGNITUDE), Double.NEGATIVE_INFINITY);
+            String orderBy = parameters.get(PARAM_ORDER_BY);
+            mOrderBy = orderBy == null ? DEFAULT_ORDER_BY : orderBy;
+            mOffset = (int) parseDouble(parameters.get(PARAM_OFFSET), 1);
+            mLimit = (int) parseDouble(parameters.get(PARAM_LIMIT), Integer.MAX_VALUE);
+        }
+
+        String key() {
+            return mBase + "|" + mMinMagnitude + "|" + mOrderBy;
+        }
+
+        private static double parseDouble(String value, double defaultValue) {
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+    }
+
+    /** The results of one query from offset 1 onwards. */
+    private static final class Window {
+        private final String mBase;
+        private final double mMinMagnitude;
+        private final String mOrderBy;
+        private final List<Earthquake> mEarthquakes;
+        private final boolean mComplete;
+        private final long mFetchedAt;
+
+        Window(Query query, List<Earthquake> earthquakes, boolean complete, long fetchedAt) {
+            mBase = query.mBase;
+            mMinMagnitude = query.mMinMagnitude;
+            mOrderBy = query.mOrderBy;
+            mEarthquakes = earthquakes;
+            mComplete = complete;
+            mFetchedAt = fetchedAt;
+        }
+
+        /** Returns the space the window takes up in the cache. */
+        int size() {
+            return mEarthquakes.size() + 1;
+        }
+
+        boolean isAlive(long now) {
+            return now - mFetchedAt < TIME_TO_LIVE_MILLIS;
+        }
+
+        /** Returns true if this window holds a superset of the query's results. */
+        boolean canAnswer(Query query, long now) {
+            return mBase.equals(query.mBase)
+                    && mMinMagnitude <= query.mMinMagnitude
+                    && (mComplete || mOrderBy.equals(query.mOrderBy))
+                    && isAlive(now);
+        }
+
+        /**
+         * Returns the query's page out of the given results derived from this window,
+         * or null if the window doesn't reach far enough to be sure of it.
+         */
+        List<Earthquake> page(Query query, List<Earthquake> earthquakes) {
+            int from = Math.max(query.mOffset - 1, 0);
+            long to = (long) from + query.mLimit;
+            if (to <= earthquakes.size()) {
+                return new ArrayList<>(earthquakes.subList(from, (int) to));
+            }
+            if (mComplete) {
+                return new ArrayList<>(earthquakes.subList(Math.min(from, earthquakes.size()),
+                        earthquakes.size()));
+            }
+            return null;
+        }
+    }
+}
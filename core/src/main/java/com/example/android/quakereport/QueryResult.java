@@ -0,0 +1,63 @@
+package com.example.android.quakereport;
+
+import java.util.List;
+
+/**
+ * {@link QueryResult} is one USGS response for a query URL: the parsed
+ * {@link Earthquake}s plus the HTTP validators needed to ask USGS later
+ * whether the response has changed.
+ */
+public final class QueryResult {
+
+    // Earthquakes parsed from the response
+    private final List<Earthquake> mEarthquakes;
+
+    // Value of the ETag response header, or null if USGS didn't send one
+    private final String mETag;
+
+    // Value of the Last-Modified response header, or null if USGS didn't send one
+    private final String mLastModified;
+
+    // Wall clock time the response was last confirmed by USGS
+    private final long mFetchedAt;
+
+    // True if USGS answered 304 and the earthquakes came from our own copy
+    private final boolean mNotModified;
+
+    /**
+     * Create a new QueryResult object.
+     * @param earthquakes are the earthquakes in the response
+     * @param eTag is the ETag header of the response
+     * @param lastModified is the Last-Modified header of the response
+     * @param fetchedAt is when the response was last confirmed by USGS, in milliseconds
+     * @param notModified is true if USGS answered 304 Not Modified
+     */
+    public QueryResult(List<Earthquake> earthquakes, String eTag, String lastModified,
+                       long fetchedAt, boolean notModified) {
+        mEarthquakes = earthquakes;
+        mETag = eTag;
+        mLastModified = lastModified;
+        mFetchedAt = fetchedAt;
+        mNotModified = notModified;
+    }
+
+    public List<Earthquake> getEarthquakes() {
+        return mEarthquakes;
+    }
+
+    public String getETag() {
+        return mETag;
+    }
+
+    public String getLastModified() {
+        return mLastModified;
+    }
+
+    public long getFetchedAt() {
+        return mFetchedAt;
+    }
+
+    public boolean isNotModified() {
+        return mNotModified;
+    }
+}
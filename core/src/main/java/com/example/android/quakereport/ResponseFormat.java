@@ -0,0 +1,30 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Turns a USGS response body of one format into {@link Earthquake}s.
+ *
+ * {@link ResponseFormats} picks the format of each query by the value of its format
+ * parameter, so a query chooses its format just by asking USGS for it. GeoJSON, CSV and
+ * the FDSN text format are built in; another one can be added with
+ * {@link ResponseFormats#register(ResponseFormat)}.
+ */
+public interface ResponseFormat {
+
+    /** Returns the value of the format query parameter that asks USGS for this format. */
+    String getName();
+
+    /**
+     * Reads every earthquake of the response into the given list, as it arrives.
+     * If the response turns out to be malformed, the earthquakes read so far stay in
+     * the list and the exception is thrown.
+     * @param inputStream is the response body
+     * @param earthquakes receives the earthquakes
+     * @throws IOException if the stream fails or its content can't be read
+     * @throws IllegalStateException if the content doesn't have the expected structure
+     */
+    void parse(InputStream inputStream, List<Earthquake> earthquakes) throws IOException;
+}
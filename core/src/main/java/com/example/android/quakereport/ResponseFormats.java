@@ -0,0 +1,105 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link ResponseFormat}s that can be parsed, by the value of the FDSN format query
+ * parameter that asks USGS for them.
+ */
+public final class ResponseFormats {
+
+    /** Query parameter that picks the response format */
+    private static final String FORMAT_PARAMETER = "format";
+
+    /** GeoJSON, which carries update times and, when asked for, deleted events */
+    public static final ResponseFormat GEOJSON = new ResponseFormat() {
+        @Override
+        public String getName() {
+            return "geojson";
+        }
+
+        @Override
+        public void parse(InputStream inputStream, List<Earthquake> earthquakes) throws IOException {
+            GeoJsonParser.parse(inputStream, earthquakes);
+        }
+    };
+
+    /** FDSN text, one line of pipe-separated columns per event; a fraction of GeoJSON's size */
+    public static final ResponseFormat TEXT = new ResponseFormat() {
+        @Override
+        public String getName() {
+            return "text";
+        }
+
+        @Override
+        public void parse(InputStream inputStream, List<Earthquake> earthquakes) throws IOException {
+            FdsnTextParser.parse(inputStream, earthquakes);
+        }
+    };
+
+    /** CSV with a header line, the format of USGS catalog downloads */
+    public static final ResponseFormat CSV = new ResponseFormat() {
+        @Override
+        public String getName() {
+            return "csv";
+        }
+
+        @Override
+        public void parse(InputStream inputStream, List<Earthquake> earthquakes) throws IOException {
+            CsvParser.parse(inputStream, earthquakes);
+        }
+    };
+
+    /** Formats we can parse, by name; copied on write so lookups need no lock */
+    private static volatile Map<String, ResponseFormat> sFormats = new HashMap<>();
+
+    static {
+        register(GEOJSON);
+        register(TEXT);
+        register(CSV);
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a {@link ResponseFormats}
+     * object. This class only holds static methods.
+     */
+    private ResponseFormats() {
+    }
+
+    /**
+     * Adds a response format, which queries then ask for with its name as the format
+     * parameter. A format of the same name is replaced.
+     */
+    public static synchronized void register(ResponseFormat format) {
+        Map<String, ResponseFormat> formats = new HashMap<>(sFormats);
+        formats.put(format.getName(), format);
+        sFormats = formats;
+    }
+
+    /** Returns the format of the given name, or null if there is none. */
+    public static ResponseFormat forName(String name) {
+        return sFormats.get(name);
+    }
+
+    /**
+     * Returns the format the given URL asks for, or null if it asks for one we can't
+     * parse. A URL without a format parameter, such as a summary feed, is GeoJSON.
+     */
+    public static ResponseFormat forUrl(URL url) {
+        String query = url.getQuery();
+        if (query != null) {
+            String prefix = FORMAT_PARAMETER + "=";
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith(prefix)) {
+                    return forName(parameter.substring(prefix.length()));
+                }
+            }
+        }
+        return GEOJSON;
+    }
+}
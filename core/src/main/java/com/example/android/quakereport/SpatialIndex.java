@@ -0,0 +1,239 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+
+/**
+ * {@link SpatialIndex} answers radius and bounding-box queries over the earthquakes in an
+ * {@link EarthquakeStore} without looking at every row.
+ *
+ * Epicenters are bucketed into a grid of one degree by one degree cells. Rows are sorted
+ * by cell, row of the grid first, so the cells a query covers along one band of latitude
+ * are one contiguous run of the index. Their coordinates are copied next to each other in
+ * that order too, so a query reads a few short runs of memory and tests only the
+ * earthquakes in cells that overlap it. Earthquakes without coordinates are left out.
+ *
+ * The index is immutable and can be read from any thread.
+ */
+public final class SpatialIndex {
+
+    /** Mean radius of the earth in km */
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    /** Length of one degree of latitude in km */
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+
+    /** Number of cells from the south pole to the north pole */
+    private static final int GRID_ROWS = 180;
+
+    /** Number of cells around the earth */
+    private static final int GRID_COLUMNS = 360;
+
+    /** Earthquakes the index was built over */
+    private final EarthquakeStore mStore;
+
+    /** Where each cell's run starts in the arrays below; the last entry is their length */
+    private final int[] mCellStarts;
+
+    /** Store positions, sorted by cell */
+    private final int[] mPositions;
+
+    /** Coordinates of the rows in the same order as {@link #mPositions} */
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+
+    /**
+     * Builds an index over the earthquakes in the store, which should not change afterwards.
+     * @param store is usually a snapshot or the local event store
+     */
+    public SpatialIndex(EarthquakeStore store) {
+        mStore = store;
+        int size = store.size();
+
+        // Counting sort by cell: count the rows per cell, then turn the counts into starts
+        int[] cells = new int[size];
+        int[] cellStarts = new int[GRID_ROWS * GRID_COLUMNS + 1];
+        int located = 0;
+        for (int i = 0; i < size; i++) {
+            double latitude = store.getLatitude(i);
+            double longitude = store.getLongitude(i);
+            if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+                cells[i] = -1;
+                continue;
+            }
+            cells[i] = cellOf(rowOf(latitude), columnOf(longitude));
+            cellStarts[cells[i] + 1]++;
+            located++;
+        }
+        for (int cell = 0; cell < GRID_ROWS * GRID_COLUMNS; cell++) {
+            cellStarts[cell + 1] += cellStarts[cell];
+        }
+
+        mPositions = new int[located];
+        mLatitudes = new double[located];
+        mLongitudes = new double[located];
+        int[] next = Arrays.copyOf(cellStarts, GRID_ROWS * GRID_COLUMNS);
+        for (int i = 0; i < size; i++) {
+            if (cells[i] < 0) {
+                continue;
+            }
+            int slot = next[cells[i]]++;
+            mPositions[slot] = i;
+            mLatitudes[slot] = store.getLatitude(i);
+            mLongitudes[slot] = store.getLongitude(i);
+        }
+        mCellStarts = cellStarts;
+    }
+
+    /** Returns the earthquakes the index was built over. */
+    public EarthquakeStore getStore() {
+        return mStore;
+    }
+
+    /**
+     * Returns the store positions of the earthquakes within the given distance of a point,
+     * measured along the surface of the earth, in store order.
+     * @param latitude of the center in degrees
+     * @param longitude of the center in degrees
+     * @param radiusKm is the distance from the center in km
+     */
+    public int[] withinRadius(double latitude, double longitude, double radiusKm) {
+        double radiusDegrees = radiusKm / KM_PER_DEGREE;
+        double south = latitude - radiusDegrees;
+        double north = latitude + radiusDegrees;
+
+        // Widest longitude span of the circle; it covers every longitude if it reaches a pole
+        double west = -180;
+        double east = 180;
+        if (south > -90 && north < 90 && radiusDegrees < 90) {
+            double spanDegrees = Math.toDegrees(Math.asin(
+                    Math.sin(radiusKm / EARTH_RADIUS_KM) / Math.cos(Math.toRadians(latitude))));
+            west = normalizeLongitude(longitude - spanDegrees);
+            east = normalizeLongitude(longitude + spanDegrees);
+        }
+
+        Hits hits = new Hits();
+        double centerLatitude = Math.toRadians(latitude);
+        double cosCenterLatitude = Math.cos(centerLatitude);
+        double centerLongitude = Math.toRadians(longitude);
+        int firstRow = rowOf(Math.max(south, -90));
+        int lastRow = rowOf(Math.min(north, 90));
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int[] columns : columnRuns(west, east)) {
+                int from = mCellStarts[cellOf(row, columns[0])];
+                int to = mCellStarts[cellOf(row, columns[1]) + 1];
+                for (int slot = from; slot < to; slot++) {
+                    if (haversine(centerLatitude, cosCenterLatitude, centerLongitude,
+                            mLatitudes[slot], mLongitudes[slot]) * EARTH_RADIUS_KM <= radiusKm) {
+                        hits.add(mPositions[slot]);
+                    }
+                }
+            }
+        }
+        return hits.toSortedArray();
+    }
+
+    /**
+     * Returns the store positions of the earthquakes inside a bounding box, in store order.
+     * A box whose west edge is east of its east edge crosses the antimeridian.
+     * @param south is the southern edge in degrees
+     * @param west is the western edge in degrees
+     * @param north is the northern edge in degrees
+     * @param east is the eastern edge in degrees
+     */
+    public int[] withinBoundingBox(double south, double west, double north, double east) {
+        Hits hits = new Hits();
+        boolean crossesAntimeridian = west > east;
+        int firstRow = rowOf(Math.max(south, -90));
+        int lastRow = rowOf(Math.min(north, 90));
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int[] columns : columnRuns(west, east)) {
+                int from = mCellStarts[cellOf(row, columns[0])];
+                int to = mCellStarts[cellOf(row, columns[1]) + 1];
+                for (int slot = from; slot < to; slot++) {
+                    double latitude = mLatitudes[slot];
+                    double longitude = mLongitudes[slot];
+                    boolean insideLongitude = crossesAntimeridian
+                            ? longitude >= west || longitude <= east
+                            : longitude >= west && longitude <= east;
+                    if (insideLongitude && latitude >= south && latitude <= north) {
+                        hits.add(mPositions[slot]);
+                    }
+                }
+            }
+        }
+        return hits.toSortedArray();
+    }
+
+    /**
+     * Returns the distance between two points along the surface of the earth in km.
+     */
+    public static double distanceKm(double latitude1, double longitude1,
+                                    double latitude2, double longitude2) {
+        double latitude = Math.toRadians(latitude1);
+        return haversine(latitude, Math.cos(latitude), Math.toRadians(longitude1),
+                latitude2, longitude2) * EARTH_RADIUS_KM;
+    }
+
+    /**
+     * Returns the central angle in radians between a center, given in radians with
+     * the cosine of its latitude already worked out, and a point given in degrees.
+     */
+    private static double haversine(double centerLatitude, double cosCenterLatitude,
+                                    double centerLongitude, double latitude, double longitude) {
+        double pointLatitude = Math.toRadians(latitude);
+        double sinHalfLatitude = Math.sin((pointLatitude - centerLatitude) / 2);
+        double sinHalfLongitude = Math.sin((Math.toRadians(longitude) - centerLongitude) / 2);
+        double a = sinHalfLatitude * sinHalfLatitude
+                + cosCenterLatitude * Math.cos(pointLatitude) * sinHalfLongitude * sinHalfLongitude;
+        return 2 * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Returns the runs of grid columns, first and last inclusive, that cover the
+     * longitudes from west to east. A span across the antimeridian takes two runs.
+     */
+    private static int[][] columnRuns(double west, double east) {
+        if (west <= east) {
+            return new int[][]{{columnOf(west), columnOf(Math.min(east, 179.999999))}};
+        }
+        return new int[][]{{columnOf(west), GRID_COLUMNS - 1}, {0, columnOf(east)}};
+    }
+
+    private static int rowOf(double latitude) {
+        return Math.min(GRID_ROWS - 1, Math.max(0, (int) Math.floor(latitude + 90)));
+    }
+
+    private static int columnOf(double longitude) {
+        // 180 itself goes in the last column, next to 179.5
+        return Math.min(GRID_COLUMNS - 1, Math.max(0, (int) Math.floor(longitude + 180)));
+    }
+
+    private static int cellOf(int row, int column) {
+        return row * GRID_COLUMNS + column;
+    }
+
+    /** Wraps a longitude into [-180, 180). */
+    private static double normalizeLongitude(double longitude) {
+        double wrapped = (longitude + 180) % 360;
+        return (wrapped < 0 ? wrapped + 360 : wrapped) - 180;
+    }
+
+    /** Growable list of store positions. */
+    private static final class Hits {
+        private int[] mPositions = new int[16];
+        private int mCount;
+
+        void add(int position) {
+            if (mCount == mPositions.length) {
+                mPositions = Arrays.copyOf(mPositions, mCount * 2);
+            }
+            mPositions[mCount++] = position;
+        }
+
+        int[] toSortedArray() {
+            int[] positions = Arrays.copyOf(mPositions, mCount);
+            Arrays.sort(positions);
+            return positions;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AlertRuleEngineTest {
+
+    private static final double HOME_LATITUDE = 35.7;
+    private static final double HOME_LONGITUDE = -117.6;
+
+    private static final String[] PLACES = {
+            "10km NE of Ridgecrest, CA", "89km WSW of Sendai, Japan", "Kermadec Islands region",
+            "5km S of Fairbanks, Alaska", "12km N of Lima, Peru", "Fiji region",
+            "3km E of Anchorage, Alaska", "South Sandwich Islands region", "Near the coast of Chile"};
+
+    private static final String[] WORDS = {
+            "CA", "Japan", "Alaska", "Kermadec Islands", "Islands", "region", "Fiji", "Chile",
+            "Sendai Japan", "coast of Chile", "Lima", "Peru"};
+
+    @Test
+    public void matchesRulesOfEveryKind() {
+        AlertRule home = rule("Home: M >= 5 within 300 km of home");
+        AlertRule big = rule("Big ones: any M >= 7");
+        AlertRule shallow = rule("place contains \"California\" and depth < 10");
+        AlertRuleEngine engine = new AlertRuleEngine(Arrays.asList(home, big, shallow));
+
+        assertEquals(Arrays.asList(home), engine.match(earthquake(5.2, 35.9, -117.7, 8, "Ridgecrest, CA")));
+        assertEquals(Arrays.asList(big), engine.match(earthquake(7.1, -17.9, 178.5, 550, "Fiji region")));
+        assertEquals(Arrays.asList(shallow),
+                engine.match(earthquake(2.0, 40.4, -124.4, 4, "Offshore Northern California")));
+        assertMatches(Arrays.asList(home, big, shallow), engine.match(
+                earthquake(7.4, 35.7, -117.5, 5, "Ridgecrest, California")));
+        assertEquals(Collections.<AlertRule>emptyList(),
+                engine.match(earthquake(4.9, 35.7, -117.6, 8, "Ridgecrest, CA")));
+    }
+
+    @Test
+    public void matchesCirclesAcrossTheAntimeridianAndPoles() {
+        AlertRule fiji = rule("within 500 km of -17,179.5");
+        AlertRule southPole = rule("within 1500 km of -89,0");
+        AlertRule huge = rule("within 9000 km of 0,0");
+        // Nearly every longitude at its southern edge, without reaching the pole
+        AlertRule nearPole = rule("within 926 km of -79,-137.75");
+        AlertRuleEngine engine = new AlertRuleEngine(Arrays.asList(fiji, southPole, huge, nearPole));
+
+        assertEquals(Arrays.asList(fiji), engine.match(earthquake(3, -17, -178.5, 10, "Fiji region")));
+        assertEquals(Arrays.asList(southPole), engine.match(earthquake(3, -82, 170, 10, "Antarctica")));
+        assertEquals(Arrays.asList(huge), engine.match(earthquake(3, 10, 40, 10, "Ethiopia")));
+        assertEquals(Arrays.asList(nearPole), engine.match(earthquake(3, -72.9, -151.2, 10, "Antarctica")));
+    }
+
+    @Test
+    public void triesRulesUnderAWordOnceWhenThePlaceRepeatsIt() {
+        AlertRule islands = rule("place contains islands");
+        AlertRuleEngine engine = new AlertRuleEngine(Collections.singletonList(islands));
+
+        assertEquals(Arrays.asList(islands),
+                engine.match(earthquake(4, -30, -178, 10, "Kermadec Islands, Islands region")));
+    }
+
+    @Test
+    public void matchesNothingForDeletedEvents() {
+        AlertRuleEngine engine = new AlertRuleEngine(Collections.singletonList(rule("any")));
+
+        Earthquake deleted = new Earthquake("us1", 5, "Fiji region", 0, EarthquakeStore.EVENT_PAGE_URL + "us1",
+                -17.9, 178.5, 550, 0, true);
+        assertEquals(Collections.<AlertRule>emptyList(), engine.match(deleted));
+    }
+
+    @Test
+    public void eventsWithoutAMagnitudeOnlyMatchRulesWithoutOne() {
+        AlertRule any = rule("any");
+        AlertRule strong = rule("M >= 2");
+        AlertRuleEngine engine = new AlertRuleEngine(Arrays.asList(any, strong));
+
+        assertEquals(Arrays.asList(any), engine.match(earthquake(Double.NaN, 0, 0, 10, "Somewhere")));
+    }
+
+    /**
+     * Random rules and events, where the engine has to find exactly the rules a loop over
+     * every rule finds.
+     */
+    @Test
+    public void matchesTheSameRulesAsTryingEveryRule() {
+        Random random = new Random(25);
+        List<AlertRule> rules = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            rules.add(randomRule(random));
+        }
+        AlertRuleEngine engine = new AlertRuleEngine(rules);
+        assertEquals(rules.size(), engine.size());
+
+        int matched = 0;
+        for (int i = 0; i < 2000; i++) {
+            Earthquake earthquake = randomEarthquake(random, i);
+            List<AlertRule> expected = new ArrayList<>();
+            for (AlertRule rule : rules) {
+                if (rule.matches(earthquake)) {
+                    expected.add(rule);
+                }
+            }
+            assertMatches(expected, engine.match(earthquake));
+            matched += expected.size();
+        }
+        // Enough matches for the comparison to mean something
+        assertTrue(matched > 10000);
+    }
+
+    private static AlertRule randomRule(Random random) {
+        StringBuilder text = new StringBuilder();
+        if (random.nextInt(4) > 0) {
+            text.append(random.nextBoolean() ? "M >= " : "M > ").append(random.nextInt(80) / 10.0).append(' ');
+        }
+        switch (random.nextInt(4)) {
+            case 0:
+                // Circles of every size, some across the antimeridian or around a pole
+                text.append(String.format(Locale.US, "within %d km of %.2f,%.2f ",
+                        10 + random.nextInt(random.nextInt(10) == 0 ? 20000 : 1000),
+                        random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180));
+                break;
+            case 1:
+                text.append("within ").append(50 + random.nextInt(500)).append(" km of home ");
+                break;
+            case 2:
+                text.append("place contains \"").append(WORDS[random.nextInt(WORDS.length)]).append("\" ");
+                break;
+            default:
+                text.append("any ");
+                break;
+        }
+        if (random.nextInt(3) == 0) {
+            text.append("and depth ").append(random.nextBoolean() ? "< " : ">= ").append(random.nextInt(100));
+        }
+        return rule(text.toString());
+    }
+
+    private static Earthquake randomEarthquake(Random random, int index) {
+        double latitude;
+        double longitude;
+        if (random.nextInt(4) == 0) {
+            // Near home, so the home rules match now and then
+            latitude = HOME_LATITUDE + random.nextGaussian() * 3;
+            longitude = HOME_LONGITUDE + random.nextGaussian() * 3;
+        } else {
+            latitude = Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1));
+            longitude = random.nextDouble() * 360 - 180;
+        }
+        double magnitude = random.nextInt(50) == 0 ? Double.NaN : random.nextInt(90) / 10.0;
+        return new Earthquake("ev" + index, magnitude, PLACES[random.nextInt(PLACES.length)], index,
+                EarthquakeStore.EVENT_PAGE_URL + "ev" + index, latitude, longitude, random.nextInt(200));
+    }
+
+    /** Checks the rules match, in any order. */
+    private static void assertMatches(List<AlertRule> expected, List<AlertRule> actual) {
+        Comparator<AlertRule> byIdentity = new Comparator<AlertRule>() {
+            @Override
+            public int compare(AlertRule a, AlertRule b) {
+                return Integer.compare(System.identityHashCode(a), System.identityHashCode(b));
+            }
+        };
+        List<AlertRule> expectedSorted = new ArrayList<>(expected);
+        List<AlertRule> actualSorted = new ArrayList<>(actual);
+        Collections.sort(expectedSorted, byIdentity);
+        Collections.sort(actualSorted, byIdentity);
+        assertEquals(expectedSorted, actualSorted);
+    }
+
+    private static AlertRule rule(String text) {
+        return AlertRule.parse(text, HOME_LATITUDE, HOME_LONGITUDE);
+    }
+
+    private static Earthquake earthquake(double magnitude, double latitude, double longitude, double depth,
+                                         String place) {
+        return new Earthquake("us1", magnitude, place, 0, EarthquakeStore.EVENT_PAGE_URL + "us1",
+                latitude, longitude, depth);
+    }
+}
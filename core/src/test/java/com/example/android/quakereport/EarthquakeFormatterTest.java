@@ -0,0 +1,108 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class EarthquakeFormatterTest {
+
+    private static final int[] COLORS = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+    private static final int COLOR_OVERFLOW = 10;
+
+    @Test
+    public void picksTheColorOfTheMagnitudeFloor() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(COLORS, COLOR_OVERFLOW, "near the");
+
+        assertEquals(0, formatter.getMagnitudeColor(0));
+        assertEquals(4, formatter.getMagnitudeColor(4.99));
+        assertEquals(9, formatter.getMagnitudeColor(9.9));
+        assertEquals(COLOR_OVERFLOW, formatter.getMagnitudeColor(10));
+        assertEquals(COLOR_OVERFLOW, formatter.getMagnitudeColor(-0.5));
+    }
+
+    @Test
+    public void usesTheOverflowColorPastTheGivenColors() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(new int[] {0, 1, 2}, COLOR_OVERFLOW, "near the");
+
+        assertEquals(2, formatter.getMagnitudeColor(2.5));
+        assertEquals(COLOR_OVERFLOW, formatter.getMagnitudeColor(3));
+    }
+
+    @Test
+    public void formatsMagnitudesWithOneDecimal() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(COLORS, COLOR_OVERFLOW, "near the");
+
+        assertEquals("4.6", formatter.formatMagnitude(4.62));
+        assertEquals("5.0", formatter.formatMagnitude(5));
+        assertEquals("near the", formatter.formatLocationOffset(null));
+        assertEquals("12km NNE of ", formatter.formatLocationOffset("12km NNE of "));
+    }
+
+    /**
+     * The loader formats every row as it appends it, so the list only reads finished text
+     * and never calls the formatter, which isn't thread safe, from the main thread.
+     */
+    @Test
+    public void isOnlyUsedByTheThreadBuildingTheStore() throws InterruptedException {
+        final Set<Thread> callers = Collections.synchronizedSet(new HashSet<Thread>());
+        final AtomicInteger calls = new AtomicInteger();
+        final EarthquakeFormatter formatter = new EarthquakeFormatter(COLORS, COLOR_OVERFLOW, "near the") {
+            @Override
+            public String formatMagnitude(double magnitude) {
+                callers.add(Thread.currentThread());
+                calls.incrementAndGet();
+                return super.formatMagnitude(magnitude);
+            }
+
+            @Override
+            public String formatDate(long timeInMilliseconds) {
+                callers.add(Thread.currentThread());
+                return super.formatDate(timeInMilliseconds);
+            }
+
+            @Override
+            public String formatTime(long timeInMilliseconds) {
+                callers.add(Thread.currentThread());
+                return super.formatTime(timeInMilliseconds);
+            }
+
+            @Override
+            public int getMagnitudeColor(double magnitude) {
+                callers.add(Thread.currentThread());
+                return super.getMagnitudeColor(magnitude);
+            }
+        };
+        final EarthquakeStore[] loaded = new EarthquakeStore[1];
+        Thread loader = new Thread() {
+            @Override
+            public void run() {
+                EarthquakeStore store = new EarthquakeStore(16, formatter);
+                for (int i = 0; i < 100; i++) {
+                    store.append(new Earthquake("ev" + i, i / 10.0, i % 2 == 0 ? "12km NNE of Hilo, Hawaii"
+                            : "Fiji region", 1530403200000L + i * 60000L, EarthquakeStore.EVENT_PAGE_URL + "ev" + i));
+                }
+                loaded[0] = store.snapshot();
+            }
+        };
+        loader.start();
+        loader.join();
+
+        EarthquakeStore rows = loaded[0];
+        EarthquakeFormatter expected = new EarthquakeFormatter(COLORS, COLOR_OVERFLOW, "near the");
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(expected.formatMagnitude(rows.getMagnitude(i)), rows.getMagnitudeText(i));
+            assertEquals(expected.formatDate(rows.getTimeInMilliseconds(i)), rows.getDateText(i));
+            assertEquals(expected.formatTime(rows.getTimeInMilliseconds(i)), rows.getTimeText(i));
+            assertEquals(expected.getMagnitudeColor(rows.getMagnitude(i)), rows.getMagnitudeColor(i));
+            assertEquals(i % 2 == 0 ? "12km NNE of " : "near the", rows.getLocationOffsetText(i));
+        }
+
+        assertEquals(Collections.<Thread>singleton(loader), callers);
+        assertEquals(100, calls.get());
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.android.quakereport;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EarthquakeStoreTest {
+
+    private static final int[] COLORS = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+    private static final int COLOR_OVERFLOW = 10;
+
+    private static final Earthquake HILO = earthquake("hv1", 4.62, "12km NNE of Hilo, Hawaii", 1000);
+    private static final Earthquake FIJI = earthquake("us2", 5.1, "Fiji region", 2000);
+    private static final Earthquake HILO_AGAIN = earthquake("hv3", 2.0, "3km S of Hilo, Hawaii", 3000);
+
+    @Test
+    public void readsBackEveryColumn() {
+        EarthquakeStore store = new EarthquakeStore();
+        store.append(new Earthquake("ci1", 3.3, "8km W of Ridgecrest, CA", 1530000000000L,
+                EarthquakeStore.EVENT_PAGE_URL + "ci1", 35.6, -117.7, 8.4));
+
+        assertEquals(1, store.size());
+        assertEquals("ci1", store.getId(0));
+        assertEquals(3.3, store.getMagnitude(0), 0);
+        assertEquals(1530000000000L, store.getTimeInMilliseconds(0));
+        assertEquals(35.6, store.getLatitude(0), 0);
+        assertEquals(-117.7, store.getLongitude(0), 0);
+        assertEquals(8.4, store.getDepth(0), 0);
+        assertEquals("8km W of Ridgecrest, CA", store.getLocation(0));
+        assertEquals(EarthquakeStore.EVENT_PAGE_URL + "ci1", store.getUrl(0));
+    }
+
+    @Test
+    public void splitsPlacesIntoOffsetAndPrimaryLocation() {
+        EarthquakeStore store = store(HILO, FIJI);
+
+        assertEquals("12km NNE of ", store.getLocationOffset(0));
+        assertEquals("Hilo, Hawaii", store.getPrimaryLocation(0));
+        assertNull(store.getLocationOffset(1));
+        assertEquals("Fiji region", store.getPrimaryLocation(1));
+        assertEquals("Fiji region", store.getLocation(1));
+    }
+
+    @Test
+    public void storesEachPlacePartOnce() {
+        EarthquakeStore store = store(HILO, FIJI, HILO_AGAIN);
+
+        assertSame(store.getPrimaryLocation(0), store.getPrimaryLocation(2));
+    }
+
+    @Test
+    public void onlyStoresUrlsThatDontFollowTheUsgsPattern() {
+        EarthquakeStore store = store(HILO, new Earthquake("x1", 1, "Somewhere", 1, "https://example.com/x1"));
+
+        assertNull(store.getUrlOverride(0));
+        assertEquals(HILO.getUrl(), store.getUrl(0));
+        assertEquals("https://example.com/x1", store.getUrlOverride(1));
+        assertEquals("https://example.com/x1", store.getUrl(1));
+    }
+
+    @Test
+    public void createsEarthquakesOnDemand() {
+        List<Earthquake> list = store(HILO, FIJI);
+
+        Earthquake earthquake = list.get(0);
+        assertEquals(HILO.getId(), earthquake.getId());
+        assertEquals(HILO.getLocation(), earthquake.getLocation());
+        assertEquals(HILO.getMagnitude(), earthquake.getMagnitude(), 0);
+        assertEquals(HILO.getTimeInMilliseconds(), earthquake.getTimeInMilliseconds());
+        assertEquals(HILO.getUrl(), earthquake.getUrl());
+    }
+
+    @Test
+    public void formatsRowsAsTheyAreAdded() {
+        EarthquakeStore store = new EarthquakeStore(1, formatter());
+        store.appendAll(Arrays.asList(HILO, FIJI, earthquake("x", 10.2, "Nowhere", 0)));
+
+        assertEquals("4.6", store.getMagnitudeText(0));
+        assertEquals(4, store.getMagnitudeColor(0));
+        assertEquals("12km NNE of ", store.getLocationOffsetText(0));
+        assertEquals("near the", store.getLocationOffsetText(1));
+        assertEquals(COLOR_OVERFLOW, store.getMagnitudeColor(2));
+        assertEquals(formatter().formatDate(1000), store.getDateText(0));
+        assertEquals(formatter().formatTime(1000), store.getTimeText(0));
+    }
+
+    @Test
+    public void snapshotsDontSeeLaterRows() {
+        EarthquakeStore store = new EarthquakeStore(1, formatter());
+        store.append(HILO);
+        EarthquakeStore snapshot = store.snapshot();
+
+        // Enough rows to make the store grow its columns a few times
+        for (int i = 0; i < 100; i++) {
+            store.append(FIJI);
+        }
+
+        assertEquals(1, snapshot.size());
+        assertEquals("hv1", snapshot.getId(0));
+        assertEquals("Hilo, Hawaii", snapshot.getPrimaryLocation(0));
+        assertEquals("4.6", snapshot.getMagnitudeText(0));
+        assertEquals(101, store.size());
+        try {
+            snapshot.getId(1);
+            fail("A snapshot showed a row added after it");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshotsAreReadOnly() {
+        store(HILO).snapshot().append(FIJI);
+    }
+
+    @Test
+    public void copiesHoldTheSameRowsAndCanGrow() {
+        EarthquakeStore store = new EarthquakeStore(4, formatter());
+        store.appendAll(Arrays.asList(HILO, FIJI));
+
+        EarthquakeStore copy = store.snapshot().copy(formatter());
+        copy.append(HILO_AGAIN);
+
+        assertEquals(2, store.size());
+        assertEquals(3, copy.size());
+        assertEquals("12km NNE of Hilo, Hawaii", copy.getLocation(0));
+        assertEquals("4.6", copy.getMagnitudeText(0));
+        assertEquals("2.0", copy.getMagnitudeText(2));
+        assertEquals("Fiji region", copy.getPrimaryLocation(1));
+    }
+
+    @Test
+    public void appendsRowsOfAnotherStoreWithTheirDisplayColumns() {
+        EarthquakeStore source = new EarthquakeStore(4, formatter());
+        source.appendAll(Arrays.asList(HILO, FIJI));
+        EarthquakeStore target = new EarthquakeStore(1, formatter());
+
+        target.append(source.snapshot(), 1);
+
+        assertEquals(1, target.size());
+        assertEquals("us2", target.getId(0));
+        assertEquals("5.1", target.getMagnitudeText(0));
+        assertSame(source.getDateText(1), target.getDateText(0));
+    }
+
+    /**
+     * Binding a row only reads columns the store already formatted, so scrolling through
+     * the list must not allocate.
+     */
+    @Test
+    public void readingDisplayColumnsDoesntAllocate() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        EarthquakeStore store = new EarthquakeStore(1000, formatter());
+        for (int i = 0; i < 1000; i++) {
+            store.append(earthquake("ev" + i, i % 90 / 10.0, i % 2 == 0 ? HILO.getLocation() : FIJI.getLocation(),
+                    i * 60000L));
+        }
+        // Once first, so loading classes isn't counted
+        bindAll(store);
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        int hash = bindAll(store);
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(hash != 0);
+        // getThreadAllocatedBytes may count a few bytes of its own; a row would be far more
+        assertTrue("Binding 1000 rows allocated " + allocated + " bytes", allocated < 1000);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsRowsPastTheEnd() {
+        new EarthquakeStore().getMagnitude(0);
+    }
+
+    /** Reads every column a list item shows, as the adapter binds each row. */
+    private static int bindAll(EarthquakeStore store) {
+        int hash = 0;
+        for (int i = 0; i < store.size(); i++) {
+            hash += store.getMagnitudeText(i).hashCode();
+            hash += store.getPrimaryLocation(i).hashCode();
+            hash += store.getLocationOffsetText(i).hashCode();
+            hash += store.getDateText(i).hashCode();
+            hash += store.getTimeText(i).hashCode();
+            hash += store.getMagnitudeColor(i);
+        }
+        return hash;
+    }
+
+    private static EarthquakeFormatter formatter() {
+        return new EarthquakeFormatter(COLORS, COLOR_OVERFLOW, "near the");
+    }
+
+    private static EarthquakeStore store(Earthquake... earthquakes) {
+        EarthquakeStore store = new EarthquakeStore();
+        store.appendAll(Arrays.asList(earthquakes));
+        return store;
+    }
+
+    private static Earthquake earthquake(String id, double magnitude, String place, long time) {
+        return new Earthquake(id, magnitude, place, time, EarthquakeStore.EVENT_PAGE_URL + id);
+    }
+}
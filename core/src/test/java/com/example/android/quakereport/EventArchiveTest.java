@@ -0,0 +1,239 @@
+package com.example.android.quakereport;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventArchiveTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    /** Midnight UTC of 2018-07-01 */
+    private static final long MIDNIGHT = 17713 * DAY;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDirectory;
+    private EventArchive mArchive;
+
+    @Before
+    public void setUp() {
+        mDirectory = new File(mFolder.getRoot(), "archive");
+        mArchive = new EventArchive(mDirectory);
+    }
+
+    @Test
+    public void readsBackWhatWasAppended() throws IOException {
+        Earthquake earthquake = new Earthquake("hv1", 4.62, "12km NNE of Hilo, Hawaii", MIDNIGHT + 1234,
+                EarthquakeStore.EVENT_PAGE_URL + "hv1", 19.81234, -155.04111, 8.44, MIDNIGHT + 5000, false);
+        mArchive.append(Collections.singletonList(earthquake));
+
+        List<Earthquake> scanned = scan(Long.MIN_VALUE, Long.MAX_VALUE, Double.NEGATIVE_INFINITY);
+
+        assertEquals(1, scanned.size());
+        Earthquake read = scanned.get(0);
+        assertEquals("hv1", read.getId());
+        assertEquals(4.62, read.getMagnitude(), 0);
+        assertEquals("12km NNE of Hilo, Hawaii", read.getLocation());
+        assertEquals(MIDNIGHT + 1234, read.getTimeInMilliseconds());
+        assertEquals(MIDNIGHT + 5000, read.getUpdatedInMilliseconds());
+        assertEquals(19.81234, read.getLatitude(), 0);
+        assertEquals(-155.04111, read.getLongitude(), 0);
+        assertEquals(8.44, read.getDepth(), 0);
+        assertEquals(EarthquakeStore.EVENT_PAGE_URL + "hv1", read.getUrl());
+    }
+
+    @Test
+    public void matchesANaiveFilterBeforeAndAfterCompaction() throws IOException {
+        Random random = new Random(1);
+        List<Earthquake> all = new ArrayList<>();
+        // Several appends over a few days, enough to have some days compacted
+        for (int batch = 0; batch < 10; batch++) {
+            List<Earthquake> earthquakes = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                long time = MIDNIGHT + (long) (random.nextDouble() * 3 * DAY);
+                earthquakes.add(earthquake("e" + all.size(), random.nextInt(700) / 100.0, time, time));
+                all.add(earthquakes.get(earthquakes.size() - 1));
+            }
+            mArchive.append(earthquakes);
+        }
+        long start = MIDNIGHT + DAY / 2;
+        long end = MIDNIGHT + 2 * DAY + DAY / 3;
+
+        assertEquals(naiveScan(all, start, end, 4.5), ids(scan(start, end, 4.5)));
+        mArchive.compactAll();
+        assertEquals(naiveScan(all, start, end, 4.5), ids(scan(start, end, 4.5)));
+        assertEquals(all.size(), scan(Long.MIN_VALUE, Long.MAX_VALUE, Double.NEGATIVE_INFINITY).size());
+    }
+
+    @Test
+    public void keepsTheLatestVersionOfAnEvent() throws IOException {
+        mArchive.append(Collections.singletonList(earthquake("ak1", 3.0, MIDNIGHT + 100, MIDNIGHT + 100)));
+        mArchive.append(Collections.singletonList(earthquake("ak1", 3.4, MIDNIGHT + 100, MIDNIGHT + 900)));
+
+        assertEquals(3.4, scan(Long.MIN_VALUE, Long.MAX_VALUE, 0).get(0).getMagnitude(), 0);
+        mArchive.compactAll();
+        List<Earthquake> scanned = scan(Long.MIN_VALUE, Long.MAX_VALUE, 0);
+        assertEquals(1, scanned.size());
+        assertEquals(3.4, scanned.get(0).getMagnitude(), 0);
+    }
+
+    @Test
+    public void leavesOutDeletedEvents() throws IOException {
+        mArchive.append(Collections.singletonList(earthquake("nc1", 2.0, MIDNIGHT + 100, MIDNIGHT + 100)));
+        mArchive.append(Collections.singletonList(new Earthquake("nc1", 2.0, "", MIDNIGHT + 100, "",
+                Double.NaN, Double.NaN, Double.NaN, MIDNIGHT + 200, true)));
+
+        assertTrue(scan(Long.MIN_VALUE, Long.MAX_VALUE, Double.NEGATIVE_INFINITY).isEmpty());
+        mArchive.compactAll();
+        assertTrue(scan(Long.MIN_VALUE, Long.MAX_VALUE, Double.NEGATIVE_INFINITY).isEmpty());
+        // A day left with no events is removed
+        assertFalse(new File(mDirectory, EventArchive.epochDay(MIDNIGHT) + ".day").exists());
+    }
+
+    @Test
+    public void leavesOutDeletionsOfEventsItDoesntHold() throws IOException {
+        mArchive.append(Collections.singletonList(earthquake("nc1", 2.0, MIDNIGHT + 100, MIDNIGHT + 100)));
+        mArchive.append(Arrays.asList(
+                new Earthquake("nc2", 0.8, "", MIDNIGHT + DAY, "", Double.NaN, Double.NaN, Double.NaN,
+                        MIDNIGHT + DAY, true),
+                earthquake("nc3", 2.5, MIDNIGHT + 200, MIDNIGHT + 200)));
+
+        assertFalse(new File(mDirectory, EventArchive.epochDay(MIDNIGHT + DAY) + ".day").exists());
+        assertEquals(Arrays.asList("nc1", "nc3"), ids(scan(Long.MIN_VALUE, Long.MAX_VALUE, 0)));
+    }
+
+    @Test
+    public void hidesTheOldVersionOfAnEventRevisedAcrossMidnight() throws IOException {
+        // Revised from a minute before midnight to a minute after it
+        mArchive.append(Collections.singletonList(earthquake("us1", 5.0, MIDNIGHT - 60000, MIDNIGHT)));
+        mArchive.append(Collections.singletonList(earthquake("us1", 5.2, MIDNIGHT + 60000, MIDNIGHT + 1000)));
+
+        assertMovedAfterMidnight(mArchive);
+        assertMovedAfterMidnight(new EventArchive(mDirectory));
+        mArchive.compactAll();
+        assertMovedAfterMidnight(mArchive);
+    }
+
+    @Test
+    public void movesEventsArchivedBeforeTheIdsFileExisted() throws IOException {
+        mArchive.append(Collections.singletonList(earthquake("us1", 5.0, MIDNIGHT - 60000, MIDNIGHT)));
+        assertTrue(new File(mDirectory, "ids").delete());
+
+        EventArchive archive = new EventArchive(mDirectory);
+        archive.append(Collections.singletonList(earthquake("us1", 5.2, MIDNIGHT + 60000, MIDNIGHT + 1000)));
+
+        assertMovedAfterMidnight(archive);
+    }
+
+    @Test
+    public void movesAnEventBackAndForth() throws IOException {
+        mArchive.append(Collections.singletonList(earthquake("us1", 5.0, MIDNIGHT - 60000, MIDNIGHT)));
+        mArchive.append(Collections.singletonList(earthquake("us1", 5.1, MIDNIGHT + 60000, MIDNIGHT + 1000)));
+        mArchive.append(Collections.singletonList(earthquake("us1", 5.2, MIDNIGHT - 30000, MIDNIGHT + 2000)));
+
+        List<Earthquake> scanned = scan(Long.MIN_VALUE, Long.MAX_VALUE, Double.NEGATIVE_INFINITY);
+        assertEquals(1, scanned.size());
+        assertEquals(MIDNIGHT - 30000, scanned.get(0).getTimeInMilliseconds());
+    }
+
+    @Test
+    public void dropsABlockCutShortByACrash() throws IOException {
+        mArchive.append(Collections.singletonList(earthquake("a", 1.0, MIDNIGHT + 1, MIDNIGHT + 1)));
+        File day = new File(mDirectory, EventArchive.epochDay(MIDNIGHT) + ".day");
+        long intact = day.length();
+        mArchive.append(Collections.singletonList(earthquake("b", 2.0, MIDNIGHT + 2, MIDNIGHT + 2)));
+        RandomAccessFile file = new RandomAccessFile(day, "rw");
+        try {
+            file.setLength(day.length() - 3);
+        } finally {
+            file.close();
+        }
+
+        assertEquals(Arrays.asList("a"), ids(scan(Long.MIN_VALUE, Long.MAX_VALUE, Double.NEGATIVE_INFINITY)));
+        // The next append cuts the broken block off instead of writing behind it
+        mArchive.append(Collections.singletonList(earthquake("c", 3.0, MIDNIGHT + 3, MIDNIGHT + 3)));
+        assertTrue(day.length() > intact);
+        assertEquals(Arrays.asList("a", "c"), ids(scan(Long.MIN_VALUE, Long.MAX_VALUE, Double.NEGATIVE_INFINITY)));
+    }
+
+    @Test
+    public void countsDaysFromTheEpochBeforeIt() {
+        assertEquals(0, EventArchive.epochDay(0));
+        assertEquals(0, EventArchive.epochDay(DAY - 1));
+        assertEquals(-1, EventArchive.epochDay(-1));
+        assertEquals(-1, EventArchive.epochDay(-DAY));
+        assertEquals(-2, EventArchive.epochDay(-DAY - 1));
+    }
+
+    private void assertMovedAfterMidnight(EventArchive archive) throws IOException {
+        List<Earthquake> scanned = scan(archive, Long.MIN_VALUE, Long.MAX_VALUE, Double.NEGATIVE_INFINITY);
+        assertEquals(1, scanned.size());
+        assertEquals(5.2, scanned.get(0).getMagnitude(), 0);
+        assertTrue(scan(archive, MIDNIGHT - DAY, MIDNIGHT - 1, Double.NEGATIVE_INFINITY).isEmpty());
+    }
+
+    private List<Earthquake> scan(long start, long end, double minMagnitude) throws IOException {
+        return scan(mArchive, start, end, minMagnitude);
+    }
+
+    private static List<Earthquake> scan(EventArchive archive, long start, long end, double minMagnitude)
+            throws IOException {
+        final List<Earthquake> earthquakes = new ArrayList<>();
+        int visited = archive.scan(start, end, minMagnitude, new EventArchive.Visitor() {
+            @Override
+            public void visit(Earthquake earthquake) {
+                earthquakes.add(earthquake);
+            }
+        });
+        assertEquals(earthquakes.size(), visited);
+        return earthquakes;
+    }
+
+    private static List<String> naiveScan(List<Earthquake> earthquakes, long start, long end, double minMagnitude) {
+        List<Earthquake> matches = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            long time = earthquake.getTimeInMilliseconds();
+            if (time >= start && time <= end && earthquake.getMagnitude() >= minMagnitude) {
+                matches.add(earthquake);
+            }
+        }
+        Collections.sort(matches, new Comparator<Earthquake>() {
+            @Override
+            public int compare(Earthquake a, Earthquake b) {
+                int byTime = Long.compare(a.getTimeInMilliseconds(), b.getTimeInMilliseconds());
+                return byTime != 0 ? byTime : a.getId().compareTo(b.getId());
+            }
+        });
+        return ids(matches);
+    }
+
+    private static List<String> ids(List<Earthquake> earthquakes) {
+        List<String> ids = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            ids.add(earthquake.getId());
+        }
+        return ids;
+    }
+
+    private static Earthquake earthquake(String id, double magnitude, long time, long updated) {
+        return new Earthquake(id, magnitude, "10km S of Somewhere", time, EarthquakeStore.EVENT_PAGE_URL + id,
+                1.5, 2.5, 10, updated, false);
+    }
+}
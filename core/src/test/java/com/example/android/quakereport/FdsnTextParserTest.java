@@ -0,0 +1,118 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FdsnTextParserTest {
+
+    private static final String HEADER = "#EventID|Time|Latitude|Longitude|Depth/km|Author|Catalog|Contributor"
+            + "|ContributorID|MagType|Magnitude|MagAuthor|EventLocationName|EventType\n";
+
+    private static final String LINE = "ci38457511|2019-07-06T03:19:53.040|35.7695|-117.5993|8|ci|ci|ci"
+            + "|ci38457511|mw|7.1|ci|2km SW of Searles Valley, CA|earthquake\n";
+
+    @Test
+    public void readsTheColumnsOfALine() throws IOException {
+        List<Earthquake> earthquakes = parse(HEADER + LINE);
+
+        assertEquals(1, earthquakes.size());
+        Earthquake earthquake = earthquakes.get(0);
+        assertEquals("ci38457511", earthquake.getId());
+        assertEquals(1562383193040L, earthquake.getTimeInMilliseconds());
+        assertEquals(earthquake.getTimeInMilliseconds(), earthquake.getUpdatedInMilliseconds());
+        assertEquals(35.7695, earthquake.getLatitude(), 0);
+        assertEquals(-117.5993, earthquake.getLongitude(), 0);
+        assertEquals(8, earthquake.getDepth(), 0);
+        assertEquals(7.1, earthquake.getMagnitude(), 0);
+        assertEquals("2km SW of Searles Valley, CA", earthquake.getLocation());
+        assertEquals(EarthquakeStore.EVENT_PAGE_URL + "ci38457511", earthquake.getUrl());
+        assertFalse(earthquake.isDeleted());
+    }
+
+    @Test
+    public void skipsCommentsAndBlankLinesAndAcceptsCrLf() throws IOException {
+        List<Earthquake> earthquakes = parse(HEADER + "\n# a comment\r\n" + LINE.replace("\n", "\r\n") + "\n");
+
+        assertEquals(1, earthquakes.size());
+        assertEquals("2km SW of Searles Valley, CA", earthquakes.get(0).getLocation());
+    }
+
+    @Test
+    public void keepsDefaultsForEmptyColumns() throws IOException {
+        Earthquake earthquake = parse(HEADER + "x1|2019-07-06T03:19:53.040||||ci|ci|ci|x1|||ci|Somewhere|earthquake\n")
+                .get(0);
+
+        assertEquals(0, earthquake.getMagnitude(), 0);
+        assertTrue(Double.isNaN(earthquake.getLatitude()));
+        assertTrue(Double.isNaN(earthquake.getDepth()));
+    }
+
+    @Test
+    public void readsALastLineWithoutALineEnd() throws IOException {
+        assertEquals(2, parse(HEADER + LINE + LINE.trim()).size());
+    }
+
+    @Test
+    public void readsLinesWithoutTheEventTypeWhenTheHeaderHasNone() throws IOException {
+        String header = HEADER.replace("|EventType", "");
+        String line = LINE.replace("|earthquake", "");
+
+        assertEquals(2, parse(header + line + line).size());
+        assertEquals(1, parse(line).size());
+    }
+
+    @Test
+    public void failsALineCutShortAndKeepsWhatWasRead() throws IOException {
+        // Cut in the middle of the place, which still leaves the columns up to it
+        String text = HEADER + LINE + LINE.substring(0, LINE.indexOf("Searles"));
+
+        List<Earthquake> earthquakes = new ArrayList<>();
+        try {
+            FdsnTextParser.parse(stream(text), earthquakes);
+            fail("A truncated line was read as complete");
+        } catch (IllegalStateException expected) {
+            assertEquals(1, earthquakes.size());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsALineCutInTheMagnitude() throws IOException {
+        parse(HEADER + LINE.substring(0, LINE.indexOf("7.1") + 2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsAMalformedNumber() throws IOException {
+        parse(HEADER + LINE.replace("|7.1|", "|strong|"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsAMalformedTime() throws IOException {
+        parse(HEADER + LINE.replace("2019-07-06T03:19:53.040", "yesterday"));
+    }
+
+    @Test
+    public void readsAnEmptyResponse() throws IOException {
+        assertTrue(parse("").isEmpty());
+        assertTrue(parse(HEADER).isEmpty());
+    }
+
+    private static List<Earthquake> parse(String text) throws IOException {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        FdsnTextParser.parse(stream(text), earthquakes);
+        return earthquakes;
+    }
+
+    private static ByteArrayInputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(Charset.forName("UTF-8")));
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.android.quakereport;
+
+import com.google.gson.stream.MalformedJsonException;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GeoJsonParserTest {
+
+    private static final String FEATURE = "{\"type\":\"Feature\",\"properties\":{\"mag\":4.6,"
+            + "\"place\":\"12km NNE of Hilo, Hawaii\",\"time\":1530000000000,\"updated\":1530000300000,"
+            + "\"tz\":null,\"url\":\"https://earthquake.usgs.gov/earthquakes/eventpage/hv70302356\","
+            + "\"felt\":null,\"status\":\"reviewed\",\"types\":\",origin,phase-data,\",\"nst\":24},"
+            + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-155.0411,19.8123,8.44]},"
+            + "\"id\":\"hv70302356\"}";
+
+    @Test
+    public void readsTheFieldsOfAFeature() throws IOException {
+        List<Earthquake> earthquakes = parse(collection(FEATURE));
+
+        assertEquals(1, earthquakes.size());
+        Earthquake earthquake = earthquakes.get(0);
+        assertEquals("hv70302356", earthquake.getId());
+        assertEquals(4.6, earthquake.getMagnitude(), 0);
+        assertEquals("12km NNE of Hilo, Hawaii", earthquake.getLocation());
+        assertEquals(1530000000000L, earthquake.getTimeInMilliseconds());
+        assertEquals(1530000300000L, earthquake.getUpdatedInMilliseconds());
+        assertEquals("https://earthquake.usgs.gov/earthquakes/eventpage/hv70302356", earthquake.getUrl());
+        assertEquals(19.8123, earthquake.getLatitude(), 0);
+        assertEquals(-155.0411, earthquake.getLongitude(), 0);
+        assertEquals(8.44, earthquake.getDepth(), 0);
+        assertFalse(earthquake.isDeleted());
+    }
+
+    @Test
+    public void skipsMetadataAndUnknownValuesOfAnyShape() throws IOException {
+        String json = "{\"type\":\"FeatureCollection\",\"metadata\":{\"count\":1,\"nested\":[1,[2],{\"a\":null}]},"
+                + "\"features\":[" + FEATURE + "],\"bbox\":[-155.0,19.8,8.4,-155.0,19.8,8.4]}";
+
+        List<Earthquake> earthquakes = parse(json);
+
+        assertEquals(1, earthquakes.size());
+        assertEquals("hv70302356", earthquakes.get(0).getId());
+    }
+
+    @Test
+    public void keepsDefaultsForNullAndMissingValues() throws IOException {
+        String feature = "{\"properties\":{\"mag\":null,\"place\":null,\"time\":1000,\"url\":null},"
+                + "\"geometry\":null,\"id\":\"ak1\"}";
+
+        Earthquake earthquake = parse(collection(feature)).get(0);
+
+        assertEquals(0, earthquake.getMagnitude(), 0);
+        assertEquals("", earthquake.getLocation());
+        assertEquals("", earthquake.getUrl());
+        assertTrue(Double.isNaN(earthquake.getLatitude()));
+        assertTrue(Double.isNaN(earthquake.getLongitude()));
+        assertTrue(Double.isNaN(earthquake.getDepth()));
+        // Without an update time the event counts as updated when it happened
+        assertEquals(1000, earthquake.getUpdatedInMilliseconds());
+    }
+
+    @Test
+    public void leavesOutTheDepthWhenOnlyTwoCoordinatesAreSent() throws IOException {
+        String feature = "{\"properties\":{\"time\":1},\"geometry\":{\"coordinates\":[10.5,-20.25]}}";
+
+        Earthquake earthquake = parse(collection(feature)).get(0);
+
+        assertEquals(-20.25, earthquake.getLatitude(), 0);
+        assertEquals(10.5, earthquake.getLongitude(), 0);
+        assertTrue(Double.isNaN(earthquake.getDepth()));
+    }
+
+    @Test
+    public void marksDeletedEvents() throws IOException {
+        String feature = "{\"properties\":{\"mag\":2.1,\"time\":1,\"status\":\"deleted\"},\"id\":\"nc1\"}";
+
+        assertTrue(parse(collection(feature)).get(0).isDeleted());
+    }
+
+    @Test
+    public void skipsFeaturesWithoutProperties() throws IOException {
+        String json = collection("{\"id\":\"x\",\"geometry\":{\"coordinates\":[1,2,3]}}," + FEATURE);
+
+        List<Earthquake> earthquakes = parse(json);
+
+        assertEquals(1, earthquakes.size());
+        assertEquals("hv70302356", earthquakes.get(0).getId());
+    }
+
+    @Test
+    public void readsAnEmptyCollection() throws IOException {
+        assertTrue(parse(collection("")).isEmpty());
+        assertTrue(parse("{\"type\":\"FeatureCollection\"}").isEmpty());
+    }
+
+    @Test
+    public void decodesEscapesAndUtf8() throws IOException {
+        String feature = "{\"properties\":{\"place\":\"5 km al N de Pe\\u00f1a \\\"Blanca\\\", M\u00e9xico\","
+                + "\"time\":1}}";
+
+        assertEquals("5 km al N de Pe\u00f1a \"Blanca\", M\u00e9xico",
+                parse(collection(feature)).get(0).getLocation());
+    }
+
+    @Test
+    public void throwsOnATruncatedStreamAndKeepsWhatWasRead() throws IOException {
+        String json = collection(FEATURE + "," + FEATURE.replace("hv70302356", "hv2"));
+        // Cut the second feature off in the middle of its properties
+        String truncated = json.substring(0, json.lastIndexOf("\"time\""));
+
+        List<Earthquake> earthquakes = new ArrayList<>();
+        try {
+            GeoJsonParser.parse(stream(truncated), earthquakes);
+            fail("A truncated stream was read as complete");
+        } catch (EOFException expected) {
+            assertEquals(1, earthquakes.size());
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void throwsWhenTheStreamEndsBetweenFeatures() throws IOException {
+        String json = collection(FEATURE);
+        parse(json.substring(0, json.length() - 2));
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void throwsOnMalformedJson() throws IOException {
+        parse(collection(FEATURE.replace("\"mag\":4.6,", "\"mag\":4.6,,")));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void throwsOnANonNumericMagnitude() throws IOException {
+        parse(collection(FEATURE.replace("\"mag\":4.6", "\"mag\":\"strong\"")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void throwsOnAResponseOfAnotherShape() throws IOException {
+        parse("{\"features\":{\"type\":\"Feature\"}}");
+    }
+
+    @Test(expected = EOFException.class)
+    public void throwsOnAnEmptyStream() throws IOException {
+        parse("");
+    }
+
+    private static String collection(String features) {
+        return "{\"type\":\"FeatureCollection\",\"features\":[" + features + "]}";
+    }
+
+    private static List<Earthquake> parse(String json) throws IOException {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        GeoJsonParser.parse(stream(json), earthquakes);
+        return earthquakes;
+    }
+
+    private static InputStream stream(String string) {
+        return new ByteArrayInputStream(string.getBytes(Charset.forName("UTF-8")));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PageCursorTest {
+
+    private static final String QUERY_URL =
+            "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&minmag=2.5";
+
+    @Test
+    public void pagesThroughEveryResultOnce() {
+        for (int results : new int[] {0, 1, 9, 10, 11, 95, 100}) {
+            List<Integer> all = results(results);
+            PageCursor pages = new PageCursor(QUERY_URL, 10);
+            List<Integer> loaded = new ArrayList<>();
+            int requests = 0;
+            while (pages.hasMorePages()) {
+                List<Integer> page = page(all, pages.getNextOffset(), pages.getPageSize());
+                loaded.addAll(page);
+                pages.onPageLoaded(page.size());
+                requests++;
+            }
+
+            assertEquals(all, loaded);
+            // A last page that is exactly full needs one more, empty, page to be sure
+            assertEquals(results / 10 + 1, requests);
+            assertEquals(results, pages.getLoadedCount());
+        }
+    }
+
+    @Test
+    public void asksForTheNextPage() {
+        PageCursor pages = new PageCursor(QUERY_URL, 20);
+        assertEquals(QUERY_URL + "&offset=1&limit=20", pages.getNextPageUrl());
+
+        pages.onPageLoaded(20);
+        assertEquals(QUERY_URL + "&offset=21&limit=20", pages.getNextPageUrl());
+
+        assertEquals("https://example.com/query?offset=1&limit=20",
+                new PageCursor("https://example.com/query", 20).getNextPageUrl());
+        assertEquals("https://example.com/query?offset=1&limit=20",
+                new PageCursor("https://example.com/query?", 20).getNextPageUrl());
+    }
+
+    @Test
+    public void movesTheNextPageWithShiftedRows() {
+        List<Integer> all = results(30);
+        PageCursor pages = new PageCursor(QUERY_URL, 10);
+        List<Integer> loaded = new ArrayList<>(page(all, pages.getNextOffset(), 10));
+        pages.onPageLoaded(10);
+
+        // Two new results at the top push everything down, and the loaded pages take them in
+        all.add(0, -1);
+        all.add(0, -2);
+        loaded.add(0, -1);
+        loaded.add(0, -2);
+        pages.onRowsShifted(2);
+        loaded.addAll(page(all, pages.getNextOffset(), 10));
+        pages.onPageLoaded(10);
+
+        // One loaded result is deleted, so everything after it moves up
+        all.remove(Integer.valueOf(3));
+        loaded.remove(Integer.valueOf(3));
+        pages.onRowsShifted(-1);
+        loaded.addAll(page(all, pages.getNextOffset(), 10));
+        pages.onPageLoaded(10);
+
+        assertEquals(all.subList(0, loaded.size()), loaded);
+        assertEquals(loaded.size(), pages.getLoadedCount());
+    }
+
+    @Test
+    public void stopsAndStartsOver() {
+        PageCursor pages = new PageCursor(QUERY_URL, 10);
+        pages.onPageLoaded(10);
+        pages.stop();
+        assertFalse(pages.hasMorePages());
+
+        pages.reset();
+
+        assertTrue(pages.hasMorePages());
+        assertEquals(PageCursor.FIRST_OFFSET, pages.getNextOffset());
+    }
+
+    private static List<Integer> results(int count) {
+        List<Integer> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(i);
+        }
+        return results;
+    }
+
+    /** Returns the page USGS would answer with, given all of its results. */
+    private static List<Integer> page(List<Integer> results, int offset, int limit) {
+        int from = Math.min(offset - PageCursor.FIRST_OFFSET, results.size());
+        return new ArrayList<>(results.subList(from, Math.min(from + limit, results.size())));
+    }
+}
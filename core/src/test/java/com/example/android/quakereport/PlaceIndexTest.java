@@ -0,0 +1,144 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PlaceIndexTest {
+
+    private static final Earthquake ALASKA = earthquake("ak1", "45km NW of Akutan, Alaska");
+    private static final Earthquake JAPAN = earthquake("us1", "Near east coast of Honshu, Japan");
+    private static final Earthquake CHILE = earthquake("us2", "30km SW of Ovalle, Chile");
+    private static final Earthquake FIJI = earthquake("us3", "Fiji region");
+
+    @Test
+    public void findsPlacesByWordPrefixes() {
+        PlaceIndex index = new PlaceIndex();
+        index.update(store(ALASKA, JAPAN, CHILE, FIJI, earthquake("ak2", "Alaska Peninsula")));
+
+        assertArrayEquals(new int[] {0, 4}, index.search("ala"));
+        assertArrayEquals(new int[] {0, 4}, index.search("ALASKA"));
+        assertArrayEquals(new int[] {1}, index.search("jap hon"));
+        assertArrayEquals(new int[] {}, index.search("japan chile"));
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4}, index.search("  "));
+    }
+
+    @Test
+    public void indexesRowsAppendedToASnapshotsStore() {
+        EarthquakeStore store = store(ALASKA, JAPAN);
+        PlaceIndex index = new PlaceIndex();
+        index.update(store.snapshot());
+
+        store.append(CHILE);
+        store.append(JAPAN);
+        index.update(store.snapshot());
+
+        assertArrayEquals(new int[] {1, 3}, index.search("japan"));
+        assertArrayEquals(new int[] {2}, index.search("chile"));
+    }
+
+    @Test
+    public void indexesAReorderedStoreAgain() {
+        PlaceIndex index = new PlaceIndex();
+        index.update(store(ALASKA, JAPAN, CHILE, FIJI));
+
+        // Same first and last rows, same size, different rows in between
+        index.update(store(ALASKA, CHILE, JAPAN, FIJI));
+
+        assertArrayEquals(new int[] {2}, index.search("japan"));
+        assertArrayEquals(new int[] {1}, index.search("chile"));
+    }
+
+    @Test
+    public void indexesALongerStoreLoadedSeparatelyAgain() {
+        PlaceIndex index = new PlaceIndex();
+        index.update(store(ALASKA, JAPAN));
+
+        index.update(store(ALASKA, CHILE, JAPAN));
+
+        assertArrayEquals(new int[] {2}, index.search("japan"));
+    }
+
+    @Test
+    public void indexesAShorterSnapshotAgain() {
+        EarthquakeStore store = store(ALASKA);
+        EarthquakeStore older = store.snapshot();
+        store.append(JAPAN);
+        PlaceIndex index = new PlaceIndex();
+        index.update(store.snapshot());
+
+        index.update(older);
+
+        assertArrayEquals(new int[] {}, index.search("japan"));
+        assertArrayEquals(new int[] {0}, index.search("alaska"));
+    }
+
+    @Test
+    public void matchesANaiveScan() {
+        String[] places = {"Akutan, Alaska", "Honshu, Japan", "Ovalle, Chile", "Fiji region",
+                "Alaska Peninsula", "Hilo, Hawaii", "Kyushu, Japan", "the Kuril Islands",
+                "Anchorage, Alaska", "Valparaiso, Chile"};
+        String[] queries = {"a", "al", "alaska pen", "japan", "ch", "k", "is", "zz", "hawaii hilo"};
+        Random random = new Random(1);
+        EarthquakeStore store = new EarthquakeStore();
+        PlaceIndex index = new PlaceIndex();
+
+        // Several updates, each with more rows, so both search paths and appending are used
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 200; i++) {
+                String place = places[random.nextInt(places.length)];
+                store.append(earthquake("x" + store.size(), random.nextInt(100) + "km N of " + place));
+            }
+            EarthquakeStore snapshot = store.snapshot();
+            index.update(snapshot);
+            for (String query : queries) {
+                assertArrayEquals(query, naiveSearch(snapshot, query), index.search(query));
+            }
+        }
+    }
+
+    @Test
+    public void splitsWordsOnAnythingButLettersAndDigits() {
+        assertEquals(Arrays.asList("5km", "n", "of", "m\u00e9xico"), PlaceIndex.tokenize("5KM n. of M\u00c9XICO!"));
+    }
+
+    private static int[] naiveSearch(EarthquakeStore store, String query) {
+        List<String> prefixes = PlaceIndex.tokenize(query);
+        List<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < store.size(); row++) {
+            List<String> words = PlaceIndex.tokenize(store.getPrimaryLocation(row));
+            boolean matches = true;
+            for (String prefix : prefixes) {
+                boolean found = false;
+                for (String word : words) {
+                    found |= word.startsWith(prefix);
+                }
+                matches &= found;
+            }
+            if (matches) {
+                rows.add(row);
+            }
+        }
+        int[] result = new int[rows.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = rows.get(i);
+        }
+        return result;
+    }
+
+    private static EarthquakeStore store(Earthquake... earthquakes) {
+        EarthquakeStore store = new EarthquakeStore();
+        store.appendAll(Arrays.asList(earthquakes));
+        return store;
+    }
+
+    private static Earthquake earthquake(String id, String place) {
+        return new Earthquake(id, 3.0, place, 0, EarthquakeStore.EVENT_PAGE_URL + id);
+    }
+}
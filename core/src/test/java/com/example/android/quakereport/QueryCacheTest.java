@@ -0,0 +1,165 @@
+package com.example.android.quakereport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class QueryCacheTest {
+
+    private static final String QUERY_URL =
+            "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&starttime=2018-06-01";
+
+    /** 2018-07-01T00:00:00Z */
+    private static final long TIME = 1530403200000L;
+
+    /** 100 events a minute apart, newest first, with magnitudes from 2.5 to 6.4 */
+    private List<Earthquake> mEarthquakes;
+
+    private int mHits;
+    private int mSupersetHits;
+    private int mMisses;
+
+    @Before
+    public void setUp() {
+        QueryCache.clear();
+        mEarthquakes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            mEarthquakes.add(new Earthquake("us" + i, 2.5 + (i * 7 % 40) / 10.0, "Somewhere",
+                    TIME - i * 60000L, EarthquakeStore.EVENT_PAGE_URL + "us" + i, Double.NaN, Double.NaN,
+                    Double.NaN));
+        }
+        mHits = QueryCache.getHitCount();
+        mSupersetHits = QueryCache.getSupersetHitCount();
+        mMisses = QueryCache.getMissCount();
+    }
+
+    @Test
+    public void answersAPageFromItsOwnWindow() {
+        QueryCache.put(QUERY_URL + "&minmag=2.5&orderby=time", mEarthquakes, false, System.currentTimeMillis());
+
+        // Parameters may come in any order
+        QueryResult result = QueryCache.get(
+                "https://earthquake.usgs.gov/fdsnws/event/1/query?orderby=time&starttime=2018-06-01"
+                        + "&offset=21&minmag=2.5&limit=20&format=geojson");
+
+        assertEquals(ids(mEarthquakes.subList(20, 40)), ids(result.getEarthquakes()));
+        assertCounts(1, 0, 0);
+    }
+
+    @Test
+    public void answersAHigherMinmagByFilteringALowerOne() {
+        QueryCache.put(QUERY_URL + "&minmag=2.5", mEarthquakes, false, System.currentTimeMillis());
+
+        QueryResult result = QueryCache.get(QUERY_URL + "&minmag=4.5&offset=1&limit=10");
+
+        assertEquals(ids(atLeast(4.5).subList(0, 10)), ids(result.getEarthquakes()));
+        assertCounts(0, 1, 0);
+    }
+
+    @Test
+    public void reSortsAWindowHoldingEveryResult() {
+        QueryCache.put(QUERY_URL + "&minmag=2.5", mEarthquakes, true, System.currentTimeMillis());
+
+        QueryResult result = QueryCache.get(QUERY_URL + "&minmag=4.5&orderby=magnitude&offset=1&limit=10");
+
+        List<Earthquake> expected = atLeast(4.5);
+        Collections.sort(expected, EventQuery.comparatorFor("magnitude"));
+        assertEquals(ids(expected.subList(0, 10)), ids(result.getEarthquakes()));
+        assertCounts(0, 1, 0);
+    }
+
+    @Test
+    public void doesNotReSortAPartialWindow() {
+        QueryCache.put(QUERY_URL + "&minmag=2.5", mEarthquakes, false, System.currentTimeMillis());
+
+        assertNull(QueryCache.get(QUERY_URL + "&minmag=4.5&orderby=magnitude&offset=1&limit=10"));
+        assertCounts(0, 0, 1);
+    }
+
+    @Test
+    public void answersPastTheEndOfACompleteWindowOnly() {
+        long now = System.currentTimeMillis();
+        QueryCache.put(QUERY_URL + "&minmag=2.5", mEarthquakes, false, now);
+
+        assertNull(QueryCache.get(QUERY_URL + "&minmag=2.5&offset=91&limit=20"));
+        assertNull(QueryCache.get(QUERY_URL + "&minmag=4.5&offset=1&limit=100"));
+
+        QueryCache.put(QUERY_URL + "&minmag=2.5", mEarthquakes, true, now);
+
+        assertEquals(ids(mEarthquakes.subList(90, 100)),
+                ids(QueryCache.get(QUERY_URL + "&minmag=2.5&offset=91&limit=20").getEarthquakes()));
+        assertEquals(ids(atLeast(4.5)),
+                ids(QueryCache.get(QUERY_URL + "&minmag=4.5&offset=1&limit=100").getEarthquakes()));
+        assertCounts(1, 1, 2);
+    }
+
+    @Test
+    public void neverAnswersALowerMinmagOrOtherParameters() {
+        QueryCache.put(QUERY_URL + "&minmag=4.5", atLeast(4.5), true, System.currentTimeMillis());
+
+        assertNull(QueryCache.get(QUERY_URL + "&minmag=2.5&offset=1&limit=10"));
+        assertNull(QueryCache.get(QUERY_URL + "&minmag=4.5&minlatitude=10&offset=1&limit=10"));
+        assertCounts(0, 0, 2);
+    }
+
+    @Test
+    public void ignoresExpiredWindows() {
+        QueryCache.put(QUERY_URL + "&minmag=2.5", mEarthquakes, true,
+                System.currentTimeMillis() - QueryCache.TIME_TO_LIVE_MILLIS - 1);
+
+        assertNull(QueryCache.get(QUERY_URL + "&minmag=2.5&offset=1&limit=10"));
+        assertNull(QueryCache.get(QUERY_URL + "&minmag=4.5&offset=1&limit=10"));
+        assertCounts(0, 0, 2);
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedWindowsWhenFull() {
+        long now = System.currentTimeMillis();
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            earthquakes.addAll(mEarthquakes);
+        }
+        int evictions = QueryCache.getEvictionCount();
+        QueryCache.put(QUERY_URL + "&minmag=2.5", earthquakes, true, now);
+        QueryCache.put(QUERY_URL + "&minmag=3", earthquakes, true, now);
+        QueryCache.get(QUERY_URL + "&minmag=2.5&offset=1&limit=10");
+
+        // The three of them don't fit, and minmag=3 was used least recently
+        QueryCache.put(QUERY_URL + "&minmag=4", earthquakes, true, now);
+
+        assertEquals(evictions + 1, QueryCache.getEvictionCount());
+        assertEquals(10, QueryCache.get(QUERY_URL + "&minmag=2.5&offset=1&limit=10").getEarthquakes().size());
+        assertEquals(10, QueryCache.get(QUERY_URL + "&minmag=4&offset=1&limit=10").getEarthquakes().size());
+        assertCounts(3, 0, 0);
+    }
+
+    private List<Earthquake> atLeast(double minMagnitude) {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (Earthquake earthquake : mEarthquakes) {
+            if (earthquake.getMagnitude() >= minMagnitude) {
+                earthquakes.add(earthquake);
+            }
+        }
+        return earthquakes;
+    }
+
+    private void assertCounts(int hits, int supersetHits, int misses) {
+        assertEquals("hits", mHits + hits, QueryCache.getHitCount());
+        assertEquals("superset hits", mSupersetHits + supersetHits, QueryCache.getSupersetHitCount());
+        assertEquals("misses", mMisses + misses, QueryCache.getMissCount());
+    }
+
+    private static List<String> ids(List<Earthquake> earthquakes) {
+        List<String> ids = new ArrayList<>(earthquakes.size());
+        for (Earthquake earthquake : earthquakes) {
+            ids.add(earthquake.getId());
+        }
+        return ids;
+    }
+}
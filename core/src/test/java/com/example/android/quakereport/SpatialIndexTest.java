@@ -0,0 +1,124 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SpatialIndexTest {
+
+    @Test
+    public void findsEarthquakesWithinARadius() {
+        EarthquakeStore store = store(new double[][] {
+                {19.8, -155.0}, {35.7, -117.6}, {34.05, -118.25}, {Double.NaN, Double.NaN}, {35.6, -117.5}});
+        SpatialIndex index = new SpatialIndex(store);
+
+        // Ridgecrest to Los Angeles is about 190 km
+        assertArrayEquals(new int[] {1, 4}, index.withinRadius(35.7, -117.6, 50));
+        assertArrayEquals(new int[] {1, 2, 4}, index.withinRadius(35.7, -117.6, 250));
+        assertSame(store, index.getStore());
+    }
+
+    @Test
+    public void findsEarthquakesAcrossTheAntimeridian() {
+        SpatialIndex index = new SpatialIndex(store(new double[][] {
+                {-17.8, 178.5}, {-17.9, -179.6}, {-17.8, 170.0}, {-17.8, -170.0}}));
+
+        assertArrayEquals(new int[] {0, 1}, index.withinRadius(-17.8, 179.9, 250));
+        assertArrayEquals(new int[] {0, 1}, index.withinBoundingBox(-20, 175, -15, -175));
+        assertArrayEquals(new int[] {2}, index.withinBoundingBox(-20, 169, -15, 175));
+    }
+
+    @Test
+    public void findsEarthquakesAroundThePoles() {
+        SpatialIndex index = new SpatialIndex(store(new double[][] {
+                {89.5, 0}, {89.5, 180}, {88.9, -90}, {80, 45}, {-89.9, 10}}));
+
+        assertArrayEquals(new int[] {0, 1, 2}, index.withinRadius(90, 0, 150));
+        assertArrayEquals(new int[] {4}, index.withinRadius(-90, 0, 100));
+    }
+
+    @Test
+    public void measuresDistancesAlongTheSurface() {
+        // A quarter of the way around the equator
+        assertEquals(Math.PI * 6371.0088 / 2, SpatialIndex.distanceKm(0, 0, 0, 90), 1e-6);
+        assertEquals(0, SpatialIndex.distanceKm(12.5, -40, 12.5, -40), 0);
+    }
+
+    @Test
+    public void matchesALinearScan() {
+        Random random = new Random(1);
+        double[][] points = new double[5000][];
+        for (int i = 0; i < points.length; i++) {
+            // Some points bunched at the poles and the antimeridian, where cells are odd
+            double latitude = i % 10 == 0 ? 90 - random.nextDouble() * 3 : random.nextDouble() * 180 - 90;
+            double longitude = i % 7 == 0 ? 180 - random.nextDouble() * 3 : random.nextDouble() * 360 - 180;
+            points[i] = new double[] {latitude, longitude};
+        }
+        EarthquakeStore store = store(points);
+        SpatialIndex index = new SpatialIndex(store);
+
+        for (int query = 0; query < 200; query++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            double radiusKm = random.nextDouble() * 3000;
+            assertArrayEquals("radius " + query, linearRadius(store, latitude, longitude, radiusKm),
+                    index.withinRadius(latitude, longitude, radiusKm));
+
+            double south = random.nextDouble() * 180 - 90;
+            double north = Math.min(90, south + random.nextDouble() * 40);
+            double west = random.nextDouble() * 360 - 180;
+            double east = random.nextDouble() * 360 - 180;
+            assertArrayEquals("box " + query, linearBox(store, south, west, north, east),
+                    index.withinBoundingBox(south, west, north, east));
+        }
+    }
+
+    private static int[] linearRadius(EarthquakeStore store, double latitude, double longitude, double radiusKm) {
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < store.size(); i++) {
+            if (SpatialIndex.distanceKm(latitude, longitude, store.getLatitude(i), store.getLongitude(i))
+                    <= radiusKm) {
+                rows.add(i);
+            }
+        }
+        return toArray(rows);
+    }
+
+    private static int[] linearBox(EarthquakeStore store, double south, double west, double north, double east) {
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < store.size(); i++) {
+            double latitude = store.getLatitude(i);
+            double longitude = store.getLongitude(i);
+            boolean insideLongitude = west > east
+                    ? longitude >= west || longitude <= east
+                    : longitude >= west && longitude <= east;
+            if (insideLongitude && latitude >= south && latitude <= north) {
+                rows.add(i);
+            }
+        }
+        return toArray(rows);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private static EarthquakeStore store(double[][] points) {
+        EarthquakeStore store = new EarthquakeStore();
+        for (int i = 0; i < points.length; i++) {
+            store.append(new Earthquake("e" + i, 3.0, "Somewhere", i, EarthquakeStore.EVENT_PAGE_URL + "e" + i,
+                    points[i][0], points[i][1], 10));
+        }
+        return store;
+    }
+}
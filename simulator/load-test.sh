@@ -0,0 +1,52 @@
+#!/bin/sh
+# Runs the load test of a debug build on the connected device against a local feed
+# simulator, prints the report and fails if more runs failed than MAX_FAILED, 0 by
+# default, or the p99 run latency is above MAX_P99_MS, if set.
+#
+#   ./gradlew :simulator:installDist :app:installDebug
+#   SIMULATOR_ARGS="--events 50000 --bandwidth 64k --truncate 0.05" MAX_FAILED=10 \
+#       MAX_P99_MS=3000 simulator/load-test.sh --es mode fetch --ei runs 100
+#
+# Extra arguments go to am start; see LoadTestActivity for the extras it reads.
+set -e
+
+PACKAGE=com.example.android.quakereport
+PORT=${PORT:-8080}
+TIMEOUT_SECONDS=${TIMEOUT_SECONDS:-3600}
+SIMULATOR="$(dirname "$0")/build/install/feed-simulator/bin/feed-simulator"
+
+"$SIMULATOR" --port "$PORT" --quiet $SIMULATOR_ARGS &
+SIMULATOR_PID=$!
+trap 'kill $SIMULATOR_PID' EXIT
+
+# The device reaches the simulator on its own localhost
+adb reverse "tcp:$PORT" "tcp:$PORT"
+adb shell run-as "$PACKAGE" rm -f files/load-test.txt
+# The URL is quoted again for the device's shell, which would split it at the &
+adb shell am start -S -n "$PACKAGE/.LoadTestActivity" \
+    --es url "'http://localhost:$PORT/fdsnws/event/1/query?format=text&orderby=time'" "$@"
+
+waited=0
+until adb shell run-as "$PACKAGE" cat files/load-test.txt 2>/dev/null | grep -q '^RESULT'; do
+    if [ "$waited" -ge "$TIMEOUT_SECONDS" ]; then
+        echo "No report after $TIMEOUT_SECONDS s; see adb logcat -s LoadTestActivity" >&2
+        exit 1
+    fi
+    sleep 5
+    waited=$((waited + 5))
+done
+
+report=$(adb shell run-as "$PACKAGE" cat files/load-test.txt)
+echo "$report"
+
+result=$(echo "$report" | grep '^RESULT')
+failed=$(echo "$result" | sed 's/.* failed=\([0-9]*\).*/\1/')
+p99=$(echo "$result" | sed 's/.* p99_ms=\([0-9.]*\).*/\1/')
+if [ "$failed" -gt "${MAX_FAILED:-0}" ]; then
+    echo "$failed runs failed" >&2
+    exit 1
+fi
+if [ -n "$MAX_P99_MS" ] && awk "BEGIN { exit !($p99 > $MAX_P99_MS) }"; then
+    echo "p99 of $p99 ms is above $MAX_P99_MS ms" >&2
+    exit 1
+fi
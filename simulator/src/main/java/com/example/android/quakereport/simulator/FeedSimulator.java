@@ -0,0 +1,655 @@
+package com.example.android.quakereport.simulator;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.EventQuery;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for the USGS event service, serving a {@link SyntheticCatalog} over
+ * HTTP with the faults of a bad network on demand.
+ * <pre>
+ * feed-simulator [options]
+ *   --port N                 port to listen on; 8080 by default
+ *   --events N               events in the catalog; 10000 by default
+ *   --days N                 days before now the events are spread over; 30 by default
+ *   --min-magnitude M        smallest magnitude made up; 0.5 by default
+ *   --seed N                 the same seed makes the same catalog; 1 by default
+ *   --latency MS             wait before answering each request
+ *   --jitter MS              wait up to this much more, at random
+ *   --bandwidth BYTES[k|m]   bytes per second each response is sent at
+ *   --truncate FRACTION      share of successful responses cut off at a random byte
+ *   --error-rate FRACTION    share of requests answered with --error-code
+ *   --error-code CODE        status of the failed requests; 503 by default
+ *   --quiet                  don't log every request
+ * </pre>
+ *
+ * It answers what the app asks for:
+ * <ul>
+ *     <li>/fdsnws/event/1/query in the geojson or text format, with the magnitude,
+ *     time, box, updatedafter, includedeleted, orderby, offset, limit and nodata
+ *     parameters, USGS's 400 errors for bad ones or more than 20000 results, and its
+ *     204, or 404 with nodata=404, for a query that matches nothing</li>
+ *     <li>/earthquakes/feed/v1.0/summary/all_hour.geojson, holding the events of
+ *     the hour before the catalog ends</li>
+ * </ul>
+ * Responses carry an ETag and are gzip-compressed when the client accepts it, so
+ * revalidation and compression work as they do against USGS. The HTTP is done on plain
+ * sockets, because a truncated response has to drop the connection mid-body, which
+ * com.sun.net.httpserver won't do; it leaves the client waiting instead. Build the app with
+ * {@code -PusgsBaseUrl=http://10.0.2.2:8080} to point an emulator at it.
+ */
+public final class FeedSimulator {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final String QUERY_PATH = "/fdsnws/event/1/query";
+    static final String HOUR_FEED_PATH = "/earthquakes/feed/v1.0/summary/all_hour.geojson";
+
+    private static final String FORMAT_GEOJSON = "geojson";
+    private static final String FORMAT_TEXT = "text";
+
+    /** Most events USGS returns for one query */
+    private static final int MAX_LIMIT = 20000;
+
+    private static final long MILLIS_PER_HOUR = 60 * 60 * 1000;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    /** Bytes of rendered responses kept to answer the same request again */
+    private static final int RESPONSE_CACHE_BYTES = 64 * 1024 * 1024;
+
+    /** Status USGS answers a query matching nothing with, unless nodata asks for 404 */
+    private static final int NO_DATA_CODE = 204;
+
+    /** One rendered response */
+    private static final class Body {
+        final int mCode;
+        final byte[] mBytes;
+        final String mContentType;
+        final String mETag;
+        final boolean mGzipped;
+
+        Body(int code, byte[] bytes, String contentType, String eTag, boolean gzipped) {
+            mCode = code;
+            mBytes = bytes;
+            mContentType = contentType;
+            mETag = eTag;
+            mGzipped = gzipped;
+        }
+    }
+
+    private final SyntheticCatalog mCatalog;
+    private final long mLatencyMillis;
+    private final long mJitterMillis;
+    private final long mBytesPerSecond;
+    private final double mTruncateFraction;
+    private final double mErrorRate;
+    private final int mErrorCode;
+    private final boolean mQuiet;
+
+    /** Decides which requests fail; shared by the server threads, which Random allows */
+    private final Random mRandom;
+
+    /** Last-Modified of every response, which is when the catalog was made */
+    private final String mLastModified;
+
+    /** Rendered responses by request, least recently used first, guarded by itself */
+    private final LinkedHashMap<String, Body> mResponses = new LinkedHashMap<>(16, 0.75f, true);
+    private int mResponseBytes;
+
+    FeedSimulator(SyntheticCatalog catalog, long latencyMillis, long jitterMillis,
+                          long bytesPerSecond, double truncateFraction, double errorRate,
+                          int errorCode, boolean quiet, long seed) {
+        mCatalog = catalog;
+        mLatencyMillis = latencyMillis;
+        mJitterMillis = jitterMillis;
+        mBytesPerSecond = bytesPerSecond;
+        mTruncateFraction = truncateFraction;
+        mErrorRate = errorRate;
+        mErrorCode = errorCode;
+        mQuiet = quiet;
+        mRandom = new Random(seed);
+        SimpleDateFormat httpFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        httpFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        mLastModified = httpFormat.format(new Date(catalog.getEndTime()));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        int events = 10000;
+        int days = 30;
+        double minMagnitude = 0.5;
+        long seed = 1;
+        long latencyMillis = 0;
+        long jitterMillis = 0;
+        long bytesPerSecond = 0;
+        double truncateFraction = 0;
+        double errorRate = 0;
+        int errorCode = 503;
+        boolean quiet = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--quiet")) {
+                    quiet = true;
+                    continue;
+                }
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("No value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--port":
+                        port = (int) parseCount(arg, value);
+                        break;
+                    case "--events":
+                        events = (int) parseCount(arg, value);
+                        break;
+                    case "--days":
+                        days = (int) parseCount(arg, value);
+                        break;
+                    case "--min-magnitude":
+                        minMagnitude = parseNumber(arg, value);
+                        break;
+                    case "--seed":
+                        seed = (long) parseNumber(arg, value);
+                        break;
+                    case "--latency":
+                        latencyMillis = parseCount(arg, value);
+                        break;
+                    case "--jitter":
+                        jitterMillis = parseCount(arg, value);
+                        break;
+                    case "--bandwidth":
+                        bytesPerSecond = parseCount(arg, value);
+                        break;
+                    case "--truncate":
+                        truncateFraction = parseFraction(arg, value);
+                        break;
+                    case "--error-rate":
+                        errorRate = parseFraction(arg, value);
+                        break;
+                    case "--error-code":
+                        errorCode = (int) parseCount(arg, value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: feed-simulator [--port N] [--events N] [--days N]"
+                    + " [--min-magnitude M] [--seed N] [--latency MS] [--jitter MS]"
+                    + " [--bandwidth BYTES] [--truncate FRACTION] [--error-rate FRACTION]"
+                    + " [--error-code CODE] [--quiet]");
+            System.exit(2);
+            return;
+        }
+
+        long start = System.nanoTime();
+        SyntheticCatalog catalog = new SyntheticCatalog(events, System.currentTimeMillis(),
+                days * MILLIS_PER_DAY, minMagnitude, 0.002, seed);
+        System.out.println(String.format(Locale.US, "Made up %d events in %d ms",
+                catalog.size(), (System.nanoTime() - start) / 1000000));
+
+        FeedSimulator simulator = new FeedSimulator(catalog, latencyMillis, jitterMillis,
+                bytesPerSecond, truncateFraction, errorRate, errorCode, quiet, seed);
+        ServerSocket server = new ServerSocket(port);
+        System.out.println("Serving http://localhost:" + port + QUERY_PATH);
+        simulator.listen(server);
+    }
+
+    /**
+     * Answers the connections made to a server socket until it is closed.
+     * @throws IOException once the socket is closed
+     */
+    void listen(ServerSocket server) throws IOException {
+        // Throttled and delayed responses hold their thread, so don't make others wait
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            while (true) {
+                final Socket socket = server.accept();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Answers the requests sent over one connection, keeping it open between them as
+     * HTTP/1.1 clients expect, until the client closes it or a response is cut short.
+     */
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            while (true) {
+                String requestLine = readLine(in);
+                if (requestLine == null) {
+                    return;
+                }
+                if (requestLine.isEmpty()) {
+                    continue;
+                }
+                Map<String, String> headers = new HashMap<>();
+                for (String line = readLine(in); line != null && !line.isEmpty(); line = readLine(in)) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0) {
+                        headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                                line.substring(colon + 1).trim());
+                    }
+                }
+                if (!respond(requestLine, headers, out) || "close".equalsIgnoreCase(headers.get("connection"))) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // The client hung up
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closed already
+            }
+        }
+    }
+
+    /**
+     * Writes the response to one request, with the faults it was told to inject.
+     * @return false if the connection has to be dropped
+     */
+    private boolean respond(String requestLine, Map<String, String> requestHeaders,
+                            OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        String[] parts = requestLine.split(" ");
+        String method = parts[0];
+        String target = parts.length > 1 ? parts[1] : "/";
+        int question = target.indexOf('?');
+        String path = question < 0 ? target : target.substring(0, question);
+        String rawQuery = question < 0 ? null : target.substring(question + 1);
+
+        sleep(mLatencyMillis + (mJitterMillis > 0 ? (long) (mRandom.nextDouble() * mJitterMillis) : 0));
+
+        int code;
+        Body body;
+        String fault = "";
+        if (mErrorRate > 0 && mRandom.nextDouble() < mErrorRate) {
+            code = mErrorCode;
+            body = errorBody(code, "Failure injected by the simulator");
+            fault = " (injected)";
+        } else if (!method.equals("GET")) {
+            code = 405;
+            body = errorBody(code, "Only GET is supported");
+        } else {
+            String accept = requestHeaders.get("accept-encoding");
+            try {
+                body = render(path, rawQuery, accept != null && accept.contains("gzip"));
+                if (body == null) {
+                    body = errorBody(404, "Unknown path");
+                }
+                code = body.mCode;
+            } catch (IllegalArgumentException e) {
+                code = 400;
+                body = errorBody(code, e.getMessage());
+            }
+        }
+        if (code == 200 && body.mETag.equals(requestHeaders.get("if-none-match"))) {
+            code = 304;
+        }
+
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(code).append(' ').append(reasonPhrase(code)).append("\r\n");
+        if (code == 200 || code == 304) {
+            head.append("ETag: ").append(body.mETag).append("\r\n");
+            head.append("Last-Modified: ").append(mLastModified).append("\r\n");
+        }
+        int length = 0;
+        if (code != 304 && code != 204) {
+            length = body.mBytes.length;
+            head.append("Content-Type: ").append(body.mContentType).append("\r\n");
+            if (body.mGzipped) {
+                head.append("Content-Encoding: gzip\r\n");
+            }
+        }
+        if (code != 204) {
+            // A 204 has no body, and mustn't say how long it is
+            head.append("Content-Length: ").append(length).append("\r\n");
+        }
+        head.append("\r\n");
+
+        // A truncated response promises every byte, then the connection drops
+        boolean truncated = code == 200 && mTruncateFraction > 0 && mRandom.nextDouble() < mTruncateFraction;
+        if (truncated) {
+            length = mRandom.nextInt(length);
+            fault = " (cut at " + length + " of " + body.mBytes.length + " bytes)";
+        }
+        OutputStream response = mBytesPerSecond > 0 ? new ThrottledOutputStream(out, mBytesPerSecond) : out;
+        try {
+            response.write(head.toString().getBytes(UTF_8));
+            response.write(body.mBytes, 0, length);
+            response.flush();
+        } finally {
+            if (!mQuiet) {
+                System.out.println(String.format(Locale.US, "%s -> %d, %d bytes in %d ms%s",
+                        requestLine, code, length, (System.nanoTime() - start) / 1000000, fault));
+            }
+        }
+        return !truncated && method.equals("GET");
+    }
+
+    /** Reads a line of the request head without its line break, or returns null at the end. */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                return line.length() == 0 ? null : line.toString();
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Returns the response to a GET request, rendered or from the cache of responses,
+     * or null if nothing lives at the path.
+     * @throws IllegalArgumentException if the query parameters are wrong
+     */
+    private Body render(String path, String rawQuery, boolean gzip) throws IOException {
+        String key = path + "?" + rawQuery + (gzip ? "#gzip" : "");
+        synchronized (mResponses) {
+            Body cached = mResponses.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        // The catalog never changes, so neither does a response, nor its ETag
+        StringBuilder builder = new StringBuilder();
+        String url = "http://localhost" + path + (rawQuery == null ? "" : "?" + rawQuery);
+        String contentType;
+        if (path.equals(QUERY_PATH)) {
+            Map<String, String> parameters = parseQuery(rawQuery);
+            contentType = renderQuery(builder, url, parameters);
+            if (contentType == null) {
+                return noDataBody(parameters.get("nodata"));
+            }
+        } else if (path.equals(HOUR_FEED_PATH)) {
+            FeedWriter.appendGeoJson(builder, mCatalog.latest(MILLIS_PER_HOUR), url, mCatalog.getEndTime());
+            contentType = "application/json";
+        } else {
+            return null;
+        }
+
+        byte[] bytes = builder.toString().getBytes(UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        String eTag = "\"" + Long.toHexString(crc.getValue()) + "\"";
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+            GZIPOutputStream out = new GZIPOutputStream(compressed);
+            out.write(bytes);
+            out.close();
+            bytes = compressed.toByteArray();
+        }
+        Body body = new Body(200, bytes, contentType, eTag, gzip);
+
+        synchronized (mResponses) {
+            if (mResponses.put(key, body) == null) {
+                mResponseBytes += bytes.length;
+            }
+            Iterator<Body> oldest = mResponses.values().iterator();
+            while (mResponseBytes > RESPONSE_CACHE_BYTES && oldest.hasNext()) {
+                mResponseBytes -= oldest.next().mBytes.length;
+                oldest.remove();
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Appends the events a query asks for in the format it asks for.
+     * @return the content type of the response, or null if no events match
+     * @throws IllegalArgumentException if the parameters are wrong, as USGS would say with a 400
+     */
+    private String renderQuery(StringBuilder builder, String url, Map<String, String> parameters) {
+        String format = FORMAT_GEOJSON;
+        int limit = -1;
+        int offset = 1;
+        long updatedAfter = Long.MIN_VALUE;
+        boolean includeDeleted = false;
+        Map<String, String> filters = new HashMap<>();
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            String value = parameter.getValue();
+            switch (parameter.getKey()) {
+                case "format":
+                    format = value;
+                    break;
+                case "limit":
+                    limit = (int) parseCount("limit", value);
+                    break;
+                case "offset":
+                    offset = (int) parseCount("offset", value);
+                    if (offset < 1) {
+                        throw new IllegalArgumentException("Bad offset value \"" + value + "\", offsets start at 1");
+                    }
+                    break;
+                case "updatedafter":
+                    updatedAfter = parseTime("updatedafter", value);
+                    break;
+                case "includedeleted":
+                    includeDeleted = Boolean.parseBoolean(value);
+                    break;
+                case "eventtype":
+                    // Every made-up event is an earthquake
+                    break;
+                case "nodata":
+                    parseNoDataCode(value);
+                    break;
+                default:
+                    filters.put(parameter.getKey(), value);
+                    break;
+            }
+        }
+        if (!format.equals(FORMAT_GEOJSON) && !format.equals(FORMAT_TEXT)) {
+            throw new IllegalArgumentException("Bad format value \"" + format + "\"");
+        }
+        if (limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("Bad limit value \"" + limit + "\", must be at most " + MAX_LIMIT);
+        }
+
+        List<Earthquake> matching = mCatalog.query(EventQuery.fromParameters(filters),
+                updatedAfter, includeDeleted);
+        if (limit < 0 && matching.size() > MAX_LIMIT) {
+            throw new IllegalArgumentException(matching.size()
+                    + " matching events exceeds search limit of " + MAX_LIMIT + ". Modify the search to match fewer events.");
+        }
+        int from = Math.min(offset - 1, matching.size());
+        int to = limit < 0 ? matching.size() : Math.min(from + limit, matching.size());
+        List<Earthquake> page = matching.subList(from, to);
+        if (page.isEmpty()) {
+            return null;
+        }
+
+        if (format.equals(FORMAT_TEXT)) {
+            FeedWriter.appendText(builder, page);
+            return "text/plain;charset=UTF-8";
+        }
+        FeedWriter.appendGeoJson(builder, page, url, mCatalog.getEndTime());
+        return "application/json";
+    }
+
+    /** Returns a USGS-style plain text error page. */
+    private static Body errorBody(int code, String message) {
+        String text = "Error " + code + ": " + reasonPhrase(code) + "\n\n" + message + "\n\n"
+                + "Usage details are available from https://earthquake.usgs.gov/fdsnws/event/1\n";
+        return new Body(code, text.getBytes(UTF_8), "text/plain;charset=UTF-8", null, false);
+    }
+
+    /**
+     * Returns the answer to a query that matches nothing: a 204 without a body, or the
+     * 404 error page if the nodata parameter asks for it.
+     */
+    private static Body noDataBody(String noData) {
+        if (noData != null && parseNoDataCode(noData) == 404) {
+            return errorBody(404, "No data matches the request");
+        }
+        return new Body(NO_DATA_CODE, new byte[0], null, null, false);
+    }
+
+    /**
+     * Parses the nodata parameter.
+     * @throws IllegalArgumentException unless it is 204 or 404, as USGS would say with a 400
+     */
+    private static int parseNoDataCode(String value) {
+        if (!value.equals("204") && !value.equals("404")) {
+            throw new IllegalArgumentException("Bad nodata value \"" + value + "\", must be 204 or 404");
+        }
+        return Integer.parseInt(value);
+    }
+
+    private static String reasonPhrase(int code) {
+        switch (code) {
+            case 200:
+                return "OK";
+            case 204:
+                return "No Content";
+            case 304:
+                return "Not Modified";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 429:
+                return "Too Many Requests";
+            case 500:
+                return "Internal Server Error";
+            case 502:
+                return "Bad Gateway";
+            case 503:
+                return "Service Unavailable";
+            case 504:
+                return "Gateway Timeout";
+            default:
+                return "Error";
+        }
+    }
+
+    /** Splits a raw query string into its decoded parameters; the last of a name wins. */
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, "UTF-8").toLowerCase(Locale.US),
+                    URLDecoder.decode(value, "UTF-8"));
+        }
+        return parameters;
+    }
+
+    /** Reads a UTC time like 2019-07-06T03:19:53.040, with as much of the end left off as USGS allows. */
+    private static long parseTime(String name, String value) {
+        String[] patterns = {"yyyy-MM-dd'T'HH:mm:ss.SSS", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd"};
+        String time = value.endsWith("Z") ? value.substring(0, value.length() - 1) : value;
+        for (String pattern : patterns) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            format.setLenient(false);
+            try {
+                Date date = format.parse(time);
+                if (format.format(date).length() == time.length()) {
+                    return date.getTime();
+                }
+            } catch (ParseException e) {
+                // Try the next pattern
+            }
+        }
+        throw new IllegalArgumentException("Bad " + name + " value \"" + value + "\"");
+    }
+
+    /** Reads a count that is 0 or more, with an optional k or m suffix for KiB or MiB. */
+    private static long parseCount(String name, String value) {
+        String lower = value.toLowerCase(Locale.US);
+        long multiplier = 1;
+        if (lower.endsWith("k")) {
+            multiplier = 1024;
+        } else if (lower.endsWith("m")) {
+            multiplier = 1024 * 1024;
+        }
+        try {
+            long count = Long.parseLong(multiplier == 1 ? lower : lower.substring(0, lower.length() - 1));
+            if (count >= 0) {
+                return count * multiplier;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Bad " + name + " value \"" + value + "\"");
+    }
+
+    private static double parseNumber(String name, String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + name + " value \"" + value + "\"");
+        }
+    }
+
+    private static double parseFraction(String name, String value) {
+        double fraction = parseNumber(name, value);
+        if (!(fraction >= 0 && fraction <= 1)) {
+            throw new IllegalArgumentException(name + " must be between 0 and 1");
+        }
+        return fraction;
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.android.quakereport.simulator;
+
+import com.example.android.quakereport.Earthquake;
+
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Writes earthquakes the way the USGS event service does, in GeoJSON or the FDSN text
+ * format. Features carry every property USGS sends, not only the ones the app reads,
+ * so responses are as large as the real ones and throttled downloads take as long.
+ */
+final class FeedWriter {
+
+    /** Header line of the FDSN text format */
+    private static final String TEXT_HEADER = "#EventID|Time|Latitude|Longitude|Depth/km|Author"
+            + "|Catalog|Contributor|ContributorID|MagType|Magnitude|MagAuthor|EventLocationName"
+            + "|EventType\n";
+
+    /** Network code the made-up events are reported by */
+    private static final String NETWORK = "sm";
+
+    /**
+     * Create a private constructor because no one should ever create a {@link FeedWriter}
+     * object. This class only holds static methods.
+     */
+    private FeedWriter() {
+    }
+
+    /**
+     * Appends a GeoJSON FeatureCollection of the earthquakes.
+     * @param url is the request URL, which USGS echoes in the metadata
+     * @param generated is the time the response says it was made at
+     */
+    static void appendGeoJson(StringBuilder builder, List<Earthquake> earthquakes, String url,
+                              long generated) {
+        builder.append("{\"type\":\"FeatureCollection\",\"metadata\":{\"generated\":")
+                .append(generated).append(",\"url\":\"");
+        appendEscaped(builder, url);
+        builder.append("\",\"title\":\"USGS Earthquakes\",\"status\":200,\"api\":\"1.10.3\",\"count\":")
+                .append(earthquakes.size()).append("},\"features\":[");
+        for (int i = 0; i < earthquakes.size(); i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            String id = earthquake.getId();
+            String code = id.substring(NETWORK.length());
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"type\":\"Feature\",\"properties\":{\"mag\":");
+            appendNumber(builder, earthquake.getMagnitude());
+            builder.append(",\"place\":\"");
+            appendEscaped(builder, earthquake.getLocation());
+            builder.append("\",\"time\":").append(earthquake.getTimeInMilliseconds())
+                    .append(",\"updated\":").append(earthquake.getUpdatedInMilliseconds())
+                    .append(",\"tz\":null,\"url\":\"");
+            appendEscaped(builder, earthquake.getUrl());
+            builder.append("\",\"detail\":\"https://earthquake.usgs.gov/fdsnws/event/1/query?eventid=")
+                    .append(id).append("&format=geojson\",\"felt\":null,\"cdi\":null,\"mmi\":null,")
+                    .append("\"alert\":null,\"status\":\"")
+                    .append(earthquake.isDeleted() ? "deleted" : "reviewed")
+                    .append("\",\"tsunami\":0,\"sig\":")
+                    .append(Math.max(0, (int) (earthquake.getMagnitude() * 100)))
+                    .append(",\"net\":\"").append(NETWORK).append("\",\"code\":\"").append(code)
+                    .append("\",\"ids\":\",").append(id).append(",\",\"sources\":\",").append(NETWORK)
+                    .append(",\",\"types\":\",origin,phase-data,\",\"nst\":24,\"dmin\":0.0412,")
+                    .append("\"rms\":0.17,\"gap\":71,\"magType\":\"ml\",\"type\":\"earthquake\",")
+                    .append("\"title\":\"M ");
+            appendNumber(builder, earthquake.getMagnitude());
+            builder.append(" - ");
+            appendEscaped(builder, earthquake.getLocation());
+            builder.append("\"},\"geometry\":{\"type\":\"Point\",\"coordinates\":[");
+            appendNumber(builder, earthquake.getLongitude());
+            builder.append(',');
+            appendNumber(builder, earthquake.getLatitude());
+            builder.append(',');
+            appendNumber(builder, earthquake.getDepth());
+            builder.append("]},\"id\":\"").append(id).append("\"}");
+        }
+        builder.append("]}");
+    }
+
+    /**
+     * Appends the earthquakes in the FDSN text format. The format can't tell deleted
+     * events apart, so USGS leaves them out of it, and so does this.
+     */
+    static void appendText(StringBuilder builder, List<Earthquake> earthquakes) {
+        // SimpleDateFormat isn't thread safe, and responses are written on several threads
+        SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        timeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Date date = new Date();
+
+        builder.append(TEXT_HEADER);
+        for (int i = 0; i < earthquakes.size(); i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            if (earthquake.isDeleted()) {
+                continue;
+            }
+            date.setTime(earthquake.getTimeInMilliseconds());
+            builder.append(earthquake.getId()).append('|').append(timeFormat.format(date)).append('|');
+            appendNumber(builder, earthquake.getLatitude());
+            builder.append('|');
+            appendNumber(builder, earthquake.getLongitude());
+            builder.append('|');
+            appendNumber(builder, earthquake.getDepth());
+            builder.append('|').append(NETWORK).append('|').append(NETWORK).append('|').append(NETWORK)
+                    .append('|').append(earthquake.getId()).append("|ml|");
+            appendNumber(builder, earthquake.getMagnitude());
+            builder.append('|').append(NETWORK).append('|').append(earthquake.getLocation())
+                    .append("|earthquake\n");
+        }
+    }
+
+    /** Appends a number as USGS writes it, never in the 1.0E-4 form Java uses for small ones. */
+    private static void appendNumber(StringBuilder builder, double value) {
+        if (value != 0 && Math.abs(value) < 1e-3) {
+            builder.append(BigDecimal.valueOf(value).toPlainString());
+        } else {
+            builder.append(value);
+        }
+    }
+
+    /** Appends a string, escaping the characters JSON doesn't allow in one. */
+    private static void appendEscaped(StringBuilder builder, String string) {
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < ' ') {
+                builder.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+    }
+}
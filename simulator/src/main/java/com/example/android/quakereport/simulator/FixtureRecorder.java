@@ -0,0 +1,100 @@
+package com.example.android.quakereport.simulator;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.EventQuery;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records the responses the simulator gives to a query for the newest N events, in
+ * GeoJSON and the FDSN text format, as gzipped fixture files for the benchmarks.
+ * <pre>
+ * record-fixtures DIR [COUNT...]
+ * </pre>
+ * Without counts it records 10, 1000, 10000 and 100000 events. The catalog always has the
+ * same end time and seed, so the same counts always record the same bytes.
+ */
+public final class FixtureRecorder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** 2018-07-01T00:00:00Z, so fixtures don't change with the day they are recorded on */
+    private static final long END_TIME = 1530403200000L;
+
+    private static final long SPAN_MILLIS = 30L * 24 * 60 * 60 * 1000;
+
+    private static final double MIN_MAGNITUDE = 0.5;
+
+    private static final long SEED = 1;
+
+    private static final int[] DEFAULT_COUNTS = {10, 1000, 10000, 100000};
+
+    /**
+     * Create a private constructor because no one should ever create a {@link FixtureRecorder}
+     * object. This class only holds static methods.
+     */
+    private FixtureRecorder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: record-fixtures DIR [COUNT...]");
+            System.exit(2);
+        }
+        File directory = new File(args[0]);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        int[] counts = DEFAULT_COUNTS;
+        if (args.length > 1) {
+            counts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                counts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (int count : counts) {
+            // Deleted events only come back with includedeleted, which these queries don't ask for
+            SyntheticCatalog catalog = new SyntheticCatalog(count, END_TIME, SPAN_MILLIS,
+                    MIN_MAGNITUDE, 0, SEED);
+            List<Earthquake> earthquakes = catalog.query(
+                    EventQuery.fromParameters(Collections.<String, String>emptyMap()), Long.MIN_VALUE, false);
+
+            StringBuilder builder = new StringBuilder();
+            FeedWriter.appendGeoJson(builder, earthquakes, "https://earthquake.usgs.gov"
+                    + FeedSimulator.QUERY_PATH + "?format=geojson&orderby=time&limit=" + count, END_TIME);
+            write(new File(directory, name(count, "geojson")), builder);
+
+            builder.setLength(0);
+            FeedWriter.appendText(builder, earthquakes);
+            write(new File(directory, name(count, "txt")), builder);
+        }
+    }
+
+    /** Returns the file name of the fixture of the given number of events and extension. */
+    private static String name(int count, String extension) {
+        return String.format(Locale.US, "events-%d.%s.gz", count, extension);
+    }
+
+    private static void write(File file, CharSequence content) throws IOException {
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+        try {
+            Writer writer = new OutputStreamWriter(out, UTF_8);
+            writer.append(content);
+            writer.flush();
+        } finally {
+            out.close();
+        }
+        System.out.println(file + ": " + file.length() + " bytes");
+    }
+}
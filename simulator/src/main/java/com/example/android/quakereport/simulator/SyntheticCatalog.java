@@ -0,0 +1,178 @@
+package com.example.android.quakereport.simulator;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.EventQuery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Made-up catalog of earthquakes that looks like what USGS serves: magnitudes follow
+ * the Gutenberg-Richter law, so small events are ten times as common as ones a whole
+ * magnitude larger, places read "12km NNE of Hilo, Hawaii", and a few events are deleted.
+ *
+ * The same count and seed always make the same catalog, so runs against it compare.
+ */
+final class SyntheticCatalog {
+
+    /** Where the USGS event pages live, which is what the GeoJSON format links to */
+    private static final String EVENT_PAGE_URL = "https://earthquake.usgs.gov/earthquakes/eventpage/";
+
+    /** Towns events are placed near, with their region and coordinates */
+    private static final String[] TOWNS = {
+            "Anchorage", "Fairbanks", "Ridgecrest", "Petrolia", "Hilo", "Pahala",
+            "Tokyo", "Sendai", "Valparaiso", "Ovalle", "Padang", "Bitung",
+            "Lima", "Pinotepa Nacional", "Athens", "Malatya", "Reno", "Salt Lake City"
+    };
+    private static final String[] REGIONS = {
+            "Alaska", "Alaska", "CA", "CA", "Hawaii", "Hawaii",
+            "Japan", "Japan", "Chile", "Chile", "Indonesia", "Indonesia",
+            "Peru", "Mexico", "Greece", "Turkey", "Nevada", "Utah"
+    };
+    private static final double[] LATITUDES = {
+            61.2, 64.8, 35.6, 40.3, 19.7, 19.2,
+            35.7, 38.3, -33.0, -30.6, -0.9, 1.4,
+            -12.0, 16.3, 38.0, 38.4, 39.5, 40.8
+    };
+    private static final double[] LONGITUDES = {
+            -149.9, -147.7, -117.7, -124.3, -155.1, -155.5,
+            139.7, 140.9, -71.6, -71.2, 100.4, 125.1,
+            -77.0, -98.1, 23.7, 38.3, -119.8, -111.9
+    };
+
+    /** Offshore regions, named without a distance from a town */
+    private static final String[] OPEN_REGIONS = {
+            "Fiji region", "South Sandwich Islands region", "Mid-Atlantic Ridge",
+            "Kermadec Islands region", "Banda Sea"
+    };
+
+    private static final String[] DIRECTIONS = {
+            "N", "NNE", "NE", "ENE", "E", "ESE", "SE", "SSE",
+            "S", "SSW", "SW", "WSW", "W", "WNW", "NW", "NNW"
+    };
+
+    /** Largest magnitude made up, however unlikely */
+    private static final double MAX_MAGNITUDE = 9.5;
+
+    /** Longest time between an event and its last update */
+    private static final long MAX_UPDATE_DELAY_MILLIS = 2L * 24 * 60 * 60 * 1000;
+
+    /** Every event, newest first */
+    private final List<Earthquake> mEarthquakes;
+
+    /** Time of the newest event the catalog may hold */
+    private final long mEndTime;
+
+    /**
+     * Makes up a catalog.
+     * @param count number of events
+     * @param endTime is the time the catalog ends at, usually now
+     * @param spanMillis is the time before endTime the events are spread over
+     * @param minMagnitude is the smallest magnitude
+     * @param deletedFraction is the share of events that are marked deleted
+     * @param seed makes the same catalog every time it is used again
+     */
+    SyntheticCatalog(int count, long endTime, long spanMillis, double minMagnitude,
+                     double deletedFraction, long seed) {
+        Random random = new Random(seed);
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = endTime - (long) (random.nextDouble() * spanMillis);
+        }
+        Arrays.sort(times);
+
+        mEarthquakes = new ArrayList<>(count);
+        for (int i = count - 1; i >= 0; i--) {
+            String id = "sm" + String.format(Locale.US, "%08d", count - i);
+            // Inverse of the Gutenberg-Richter distribution, with a b-value of 1
+            double magnitude = minMagnitude - Math.log10(1 - random.nextDouble());
+            magnitude = Math.round(Math.min(magnitude, MAX_MAGNITUDE) * 100) / 100.0;
+            long updated = Math.min(endTime,
+                    times[i] + (long) (random.nextDouble() * MAX_UPDATE_DELAY_MILLIS));
+
+            String place;
+            double latitude;
+            double longitude;
+            if (random.nextInt(10) == 0) {
+                place = OPEN_REGIONS[random.nextInt(OPEN_REGIONS.length)];
+                latitude = random.nextDouble() * 120 - 60;
+                longitude = random.nextDouble() * 360 - 180;
+            } else {
+                int town = random.nextInt(TOWNS.length);
+                place = (1 + random.nextInt(150)) + "km " + DIRECTIONS[random.nextInt(DIRECTIONS.length)]
+                        + " of " + TOWNS[town] + ", " + REGIONS[town];
+                latitude = LATITUDES[town] + random.nextDouble() * 2 - 1;
+                longitude = LONGITUDES[town] + random.nextDouble() * 2 - 1;
+            }
+            // Most events are shallow, a few are hundreds of kilometers deep
+            double depth = Math.min(700, -Math.log(1 - random.nextDouble()) * 30);
+
+            mEarthquakes.add(new Earthquake(id, magnitude, place, times[i], EVENT_PAGE_URL + id,
+                    round(latitude, 4), round(longitude, 4), round(depth, 2), updated,
+                    random.nextDouble() < deletedFraction));
+        }
+        mEndTime = endTime;
+    }
+
+    int size() {
+        return mEarthquakes.size();
+    }
+
+    long getEndTime() {
+        return mEndTime;
+    }
+
+    /**
+     * Returns the events USGS would return for a query, in its order.
+     * @param query filters and orders the events
+     * @param updatedAfter leaves out events updated at or before this time
+     * @param includeDeleted keeps the deleted events that otherwise match
+     */
+    List<Earthquake> query(EventQuery query, long updatedAfter, boolean includeDeleted) {
+        List<Earthquake> matching = new ArrayList<>();
+        for (int i = 0; i < mEarthquakes.size(); i++) {
+            Earthquake earthquake = mEarthquakes.get(i);
+            if (earthquake.getUpdatedInMilliseconds() <= updatedAfter) {
+                continue;
+            }
+            if (earthquake.isDeleted()) {
+                // A query never matches deleted events, so ask about a live copy
+                if (!includeDeleted || !query.matches(undeleted(earthquake))) {
+                    continue;
+                }
+            } else if (!query.matches(earthquake)) {
+                continue;
+            }
+            matching.add(earthquake);
+        }
+        // The sort is stable and takes one pass when the events are in order already
+        Collections.sort(matching, query.getComparator());
+        return matching;
+    }
+
+    /** Returns the events of the given time before the end of the catalog, newest first. */
+    List<Earthquake> latest(long millis) {
+        List<Earthquake> latest = new ArrayList<>();
+        for (int i = 0; i < mEarthquakes.size()
+                && mEarthquakes.get(i).getTimeInMilliseconds() >= mEndTime - millis; i++) {
+            latest.add(mEarthquakes.get(i));
+        }
+        return latest;
+    }
+
+    private static Earthquake undeleted(Earthquake earthquake) {
+        return new Earthquake(earthquake.getId(), earthquake.getMagnitude(), earthquake.getLocation(),
+                earthquake.getTimeInMilliseconds(), earthquake.getUrl(), earthquake.getLatitude(),
+                earthquake.getLongitude(), earthquake.getDepth(), earthquake.getUpdatedInMilliseconds(),
+                false);
+    }
+
+    private static double round(double value, int decimals) {
+        double scale = Math.pow(10, decimals);
+        return Math.round(value * scale) / scale;
+    }
+}
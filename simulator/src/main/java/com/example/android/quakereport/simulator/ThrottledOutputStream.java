@@ -0,0 +1,65 @@
+package com.example.android.quakereport.simulator;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Writes no faster than a given number of bytes per second, like a slow mobile link.
+ * Bytes go out in slices of a twentieth of a second, and the writer sleeps whenever it
+ * gets ahead of the rate, so the client sees a steady trickle rather than bursts.
+ */
+final class ThrottledOutputStream extends FilterOutputStream {
+
+    /** Slices per second the bytes are sent in */
+    private static final int SLICES_PER_SECOND = 20;
+
+    private final long mBytesPerSecond;
+    private final int mSliceSize;
+    private final long mStartNanos = System.nanoTime();
+    private long mWritten;
+
+    /**
+     * Constructs a new {@link ThrottledOutputStream}.
+     * @param out receives the bytes
+     * @param bytesPerSecond is the rate to keep to
+     */
+    ThrottledOutputStream(OutputStream out, long bytesPerSecond) {
+        super(out);
+        mBytesPerSecond = bytesPerSecond;
+        mSliceSize = (int) Math.max(1, bytesPerSecond / SLICES_PER_SECOND);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int slice = Math.min(len, mSliceSize);
+            pace(slice);
+            out.write(b, off, slice);
+            out.flush();
+            mWritten += slice;
+            off += slice;
+            len -= slice;
+        }
+    }
+
+    /** Sleeps until the given number of bytes more can go out without passing the rate. */
+    private void pace(int bytes) throws IOException {
+        long dueNanos = mStartNanos + (mWritten + bytes) * 1000000000L / mBytesPerSecond;
+        long waitMillis = (dueNanos - System.nanoTime()) / 1000000;
+        if (waitMillis > 0) {
+            try {
+                Thread.sleep(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling");
+            }
+        }
+    }
+}
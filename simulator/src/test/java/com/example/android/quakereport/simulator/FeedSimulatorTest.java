@@ -0,0 +1,175 @@
+package com.example.android.quakereport.simulator;
+
+import com.example.android.quakereport.Earthquake;
+import com.example.android.quakereport.ResponseFormats;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FeedSimulatorTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    /** 2018-07-01T00:00:00Z */
+    private static final long END = 1530403200000L;
+
+    private ServerSocket mServer;
+    private String mQueryUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        // Enough deleted events to tell includedeleted apart
+        SyntheticCatalog catalog = new SyntheticCatalog(300, END, 30 * DAY, 2.5, 0.1, 23);
+        final FeedSimulator simulator = new FeedSimulator(catalog, 0, 0, 0, 0, 0, 503, true, 23);
+        mServer = new ServerSocket(0);
+        mQueryUrl = "http://localhost:" + mServer.getLocalPort() + FeedSimulator.QUERY_PATH
+                + "?format=geojson&orderby=time";
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    simulator.listen(mServer);
+                } catch (IOException e) {
+                    // The test closed the server
+                }
+            }
+        }.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+    }
+
+    @Test
+    public void pagesWithOffsetAndLimit() throws IOException {
+        List<Earthquake> all = fetch(mQueryUrl);
+        assertTrue(all.size() > 200);
+
+        List<Earthquake> paged = new ArrayList<>();
+        for (int offset = 1; offset <= all.size(); offset += 100) {
+            List<Earthquake> page = fetch(mQueryUrl + "&offset=" + offset + "&limit=100");
+            assertEquals(Math.min(100, all.size() - offset + 1), page.size());
+            paged.addAll(page);
+        }
+
+        assertEquals(ids(all), ids(paged));
+    }
+
+    @Test
+    public void answersAQueryMatchingNothingWith204() throws IOException {
+        HttpURLConnection connection = open(mQueryUrl + "&minmagnitude=9.6");
+        assertEquals(HttpURLConnection.HTTP_NO_CONTENT, connection.getResponseCode());
+        assertEquals(0, read(connection.getInputStream()).length);
+
+        // Paging past the last event matches nothing too
+        assertEquals(HttpURLConnection.HTTP_NO_CONTENT,
+                open(mQueryUrl + "&offset=100000&limit=100").getResponseCode());
+    }
+
+    @Test
+    public void answersAQueryMatchingNothingWithTheNodataCode() throws IOException {
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                open(mQueryUrl + "&minmagnitude=9.6&nodata=404").getResponseCode());
+        assertEquals(HttpURLConnection.HTTP_NO_CONTENT,
+                open(mQueryUrl + "&minmagnitude=9.6&nodata=204").getResponseCode());
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST,
+                open(mQueryUrl + "&minmagnitude=9.6&nodata=500").getResponseCode());
+
+        // nodata only matters when nothing matches
+        assertEquals(HttpURLConnection.HTTP_OK, open(mQueryUrl + "&nodata=404").getResponseCode());
+    }
+
+    @Test
+    public void returnsEventsUpdatedAfterATimeWithTheDeletedOnesWhenAsked() throws IOException {
+        List<Earthquake> catalog = fetch(mQueryUrl + "&includedeleted=true");
+        long updatedAfter = END - 10 * DAY;
+        List<String> updated = new ArrayList<>();
+        List<String> updatedOrDeleted = new ArrayList<>();
+        int deleted = 0;
+        for (Earthquake earthquake : catalog) {
+            if (earthquake.getUpdatedInMilliseconds() > updatedAfter) {
+                updatedOrDeleted.add(earthquake.getId());
+                if (earthquake.isDeleted()) {
+                    deleted++;
+                } else {
+                    updated.add(earthquake.getId());
+                }
+            }
+        }
+        assertTrue(deleted > 0);
+
+        String deltaUrl = mQueryUrl + "&updatedafter=" + formatIsoTime(updatedAfter);
+        List<Earthquake> changes = fetch(deltaUrl);
+        assertEquals(updated, ids(changes));
+        for (Earthquake earthquake : changes) {
+            assertFalse(earthquake.isDeleted());
+        }
+
+        assertEquals(updatedOrDeleted, ids(fetch(deltaUrl + "&includedeleted=true")));
+    }
+
+    private static HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(5000);
+        return connection;
+    }
+
+    /** Fetches a GeoJSON query, failing unless it is answered with 200. */
+    private static List<Earthquake> fetch(String url) throws IOException {
+        HttpURLConnection connection = open(url);
+        assertEquals(url, HttpURLConnection.HTTP_OK, connection.getResponseCode());
+        List<Earthquake> earthquakes = new ArrayList<>();
+        InputStream in = connection.getInputStream();
+        try {
+            ResponseFormats.GEOJSON.parse(in, earthquakes);
+        } finally {
+            in.close();
+        }
+        return earthquakes;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static List<String> ids(List<Earthquake> earthquakes) {
+        List<String> ids = new ArrayList<>(earthquakes.size());
+        for (Earthquake earthquake : earthquakes) {
+            ids.add(earthquake.getId());
+        }
+        return ids;
+    }
+
+    private static String formatIsoTime(long timeInMilliseconds) {
+        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return isoFormat.format(new Date(timeInMilliseconds));
+    }
+}